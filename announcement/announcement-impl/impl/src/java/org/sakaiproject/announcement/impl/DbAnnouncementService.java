@@ -229,6 +229,11 @@ public class DbAnnouncementService extends BaseAnnouncementService
 			super(m_cTableName, "CHANNEL_ID", m_rTableName, "MESSAGE_ID", "CHANNEL_ID", "MESSAGE_DATE", "OWNER", "DRAFT",
 					"PUBVIEW", FIELDS, m_locksInDb, "channel", "message", user, sqlService);
 
+			addIndexField(INDEX_DATE, "MESSAGE_DATE");
+			addIndexField(INDEX_OWNER, "OWNER");
+			addIndexField(INDEX_DRAFT, "DRAFT");
+			addIndexField(INDEX_PUBVIEW, "PUBVIEW");
+
 		} // DbStorage
 
 		/** Channels * */
@@ -44,6 +44,7 @@ import lombok.extern.slf4j.Slf4j;
 
 import org.sakaiproject.calendar.impl.DbCalendarService.DbStorage;
 import org.sakaiproject.db.api.SqlReader;
+import org.sakaiproject.db.api.SqlRecordHandler;
 import org.sakaiproject.db.api.SqlService;
 import org.sakaiproject.entity.api.Entity;
 import org.sakaiproject.entity.api.EntityManager;
@@ -166,6 +167,18 @@ public class DbCalendarServiceSerializationTest extends TestCase
 				return null;
 			}
 
+			public int dbReadEach(String sql, Object[] fields, int fetchSize, SqlReader reader, SqlRecordHandler handler)
+			{
+				// TODO Auto-generated method stub
+				return 0;
+			}
+
+			public int dbReadEach(Connection conn, String sql, Object[] fields, int fetchSize, SqlReader reader, SqlRecordHandler handler)
+			{
+				// TODO Auto-generated method stub
+				return 0;
+			}
+
 			public void dbReadBinary(String sql, Object[] fields, byte[] value)
 			{
 				// TODO Auto-generated method stub
@@ -16,6 +16,7 @@
 
 package org.sakaiproject.component.gradebook;
 
+import java.io.Serializable;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.text.DecimalFormat;
@@ -46,10 +47,14 @@ import org.hibernate.HibernateException;
 import org.hibernate.Query;
 import org.hibernate.Session;
 import org.hibernate.StaleObjectStateException;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.sakaiproject.authz.cover.SecurityService;
 import org.sakaiproject.component.api.ServerConfigurationService;
 import org.sakaiproject.hibernate.HibernateCriterionUtils;
+import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.memory.api.SimpleConfiguration;
 import org.sakaiproject.rubrics.logic.RubricsService;
 import org.sakaiproject.section.api.coursemanagement.CourseSection;
 import org.sakaiproject.section.api.coursemanagement.EnrollmentRecord;
@@ -113,6 +118,47 @@ public class GradebookServiceHibernateImpl extends BaseHibernateManager implemen
 
 	@Getter @Setter
 	private RubricsService rubricsService;
+
+	@Setter
+	private MemoryService memoryService;
+
+	/**
+	 * gradebook id, version of the assignments and categories, student -> the student's course grade totals. Each entry also
+	 * says which version of the student's grade records it was worked out from, so it is only used while they are unchanged.
+	 */
+	private Cache<String, CourseGradeTotals> courseGradeTotalsCache;
+
+	/**
+	 * The points a student has earned and could have earned in a gradebook, as set by CourseGradeRecord.initNonpersistentFields
+	 */
+	private static final class CourseGradeTotals implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final String gradeRecordsVersion;
+		private final double totalPointsPossible;
+		private final double totalPointsEarned;
+		private final double literalTotalPointsEarned;
+		private final double extraPointsEarned;
+
+		private CourseGradeTotals(final String gradeRecordsVersion, final double totalPointsPossible, final double totalPointsEarned,
+				final double literalTotalPointsEarned, final double extraPointsEarned) {
+			this.gradeRecordsVersion = gradeRecordsVersion;
+			this.totalPointsPossible = totalPointsPossible;
+			this.totalPointsEarned = totalPointsEarned;
+			this.literalTotalPointsEarned = literalTotalPointsEarned;
+			this.extraPointsEarned = extraPointsEarned;
+		}
+	}
+
+	public void init() {
+		// gradebook.courseGradeCache.maxEntries=0 turns the cache off
+		final int maxEntries = this.serverConfigService.getInt("gradebook.courseGradeCache.maxEntries", 50000);
+		if (maxEntries > 0) {
+			this.courseGradeTotalsCache = this.memoryService.createCache(
+					"org.sakaiproject.component.gradebook.GradebookServiceHibernateImpl.courseGradeTotalsCache",
+					new SimpleConfiguration<>(maxEntries, 0, 3600));
+		}
+	}
 	@Override
 	public boolean isAssignmentDefined(final String gradebookUid, final String assignmentName) {
 		if (!isUserAbleToViewAssignments(gradebookUid)) {
@@ -743,9 +789,6 @@ public class GradebookServiceHibernateImpl extends BaseHibernateManager implemen
 				final Gradebook gradebook = getGradebook(gradebookId);
 				final List cates = getCategories(gradebookId);
 
-				// get all of the AssignmentGradeRecords here to avoid repeated db calls
-				final Map<String, List<AssignmentGradeRecord>> gradeRecMap = getGradeRecordMapForStudents(gradebookId, studentUids);
-
 				// get all of the counted assignments
 				final List<GradebookAssignment> assignments = getCountedAssignments(session, gradebookId);
 				final List<GradebookAssignment> countedAssigns = new ArrayList<>();
@@ -760,20 +803,55 @@ public class GradebookServiceHibernateImpl extends BaseHibernateManager implemen
 				// double totalPointsPossible = getTotalPointsInternal(gradebookId, session);
 				// if(log.isDebugEnabled()) log.debug("Total points = " + totalPointsPossible);
 
+				// only students whose grade records have changed since their totals were cached need to be worked out again.
+				// a change to the gradebook, its categories or its counted assignments changes the key of every student
+				final Map<String, CourseGradeTotals> cachedTotals = new HashMap<>();
+				final Map<String, String> gradeRecordVersions;
+				final String cacheKeyPrefix;
+				if (courseGradeTotalsCache != null) {
+					gradeRecordVersions = getGradeRecordVersionsForStudents(session, gradebookId, studentUids);
+					cacheKeyPrefix = gradebookId + ":" + getCourseGradeStructureVersion(gradebook, cates, countedAssigns) + ":";
+					for (final Iterator iter = records.iterator(); iter.hasNext();) {
+						final String studentId = ((CourseGradeRecord) iter.next()).getStudentId();
+						final CourseGradeTotals totals = courseGradeTotalsCache.get(cacheKeyPrefix + studentId);
+						if (totals != null && totals.gradeRecordsVersion.equals(gradeRecordVersions.getOrDefault(studentId, "0"))) {
+							cachedTotals.put(studentId, totals);
+						}
+					}
+				} else {
+					gradeRecordVersions = Collections.emptyMap();
+					cacheKeyPrefix = null;
+				}
+
+				// get the AssignmentGradeRecords of the other students here to avoid repeated db calls
+				final Set<String> uncachedStudentUids = new HashSet<>(studentUids);
+				uncachedStudentUids.removeAll(cachedTotals.keySet());
+				final Map<String, List<AssignmentGradeRecord>> gradeRecMap = uncachedStudentUids.isEmpty() ? Collections.emptyMap()
+						: getGradeRecordMapForStudents(gradebookId, uncachedStudentUids);
+
 				for (final Iterator iter = records.iterator(); iter.hasNext();) {
 					final CourseGradeRecord cgr = (CourseGradeRecord) iter.next();
-					// double totalPointsEarned = getTotalPointsEarnedInternal(gradebookId, cgr.getStudentId(), session);
-					final List<AssignmentGradeRecord> studentGradeRecs = gradeRecMap.get(cgr.getStudentId());
-
-					applyDropScores(studentGradeRecs);
-					final List totalEarned = getTotalPointsEarnedInternal(cgr.getStudentId(), gradebook, cates, studentGradeRecs,
-							countedAssigns);
-					final double totalPointsEarned = ((Double) totalEarned.get(0));
-					final double literalTotalPointsEarned = ((Double) totalEarned.get(1));
-					final double extraPointsEarned = ((Double) totalEarned.get(2));
-					final double totalPointsPossible = getTotalPointsInternal(gradebook, cates, cgr.getStudentId(), studentGradeRecs,
-							countedAssigns, false);
-					cgr.initNonpersistentFields(totalPointsPossible, totalPointsEarned, literalTotalPointsEarned, extraPointsEarned);
+					CourseGradeTotals totals = cachedTotals.get(cgr.getStudentId());
+					if (totals == null) {
+						// double totalPointsEarned = getTotalPointsEarnedInternal(gradebookId, cgr.getStudentId(), session);
+						final List<AssignmentGradeRecord> studentGradeRecs = gradeRecMap.get(cgr.getStudentId());
+
+						applyDropScores(studentGradeRecs);
+						final List totalEarned = getTotalPointsEarnedInternal(cgr.getStudentId(), gradebook, cates, studentGradeRecs,
+								countedAssigns);
+						final double totalPointsEarned = ((Double) totalEarned.get(0));
+						final double literalTotalPointsEarned = ((Double) totalEarned.get(1));
+						final double extraPointsEarned = ((Double) totalEarned.get(2));
+						final double totalPointsPossible = getTotalPointsInternal(gradebook, cates, cgr.getStudentId(), studentGradeRecs,
+								countedAssigns, false);
+						totals = new CourseGradeTotals(gradeRecordVersions.getOrDefault(cgr.getStudentId(), "0"), totalPointsPossible,
+								totalPointsEarned, literalTotalPointsEarned, extraPointsEarned);
+						if (cacheKeyPrefix != null) {
+							courseGradeTotalsCache.put(cacheKeyPrefix + cgr.getStudentId(), totals);
+						}
+					}
+					cgr.initNonpersistentFields(totals.totalPointsPossible, totals.totalPointsEarned, totals.literalTotalPointsEarned,
+							totals.extraPointsEarned);
 					if (log.isDebugEnabled()) {
 						log.debug("Points earned = " + cgr.getPointsEarned());
 					}
@@ -788,6 +866,55 @@ public class GradebookServiceHibernateImpl extends BaseHibernateManager implemen
 		return (List) getHibernateTemplate().execute(hc);
 	}
 
+	/**
+	 * Get a version for each student's grade records in a gradebook, made from the number of records and the sums of their ids
+	 * and Hibernate versions. Adding, changing or removing any of the records that getGradeRecordMapForStudents returns changes it.
+	 *
+	 * @return a map of studentUid to version, students without grade records are left out
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<String, String> getGradeRecordVersionsForStudents(final Session session, final Long gradebookId,
+			final Collection<String> studentUids) {
+		final List<Object[]> rows = session.createCriteria(AssignmentGradeRecord.class)
+				.createAlias("gradableObject", "go")
+				.createAlias("gradableObject.gradebook", "gb")
+				.add(Restrictions.eq("gb.id", gradebookId))
+				.add(Restrictions.eq("go.removed", false))
+				.add(HibernateCriterionUtils.CriterionInRestrictionSplitter("studentId", studentUids))
+				.setProjection(Projections.projectionList()
+						.add(Projections.groupProperty("studentId"))
+						.add(Projections.rowCount())
+						.add(Projections.sum("id"))
+						.add(Projections.sum("version")))
+				.list();
+
+		final Map<String, String> versions = new HashMap<>();
+		for (final Object[] row : rows) {
+			versions.put((String) row[0], row[1] + ":" + row[2] + ":" + row[3]);
+		}
+		return versions;
+	}
+
+	/**
+	 * Combine the Hibernate versions of the gradebook, its categories and its counted assignments, so that any change to how course
+	 * grades are worked out (category type, weights, drop rules, points possible, what is counted) gives a different value.
+	 */
+	@SuppressWarnings("rawtypes")
+	private long getCourseGradeStructureVersion(final Gradebook gradebook, final List categories,
+			final List<GradebookAssignment> countedAssigns) {
+		long version = gradebook.getVersion();
+		if (categories != null) {
+			for (final Object o : categories) {
+				final Category category = (Category) o;
+				version = 31 * (31 * version + category.getId()) + category.getVersion();
+			}
+		}
+		for (final GradebookAssignment assignment : countedAssigns) {
+			version = 31 * (31 * version + assignment.getId()) + assignment.getVersion();
+		}
+		return version;
+	}
+
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	private List filterAndPopulateCourseGradeRecordsByStudents(final CourseGrade courseGrade, final Collection gradeRecords,
 			final Collection studentUids) {
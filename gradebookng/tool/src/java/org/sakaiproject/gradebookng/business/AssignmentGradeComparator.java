@@ -16,6 +16,8 @@
 package org.sakaiproject.gradebookng.business;
 
 import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 import org.apache.commons.lang3.builder.CompareToBuilder;
 import org.apache.commons.lang3.math.NumberUtils;
@@ -26,12 +28,15 @@ import org.sakaiproject.gradebookng.business.model.GbStudentGradeInfo;
  * Comparator class for sorting an assignment by the grades.
  *
  * Note that this must have the assignmentId set into it so we can extract the appropriate grade entry from the map that each student has.
+ * Each student's grade is parsed once and remembered, so an instance should only be used for one sort.
  *
  */
 public class AssignmentGradeComparator implements Comparator<GbStudentGradeInfo> {
 
 	private final long assignmentId;
 
+	private final Map<GbStudentGradeInfo, Double> grades = new IdentityHashMap<>();
+
 	public AssignmentGradeComparator(final long assignmentId) {
 		this.assignmentId = assignmentId;
 	}
@@ -39,15 +44,20 @@ public class AssignmentGradeComparator implements Comparator<GbStudentGradeInfo>
 	@Override
 	public int compare(final GbStudentGradeInfo g1, final GbStudentGradeInfo g2) {
 
-		final GbGradeInfo info1 = g1.getGrades().get(this.assignmentId);
-		final GbGradeInfo info2 = g2.getGrades().get(this.assignmentId);
+		return new CompareToBuilder().append(getGrade(g1), getGrade(g2)).toComparison();
 
-		// for proper number ordering, these have to be numerical
-		final Double grade1 = (info1 != null) ? NumberUtils.toDouble(info1.getGrade()) : null;
-		final Double grade2 = (info2 != null) ? NumberUtils.toDouble(info2.getGrade()) : null;
+	}
 
-		return new CompareToBuilder().append(grade1, grade2).toComparison();
+	private Double getGrade(final GbStudentGradeInfo g) {
+		if (this.grades.containsKey(g)) {
+			return this.grades.get(g);
+		}
 
+		// for proper number ordering, these have to be numerical
+		final GbGradeInfo info = g.getGrades().get(this.assignmentId);
+		final Double grade = (info != null) ? NumberUtils.toDouble(info.getGrade()) : null;
+		this.grades.put(g, grade);
+		return grade;
 	}
 
 }
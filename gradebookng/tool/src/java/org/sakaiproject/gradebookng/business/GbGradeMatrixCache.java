@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.gradebookng.business;
+
+import java.util.Observable;
+import java.util.Observer;
+
+import org.apache.commons.lang3.StringUtils;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.gradebookng.business.model.GbGradeMatrix;
+import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.memory.api.SimpleConfiguration;
+import org.sakaiproject.util.VersionedCacheKeys;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Caches the {@link GbGradeMatrix} of each gradebook so the grades page does not fetch every grade of every item each time it
+ * is shown, sorted or filtered.
+ *
+ * Keys include a version for the gradebook which is changed by gradebook events, so a change made elsewhere (another server,
+ * the gradebook service, an import) is seen on the next request. The versions are cached alongside the matrices, so every
+ * server that shares the matrices agrees on them. A grade saved through GradebookNgBusinessService patches the
+ * cached matrix instead, and the events it posts while doing so are ignored. The time to live bounds how long a change made
+ * without an event can go unseen.
+ */
+@Slf4j
+public class GbGradeMatrixCache implements Observer {
+
+	public static final String CACHE_NAME = "org.sakaiproject.gradebookng.business.GbGradeMatrixCache";
+
+	private static final String GRADEBOOK_ROOT = "/gradebook/";
+
+	private final Cache<String, GbGradeMatrix> cache;
+
+	private final EventTrackingService eventTrackingService;
+
+	/** gradebook uid -> version, changed by events for the gradebook or that do not say which gradebook they are for */
+	private final VersionedCacheKeys versions;
+
+	/** the gradebook whose matrix the current thread is patching */
+	private final ThreadLocal<String> patching = new ThreadLocal<>();
+
+	public GbGradeMatrixCache(final MemoryService memoryService, final EventTrackingService eventTrackingService,
+			final int timeToLiveSeconds, final int maxEntries) {
+		this.cache = memoryService.createCache(CACHE_NAME, new SimpleConfiguration<>(maxEntries, timeToLiveSeconds, 0));
+		// a gradebook whose version is dropped loses its matrix, so keep versions for more gradebooks than matrices
+		this.versions = new VersionedCacheKeys(memoryService, CACHE_NAME, 10L * maxEntries);
+		this.eventTrackingService = eventTrackingService;
+		eventTrackingService.addObserver(this, "gradebook.");
+	}
+
+	/**
+	 * Stop watching for events.
+	 */
+	public void destroy() {
+		this.eventTrackingService.deleteObserver(this);
+	}
+
+	/**
+	 * Make the key for a gradebook's matrix, taking the current version of the gradebook. The key is made before the matrix is
+	 * filled, so an event while it is being filled leaves it under an old version.
+	 *
+	 * @param gradebookUid the gradebook
+	 * @return the key
+	 */
+	public String key(final String gradebookUid) {
+		return this.versions.version(gradebookUid) + ":" + gradebookUid;
+	}
+
+	public GbGradeMatrix get(final String key) {
+		return this.cache.get(key);
+	}
+
+	public void put(final String key, final GbGradeMatrix gradeMatrix) {
+		this.cache.put(key, gradeMatrix);
+	}
+
+	/**
+	 * Stop using the cached matrix of a gradebook, for a change made without an event.
+	 */
+	public void invalidate(final String gradebookUid) {
+		this.versions.change(gradebookUid);
+	}
+
+	/**
+	 * Ignore the events the current thread posts for a gradebook until {@link #endPatch()}, as it will patch the matrix itself.
+	 */
+	public void beginPatch(final String gradebookUid) {
+		this.patching.set(gradebookUid);
+	}
+
+	public void endPatch() {
+		this.patching.remove();
+	}
+
+	@Override
+	public void update(final Observable observable, final Object arg) {
+		if (!(arg instanceof Event)) {
+			return;
+		}
+		final Event event = (Event) arg;
+		// an import saves its grades one by one, but say it is done anyway in case any were saved another way
+		if (!event.getModify() && !GbEvent.IMPORT_COMPLETED.getEvent().equals(event.getEvent())) {
+			return;
+		}
+
+		String gradebookUid = event.getContext();
+		final String resource = event.getResource();
+		if (StringUtils.isBlank(gradebookUid) && resource != null && resource.startsWith(GRADEBOOK_ROOT)) {
+			gradebookUid = StringUtils.substringBefore(resource.substring(GRADEBOOK_ROOT.length()), "/");
+		}
+		if (StringUtils.isBlank(gradebookUid)) {
+			this.versions.changeAll();
+			log.debug("All grade matrices changed by {}", event.getEvent());
+			return;
+		}
+		// local events are delivered on the thread that posted them
+		if (gradebookUid.equals(this.patching.get())) {
+			return;
+		}
+		invalidate(gradebookUid);
+		log.debug("Grade matrix for {} changed by {}", gradebookUid, event.getEvent());
+	}
+}
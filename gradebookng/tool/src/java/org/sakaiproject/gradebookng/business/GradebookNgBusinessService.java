@@ -35,6 +35,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import lombok.Getter;
@@ -42,6 +43,7 @@ import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import org.sakaiproject.authz.api.Member;
@@ -52,6 +54,7 @@ import org.sakaiproject.component.api.ServerConfigurationService;
 import org.sakaiproject.component.cover.ComponentManager;
 import org.sakaiproject.entity.api.ResourceProperties;
 import org.sakaiproject.entity.api.ResourcePropertiesEdit;
+import org.sakaiproject.event.api.EventTrackingService;
 import org.sakaiproject.section.api.coursemanagement.CourseSection;
 import org.sakaiproject.section.api.facade.Role;
 import org.sakaiproject.exception.IdUnusedException;
@@ -65,6 +68,7 @@ import org.sakaiproject.gradebookng.business.model.GbCourseGrade;
 import org.sakaiproject.gradebookng.business.model.GbGradeCell;
 import org.sakaiproject.gradebookng.business.model.GbGradeInfo;
 import org.sakaiproject.gradebookng.business.model.GbGradeLog;
+import org.sakaiproject.gradebookng.business.model.GbGradeMatrix;
 import org.sakaiproject.gradebookng.business.model.GbGroup;
 import org.sakaiproject.gradebookng.business.model.GbStudentGradeInfo;
 import org.sakaiproject.gradebookng.business.model.GbStudentNameSortOrder;
@@ -74,6 +78,7 @@ import org.sakaiproject.gradebookng.business.util.EventHelper;
 import org.sakaiproject.gradebookng.business.util.FormatHelper;
 import org.sakaiproject.gradebookng.business.util.GbStopWatch;
 import org.sakaiproject.gradebookng.tool.model.GradebookUiSettings;
+import org.sakaiproject.memory.api.MemoryService;
 import org.sakaiproject.rubrics.logic.RubricsConstants;
 import org.sakaiproject.rubrics.logic.RubricsService;
 import org.sakaiproject.section.api.SectionManager;
@@ -168,11 +173,34 @@ public class GradebookNgBusinessService {
 	@Setter
 	private FormattedText formattedText;
 
+	@Setter
+	private MemoryService memoryService;
+
+	@Setter
+	private EventTrackingService eventTrackingService;
+
+	private GbGradeMatrixCache gradeMatrixCache;
+
 	public static final String GB_PREF_KEY = "GBNG-";
 	public static final String ASSIGNMENT_ORDER_PROP = "gbng_assignment_order";
 	public static final String ICON_SAKAI = "icon-sakai--";
 	public static final String ALL = "all";
 
+	public void init() {
+		// gradebookng.matrix.cache.ttl=0 turns the grade matrix cache off
+		final int timeToLive = this.serverConfigService.getInt("gradebookng.matrix.cache.ttl", 300);
+		if (timeToLive > 0) {
+			this.gradeMatrixCache = new GbGradeMatrixCache(this.memoryService, this.eventTrackingService, timeToLive,
+					this.serverConfigService.getInt("gradebookng.matrix.cache.maxEntries", 100));
+		}
+	}
+
+	public void destroy() {
+		if (this.gradeMatrixCache != null) {
+			this.gradeMatrixCache.destroy();
+		}
+	}
+
 	/**
 	 * Get a list of all users in the current site that can have grades
 	 *
@@ -825,6 +853,8 @@ public class GradebookNgBusinessService {
 		}
 
 		// save
+		final GbRole role = getUserRoleOrNone();
+		final boolean patch = beginGradeMatrixPatch(gradebook, role);
 		try {
 			// note, you must pass in the comment or it will be nulled out by the GB service
 			// also, must pass in the raw grade as the service does conversions between percentage etc
@@ -839,25 +869,62 @@ public class GradebookNgBusinessService {
 			rval = GradeSaveResponse.ERROR;
 		}
 
-		EventHelper.postUpdateGradeEvent(gradebook, assignmentId, studentUuid, newGrade, rval, getUserRoleOrNone());
+		try {
+			EventHelper.postUpdateGradeEvent(gradebook, assignmentId, studentUuid, newGrade, rval, role);
+		} finally {
+			endGradeMatrixPatch(gradebook, assignmentId, studentUuid, patch);
+		}
 
 		return rval;
 	}
 
+	/**
+	 * Save the imported grades and comments of an assignment. All of the grades are validated first, then they are saved in
+	 * batches of gradebookng.importExport.batchSize, each in its own transaction, so a large course does not hold every grade
+	 * record of the assignment in one Hibernate session.
+	 *
+	 * @param gradebook the gradebook
+	 * @param assignment the assignment the grades are for
+	 * @param gradeDefList the grades and comments to save
+	 * @return OK, or ERROR if any grade is invalid (nothing is saved) or a batch could not be saved
+	 */
 	public GradeSaveResponse saveGradesAndCommentsForImport(final Gradebook gradebook, final Assignment assignment, final List<GradeDefinition> gradeDefList) {
 		if (gradebook == null) {
 			return GradeSaveResponse.ERROR;
 		}
 
+		final Map<String, String> studentIdToGradeMap = new HashMap<>();
+		gradeDefList.forEach(gradeDef -> studentIdToGradeMap.put(gradeDef.getStudentUid(), gradeDef.getGrade()));
+		if (!this.gradebookService.identifyStudentsWithInvalidGrades(gradebook.getUid(), studentIdToGradeMap).isEmpty()) {
+			log.error("Invalid grades in the import for {}, no grades were saved", assignment.getId());
+			return GradeSaveResponse.ERROR;
+		}
+
+		int saved = 0;
 		try {
-			gradebookService.saveGradesAndComments(gradebook.getUid(), assignment.getId(), gradeDefList);
+			for (final List<GradeDefinition> batch : ListUtils.partition(gradeDefList, getImportExportBatchSize())) {
+				gradebookService.saveGradesAndComments(gradebook.getUid(), assignment.getId(), batch);
+				saved += batch.size();
+				log.debug("Imported {} of {} grades for {}", saved, gradeDefList.size(), assignment.getId());
+			}
 			return GradeSaveResponse.OK;
 		} catch (InvalidGradeException | GradebookNotFoundException | AssessmentNotFoundException e) {
-			log.error("An error occurred saving the grade. {}: {}", e.getClass(), e.getMessage());
+			log.error("An error occurred saving the grade after {} of {} were saved. {}: {}", saved, gradeDefList.size(), e.getClass(), e.getMessage());
 			return GradeSaveResponse.ERROR;
+		} finally {
+			if (this.gradeMatrixCache != null) {
+				this.gradeMatrixCache.invalidate(gradebook.getUid());
+			}
 		}
 	}
 
+	/**
+	 * @return how many students are exported, or grades imported, at a time
+	 */
+	private int getImportExportBatchSize() {
+		return Math.max(1, this.serverConfigService.getInt("gradebookng.importExport.batchSize", 500));
+	}
+
 	/**
 	 *
 	 * @param assignmentId
@@ -878,6 +945,7 @@ public class GradebookNgBusinessService {
 		GradeSaveResponse rval = null;
 
 		// save
+		final boolean patch = beginGradeMatrixPatch(gradebook, getUserRoleOrNone());
 		try {
 			//must pass in the raw grade as the service does conversions between percentage etc
 			this.gradebookService.saveGradeAndExcuseForStudent(gradebook.getUid(), assignmentId, studentUuid,
@@ -890,9 +958,39 @@ public class GradebookNgBusinessService {
 		} catch (InvalidGradeException | GradebookNotFoundException | AssessmentNotFoundException e) {
 			log.error("An error occurred saving the excuse. " + e.getClass() + ": " + e.getMessage());
 			rval = GradeSaveResponse.ERROR;
+		} finally {
+			endGradeMatrixPatch(gradebook, assignmentId, studentUuid, patch);
 		}
 		return rval;
 	}
+
+	/**
+	 * An instructor's save patches the cached grade matrix instead of letting its events throw the matrix away. A TA's
+	 * save does not, as the grade they read back is filtered by their grader permissions.
+	 *
+	 * @return true if {@link #endGradeMatrixPatch} should patch the grade matrix
+	 */
+	private boolean beginGradeMatrixPatch(final Gradebook gradebook, final GbRole role) {
+		if (this.gradeMatrixCache == null || role != GbRole.INSTRUCTOR) {
+			return false;
+		}
+		this.gradeMatrixCache.beginPatch(gradebook.getUid());
+		return true;
+	}
+
+	private void endGradeMatrixPatch(final Gradebook gradebook, final Long assignmentId, final String studentUuid,
+			final boolean patch) {
+		if (!patch) {
+			return;
+		}
+		this.gradeMatrixCache.endPatch();
+		try {
+			patchGradeMatrix(gradebook.getUid(), assignmentId, studentUuid);
+		} catch (final RuntimeException e) {
+			log.warn("Could not refresh the grade of {} for {}, dropping the grade matrix", studentUuid, assignmentId, e);
+			this.gradeMatrixCache.invalidate(gradebook.getUid());
+		}
+	}
 	/**
 	 * Build the matrix of assignments, students and grades for all students
 	 *
@@ -1014,6 +1112,22 @@ public class GradebookNgBusinessService {
 	 * @return
 	 */
 	public List<GbStudentGradeInfo> buildGradeMatrixForImportExport(final List<Assignment> assignments, GbGroup groupFilter) throws GbException {
+		final List<GbStudentGradeInfo> items = new ArrayList<>();
+		streamGradeMatrixForImportExport(assignments, groupFilter, items::add);
+		return items;
+	}
+
+	/**
+	 * Pass the matrix of assignments and grades for the Export process to the consumer one student at a time, in the same order as
+	 * {@link #buildGradeMatrixForImportExport(List, GbGroup)}. The grades are fetched gradebookng.importExport.batchSize students
+	 * at a time, so only one batch is held in memory while it is written out.
+	 *
+	 * @param assignments list of assignments
+	 * @param groupFilter
+	 * @param consumer called with each student's grades
+	 */
+	public void streamGradeMatrixForImportExport(final List<Assignment> assignments, final GbGroup groupFilter,
+			final Consumer<GbStudentGradeInfo> consumer) throws GbException {
 		// ------------- Initialization -------------
 		final GbStopWatch stopwatch = new GbStopWatch();
 		stopwatch.start();
@@ -1021,7 +1135,7 @@ public class GradebookNgBusinessService {
 
 		final Gradebook gradebook = this.getGradebook();
 		if (gradebook == null) {
-			return Collections.EMPTY_LIST;
+			return;
 		}
 		stopwatch.timeWithContext("buildGradeMatrixForImportExport", "getGradebook", stopwatch.getTime());
 
@@ -1037,26 +1151,27 @@ public class GradebookNgBusinessService {
 		}
 
 		final GradebookUiSettings settings = new GradebookUiSettings();
+		final boolean courseGradeVisible = isCourseGradeVisible(currentUserUuid);
 
 		// ------------- Get Users -------------
 		final List<String> studentUUIDs = getGradeableUsers(groupFilter);
 		final List<GbUser> gbStudents = getGbUsers(studentUUIDs);
 		stopwatch.timeWithContext("buildGradeMatrixForImportExport", "getGbUsersForUiSettings", stopwatch.getTime());
 
-		// ------------- Course Grades -------------
-		final Map<String, GbStudentGradeInfo> matrix = new LinkedHashMap<>();
-		putCourseGradesInMatrix(matrix, gbStudents, studentUUIDs, gradebook, role, isCourseGradeVisible(currentUserUuid), settings);
-		stopwatch.timeWithContext("buildGradeMatrixForImportExport", "putCourseGradesInMatrix", stopwatch.getTime());
+		for (final List<GbUser> batch : ListUtils.partition(gbStudents, getImportExportBatchSize())) {
+			final List<String> batchUUIDs = batch.stream().map(GbUser::getUserUuid).collect(Collectors.toList());
 
-		// ------------- Assignments -------------
-		putAssignmentsInMatrixForExport(matrix, gbStudents, studentUUIDs, assignments, gradebook, currentUserUuid, role);
-		stopwatch.timeWithContext("buildGradeMatrixForImportExport", "putAssignmentsInMatrix", stopwatch.getTime());
+			// ------------- Course Grades -------------
+			final Map<String, GbStudentGradeInfo> matrix = new LinkedHashMap<>();
+			putCourseGradesInMatrix(matrix, batch, batchUUIDs, gradebook, role, courseGradeVisible, settings);
 
-		// ------------- Sorting -------------
-		List<GbStudentGradeInfo> items = sortGradeMatrix(matrix, settings);
-		stopwatch.timeWithContext("buildGradeMatrixForImportExport", "sortGradeMatrix", stopwatch.getTime());
+			// ------------- Assignments -------------
+			putAssignmentsInMatrixForExport(matrix, batch, batchUUIDs, assignments, gradebook, currentUserUuid, role);
 
-		return items;
+			// ------------- Sorting -------------
+			sortGradeMatrix(matrix, settings).forEach(consumer);
+			stopwatch.timeWithContext("buildGradeMatrixForImportExport", "batch of " + batch.size(), stopwatch.getTime());
+		}
 	}
 
 	private Map<String, List<String>> getUserSections(String siteId) {
@@ -1192,6 +1307,8 @@ public class GradebookNgBusinessService {
 		// building the category list
 		final Map<Long, Set<Long>> categoryAssignments = new TreeMap<>();
 
+		final GbGradeMatrix gradeMatrix = getGradeMatrix(gradebook, studentUuids, assignments, role, true);
+
 		// iterate over assignments and get the grades for each
 		// note, the returned list only includes entries where there is a grade
 		// for the user
@@ -1237,21 +1354,7 @@ public class GradebookNgBusinessService {
 			}
 
 			// get grades
-			final List<GradeDefinition> defs = this.gradebookService.getGradesForStudentsForItem(gradebook.getUid(), assignment.getId(), studentUuids);
-
-			// iterate the definitions returned and update the record for each
-			// student with the grades
-			for (final GradeDefinition def : defs) {
-				final GbStudentGradeInfo sg = matrix.get(def.getStudentUid());
-
-				if (sg == null) {
-					log.warn("No matrix entry seeded for: {}. This user may have been removed from the site", def.getStudentUid());
-				} else {
-					// this will overwrite the stub entry for the TA matrix if
-					// need be
-					sg.addGrade(assignment.getId(), new GbGradeInfo(def));
-				}
-			}
+			putGradesInMatrix(matrix, gradeMatrix, gradebook, assignment, studentUuids);
 		}
 
 		// build category columns
@@ -1399,6 +1502,92 @@ public class GradebookNgBusinessService {
 		}
 	}
 
+	/**
+	 * Get the cached grade matrix of the gradebook, filling in the grades of any students or assignments it does not have yet.
+	 * Only instructors use it, as what a TA sees depends on their grader permissions.
+	 *
+	 * @param fill false to only use a cached matrix that already has the students, as when they are one batch of an export
+	 * @return the grade matrix, or null if the grades should be fetched from the gradebook service
+	 */
+	private GbGradeMatrix getGradeMatrix(final Gradebook gradebook, final List<String> studentUuids,
+			final List<Assignment> assignments, final GbRole role, final boolean fill) {
+		if (this.gradeMatrixCache == null || role != GbRole.INSTRUCTOR) {
+			return null;
+		}
+
+		final String key = this.gradeMatrixCache.key(gradebook.getUid());
+		GbGradeMatrix gradeMatrix = this.gradeMatrixCache.get(key);
+		if (gradeMatrix == null || !gradeMatrix.hasStudents(studentUuids)) {
+			if (!fill) {
+				return null;
+			}
+			gradeMatrix = new GbGradeMatrix(studentUuids);
+		}
+
+		boolean changed = false;
+		for (final Assignment assignment : assignments) {
+			if (!gradeMatrix.hasItem(assignment.getId())) {
+				gradeMatrix.putItem(assignment.getId(), this.gradebookService.getGradesForStudentsForItem(gradebook.getUid(),
+						assignment.getId(), gradeMatrix.getStudentUuids()));
+				changed = true;
+			}
+		}
+		if (changed) {
+			this.gradeMatrixCache.put(key, gradeMatrix);
+		}
+		return gradeMatrix;
+	}
+
+	/**
+	 * Refetch the grade of a student in the cached grade matrix after it has been saved
+	 */
+	private void patchGradeMatrix(final String gradebookUid, final Long assignmentId, final String studentUuid) {
+		final String key = this.gradeMatrixCache.key(gradebookUid);
+		final GbGradeMatrix gradeMatrix = this.gradeMatrixCache.get(key);
+		if (gradeMatrix == null || !gradeMatrix.hasItem(assignmentId) || !gradeMatrix.hasStudent(studentUuid)) {
+			return;
+		}
+
+		// the service removes students without a grade from the list it is given
+		final List<GradeDefinition> defs = this.gradebookService.getGradesForStudentsForItem(gradebookUid, assignmentId,
+				new ArrayList<>(Collections.singletonList(studentUuid)));
+		gradeMatrix.putGrade(assignmentId, studentUuid, defs.isEmpty() ? null : defs.get(0));
+		this.gradeMatrixCache.put(key, gradeMatrix);
+	}
+
+	/**
+	 * Add the grades of an assignment to the matrix, from the grade matrix if there is one or else from the gradebook service
+	 */
+	private void putGradesInMatrix(final Map<String, GbStudentGradeInfo> matrix, final GbGradeMatrix gradeMatrix,
+			final Gradebook gradebook, final Assignment assignment, final List<String> studentUuids) {
+		if (gradeMatrix != null) {
+			// the grade matrix may hold students that were not asked for
+			gradeMatrix.forEachGrade(assignment.getId(), (studentUuid, gradeInfo) -> {
+				final GbStudentGradeInfo sg = matrix.get(studentUuid);
+				if (sg != null) {
+					sg.addGrade(assignment.getId(), gradeInfo);
+				}
+			});
+			return;
+		}
+
+		final List<GradeDefinition> defs = this.gradebookService.getGradesForStudentsForItem(gradebook.getUid(), assignment.getId(), studentUuids);
+
+		// iterate the definitions returned and update the record for each
+		// student with the grades
+		for (final GradeDefinition def : defs) {
+			final GbStudentGradeInfo sg = matrix.get(def.getStudentUid());
+
+			if (sg == null) {
+				log.warn("No matrix entry seeded for: {}. This user may have been removed from the site", def.getStudentUid());
+			} else {
+				// this will overwrite the stub entry for the TA matrix if
+				// need be
+				sg.addGrade(assignment.getId(), new GbGradeInfo(def));
+			}
+		}
+	}
+
 	/**
 	 * Builds up the matrix (a map<userUid, GbStudentGradeInfo>) for the specified students / assignments.a
 	 * @param matrix output parameter; a map of studentUuids to GbStudentGradeInfo objects which will contain grade data for the specified assignments
@@ -1421,6 +1610,8 @@ public class GradebookNgBusinessService {
 			}
 		});
 
+		final GbGradeMatrix gradeMatrix = getGradeMatrix(gradebook, studentUuids, assignments, role, false);
+
 		// iterate over assignments and get the grades for each
 		// note, the returned list only includes entries where there is a grade
 		// for the user
@@ -1428,21 +1619,7 @@ public class GradebookNgBusinessService {
 		for (final Assignment assignment : assignments) {
 
 			// get grades
-			final List<GradeDefinition> defs = this.gradebookService.getGradesForStudentsForItem(gradebook.getUid(), assignment.getId(), studentUuids);
-
-			// iterate the definitions returned and update the record for each
-			// student with the grades
-			for (final GradeDefinition def : defs) {
-				final GbStudentGradeInfo sg = matrix.get(def.getStudentUid());
-
-				if (sg == null) {
-					log.warn("No matrix entry seeded for: {}. This user may have been removed from the site", def.getStudentUid());
-				} else {
-					// this will overwrite the stub entry for the TA matrix if
-					// need be
-					sg.addGrade(assignment.getId(), new GbGradeInfo(def));
-				}
-			}
+			putGradesInMatrix(matrix, gradeMatrix, gradebook, assignment, studentUuids);
 		}
 
 		// for a TA, apply the permissions to each grade item to see if we can export it
@@ -78,6 +78,20 @@ public class GbGradeInfo implements Serializable, Comparable<GbGradeInfo> {
 		}
 	}
 
+	/**
+	 * Constructor for a grade held in a {@link GbGradeMatrix}
+	 *
+	 * @param grade the grade. May be null
+	 * @param gradeComment the comment. May be null
+	 * @param excused whether the grade is excused
+	 */
+	public GbGradeInfo(final String grade, final String gradeComment, final boolean excused) {
+		this.grade = grade;
+		this.gradeComment = gradeComment;
+		this.excused = excused;
+		this.gradeable = false;
+	}
+
 	@Override
 	public String toString() {
 		return ToStringBuilder.reflectionToString(this);
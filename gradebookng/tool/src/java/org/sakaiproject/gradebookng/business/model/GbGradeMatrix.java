@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.gradebookng.business.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+import org.sakaiproject.service.gradebook.shared.GradeDefinition;
+
+/**
+ * The grades of a gradebook held column by column. Each student has an ordinal and each gradebook item has a column of arrays
+ * indexed by that ordinal, rather than an object per grade. A column is replaced rather than changed when a grade is saved, so a
+ * column can be read without locking and is never seen part way through a change.
+ */
+public class GbGradeMatrix implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String[] studentUuids;
+
+	private final Map<String, Integer> studentOrdinals;
+
+	private final Map<Long, Column> columns = new ConcurrentHashMap<>();
+
+	/**
+	 * @param studentUuids the students of the matrix, grades of other students are ignored
+	 */
+	public GbGradeMatrix(final Collection<String> studentUuids) {
+		this.studentUuids = studentUuids.stream().distinct().toArray(String[]::new);
+		this.studentOrdinals = new HashMap<>(this.studentUuids.length * 2);
+		for (int i = 0; i < this.studentUuids.length; i++) {
+			this.studentOrdinals.put(this.studentUuids[i], i);
+		}
+	}
+
+	/**
+	 * @return a new list of the students of the matrix
+	 */
+	public List<String> getStudentUuids() {
+		return new ArrayList<>(Arrays.asList(this.studentUuids));
+	}
+
+	public boolean hasStudent(final String studentUuid) {
+		return this.studentOrdinals.containsKey(studentUuid);
+	}
+
+	/**
+	 * @return true if all of the students are in the matrix
+	 */
+	public boolean hasStudents(final Collection<String> studentUuids) {
+		return this.studentOrdinals.keySet().containsAll(studentUuids);
+	}
+
+	public boolean hasItem(final Long itemId) {
+		return this.columns.containsKey(itemId);
+	}
+
+	/**
+	 * Set the column of an item, replacing any column it already has
+	 *
+	 * @param itemId the gradebook item
+	 * @param grades the grades of the item, as returned by GradebookService.getGradesForStudentsForItem
+	 */
+	public void putItem(final Long itemId, final List<GradeDefinition> grades) {
+		final Column column = new Column(this.studentUuids.length);
+		for (final GradeDefinition def : grades) {
+			final Integer ordinal = this.studentOrdinals.get(def.getStudentUid());
+			if (ordinal != null) {
+				column.set(ordinal, def);
+			}
+		}
+		this.columns.put(itemId, column);
+	}
+
+	/**
+	 * Replace the grade of one student for an item. Nothing is changed if the student or the item is not in the matrix.
+	 *
+	 * @param itemId the gradebook item
+	 * @param studentUuid the student
+	 * @param grade the new grade, or null if the student now has no grade or comment for the item
+	 */
+	public void putGrade(final Long itemId, final String studentUuid, final GradeDefinition grade) {
+		final Integer ordinal = this.studentOrdinals.get(studentUuid);
+		if (ordinal == null) {
+			return;
+		}
+		this.columns.computeIfPresent(itemId, (id, column) -> {
+			final Column copy = column.copy();
+			copy.set(ordinal, grade);
+			return copy;
+		});
+	}
+
+	/**
+	 * @return the grade of a student for an item, or null if there is none
+	 */
+	public GbGradeInfo getGradeInfo(final Long itemId, final String studentUuid) {
+		final Column column = this.columns.get(itemId);
+		final Integer ordinal = this.studentOrdinals.get(studentUuid);
+		if (column == null || ordinal == null || !column.recorded.get(ordinal)) {
+			return null;
+		}
+		return column.getGradeInfo(ordinal);
+	}
+
+	/**
+	 * Pass each student that has a grade or comment for an item, and a new GbGradeInfo for it, to the consumer
+	 */
+	public void forEachGrade(final Long itemId, final BiConsumer<String, GbGradeInfo> consumer) {
+		final Column column = this.columns.get(itemId);
+		if (column == null) {
+			return;
+		}
+		for (int i = column.recorded.nextSetBit(0); i >= 0; i = column.recorded.nextSetBit(i + 1)) {
+			consumer.accept(this.studentUuids[i], column.getGradeInfo(i));
+		}
+	}
+
+	/**
+	 * The grades of one item, indexed by student ordinal. Only changed before it is put in the matrix.
+	 */
+	private static class Column implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String[] grades;
+
+		private final String[] comments;
+
+		private final BitSet recorded;
+
+		private final BitSet excused;
+
+		Column(final int size) {
+			this(new String[size], new String[size], new BitSet(size), new BitSet(size));
+		}
+
+		private Column(final String[] grades, final String[] comments, final BitSet recorded, final BitSet excused) {
+			this.grades = grades;
+			this.comments = comments;
+			this.recorded = recorded;
+			this.excused = excused;
+		}
+
+		Column copy() {
+			return new Column(this.grades.clone(), this.comments.clone(), (BitSet) this.recorded.clone(),
+					(BitSet) this.excused.clone());
+		}
+
+		void set(final int ordinal, final GradeDefinition def) {
+			this.grades[ordinal] = def == null ? null : def.getGrade();
+			this.comments[ordinal] = def == null ? null : def.getGradeComment();
+			this.recorded.set(ordinal, def != null);
+			this.excused.set(ordinal, def != null && def.isExcused());
+		}
+
+		GbGradeInfo getGradeInfo(final int ordinal) {
+			return new GbGradeInfo(this.grades[ordinal], this.comments[ordinal], this.excused.get(ordinal));
+		}
+	}
+}
@@ -43,7 +43,6 @@ import org.sakaiproject.gradebookng.business.GbCategoryType;
 import org.sakaiproject.gradebookng.business.model.GbCourseGrade;
 import org.sakaiproject.gradebookng.business.model.GbGradeInfo;
 import org.sakaiproject.gradebookng.business.model.GbGroup;
-import org.sakaiproject.gradebookng.business.model.GbStudentGradeInfo;
 import org.sakaiproject.gradebookng.business.util.EventHelper;
 import org.sakaiproject.gradebookng.business.util.FormatHelper;
 import org.sakaiproject.gradebookng.tool.model.GradebookUiSettings;
@@ -368,11 +367,8 @@ public class ExportPanel extends BasePanel {
 					settings.setGroupFilter(this.group);
 				}
 
-				// get the grade matrix
-				final List<GbStudentGradeInfo> grades = this.businessService.buildGradeMatrixForImportExport(assignments, group);
-
-				// add grades
-				grades.forEach(studentGradeInfo -> {
+				// add grades, written out as each batch of students is fetched rather than after the whole grade matrix is built
+				this.businessService.streamGradeMatrixForImportExport(assignments, group, studentGradeInfo -> {
 					final List<String> line = new ArrayList<>();
 					if (!isCustomExport || this.includeStudentId) {
 						line.add(studentGradeInfo.getStudentEid());
@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.gradebookng.business.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.service.gradebook.shared.GradeDefinition;
+
+public class TestGbGradeMatrix {
+
+	private static final Long ITEM = 1L;
+
+	private GbGradeMatrix gradeMatrix;
+
+	@Before
+	public void setUp() {
+		this.gradeMatrix = new GbGradeMatrix(Arrays.asList("s1", "s2", "s3"));
+		this.gradeMatrix.putItem(ITEM, Arrays.asList(grade("s1", "10", null, false), grade("s3", null, "late", true),
+				grade("other", "5", null, false)));
+	}
+
+	private GradeDefinition grade(final String studentUuid, final String grade, final String comment, final boolean excused) {
+		final GradeDefinition def = new GradeDefinition();
+		def.setStudentUid(studentUuid);
+		def.setGrade(grade);
+		def.setGradeComment(comment);
+		def.setExcused(excused);
+		return def;
+	}
+
+	@Test
+	public void testGetGradeInfo() {
+		final GbGradeInfo s1 = this.gradeMatrix.getGradeInfo(ITEM, "s1");
+		Assert.assertEquals("10", s1.getGrade());
+		Assert.assertNull(s1.getGradeComment());
+		Assert.assertFalse(s1.isExcused());
+
+		final GbGradeInfo s3 = this.gradeMatrix.getGradeInfo(ITEM, "s3");
+		Assert.assertNull(s3.getGrade());
+		Assert.assertEquals("late", s3.getGradeComment());
+		Assert.assertTrue(s3.isExcused());
+
+		Assert.assertNull(this.gradeMatrix.getGradeInfo(ITEM, "s2"));
+		Assert.assertNull(this.gradeMatrix.getGradeInfo(ITEM, "other"));
+		Assert.assertNull(this.gradeMatrix.getGradeInfo(2L, "s1"));
+	}
+
+	@Test
+	public void testForEachGrade() {
+		final Map<String, String> grades = new HashMap<>();
+		this.gradeMatrix.forEachGrade(ITEM, (studentUuid, info) -> grades.put(studentUuid, info.getGrade()));
+		Assert.assertEquals(2, grades.size());
+		Assert.assertEquals("10", grades.get("s1"));
+		Assert.assertTrue(grades.containsKey("s3"));
+	}
+
+	@Test
+	public void testPutGrade() {
+		final GbGradeInfo before = this.gradeMatrix.getGradeInfo(ITEM, "s1");
+
+		this.gradeMatrix.putGrade(ITEM, "s2", grade("s2", "7", null, false));
+		this.gradeMatrix.putGrade(ITEM, "s1", null);
+		this.gradeMatrix.putGrade(2L, "s1", grade("s1", "3", null, false));
+
+		Assert.assertEquals("7", this.gradeMatrix.getGradeInfo(ITEM, "s2").getGrade());
+		Assert.assertNull(this.gradeMatrix.getGradeInfo(ITEM, "s1"));
+		Assert.assertEquals("10", before.getGrade());
+		Assert.assertFalse(this.gradeMatrix.hasItem(2L));
+	}
+
+	@Test
+	public void testStudents() {
+		Assert.assertTrue(this.gradeMatrix.hasStudents(Arrays.asList("s1", "s3")));
+		Assert.assertFalse(this.gradeMatrix.hasStudents(Arrays.asList("s1", "other")));
+		Assert.assertTrue(this.gradeMatrix.hasStudents(Collections.emptyList()));
+
+		// the gradebook service removes students from the list it is given
+		final List<String> studentUuids = this.gradeMatrix.getStudentUuids();
+		studentUuids.clear();
+		Assert.assertEquals(new ArrayList<>(Arrays.asList("s1", "s2", "s3")), this.gradeMatrix.getStudentUuids());
+	}
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.component.app.scheduler.jobs;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+
+import org.sakaiproject.content.api.ContentHostingService;
+
+/**
+ * Discards the sizes content hosting keeps for collections (content.collectionSizes), so any that have drifted from the
+ * collections' members are counted again. Each collection is counted when its size is next needed, so run this when
+ * the server is quiet.
+ */
+@Slf4j
+public class ContentCollectionSizesJob implements Job {
+
+	private ContentHostingService chs;
+
+	public void setChs(ContentHostingService chs) {
+		this.chs = chs;
+	}
+
+	public void execute(JobExecutionContext jobExecutionContext) throws JobExecutionException {
+		log.info("Recounting the sizes of all collections.");
+		chs.recountCollectionSizes(null);
+	}
+}
@@ -22,7 +22,10 @@
 package org.sakaiproject.authz.api;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.user.api.User;
@@ -89,6 +92,57 @@ public interface SecurityService
 	 */
 	boolean unlock(String userId, String lock, String reference, Collection<String> authzGroupIds);
 
+	/**
+	 * Can the specified user id unlock the lock for each of these resources? This is the same as calling
+	 * {@link #unlock(String, String, String)} for each reference, but resources sharing the same set of authz groups
+	 * are checked together, so use it when checking the items of a list.
+	 * 
+	 * @param userId
+	 *        The user id.
+	 * @param lock
+	 *        The lock id string.
+	 * @param references
+	 *        The resource reference strings.
+	 * @return A Map of each reference to true if the user can unlock the lock for it, false otherwise, in the order of the references.
+	 */
+	default Map<String, Boolean> unlockAll(String userId, String lock, Collection<String> references)
+	{
+		Map<String, Boolean> rv = new LinkedHashMap<>();
+		if (references != null)
+		{
+			for (String reference : references)
+			{
+				rv.put(reference, unlock(userId, lock, reference));
+			}
+		}
+		return rv;
+	}
+
+	/**
+	 * Can the specified user id unlock each of these locks for each of these resources?
+	 * See {@link #unlockAll(String, String, Collection)}.
+	 * 
+	 * @param userId
+	 *        The user id.
+	 * @param locks
+	 *        The lock id strings.
+	 * @param references
+	 *        The resource reference strings.
+	 * @return A Map of each lock to a Map of each reference to true if the user can unlock that lock for it, false otherwise.
+	 */
+	default Map<String, Map<String, Boolean>> unlockAll(String userId, Collection<String> locks, Collection<String> references)
+	{
+		Map<String, Map<String, Boolean>> rv = new HashMap<>();
+		if (locks != null)
+		{
+			for (String lock : locks)
+			{
+				rv.put(lock, unlockAll(userId, lock, references));
+			}
+		}
+		return rv;
+	}
+
 	/**
 	 * Access the List of Users who can unlock the lock for use with this resource.
 	 * 
@@ -1988,6 +1988,14 @@ public interface ContentHostingService extends EntityProducer
     * @return the quota in kb
     */
     public long getQuota(org.sakaiproject.content.api.ContentCollection collection);
+
+    /**
+     * Discard the sizes kept for a collection and the collections within it, so they are counted again from their
+     * members when next needed. Sizes are only kept when content.collectionSizes is enabled, otherwise this does nothing.
+     *
+     * @param collectionId the collection id, or null for all collections.
+     */
+    public void recountCollectionSizes(String collectionId);
     
     /**
      * Access flag indicating whether ContentHostingHandlers are enabled in this content hosting service.
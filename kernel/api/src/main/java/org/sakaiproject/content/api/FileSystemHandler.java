@@ -15,6 +15,7 @@
  */
 package org.sakaiproject.content.api;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
@@ -67,4 +68,17 @@ public interface FileSystemHandler {
      * @return If the path was deleted.
      */
     public boolean delete(String id, String root, String filePath);
+
+    /**
+     * Get the local file the asset is kept in, so it can be handed to the container to send rather than being streamed
+     * through the JVM. Handlers that do not keep assets on local disk return null.
+     * 
+     * @param id The id of the resource. Will not be null or empty.
+     * @param root The root of the storage. Could be null or empty.
+     * @param filePath The path to the file. Will not be null or empty.
+     * @return The file, or null if the asset is not in a local file.
+     */
+    public default File getLocalFile(String id, String root, String filePath) {
+        return null;
+    }
 }
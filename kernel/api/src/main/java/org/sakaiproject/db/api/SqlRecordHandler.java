@@ -0,0 +1,37 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.db.api;
+
+/**
+ * <p>
+ * SqlRecordHandler is given each object read by SqlService.dbReadEach() as it is read, so that a large result does not
+ * have to be held in a List.
+ * </p>
+ *
+ * @param <T>
+ *        The type of objects read by the SqlReader.
+ */
+public interface SqlRecordHandler<T>
+{
+	/**
+	 * Handle one object read.
+	 *
+	 * @param record
+	 *        The object read, never null.
+	 * @return true to go on reading, false to stop and close the query.
+	 */
+	boolean handle(T record);
+}
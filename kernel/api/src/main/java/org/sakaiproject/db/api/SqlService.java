@@ -121,6 +121,50 @@ public interface SqlService
 	 */
 	<T> List<T> dbRead(Connection conn, String sql, Object[] fields, SqlReader<T> reader);
 
+	/**
+	 * Process a query, filling in with fields, and pass each object read to the handler as it is read instead of collecting them in a List. The
+	 * driver is asked to fetch fetchSize records at a time, so a large result is not held in memory (MySQL only honours this with
+	 * useCursorFetch=true on the connection url). Reading stops when the handler returns false or the reader throws
+	 * SqlReaderFinishedException. Records for which the reader returns null are skipped. If no reader is provided, the first field of each
+	 * record, as a String, is passed to the handler.
+	 * 
+	 * @param sql
+	 *        The sql statement.
+	 * @param fields
+	 *        The array of fields for parameters.
+	 * @param fetchSize
+	 *        The number of records to fetch at a time, or 0 for the configured default.
+	 * @param reader
+	 *        The reader object to read each record.
+	 * @param handler
+	 *        The handler given each object read.
+	 * @param <T>
+	 *        The type of objects being read by the SqlReader.
+	 * @return The number of objects passed to the handler.
+	 */
+	<T> int dbReadEach(String sql, Object[] fields, int fetchSize, SqlReader<T> reader, SqlRecordHandler<? super T> handler);
+
+	/**
+	 * Process a query as dbReadEach(String, Object[], int, SqlReader, SqlRecordHandler), using this connection.
+	 * 
+	 * @param conn
+	 *        The db connection object to use.
+	 * @param sql
+	 *        The sql statement.
+	 * @param fields
+	 *        The array of fields for parameters.
+	 * @param fetchSize
+	 *        The number of records to fetch at a time, or 0 for the configured default.
+	 * @param reader
+	 *        The reader object to read each record.
+	 * @param handler
+	 *        The handler given each object read.
+	 * @param <T>
+	 *        The type of objects being read by the SqlReader.
+	 * @return The number of objects passed to the handler.
+	 */
+	<T> int dbReadEach(Connection conn, String sql, Object[] fields, int fetchSize, SqlReader<T> reader, SqlRecordHandler<? super T> handler);
+
 	/**
 	 * Read a single field from the db, from multiple record - concatenating the binary values into value.
 	 * 
@@ -0,0 +1,31 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.entity.api.serialize;
+
+/**
+ * Serializable access to properties that can be given their serialized form and decode it as the properties are used,
+ * rather than being given every property decoded.
+ */
+public interface LazySerializablePropertiesAccess extends SerializablePropertiesAccess
+{
+	/**
+	 * Replace the properties with the ones in the source, decoding them when they are first used.
+	 * 
+	 * @param source
+	 *        the serialized properties
+	 */
+	void setSerializablePropertySource(SerializablePropertySource source);
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.entity.api.serialize;
+
+import java.util.Collection;
+
+/**
+ * Serialized properties that can be decoded one at a time, so an entity that only needs a few of its properties does
+ * not pay for decoding all of them.
+ */
+public interface SerializablePropertySource
+{
+	/**
+	 * @return the names of all the properties.
+	 */
+	Collection<String> getNames();
+
+	/**
+	 * Decode a single property.
+	 * 
+	 * @param name
+	 *        the property name
+	 * @return a String, a List of String, or null if there is no such property.
+	 */
+	Object getProperty(String name);
+}
@@ -22,6 +22,7 @@
 package org.sakaiproject.event.api;
 
 import java.util.Observer;
+import java.util.concurrent.Executor;
 
 import org.sakaiproject.event.api.LearningResourceStoreService.LRS_Statement;
 import org.sakaiproject.time.api.Time;
@@ -177,6 +178,63 @@ public interface EventTrackingService
 	 */
 	void addLocalObserver(Observer observer);
 
+	/**
+	 * Add an observer of some events. The observer will be notified whenever there are new events starting with one of the prefixes.
+	 * Implementations may deliver other events too, so the observer must still check the events it is given.
+	 * 
+	 * @param observer
+	 *        The class observing.
+	 * @param eventPrefixes
+	 *        The prefixes of the events wanted (eg "realm." or "content.new"), none for all events.
+	 */
+	default void addObserver(Observer observer, String... eventPrefixes)
+	{
+		addObserver(observer);
+	}
+
+	/**
+	 * Add an observer of some events, notified on the given executor rather than the thread posting the event.
+	 * Use this for observers that do slow work (indexing, notifications) so they don't hold up the request posting the event.
+	 * Implementations may deliver other events too, so the observer must still check the events it is given.
+	 * 
+	 * @param observer
+	 *        The class observing.
+	 * @param executor
+	 *        The executor used to notify the observer.
+	 * @param eventPrefixes
+	 *        The prefixes of the events wanted, none for all events.
+	 */
+	default void addObserver(Observer observer, Executor executor, String... eventPrefixes)
+	{
+		addObserver(observer, eventPrefixes);
+	}
+
+	/**
+	 * Add a priority observer of some events, see {@link #addPriorityObserver(Observer)} and {@link #addObserver(Observer, String...)}.
+	 * 
+	 * @param observer
+	 *        The class observing.
+	 * @param eventPrefixes
+	 *        The prefixes of the events wanted, none for all events.
+	 */
+	default void addPriorityObserver(Observer observer, String... eventPrefixes)
+	{
+		addPriorityObserver(observer);
+	}
+
+	/**
+	 * Add a local observer of some events, see {@link #addLocalObserver(Observer)} and {@link #addObserver(Observer, String...)}.
+	 * 
+	 * @param observer
+	 *        The class observing.
+	 * @param eventPrefixes
+	 *        The prefixes of the events wanted, none for all events.
+	 */
+	default void addLocalObserver(Observer observer, String... eventPrefixes)
+	{
+		addLocalObserver(observer);
+	}
+
 	/**
 	 * Delete an observer of events.
 	 * 
@@ -0,0 +1,37 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.javax;
+
+/**
+ * <p>
+ * IndexedFilter is a Filter that can also describe what it accepts as restrictions on indexed fields of the objects,
+ * for example the owner or the date of a message. Storage that keeps those fields in columns can then count, select and
+ * page in the database instead of reading every object and presenting it to accept().
+ * </p>
+ * <p>
+ * Storage that does not index all of the restricted properties falls back to calling accept(), so the restrictions and
+ * accept() must agree.
+ * </p>
+ */
+public interface IndexedFilter extends Filter
+{
+	/**
+	 * Returns the restrictions that together (all must hold) select exactly the objects accept() accepts.
+	 *
+	 * @return the restrictions, or null if this filter cannot be expressed as restrictions and has to be applied to the objects.
+	 */
+	Restriction[] getIndexRestrictions();
+}
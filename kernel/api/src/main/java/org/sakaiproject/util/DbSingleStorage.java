@@ -24,6 +24,7 @@ package org.sakaiproject.util;
 import java.util.List;
 import java.util.Map;
 
+import org.sakaiproject.db.api.SqlRecordHandler;
 import org.sakaiproject.entity.api.Edit;
 import org.sakaiproject.entity.api.Entity;
 import org.sakaiproject.javax.Filter;
@@ -95,6 +96,23 @@ public interface DbSingleStorage
 
 	List getAllResourcesWhereLike(String field, String value);
 
+	/**
+	 * Pass each Resource whose field is like the value to the handler as it is read, without collecting them in a list.
+	 * Resources are read in id order, starting after the given id, so a caller can read a page, stop, and carry on from
+	 * the last id later without holding the connection in between.
+	 * 
+	 * @param field
+	 *        The db field name for the selection.
+	 * @param value
+	 *        The value to match, with sql wildcards.
+	 * @param afterId
+	 *        Only read Resources with an id after this one, or null to start from the first.
+	 * @param handler
+	 *        Given each Resource, returns false to stop reading.
+	 * @return The number of Resources passed to the handler.
+	 */
+	int forEachResourceWhereLike(String field, String value, String afterId, SqlRecordHandler<Entity> handler);
+
 	/**
 	 * Get selected Resources, filtered by a test on the id field
 	 * 
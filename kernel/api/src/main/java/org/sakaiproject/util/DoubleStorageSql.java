@@ -77,5 +77,12 @@ public interface DoubleStorageSql
         public String getOrderClause(Order [] orders,  String orderField, boolean asc);
 
 	public String getCountSqlWhere(String table, String idField, String whereClause);
+
+	/**
+	 * @param column the indexed column
+	 * @param comparison one of the Restriction comparisons
+	 * @return the condition on the column, with a ? for the value if the comparison needs one, or null if the comparison is not supported.
+	 */
+	public String getIndexRestrictionClause(String column, int comparison);
         
 }
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.authz.impl;
+
+import java.io.Serializable;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * CompiledRealm is the part of a realm that permission checks need, in a form that can be answered without the database:
+ * for each role the set of functions it allows, as a bitset indexed by the SAKAI_REALM_FUNCTION key, and for each user
+ * with an active grant the role they have.
+ * </p>
+ * <p>
+ * Function keys are the database keys rather than an in memory index so a compiled realm means the same thing on every
+ * server and can be kept in a clustered cache. Instances are immutable once built.
+ * </p>
+ */
+public class CompiledRealm implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	/** Used for realms that do not exist, they allow nothing to anybody. */
+	public static final CompiledRealm EMPTY = new CompiledRealm(Collections.emptyMap(), Collections.emptyMap());
+
+	/** role name -> the keys of the functions the role allows in this realm */
+	private final Map<String, BitSet> roleFunctions;
+
+	/** user id -> role name, only for active grants */
+	private final Map<String, String> activeUserRoles;
+
+	CompiledRealm(Map<String, BitSet> roleFunctions, Map<String, String> activeUserRoles)
+	{
+		this.roleFunctions = roleFunctions;
+		this.activeUserRoles = activeUserRoles;
+	}
+
+	/**
+	 * @param userId the user id
+	 * @return the role the user has an active grant for in this realm, or null if none.
+	 */
+	public String getActiveRole(String userId)
+	{
+		return userId == null ? null : activeUserRoles.get(userId);
+	}
+
+	/**
+	 * @param role the role name
+	 * @param functionKey the SAKAI_REALM_FUNCTION key of the function
+	 * @return true if the role is allowed the function in this realm.
+	 */
+	public boolean isAllowed(String role, int functionKey)
+	{
+		BitSet functions = roleFunctions.get(role);
+		return functions != null && functions.get(functionKey);
+	}
+
+	/**
+	 * @param roles the role names
+	 * @param functionKey the SAKAI_REALM_FUNCTION key of the function
+	 * @return true if any of the roles is allowed the function in this realm.
+	 */
+	public boolean isAllowed(Collection<String> roles, int functionKey)
+	{
+		for (String role : roles)
+		{
+			if (isAllowed(role, functionKey)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the number of active grants compiled into this realm.
+	 */
+	public int getActiveGrantCount()
+	{
+		return activeUserRoles.size();
+	}
+
+	/**
+	 * Collects the rows read from the database into a CompiledRealm.
+	 */
+	public static class Builder
+	{
+		private final Map<String, BitSet> roleFunctions = new HashMap<>();
+		private final Map<String, String> activeUserRoles = new HashMap<>();
+
+		public Builder allow(String role, int functionKey)
+		{
+			roleFunctions.computeIfAbsent(role, r -> new BitSet()).set(functionKey);
+			return this;
+		}
+
+		public Builder grant(String userId, String role, boolean active)
+		{
+			if (active && userId != null && role != null)
+			{
+				activeUserRoles.put(userId, role);
+			}
+			return this;
+		}
+
+		public CompiledRealm build()
+		{
+			return new CompiledRealm(Collections.unmodifiableMap(roleFunctions), Collections.unmodifiableMap(activeUserRoles));
+		}
+	}
+}
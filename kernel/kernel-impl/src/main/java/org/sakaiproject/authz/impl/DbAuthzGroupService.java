@@ -25,9 +25,15 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -74,6 +80,8 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 	protected final static int MAX_IN_CLAUSE = 999;
 	/** All the event functions we know exist on the db. */
 	protected Collection<String> m_functionCache = new HashSet<>();
+	/** function name -> SAKAI_REALM_FUNCTION key, for the compiled realm permission checks. */
+	protected Map<String, Integer> m_functionKeyCache = new ConcurrentHashMap<>();
 	/** All the event role names we know exist on the db. */
 	protected Collection m_roleNameCache = new HashSet();
 	/** Table name for realms. */
@@ -120,9 +128,16 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 
     private Cache maintainRolesCache;
 
+	/** Compiled role/function bitsets and active grants per realm, used by isAllowed instead of the count query. */
+	private Cache<String, CompiledRealm> m_compiledRealmCache;
+	public static final String COMPILED_REALMS_PROPKEY = "authz.compiledRealms";
+	/** Configuration: answer permission checks from compiled realms rather than the database. */
+	protected boolean m_useCompiledRealms = true;
+
 	/** KNL-1325 provide a more efficent refreshAuthzGroup */
     public static final String REFRESH_MAX_TIME_PROPKEY = "authzgroup.refresh.max.time";
     public static final String REFRESH_INTERVAL_PROPKEY = "authzgroup.refresh.interval";
+    public static final String REFRESH_THREADS_PROPKEY = "authzgroup.refresh.threads";
 
     /**
      * Number of seconds before running refreshAuthzGroupTask again to clear queue,
@@ -136,9 +151,21 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 	 */
 	private long refreshMaxTime = 15;
 
+	/**
+	 * Number of realms in the queue refreshed at once,
+	 * defaults to 1 (one after another on the scheduler thread)
+	 */
+	private long refreshThreads = 1;
+
 	/** Executor used to schedule processing */
 	private ScheduledExecutorService refreshScheduler;
 
+	/** Workers that refresh realms from the queue at once, when more than one is configured */
+	private ExecutorService refreshWorkers;
+
+	/** Queue depth, realms refreshed and the size of their changes */
+	private RealmRefreshStats refreshStats;
+
 	/** Queue of authzgroups to refresh used by refreshAuthzGroupTask */
 	private Map<String, AuthzGroup> refreshQueue;
 
@@ -224,6 +251,11 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 		this.refreshMaxTime = refreshMaxTime;
 	}
 
+	public void setRefreshThreads(long refreshThreads) {
+		log.info(REFRESH_THREADS_PROPKEY + " changed from " + this.refreshThreads + " to " + refreshThreads);
+		this.refreshThreads = refreshThreads;
+	}
+
 	/**
 	 * Final initialization, once all dependencies are set.
 	 */
@@ -232,7 +264,7 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 		try
 		{
 			// The observer will be notified whenever there are new events. Priority observers get notified first, before normal observers.
-			eventTrackingService().addPriorityObserver(this);
+			eventTrackingService().addPriorityObserver(this, "realm.");
 
 			// if we are auto-creating our schema, check and create
 			if (m_autoDdl)
@@ -252,13 +284,31 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 			authzUserGroupIdsCache = m_memoryService.getCache("org.sakaiproject.authz.impl.DbAuthzGroupService.authzUserGroupIdsCache");
 
             maintainRolesCache = m_memoryService.getCache("org.sakaiproject.authz.impl.DbAuthzGroupService.maintainRolesCache");
+
+			m_useCompiledRealms = serverConfigurationService().getBoolean(COMPILED_REALMS_PROPKEY, m_useCompiledRealms);
+			if (m_useCompiledRealms) {
+				m_compiledRealmCache = m_memoryService.getCache("org.sakaiproject.authz.impl.DbAuthzGroupService.compiledRealmCache");
+			}
+			log.info("init(): compiled realm permission checks: " + m_useCompiledRealms);
             //get the set of maintain roles and cache them on startup
             getMaintainRoles();
 
             refreshTaskInterval = initConfig(REFRESH_INTERVAL_PROPKEY, serverConfigurationService().getString(REFRESH_INTERVAL_PROPKEY), refreshTaskInterval);
             refreshMaxTime = initConfig(REFRESH_MAX_TIME_PROPKEY, serverConfigurationService().getString(REFRESH_MAX_TIME_PROPKEY), refreshMaxTime);
+            refreshThreads = initConfig(REFRESH_THREADS_PROPKEY, serverConfigurationService().getString(REFRESH_THREADS_PROPKEY), refreshThreads);
 
             refreshQueue = Collections.synchronizedMap(new LinkedHashMap<>());
+            refreshStats = new RealmRefreshStats(() -> refreshQueue.size());
+            refreshStats.register();
+
+            if (refreshThreads > 1) {
+                final AtomicInteger count = new AtomicInteger();
+                refreshWorkers = Executors.newFixedThreadPool((int) refreshThreads, r -> {
+                    Thread thread = new Thread(r, "Sakai.AuthzGroup.refresh-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
 
             refreshScheduler = Executors.newSingleThreadScheduledExecutor();
             refreshScheduler.scheduleWithFixedDelay(
@@ -297,6 +347,12 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 	public void destroy()
 	{
 		refreshScheduler.shutdown();
+		if (refreshWorkers != null) {
+			refreshWorkers.shutdownNow();
+		}
+		if (refreshStats != null) {
+			refreshStats.unregister();
+		}
 
 		authzUserGroupIdsCache.close();
 
@@ -504,6 +560,65 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 				}
 			});
 		}
+
+		cacheFunctionKeys();
+	}
+
+	/**
+	 * Read all the function keys, caching them for the compiled realm checks
+	 */
+	protected void cacheFunctionKeys()
+	{
+		String statement = dbAuthzGroupSql.getSelectRealmFunctionKeySql();
+		sqlService().dbRead(statement, null, new SqlReader()
+		{
+			public Object readSqlResultRecord(ResultSet result)
+			{
+				try
+				{
+					m_functionKeyCache.put(result.getString(1), result.getInt(2));
+				}
+				catch (SQLException ignore)
+				{
+				}
+
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Find the key of a function, reading it from the db if it was defined after we started (possibly on another server).
+	 *
+	 * @param name
+	 *        the function name.
+	 * @return the SAKAI_REALM_FUNCTION key, or null if there is no such function.
+	 */
+	protected Integer getFunctionKey(String name)
+	{
+		Integer key = m_functionKeyCache.get(name);
+		if (key != null) return key;
+
+		List<Integer> results = sqlService().dbRead(dbAuthzGroupSql.getSelectRealmFunctionKeyByNameSql(), new Object[] {name}, new SqlReader<Integer>()
+		{
+			public Integer readSqlResultRecord(ResultSet result)
+			{
+				try
+				{
+					return result.getInt(1);
+				}
+				catch (SQLException ignore)
+				{
+					return null;
+				}
+			}
+		});
+
+		// an unknown function is not cached, it may be defined later
+		if (results.isEmpty() || results.get(0) == null) return null;
+		key = results.get(0);
+		m_functionKeyCache.put(name, key);
+		return key;
 	}
 
 	/**
@@ -622,6 +737,9 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 					log.debug("DbAuthzGroupService update(): clear realm role cache for " + realmId);
 				}
 				m_realmRoleGRCache.remove(realmId);
+				if (m_compiledRealmCache != null) {
+					m_compiledRealmCache.remove(realmId);
+				}
 			} else {
 				// This should never happen as the events we generate should always have
 				// a /realm/ prefix on the resource.
@@ -671,53 +789,104 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 
 	/**
 	 * Step through queue and call refreshAuthzGroup on all groups queued up for
-	 * a refresh
+	 * a refresh, refreshThreads at a time. Realms that share a provider group id
+	 * share one provider lookup for the pass.
 	 */
 	protected class RefreshAuthzGroupTask implements Runnable {
 		@Override
 		public void run() {
 			if (log.isDebugEnabled()) log.debug("RefreshAuthzGroupTask.run() refreshing " + refreshQueue.size() + " realms");
 			if (refreshQueue.size() > 0) {
-				long numberRefreshed = 0;
-				long timeRefreshed = 0;
-				long longestRefreshed = 0;
-				String longestName = null;
-				
-				List<AuthzGroup> queueList = new ArrayList<AuthzGroup>(refreshQueue.values());
-
-				Iterator<AuthzGroup> it = queueList.iterator();
-				while (it.hasNext()) {
-					AuthzGroup azGroup = it.next();
-					String azGroupId = azGroup.getId();
-					if (log.isDebugEnabled()) log.debug("RefreshAuthzGroupTask.run() start refresh of azgroup: " + azGroupId);
+				List<AuthzGroup> queueList;
+				synchronized (refreshQueue) {
+					queueList = new ArrayList<AuthzGroup>(refreshQueue.values());
+				}
+				RefreshPass pass = new RefreshPass(queueList);
+				long start = System.currentTimeMillis();
 
-					numberRefreshed++;
-					long time = 0;
-					long start = System.currentTimeMillis();
-					try {
-						((DbStorage) m_storage).refreshAuthzGroupInternal((BaseAuthzGroup) azGroup);
-					} catch (Throwable e) {
-						log.error("RefreshAuthzGroupTask.run() Problem refreshing azgroup: " + azGroupId, e);
-					} finally {
-						time = (System.currentTimeMillis() - start);
-						refreshQueue.remove(azGroupId);
-						if (log.isDebugEnabled()) log.debug("RefreshAuthzGroupTask.run() refresh of azgroup: " + azGroupId + " took " + time/1e3 + " seconds");
-					}
-					timeRefreshed += time;
-					if (time > longestRefreshed) {
-						longestRefreshed = time;
-						longestName = azGroupId;
+				if (refreshWorkers == null) {
+					pass.drain();
+				} else {
+					List<Callable<Void>> workers = new ArrayList<>();
+					for (int i = 0; i < refreshThreads; i++) {
+						workers.add(() -> {
+							pass.drain();
+							return null;
+						});
 					}
-					
-					if (it.hasNext() && (time > (refreshMaxTime * 1000L))) {
-						log.warn("RefreshAuthzGroupTask.run() " + azGroupId + " took " + time/1e3 + 
-								" seconds which is longer than the maximum allowed of " + refreshMaxTime + 
-								" seconds, delay processing the rest of the queue");
-						break;
+					try {
+						refreshWorkers.invokeAll(workers);
+					} catch (InterruptedException e) {
+						log.warn("RefreshAuthzGroupTask.run() interrupted with " + pass.pending.size() + " realms still to refresh");
+						Thread.currentThread().interrupt();
 					}
 				}
-				log.info("RefreshAuthzGroupTask.run() refreshed " + numberRefreshed + " realms in " + timeRefreshed/1e3 + 
-						" seconds, longest realm was " + longestName + " at " + longestRefreshed/1e3 + " seconds");
+
+				long elapsed = System.currentTimeMillis() - start;
+				refreshStats.pass(pass.numberRefreshed, elapsed);
+				log.info("RefreshAuthzGroupTask.run() refreshed " + pass.numberRefreshed + " realms in " + elapsed/1e3 +
+						" seconds (" + pass.timeRefreshed/1e3 + " seconds of refreshing), longest realm was " + pass.longestName +
+						" at " + pass.longestRefreshed/1e3 + " seconds");
+			}
+		}
+	}
+
+	/**
+	 * One pass over the realms queued for refresh, shared by the workers refreshing them.
+	 */
+	protected class RefreshPass {
+		final Queue<AuthzGroup> pending;
+
+		/** provider group id -> userEid -> role, looked up once for the pass */
+		final Map<String, Map<String, String>> providerRoles = new ConcurrentHashMap<>();
+
+		/** set when a realm takes longer than refreshMaxTime, leaving the rest of the queue for the next pass */
+		final AtomicBoolean delay = new AtomicBoolean();
+
+		long numberRefreshed = 0;
+		long timeRefreshed = 0;
+		long longestRefreshed = 0;
+		String longestName = null;
+
+		RefreshPass(List<AuthzGroup> queueList) {
+			pending = new ConcurrentLinkedQueue<>(queueList);
+		}
+
+		void drain() {
+			AuthzGroup azGroup;
+			while (!delay.get() && (azGroup = pending.poll()) != null) {
+				String azGroupId = azGroup.getId();
+				if (log.isDebugEnabled()) log.debug("RefreshAuthzGroupTask.run() start refresh of azgroup: " + azGroupId);
+
+				long time = 0;
+				long start = System.currentTimeMillis();
+				try {
+					((DbStorage) m_storage).refreshAuthzGroupInternal((BaseAuthzGroup) azGroup, providerRoles);
+				} catch (Throwable e) {
+					refreshStats.failed();
+					log.error("RefreshAuthzGroupTask.run() Problem refreshing azgroup: " + azGroupId, e);
+				} finally {
+					time = (System.currentTimeMillis() - start);
+					// leave it queued if it was queued again while it was being refreshed
+					refreshQueue.remove(azGroupId, azGroup);
+					if (log.isDebugEnabled()) log.debug("RefreshAuthzGroupTask.run() refresh of azgroup: " + azGroupId + " took " + time/1e3 + " seconds");
+				}
+				refreshed(azGroupId, time);
+
+				if (time > (refreshMaxTime * 1000L) && !pending.isEmpty() && delay.compareAndSet(false, true)) {
+					log.warn("RefreshAuthzGroupTask.run() " + azGroupId + " took " + time/1e3 +
+							" seconds which is longer than the maximum allowed of " + refreshMaxTime +
+							" seconds, delay processing the rest of the queue");
+				}
+			}
+		}
+
+		synchronized void refreshed(String azGroupId, long time) {
+			numberRefreshed++;
+			timeRefreshed += time;
+			if (time > longestRefreshed) {
+				longestRefreshed = time;
+				longestName = azGroupId;
 			}
 		}
 	}
@@ -2208,6 +2377,10 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 
 			// Regular lookup (not roleswap)
 
+			if (m_compiledRealmCache != null) {
+				return isAllowedCompiled(userId, lock, realms, roles);
+			}
+
 			results = m_sql.dbRead(statement, fields, new SqlReader()
 			{
 				public Object readSqlResultRecord(ResultSet result)
@@ -2235,6 +2408,87 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 			return rv;
 		}
 
+		/**
+		 * Answer a regular (not roleswap) permission check from the compiled realms, the same way the count query does:
+		 * the user's roles are the ones they are active in across all of the realms plus the anon / auth / provider roles,
+		 * and the check passes if any of those roles is allowed the function in any of the realms.
+		 *
+		 * @param userId the user id
+		 * @param lock the function
+		 * @param realms the realm ids
+		 * @param roles the anon / auth / provider roles of the user, the active roles are added to it
+		 * @return true if the user is allowed the function in the realms.
+		 */
+		protected boolean isAllowedCompiled(String userId, String lock, Collection<String> realms, Set<String> roles)
+		{
+			Integer functionKey = getFunctionKey(lock);
+			if (functionKey == null) return false;
+
+			List<CompiledRealm> compiled = new ArrayList<>(realms.size());
+			for (String realmId : realms)
+			{
+				CompiledRealm realm = getCompiledRealm(realmId);
+				compiled.add(realm);
+				String role = realm.getActiveRole(userId);
+				if (role != null) roles.add(role);
+			}
+
+			for (CompiledRealm realm : compiled)
+			{
+				if (realm.isAllowed(roles, functionKey)) return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Get the compiled form of a realm, reading it from the db if it is not cached.
+		 *
+		 * @param realmId the realm id
+		 * @return the compiled realm, with no roles and no grants if the realm does not exist.
+		 */
+		protected CompiledRealm getCompiledRealm(String realmId)
+		{
+			CompiledRealm realm = m_compiledRealmCache.get(realmId);
+			if (realm != null) return realm;
+
+			final CompiledRealm.Builder builder = new CompiledRealm.Builder();
+			Object[] fields = new Object[] {realmId};
+
+			m_sql.dbRead(dbAuthzGroupSql.getSelectRealmRoleFunctionKeySql(), fields, new SqlReader()
+			{
+				public Object readSqlResultRecord(ResultSet result)
+				{
+					try
+					{
+						builder.allow(result.getString(1), result.getInt(2));
+					}
+					catch (SQLException ignore)
+					{
+					}
+					return null;
+				}
+			});
+
+			m_sql.dbRead(dbAuthzGroupSql.getSelectRealmRoleGroup1Sql(), fields, new SqlReader()
+			{
+				public Object readSqlResultRecord(ResultSet result)
+				{
+					try
+					{
+						builder.grant(result.getString(2), result.getString(1), "1".equals(result.getString(3)));
+					}
+					catch (SQLException ignore)
+					{
+					}
+					return null;
+				}
+			});
+
+			realm = builder.build();
+			m_compiledRealmCache.put(realmId, realm);
+			return realm;
+		}
+
 		/**
 		 * Delegated access essentially behaves like roleswap except instead of just specifying which role, you can also specify
 		 * the realm as well.  The access map is populated by an Event Listener that listens for dac.checkaccess and is stored in the session
@@ -2641,6 +2895,23 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 
 					m_sql.dbWrite(sql, fields);
 				}
+
+				// the compiled realms hold the grants just changed, so drop them. The cache drops them on the other servers
+				// too, a realm.upd event would also flush the site and security caches everywhere on every login.
+				if (m_compiledRealmCache != null)
+				{
+					Set<Integer> changed = new HashSet<Integer>(toDelete);
+					for (RealmAndRole rar : toInsert)
+					{
+						changed.add(rar.realmId);
+					}
+					sql = dbAuthzGroupSql.getSelectRealmIdsSql(orInClause(changed.size(), "REALM_KEY"));
+					List<String> realmIds = m_sql.dbRead(sql, changed.toArray(), null);
+					for (String realmId : realmIds)
+					{
+						m_compiledRealmCache.remove(realmId);
+					}
+				}
 			}
 		}
 
@@ -2677,6 +2948,18 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 		 * @param realm the realm to be refreshed
 		 */
 		protected void refreshAuthzGroupInternal(BaseAuthzGroup realm)
+		{
+			refreshAuthzGroupInternal(realm, null);
+		}
+
+		/**
+		 * Update the realm with info from the provider
+		 * 
+		 * @param realm the realm to be refreshed
+		 * @param providerRoles provider group id -> userEid -> role already looked up for other realms, added to as groups
+		 *        are looked up, or null to always ask the provider
+		 */
+		protected void refreshAuthzGroupInternal(BaseAuthzGroup realm, Map<String, Map<String, String>> providerRoles)
 		{
 			if ((realm == null) || (m_provider == null)) return;
 			log.debug("Refreshing authz group: {}", realm);
@@ -2711,7 +2994,14 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 			// Note: the realm is still lazy - we have the realm id but don't need to worry about changing grants
 
 			// get the latest userEid -> role name map from the provider
-			Map<String,String> target = m_provider.getUserRolesForGroup(realm.getProviderGroupId());
+			Map<String,String> target = getProviderRoles(realm.getProviderGroupId(), providerRoles);
+
+			// resolve the provided users together, so the getUserId() calls below are answered from the user caches
+			// rather than asking the provider about each user in turn
+			if (target.size() > 1)
+			{
+				userDirectoryService().getUsersByEids(target.keySet());
+			}
 
 			// read the realm's grants
 			List<UserAndRole> grants = getGrants(realm);
@@ -2911,40 +3201,131 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 			// if any, do it
 			if ((toDelete.size() > 0) || (toInsert.size() > 0))
 			{
-				// do these each in their own transaction, to avoid possible deadlock
-				// caused by transactions modifying more than one row at a time.
-
 				// delete
 				sql = dbAuthzGroupSql.getDeleteRealmRoleGroup4Sql();
-				Object[] fields = new Object[2];
-				fields[0] = caseId(realm.getId());
+				List<Object[]> fieldsList = new ArrayList<Object[]>(toDelete.size());
 				for (String userId : toDelete)
 				{
+					Object[] fields = new Object[2];
+					fields[0] = caseId(realm.getId());
 					fields[1] = userId;
-					m_sql.dbWrite(sql, fields);
+					fieldsList.add(fields);
 				}
+				writeGrants(sql, fieldsList);
 
 				// insert
 				sql = dbAuthzGroupSql.getInsertRealmRoleGroup3Sql();
-				fields = new Object[5];
-				fields[0] = caseId(realm.getId());
-				fields[0] = getValueForSubquery(dbAuthzGroupSql.getInsertRealmRoleGroup3_1Sql(), fields[0]);
+				Object realmId = getValueForSubquery(dbAuthzGroupSql.getInsertRealmRoleGroup3_1Sql(), caseId(realm.getId()));
+				fieldsList = new ArrayList<Object[]>(toInsert.size());
 				for (UserAndRole uar : toInsert)
 				{
+					Object[] fields = new Object[5];
+					fields[0] = realmId;
 					fields[1] = uar.userId;
 					fields[2] = getValueForSubquery(dbAuthzGroupSql.getInsertRealmRoleGroup3_2Sql(), uar.role);
 					fields[3] = uar.active ? "1" : "0"; // KNL-1099
 					fields[4] = uar.provided ? "1" : "0"; // KNL-1099
-
-					m_sql.dbWrite(sql, fields);
+					fieldsList.add(fields);
 				}
+				writeGrants(sql, fieldsList);
+
 				eventTrackingService().post(eventTrackingService().newEvent(SECURE_UPDATE_AUTHZ_GROUP, realm.getReference(), true));
 			}
+			if (refreshStats != null)
+			{
+				refreshStats.realm(realm.getId(), toDelete.size(), toInsert.size());
+			}
 			if (log.isDebugEnabled()) {
 				log.debug("refreshAuthzGroupInternal() deleted: "+ toDelete.size()+ " inserted: "+ toInsert.size()+ " provided: "+ existing.size()+ " nonProvider: "+ nonProvider.size());
 			}
 		}
 
+		/**
+		 * Get the userEid -> role map for a provider group, sharing lookups between the realms refreshed in one pass.
+		 */
+		private Map<String, String> getProviderRoles(String providerGroupId, Map<String, Map<String, String>> providerRoles)
+		{
+			if (providerRoles == null || providerGroupId == null)
+			{
+				return m_provider.getUserRolesForGroup(providerGroupId);
+			}
+			Map<String, String> target = providerRoles.get(providerGroupId);
+			if (refreshStats != null)
+			{
+				refreshStats.providerLookup(target != null);
+			}
+			if (target == null)
+			{
+				target = m_provider.getUserRolesForGroup(providerGroupId);
+				if (target != null)
+				{
+					providerRoles.put(providerGroupId, target);
+				}
+			}
+			return target;
+		}
+
+		/**
+		 * Apply one kind of grant change in a JDBC batch. Deletes and inserts are written in their own
+		 * transactions, to avoid possible deadlock caused by transactions modifying rows of both kinds,
+		 * and if the batch fails each row is written on its own as before.
+		 */
+		private void writeGrants(String sql, List<Object[]> fieldsList)
+		{
+			if (fieldsList.isEmpty()) return;
+			if (fieldsList.size() > 1)
+			{
+				Connection conn = null;
+				boolean wasCommit = true;
+				try
+				{
+					conn = m_sql.borrowConnection();
+					wasCommit = conn.getAutoCommit();
+					conn.setAutoCommit(false);
+					if (m_sql.dbWriteBatch(conn, sql, fieldsList))
+					{
+						conn.commit();
+						return;
+					}
+					conn.rollback();
+				}
+				catch (SQLException e)
+				{
+					log.warn("writeGrants() batch of " + fieldsList.size() + " failed, writing them one at a time: " + e);
+					if (conn != null)
+					{
+						try
+						{
+							conn.rollback();
+						}
+						catch (SQLException ee)
+						{
+							log.warn("writeGrants() while rolling back: " + ee);
+						}
+					}
+				}
+				finally
+				{
+					if (conn != null)
+					{
+						try
+						{
+							conn.setAutoCommit(wasCommit);
+						}
+						catch (SQLException e)
+						{
+							log.warn("writeGrants() while setting auto commit: " + e);
+						}
+						m_sql.returnConnection(conn);
+					}
+				}
+			}
+			for (Object[] fields : fieldsList)
+			{
+				m_sql.dbWrite(sql, fields);
+			}
+		}
+
 		private List<UserAndRole> getGrants(AuthzGroup realm) {
 			// read the realm's grants
 			String sql = dbAuthzGroupSql.getSelectRealmRoleGroup2Sql();
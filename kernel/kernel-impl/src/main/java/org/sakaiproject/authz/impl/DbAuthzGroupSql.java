@@ -101,6 +101,12 @@ public interface DbAuthzGroupSql
 
 	String getSelectRealmFunction2Sql();
 
+	String getSelectRealmFunctionKeySql();
+
+	String getSelectRealmFunctionKeyByNameSql();
+
+	String getSelectRealmRoleFunctionKeySql();
+
 	String getSelectRealmFunctionFunctionNameSql(String inClause);
 
 	String getSelectRealmIdSql();
@@ -119,6 +125,8 @@ public interface DbAuthzGroupSql
 
 	String getSelectRealmProviderSql(String inClause);
 
+	String getSelectRealmIdsSql(String inClause);
+
 	String getSelectRealmRoleDescriptionSql();
 
 	String getSelectRealmRoleFunctionSql();
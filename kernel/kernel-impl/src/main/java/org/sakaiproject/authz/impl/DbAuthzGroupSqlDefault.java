@@ -291,6 +291,23 @@ public class DbAuthzGroupSqlDefault implements DbAuthzGroupSql
 		return "select FUNCTION_NAME from SAKAI_REALM_FUNCTION";
 	}
 
+	public String getSelectRealmFunctionKeySql()
+	{
+		return "select FUNCTION_NAME, FUNCTION_KEY from SAKAI_REALM_FUNCTION";
+	}
+
+	public String getSelectRealmFunctionKeyByNameSql()
+	{
+		return "select FUNCTION_KEY from SAKAI_REALM_FUNCTION where FUNCTION_NAME = ?";
+	}
+
+	public String getSelectRealmRoleFunctionKeySql()
+	{
+		return "SELECT SAKAI_REALM_ROLE.ROLE_NAME, SAKAI_REALM_RL_FN.FUNCTION_KEY FROM SAKAI_REALM_RL_FN"
+				+ " INNER JOIN SAKAI_REALM ON SAKAI_REALM.REALM_KEY = SAKAI_REALM_RL_FN.REALM_KEY AND SAKAI_REALM.REALM_ID = ?"
+				+ " INNER JOIN SAKAI_REALM_ROLE ON SAKAI_REALM_ROLE.ROLE_KEY = SAKAI_REALM_RL_FN.ROLE_KEY";
+	}
+
 	public String getSelectRealmFunction2Sql()
 	{
 		return "SELECT RR.ROLE_NAME, RF.FUNCTION_NAME FROM SAKAI_REALM_RL_FN RRF"
@@ -394,6 +411,11 @@ public class DbAuthzGroupSqlDefault implements DbAuthzGroupSql
 		return sqlBuf.toString();
 	}
 
+	public String getSelectRealmIdsSql(String inClause)
+	{
+		return "select REALM_ID from SAKAI_REALM where " + inClause;
+	}
+
 	public String getSelectRealmRoleDescriptionSql()
 	{
 		return "SELECT SAKAI_REALM_ROLE.ROLE_NAME, SAKAI_REALM_ROLE_DESC.DESCRIPTION, SAKAI_REALM_ROLE_DESC.PROVIDER_ONLY"
@@ -0,0 +1,289 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.authz.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>
+ * Counts the realms DbAuthzGroupService refreshes from the GroupProvider: how deep the queue is, how quickly passes
+ * over it go and how many grants each realm's refresh deletes and inserts.
+ * </p>
+ */
+@Slf4j
+public class RealmRefreshStats implements RealmRefreshStatsMXBean
+{
+	public static final String OBJECT_NAME = "org.sakaiproject:type=AuthzGroupRefresh";
+
+	/** Upper bounds of the diff size buckets, the last bucket takes the rest. */
+	private static final int[] DIFF_BUCKETS = { 0, 9, 99, 999 };
+
+	private static final String[] DIFF_BUCKET_NAMES = { "0", "1-9", "10-99", "100-999", "1000+" };
+
+	private final IntSupplier m_queueDepth;
+
+	private final LongAdder m_refreshed = new LongAdder();
+	private final LongAdder m_failed = new LongAdder();
+	private final LongAdder m_changed = new LongAdder();
+	private final LongAdder m_deleted = new LongAdder();
+	private final LongAdder m_inserted = new LongAdder();
+	private final LongAdder m_providerLookups = new LongAdder();
+	private final LongAdder m_providerShared = new LongAdder();
+	private final LongAdder[] m_diffSizes = new LongAdder[DIFF_BUCKET_NAMES.length];
+
+	private long m_maxDiff = 0;
+	private String m_maxDiffRealm = null;
+
+	private volatile long m_lastPassRealms = 0;
+	private volatile long m_lastPassMillis = 0;
+
+	private ObjectName m_registeredName = null;
+
+	/**
+	 * @param queueDepth
+	 *        Supplies the number of realms waiting to be refreshed.
+	 */
+	public RealmRefreshStats(IntSupplier queueDepth)
+	{
+		m_queueDepth = queueDepth;
+		for (int i = 0; i < m_diffSizes.length; i++)
+		{
+			m_diffSizes[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Record the refresh of one realm.
+	 * 
+	 * @param realmId
+	 *        The realm refreshed.
+	 * @param deleted
+	 *        The number of provided grants deleted.
+	 * @param inserted
+	 *        The number of provided grants inserted.
+	 */
+	public void realm(String realmId, int deleted, int inserted)
+	{
+		m_refreshed.increment();
+		int diff = deleted + inserted;
+		int bucket = 0;
+		while (bucket < DIFF_BUCKETS.length && diff > DIFF_BUCKETS[bucket])
+		{
+			bucket++;
+		}
+		m_diffSizes[bucket].increment();
+		if (diff == 0) return;
+
+		m_changed.increment();
+		m_deleted.add(deleted);
+		m_inserted.add(inserted);
+		synchronized (this)
+		{
+			if (diff > m_maxDiff)
+			{
+				m_maxDiff = diff;
+				m_maxDiffRealm = realmId;
+			}
+		}
+	}
+
+	/**
+	 * Record a realm that could not be refreshed.
+	 */
+	public void failed()
+	{
+		m_failed.increment();
+	}
+
+	/**
+	 * Record a lookup of a provider group's members.
+	 * 
+	 * @param shared
+	 *        true if the members were looked up earlier in the same pass.
+	 */
+	public void providerLookup(boolean shared)
+	{
+		m_providerLookups.increment();
+		if (shared)
+		{
+			m_providerShared.increment();
+		}
+	}
+
+	/**
+	 * Record a pass over the queue.
+	 * 
+	 * @param realms
+	 *        The number of realms refreshed.
+	 * @param millis
+	 *        The time taken.
+	 */
+	public void pass(long realms, long millis)
+	{
+		m_lastPassRealms = realms;
+		m_lastPassMillis = millis;
+	}
+
+	public int getQueueDepth()
+	{
+		return m_queueDepth.getAsInt();
+	}
+
+	public long getRealmsRefreshed()
+	{
+		return m_refreshed.sum();
+	}
+
+	public long getRealmsFailed()
+	{
+		return m_failed.sum();
+	}
+
+	public long getRealmsChanged()
+	{
+		return m_changed.sum();
+	}
+
+	public long getGrantsDeleted()
+	{
+		return m_deleted.sum();
+	}
+
+	public long getGrantsInserted()
+	{
+		return m_inserted.sum();
+	}
+
+	public long getMeanDiffSize()
+	{
+		long changed = m_changed.sum();
+		return changed == 0 ? 0 : (m_deleted.sum() + m_inserted.sum()) / changed;
+	}
+
+	public synchronized long getMaxDiffSize()
+	{
+		return m_maxDiff;
+	}
+
+	public synchronized String getMaxDiffRealm()
+	{
+		return m_maxDiffRealm;
+	}
+
+	public Map<String, Long> getDiffSizes()
+	{
+		Map<String, Long> rv = new LinkedHashMap<>();
+		for (int i = 0; i < m_diffSizes.length; i++)
+		{
+			rv.put(DIFF_BUCKET_NAMES[i], m_diffSizes[i].sum());
+		}
+		return rv;
+	}
+
+	public long getProviderLookups()
+	{
+		return m_providerLookups.sum();
+	}
+
+	public long getProviderLookupsShared()
+	{
+		return m_providerShared.sum();
+	}
+
+	public long getLastPassRealms()
+	{
+		return m_lastPassRealms;
+	}
+
+	public long getLastPassMillis()
+	{
+		return m_lastPassMillis;
+	}
+
+	public double getLastPassRealmsPerSecond()
+	{
+		long millis = m_lastPassMillis;
+		return millis == 0 ? 0 : m_lastPassRealms * 1000d / millis;
+	}
+
+	public void reset()
+	{
+		m_refreshed.reset();
+		m_failed.reset();
+		m_changed.reset();
+		m_deleted.reset();
+		m_inserted.reset();
+		m_providerLookups.reset();
+		m_providerShared.reset();
+		for (LongAdder a : m_diffSizes)
+		{
+			a.reset();
+		}
+		synchronized (this)
+		{
+			m_maxDiff = 0;
+			m_maxDiffRealm = null;
+		}
+		m_lastPassRealms = 0;
+		m_lastPassMillis = 0;
+	}
+
+	/**
+	 * Make the statistics available through the platform MBean server.
+	 */
+	public void register()
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name))
+			{
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+			m_registeredName = name;
+		}
+		catch (JMException e)
+		{
+			log.warn("Failed to register realm refresh statistics: {}", e.toString());
+		}
+	}
+
+	public void unregister()
+	{
+		if (m_registeredName == null) return;
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(m_registeredName);
+		}
+		catch (JMException e)
+		{
+			log.debug("Failed to unregister realm refresh statistics: {}", e.toString());
+		}
+		m_registeredName = null;
+	}
+}
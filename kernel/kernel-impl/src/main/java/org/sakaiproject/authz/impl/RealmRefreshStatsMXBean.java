@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.authz.impl;
+
+import java.util.Map;
+
+/**
+ * Management view of the realms refreshed from the GroupProvider by DbAuthzGroupService.
+ */
+public interface RealmRefreshStatsMXBean
+{
+	/**
+	 * @return the number of realms waiting to be refreshed.
+	 */
+	int getQueueDepth();
+
+	/**
+	 * @return the number of realms refreshed.
+	 */
+	long getRealmsRefreshed();
+
+	/**
+	 * @return the number of realms that could not be refreshed.
+	 */
+	long getRealmsFailed();
+
+	/**
+	 * @return the number of refreshed realms whose grants changed.
+	 */
+	long getRealmsChanged();
+
+	/**
+	 * @return the number of provided grants removed.
+	 */
+	long getGrantsDeleted();
+
+	/**
+	 * @return the number of provided grants added.
+	 */
+	long getGrantsInserted();
+
+	/**
+	 * @return the mean number of grants deleted and inserted for a realm that changed.
+	 */
+	long getMeanDiffSize();
+
+	/**
+	 * @return the largest number of grants deleted and inserted for one realm.
+	 */
+	long getMaxDiffSize();
+
+	/**
+	 * @return the realm with the largest diff.
+	 */
+	String getMaxDiffRealm();
+
+	/**
+	 * @return the number of refreshed realms by the size of their diff.
+	 */
+	Map<String, Long> getDiffSizes();
+
+	/**
+	 * @return the number of provider group lookups made.
+	 */
+	long getProviderLookups();
+
+	/**
+	 * @return the number of provider group lookups answered from a lookup made earlier in the same pass.
+	 */
+	long getProviderLookupsShared();
+
+	/**
+	 * @return the number of realms refreshed by the last pass over the queue.
+	 */
+	long getLastPassRealms();
+
+	/**
+	 * @return how long the last pass over the queue took.
+	 */
+	long getLastPassMillis();
+
+	/**
+	 * @return the realms refreshed a second by the last pass over the queue.
+	 */
+	double getLastPassRealmsPerSecond();
+
+	/**
+	 * Clear the statistics.
+	 */
+	void reset();
+}
@@ -180,7 +180,7 @@ public abstract class SakaiSecurity implements SecurityService, Observer
 			m_superCache = memoryService().getCache("org.sakaiproject.authz.api.SecurityService.superCache");
 			m_contentCache = memoryService().getCache("org.sakaiproject.authz.api.SecurityService.contentCache");
 		}
-        eventTrackingService().addObserver(this);
+        eventTrackingService().addObserver(this, SiteService.EVENT_SITE_USER_INVALIDATE);
 	}
 
     /**
@@ -509,6 +509,15 @@ public abstract class SakaiSecurity implements SecurityService, Observer
      * @return the key OR null if one cannot be properly made from these params
      */
     String makeCacheKey(String userId, String role, String function, String reference, boolean isSuperKey) {
+        return makeCacheKey(userId, role, function, reference, isSuperKey, null);
+    }
+
+    /**
+     * Make a cache key for security caching
+     * @param azgs the AuthzGroups of the reference for this user, if already known (can be null)
+     * @see #makeCacheKey(String, String, String, String, boolean)
+     */
+    String makeCacheKey(String userId, String role, String function, String reference, boolean isSuperKey, Collection<String> azgs) {
         if (isSuperKey) {
             if (userId != null) {
                 return "super@" + userId;
@@ -524,8 +533,10 @@ public abstract class SakaiSecurity implements SecurityService, Observer
         // SPECIAL conversion to reduce duplicate caching data
         if (!reference.startsWith("/site") && !reference.startsWith("/content")) {
             // try to convert this from a special reference down to the authzgroup ref
-            Reference ref = entityManager().newReference(reference);
-            Collection<String> azgs = ref.getAuthzGroups(userId);
+            if (azgs == null) {
+                Reference ref = entityManager().newReference(reference);
+                azgs = ref.getAuthzGroups(userId);
+            }
             for (String azgRef : azgs) {
                 if (azgRef.startsWith("/site")) {
                     if (cacheDebug) log.warn("SScache:converted ref "+reference+" to "+azgRef);
@@ -753,7 +764,37 @@ public abstract class SakaiSecurity implements SecurityService, Observer
 
 		// need to know whether role swap is in effect, since we can't share the cache entry between sessions
 		// that are swapped and not swapped
+		String roleswap = getRoleswap(userId, azgs);
+
+		// check the cache
+		String command = makeCacheKey(userId, roleswap, function, entityRef, false);
+		
+		if (m_callCache != null)
+		{
+			final Boolean value = getFromCache(command, false);
+			if(value != null) return value.booleanValue();
+		}
+
 
+		boolean rv = authzGroupService().isAllowed(userId, function, azgs);
+
+		// cache
+		addToCache(command, rv, false);
+
+		return rv;
+	}
+
+	/**
+	 * Find the role the user has swapped to in the site of these AuthzGroups, if they are the current user.
+	 *
+	 * @param userId
+	 *        The user id.
+	 * @param azgs
+	 *        The AuthzGroups of the entity being checked.
+	 * @return the swapped role, or null if the user is not in a swapped role.
+	 */
+	protected String getRoleswap(String userId, Collection<String> azgs)
+	{
 		String siteRef = null;
 		String roleswap = null;
 
@@ -787,24 +828,123 @@ public abstract class SakaiSecurity implements SecurityService, Observer
 
 		}
 
-		// check the cache
-		String command = makeCacheKey(userId, roleswap, function, entityRef, false);
-		
-		if (m_callCache != null)
+		return roleswap;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Map<String, Boolean> unlockAll(String userId, String function, Collection<String> entityRefs)
+	{
+		return unlockAll(userId, Collections.singleton(function), entityRefs).get(function);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Map<String, Map<String, Boolean>> unlockAll(String userId, Collection<String> functions, Collection<String> entityRefs)
+	{
+		Map<String, Map<String, Boolean>> rv = new HashMap<>();
+		if (functions == null) return rv;
+		for (String function : functions)
 		{
-			final Boolean value = getFromCache(command, false);
-			if(value != null) return value.booleanValue();
+			rv.put(function, new LinkedHashMap<>());
 		}
+		if (entityRefs == null || entityRefs.isEmpty()) return rv;
 
+		// make sure we have complete parameters
+		if (userId == null || rv.containsKey(null))
+		{
+			log.warn("unlockAll(): null: " + userId + " " + functions + " " + entityRefs.size() + " refs");
+			fillAll(rv, entityRefs, Boolean.FALSE);
+			return rv;
+		}
 
-		boolean rv = authzGroupService().isAllowed(userId, function, azgs);
+		// if super, grant
+		if (isSuperUser(userId))
+		{
+			fillAll(rv, entityRefs, Boolean.TRUE);
+			return rv;
+		}
 
-		// cache
-		addToCache(command, rv, false);
+		boolean advisors = hasAdvisors();
+
+		// the AuthzGroups and roleswap state of each reference, worked out once for all the functions
+		Map<String, Collection<String>> refAzgs = new HashMap<>();
+		Map<String, String> refRoleswaps = new HashMap<>();
+
+		for (String function : functions)
+		{
+			Map<String, Boolean> results = rv.get(function);
+
+			// references still to be checked, grouped by their AuthzGroups in order, as the order picks the site for roleswap and delegated access
+			Map<List<String>, List<String>> pending = new HashMap<>();
+			Map<String, String> commands = new HashMap<>();
+
+			for (String entityRef : entityRefs)
+			{
+				if (entityRef == null || results.containsKey(entityRef)) continue;
+
+				// the advisors get a crack at each reference, as in unlock()
+				if (advisors)
+				{
+					SecurityAdvisor.SecurityAdvice advice = adviseIsAllowed(userId, function, entityRef);
+					if (advice != SecurityAdvisor.SecurityAdvice.PASS)
+					{
+						results.put(entityRef, advice == SecurityAdvisor.SecurityAdvice.ALLOWED);
+						continue;
+					}
+				}
+
+				Collection<String> azgs = refAzgs.computeIfAbsent(entityRef, r -> entityManager().newReference(r).getAuthzGroups(userId));
+				String roleswap = refRoleswaps.computeIfAbsent(entityRef, r -> StringUtils.defaultString(getRoleswap(userId, azgs)));
+
+				// check the cache
+				String command = makeCacheKey(userId, StringUtils.trimToNull(roleswap), function, entityRef, false, azgs);
+				if (m_callCache != null)
+				{
+					final Boolean value = getFromCache(command, false);
+					if (value != null)
+					{
+						results.put(entityRef, value);
+						continue;
+					}
+				}
+
+				// hold the place so the results keep the order of the references
+				results.put(entityRef, Boolean.FALSE);
+				commands.put(entityRef, command);
+				pending.computeIfAbsent(new ArrayList<>(azgs), k -> new ArrayList<>()).add(entityRef);
+			}
+
+			// one check for all the references sharing the same AuthzGroups
+			for (Map.Entry<List<String>, List<String>> entry : pending.entrySet())
+			{
+				boolean allowed = authzGroupService().isAllowed(userId, function, entry.getKey());
+				for (String entityRef : entry.getValue())
+				{
+					results.put(entityRef, allowed);
+					addToCache(commands.get(entityRef), allowed, false);
+				}
+			}
+
+			if (log.isDebugEnabled()) log.debug("unlockAll(): " + userId + " " + function + " refs: " + results.size() + " checks: " + pending.size());
+		}
 
 		return rv;
 	}
 
+	private void fillAll(Map<String, Map<String, Boolean>> rv, Collection<String> entityRefs, Boolean value)
+	{
+		for (Map<String, Boolean> results : rv.values())
+		{
+			for (String entityRef : entityRefs)
+			{
+				results.put(entityRef, value);
+			}
+		}
+	}
+
 	/**
 	 * Access the List the Users who can unlock the lock for use with this resource.
 	 * 
@@ -23,6 +23,7 @@ package org.sakaiproject.content.impl;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -34,6 +35,11 @@ import java.io.UnsupportedEncodingException;
 import java.net.SocketException;
 import java.net.URI;
 import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
 import java.util.ArrayList;
@@ -60,6 +66,7 @@ import java.util.TimerTask;
 import java.util.TreeSet;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -944,6 +951,10 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 
 		this.m_useSmartSort = m_serverConfigurationService.getBoolean("content.smartSort", true);
 
+		m_sendfile = m_serverConfigurationService.getBoolean("content.sendfile.local", true);
+		m_sendfileMinSize = m_serverConfigurationService.getInt("content.sendfile.local.minSize", 48 * 1024);
+		m_deliveryStats.register();
+
 	} // init
 
 	/**
@@ -956,6 +967,8 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 		}
 		m_storage = null;
 
+		m_deliveryStats.unregister();
+
 		log.info("destroy()");
 
 	}
@@ -5731,6 +5744,8 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 				    // do a reference copy so the actual content is not duplicated
 				    ((BaseResourceEdit)edit).setReferenceCopy(resource.getId());
                     if (log.isDebugEnabled()) log.debug("copyResource doing a reference copy of "+resource.getId());
+				} else if (m_storage.shareBody(resource, edit)) {
+                    if (log.isDebugEnabled()) log.debug("copyResource sharing the body of "+resource.getId());
 				} else {
 	                // use stream instead of byte array
 	                // edit.setContent(resource.getContent());
@@ -6319,7 +6334,8 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 		}
 
 		// Flag whether we have a body update or not. This will save expensive DB/IO if we don't need to check the encoding.
-		boolean contentUpdated = ((BaseResourceEdit) edit).m_body != null || ((BaseResourceEdit) edit).m_contentStream != null;
+		boolean contentUpdated = ((BaseResourceEdit) edit).m_body != null || ((BaseResourceEdit) edit).m_contentStream != null
+				|| ((BaseResourceEdit) edit).m_sharedBody;
 
 		// complete the edit
 		m_storage.commitResource(edit);
@@ -6957,6 +6973,21 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 	/** The chunk size used when streaming (100K). */
 	protected static final int STREAM_BUFFER_SIZE = 102400;
 
+	/** Request attributes for handing a file to Tomcat to send, as used by Tomcat's DefaultServlet. */
+	protected static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+	protected static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+	protected static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+	protected static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+	/** If bodies in local files are handed to the container to send, when it can. */
+	protected boolean m_sendfile = true;
+
+	/** Smaller bodies are streamed, sendfile costs more than it saves for them (Tomcat's DefaultServlet uses 48K). */
+	protected long m_sendfileMinSize = 48 * 1024;
+
+	/** Delivery statistics by MIME type. */
+	protected ContentDeliveryStats m_deliveryStats = new ContentDeliveryStats();
+
 	/**
 	 * Process the access request for a resource.
 	 * 
@@ -7165,6 +7196,13 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 						}
 					}
 
+					// let the container send a local file without copying it through the request thread
+					if (sendfile(req, resource, 0, len - 1))
+					{
+						m_deliveryStats.recordSendfile(contentType, len);
+						return;
+					}
+
 					// stream the content using a small buffer to keep memory managed
 					InputStream content = null;
 					OutputStream out = null;
@@ -7190,7 +7228,11 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 	
 						out = res.getOutputStream();
 	
-						copyRange(content, out, 0, len-1);
+						long started = System.nanoTime();
+						if (copyRange(content, out, 0, len-1) == null)
+						{
+							m_deliveryStats.recordStreamed(contentType, len, System.nanoTime() - started);
+						}
 					}
 					catch (ServerOverloadException e)
 					{
@@ -7248,6 +7290,12 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 		                    res.setContentType(contentType);
 		                }
 
+						if (sendfile(req, resource, range.start, range.end))
+						{
+							m_deliveryStats.recordSendfile(contentType, length);
+							return;
+						}
+
 						// stream the content using a small buffer to keep memory managed
 						InputStream content = null;
 						OutputStream out = null;
@@ -7272,7 +7320,11 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 		
 							out = res.getOutputStream();
 
-							copyRange(content, out, range.start, range.end);
+							long started = System.nanoTime();
+							if (copyRange(content, out, range.start, range.end) == null)
+							{
+								m_deliveryStats.recordStreamed(contentType, length, System.nanoTime() - started);
+							}
 
 						}
 						catch (ServerOverloadException e)
@@ -7334,7 +7386,9 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 		
 							out = res.getOutputStream();
 
-			            	copyRanges(resource, out, ranges.iterator(), contentType);
+							long started = System.nanoTime();
+			            	long copied = copyRanges(resource, out, ranges.iterator(), contentType);
+							m_deliveryStats.recordStreamed(contentType, copied, System.nanoTime() - started);
 
 						}
 						catch (SocketException e)
@@ -8372,7 +8426,9 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 								ContentResourceEdit edit = addResource(nId);
 								edit.setContentType(((ContentResource) oResource).getContentType());
 								edit.setResourceType(((ContentResource) oResource).getResourceType());
-								edit.setContent(((ContentResource) oResource).streamContent());
+								if (!m_storage.shareBody((ContentResource) oResource, edit)) {
+									edit.setContent(((ContentResource) oResource).streamContent());
+								}
 								edit.setAvailability(((ContentResource) oResource).isHidden(), ((ContentResource) oResource).getReleaseDate(), ((ContentResource) oResource).getRetractDate());
 								//edit.setContent(((ContentResource) oResource).getContent());
 								// import properties
@@ -8383,7 +8439,8 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 								hideImportedContent(edit);
 								//Register the events
 								this.eventTrackingService.post(this.eventTrackingService.newEvent(EVENT_RESOURCE_ADD, edit.getReference(), true, NotificationService.NOTI_NONE));
-								boolean contentUpdated = ((BaseResourceEdit) edit).m_body != null || ((BaseResourceEdit) edit).m_contentStream != null;
+								boolean contentUpdated = ((BaseResourceEdit) edit).m_body != null || ((BaseResourceEdit) edit).m_contentStream != null
+										|| ((BaseResourceEdit) edit).m_sharedBody;
 								if (contentUpdated){
 									this.eventTrackingService.post(this.eventTrackingService.newEvent(EVENT_RESOURCE_UPD_NEW_VERSION, edit.getReference(), true, NotificationService.NOTI_NONE));
 								}
@@ -9796,8 +9853,10 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 		while (siteIt.hasNext())
 		{
 			String collId = getSiteCollection( (String)siteIt.next() );
-			List artifacts = getFlatResources(collId);
-			globalList.addAll(filterArtifacts(artifacts, type, primaryMimeType, subMimeType, true));
+			forEachFlatResource(collId, resource -> {
+				if (acceptArtifact(resource, type, primaryMimeType, subMimeType, true)) globalList.add(resource);
+				return true;
+			});
 		}
 
 		return globalList;
@@ -9816,8 +9875,10 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 		{
 			Entry entry = (Entry) siteIt.next();
 			String collId = (String) entry.getKey();
-			List artifacts = getFlatResources(collId);
-			globalList.addAll(filterArtifacts(artifacts, type, primaryMimeType, subMimeType, true));
+			forEachFlatResource(collId, resource -> {
+				if (acceptArtifact(resource, type, primaryMimeType, subMimeType, true)) globalList.add(resource);
+				return true;
+			});
 		}
 
 		return globalList;
@@ -9834,6 +9895,22 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 		return getAllResources(parentId);
 	}
 
+	/**
+	 * Pass each resource under a given directory to the handler, as it is read where the storage allows, so they need
+	 * not all be held at once.
+	 * 
+	 * @param parentId
+	 * @param handler
+	 *        Given each ContentResource, returns false to stop.
+	 */
+	protected void forEachFlatResource(String parentId, Predicate<ContentResource> handler)
+	{
+		for (Object resource : getFlatResources(parentId))
+		{
+			if (!handler.test((ContentResource) resource)) return;
+		}
+	}
+
 	/**
 	 * Eliminate from the collection any duplicates as well as any items that are contained within another item whose resource-id is in the collection.
 	 * 
@@ -9886,54 +9963,52 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 		for (Iterator i = artifacts.iterator(); i.hasNext();)
 		{
 			ContentResource resource = (ContentResource) i.next();
-			//check for read permissions...
-			if (!checkPerms || unlockCheck(AUTH_RESOURCE_READ, resource.getId())) 
+			if (!acceptArtifact(resource, type, primaryMimeType, subMimeType, checkPerms))
 			{
-				String currentType = resource.getProperties().getProperty(ResourceProperties.PROP_STRUCTOBJ_TYPE);
-				String mimeType = resource.getProperties().getProperty(ResourceProperties.PROP_CONTENT_TYPE);
-
-				if (type != null && !type.equals(ResourceProperties.FILE_TYPE))
-				{
-					// process StructuredObject type
-					if (currentType == null)
-					{
-						i.remove();
-					}
-					else if (!currentType.equals(type))
-					{
-						i.remove();
-					}
-				}
-				else if (currentType != null && type != null && type.equals(ResourceProperties.FILE_TYPE))
-				{
-					// this one is a structured object, get rid of it
-					i.remove();
-				}
-				else
-				{
-					String[] parts = mimeType.split("/");
-					String currentPrimaryType = parts[0];
-					String currentSubtype = null;
-					if (parts.length > 1) currentSubtype = parts[1];
-
-					// check the mime type match
-					if (primaryMimeType != null && !primaryMimeType.equals(currentPrimaryType))
-					{
-						i.remove();
-					}
-					else if (subMimeType != null && !subMimeType.equals(currentSubtype))
-					{
-						i.remove();
-					}
-				}
-			}
-			else {
 				i.remove();
 			}
 		}
 		return artifacts;
 	}
 
+	/**
+	 * @return true if the resource is of the type and mime type, and readable if checkPerms is set.
+	 */
+	protected boolean acceptArtifact(ContentResource resource, String type, String primaryMimeType, String subMimeType, boolean checkPerms)
+	{
+		//check for read permissions...
+		if (checkPerms && !unlockCheck(AUTH_RESOURCE_READ, resource.getId()))
+		{
+			return false;
+		}
+
+		String currentType = resource.getProperties().getProperty(ResourceProperties.PROP_STRUCTOBJ_TYPE);
+		String mimeType = resource.getProperties().getProperty(ResourceProperties.PROP_CONTENT_TYPE);
+
+		if (type != null && !type.equals(ResourceProperties.FILE_TYPE))
+		{
+			// process StructuredObject type
+			return currentType != null && currentType.equals(type);
+		}
+		else if (currentType != null && type != null && type.equals(ResourceProperties.FILE_TYPE))
+		{
+			// this one is a structured object, get rid of it
+			return false;
+		}
+
+		String[] parts = mimeType.split("/");
+		String currentPrimaryType = parts[0];
+		String currentSubtype = null;
+		if (parts.length > 1) currentSubtype = parts[1];
+
+		// check the mime type match
+		if (primaryMimeType != null && !primaryMimeType.equals(currentPrimaryType))
+		{
+			return false;
+		}
+		return subMimeType == null || subMimeType.equals(currentSubtype);
+	}
+
 	/**********************************************************************************************************************************************************************************************************************************************************
 	 * Dropbox Stuff
 	 *********************************************************************************************************************************************************************************************************************************************************/
@@ -12331,8 +12406,14 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 		/** The file system path, post root, for file system stored body binary. */
 		protected String m_filePath = null;
 
+		/** When true, m_filePath was allocated for a body that has not been written yet, so there is no file there. */
+		protected boolean m_filePathUnwritten = false;
+
 		protected InputStream m_contentStream;
 
+		/** When true, the body is the file at m_filePath, shared with the resource this was copied from. */
+		protected boolean m_sharedBody = false;
+
 		private boolean m_sessionBound = true;
 
 		protected String m_oldDisplayName = null;
@@ -12412,6 +12493,15 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 			}
 
 			m_filePath = volume + time.toStringFilePath() + idManager.createUuid();
+			m_filePathUnwritten = true;
+		}
+
+		/**
+		 * Give this resource a new file path, so the body can be written without changing the file at the old one.
+		 */
+		protected void setNewFilePath()
+		{
+			setFilePath(timeService.newTime());
 		}
 
 		/**
@@ -12460,6 +12550,7 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 			}
 
 			m_filePath = ((BaseResourceEdit) other).m_filePath;
+			m_filePathUnwritten = ((BaseResourceEdit) other).m_filePathUnwritten;
 
 			// copy other's access mode and list of groups
 			m_access = other.getAccess();
@@ -13572,6 +13663,21 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 		 */
 		public URI getDirectLink(ContentResource resource);
 
+		/**
+		 * Get the local file holding the body of the resource, so it can be sent by the container without streaming.
+		 * @param resource
+		 * @return the file or null if the body is not in a local file
+		 */
+		public File getLocalFile(ContentResource resource);
+
+		/**
+		 * Let a new resource use the body of another instead of copying it, if the storage shares bodies.
+		 * @param source the resource being copied
+		 * @param edit the new resource
+		 * @return true if the edit will use the source's body when it is committed, false if the body must be copied
+		 */
+		public boolean shareBody(ContentResource source, ContentResourceEdit edit);
+
 		/**
 		 * Get a count of all members of a collection, where 'member' means the collection
 		 * is the immediate parent of the item.  The count is not recursive and it will 
@@ -14151,7 +14257,7 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
                                   long start, long end) {
 
     	try {
-            istream.skip(start);
+            IOUtils.skipFully(istream, start);
         } catch (IOException e) {
             return e;
         }
@@ -14159,86 +14265,192 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
         IOException exception = null;
         long bytesToRead = end - start + 1;
 
+        // keep reading until the range is done, a short read is not the end of the stream
         byte buffer[] = new byte[STREAM_BUFFER_SIZE];
-        int len = buffer.length;
-        while ( (bytesToRead > 0) && (len >= buffer.length)) {
+        while (bytesToRead > 0) {
             try {
-                len = istream.read(buffer);
-                if (bytesToRead >= len) {
-                    ostream.write(buffer, 0, len);
-                    bytesToRead -= len;
-                } else {
-                    ostream.write(buffer, 0, (int) bytesToRead);
-                    bytesToRead = 0;
-                }
+                int len = istream.read(buffer, 0, (int) Math.min(buffer.length, bytesToRead));
+                if (len == -1)
+                    break;
+                ostream.write(buffer, 0, len);
+                bytesToRead -= len;
             } catch (IOException e) {
                 exception = e;
-                len = -1;
-            }
-            if (len < buffer.length)
                 break;
+            }
         }
 
         return exception;
     }
 
+	/**
+	 * Hand a range of the body of a resource to the container to send straight from the file, if the body is in a local
+	 * file and the container supports sendfile. The response headers must be set and nothing written to the response.
+	 * 
+	 * @param req The request.
+	 * @param resource The resource.
+	 * @param start Start of the range.
+	 * @param end End of the range, inclusive.
+	 * @return true if the container will send the range, false if it has to be streamed.
+	 */
+	protected boolean sendfile(HttpServletRequest req, ContentResource resource, long start, long end)
+	{
+		if (!m_sendfile || end - start + 1 < m_sendfileMinSize || !Boolean.TRUE.equals(req.getAttribute(SENDFILE_SUPPORT_ATTR)))
+		{
+			return false;
+		}
+
+		File file = m_storage.getLocalFile(resource);
+		if (file == null || file.length() <= end)
+		{
+			return false;
+		}
+
+		try
+		{
+			req.setAttribute(SENDFILE_FILENAME_ATTR, file.getCanonicalPath());
+		}
+		catch (IOException e)
+		{
+			log.debug("sendfile: no canonical path for {}: {}", resource.getId(), e.toString());
+			return false;
+		}
+		req.setAttribute(SENDFILE_START_ATTR, start);
+		// the container's end is exclusive
+		req.setAttribute(SENDFILE_END_ATTR, end + 1);
+		return true;
+	}
+
   
     /**
      * Copy the contents of the specified input stream to the specified
      * output stream in a set of chunks as per the specified ranges.
+     * The body is only opened once. A body in a local file is read at each range's position, otherwise the stream is
+     * skipped forward between ranges and only opened again for a range that starts before the previous one ended.
      *
      * @param InputStream The input stream to read from
      * @param out The output stream to write to
      * @param ranges Enumeration of the ranges the client wanted to retrieve
      * @param contentType Content type of the resource
+     * @return the number of bytes of the body copied
      * @exception IOException if an input/output error occurs
      */
-    protected void copyRanges(ContentResource content, OutputStream out,
+    protected long copyRanges(ContentResource content, OutputStream out,
                       Iterator ranges, String contentType)
         throws IOException {
 
         IOException exception = null;
-                        
-        while ( (exception == null) && (ranges.hasNext()) ) {
-
-            Range currentRange = (Range) ranges.next();
-                  
-            // Writing MIME header.
-            IOUtils.write("\r\n--" + MIME_SEPARATOR + "\r\n", out);
-            if (contentType != null)
-                IOUtils.write("Content-Type: " + contentType + "\r\n", out);
-            IOUtils.write("Content-Range: bytes " + currentRange.start
-                           + "-" + currentRange.end + "/"
-                           + currentRange.length + "\r\n", out);
-            IOUtils.write("\r\n", out);
-
-            // Printing content
-			InputStream in = null;
-			try {
-				in = content.streamContent();
-			} catch (ServerOverloadException se) {
-				exception = new IOException("ServerOverloadException reported getting inputstream");
-				throw exception;
-			}
-			
-            InputStream istream =
-                new BufferedInputStream(in, STREAM_BUFFER_SIZE);
-          
-            exception = copyRange(istream, out, currentRange.start, currentRange.end);
+        long copied = 0;
 
-            try {
-                istream.close();
-            } catch (IOException e) {
-            	// ignore
+        File file = m_storage.getLocalFile(content);
+        FileChannel channel = null;
+        WritableByteChannel target = null;
+        InputStream istream = null;
+        long position = 0;
+
+        try {
+            if (file != null) {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                target = Channels.newChannel(out);
+            }
+
+            while ( (exception == null) && (ranges.hasNext()) ) {
+
+                Range currentRange = (Range) ranges.next();
+
+                // Writing MIME header.
+                IOUtils.write("\r\n--" + MIME_SEPARATOR + "\r\n", out);
+                if (contentType != null)
+                    IOUtils.write("Content-Type: " + contentType + "\r\n", out);
+                IOUtils.write("Content-Range: bytes " + currentRange.start
+                               + "-" + currentRange.end + "/"
+                               + currentRange.length + "\r\n", out);
+                IOUtils.write("\r\n", out);
+
+                // Printing content
+                if (channel != null) {
+                    transferRange(channel, target, out, currentRange.start, currentRange.end + 1);
+                    copied += currentRange.end - currentRange.start + 1;
+                    continue;
+                }
+
+                if (istream == null || currentRange.start < position) {
+                    closeQuietly(istream);
+                    InputStream in = null;
+                    try {
+                        in = content.streamContent();
+                    } catch (ServerOverloadException se) {
+                        exception = new IOException("ServerOverloadException reported getting inputstream");
+                        throw exception;
+                    }
+                    if (in == null) {
+                        throw new IOException("No content for " + content.getId());
+                    }
+                    istream = new BufferedInputStream(in, STREAM_BUFFER_SIZE);
+                    position = 0;
+                }
+
+                exception = copyRange(istream, out, currentRange.start - position, currentRange.end - position);
+                position = currentRange.end + 1;
+                copied += currentRange.end - currentRange.start + 1;
             }
+
+            IOUtils.write("\r\n--" + MIME_SEPARATOR + "--\r\n", out);
+        } finally {
+            closeQuietly(channel);
+            closeQuietly(istream);
         }
 
-        IOUtils.write("\r\n--" + MIME_SEPARATOR + "--\r\n", out);
-        
         // Rethrow any exception that has occurred
         if (exception != null) {
             throw exception;
         }
+        return copied;
+    }
+
+    /**
+     * Copy the bytes of a file from start up to end to the output. transferTo may send less than was asked for, or
+     * nothing if the target cannot take it, so whatever it leaves is copied through a buffer.
+     *
+     * @param channel The file to read from
+     * @param target The channel writing to out
+     * @param out The output stream to write to
+     * @param start Start of the range which will be copied
+     * @param end End of the range which will be copied, exclusive
+     * @exception IOException if the file ends before the range does, or an input/output error occurs
+     */
+    protected void transferRange(FileChannel channel, WritableByteChannel target, OutputStream out,
+                                 long start, long end) throws IOException {
+        long pos = start;
+        while (pos < end) {
+            long n = channel.transferTo(pos, end - pos, target);
+            if (n <= 0)
+                break;
+            pos += n;
+        }
+
+        ByteBuffer buffer = null;
+        while (pos < end) {
+            if (buffer == null)
+                buffer = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - pos));
+            int n = channel.read(buffer, pos);
+            if (n < 0)
+                throw new IOException("File ended at " + pos + " before the end of the range " + start + "-" + (end - 1));
+            out.write(buffer.array(), 0, n);
+            pos += n;
+        }
+    }
+
+    private void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
     }
 
 	/**
@@ -0,0 +1,305 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl;
+
+import java.lang.management.ManagementFactory;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.sakaiproject.db.api.SqlService;
+
+/**
+ * <p>
+ * ContentBodyStore keeps a reference count for body files that more than one resource may use, in CONTENT_BODY_STORE.
+ * Bodies written while deduplication is enabled are recorded with the SHA-256 hash of their bytes, so a later upload of
+ * the same bytes can use the existing file, and a copied resource can share the file of the resource it is copied from.
+ * </p>
+ * <p>
+ * Files written before deduplication was enabled have no row. They belong to a single resource until they are shared,
+ * when a row is added for them without a hash. A body is only reused while its count is above zero, so a file whose
+ * last reference has been released can be deleted without another resource picking it up.
+ * </p>
+ */
+@Slf4j
+public class ContentBodyStore implements ContentBodyStoreMXBean
+{
+	public static final String OBJECT_NAME = "org.sakaiproject:type=ContentBodyStore";
+
+	public static final String DIGEST_ALGORITHM = "SHA-256";
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final SqlService m_sqlService;
+
+	private final ContentServiceSql m_contentServiceSql;
+
+	private ObjectName m_registeredName = null;
+
+	public ContentBodyStore(SqlService sqlService, ContentServiceSql contentServiceSql)
+	{
+		m_sqlService = sqlService;
+		m_contentServiceSql = contentServiceSql;
+	}
+
+	/**
+	 * Add a reference to the stored body with this hash.
+	 * 
+	 * @param hash
+	 *        the hex encoded hash of the body.
+	 * @param size
+	 *        the size of the body.
+	 * @return the file path of the stored body, or null if there is no body with the hash that can be used.
+	 */
+	public String addReference(String hash, long size)
+	{
+		List<Object[]> found = m_sqlService.dbRead(m_contentServiceSql.getBodyStoreSelectByHashSql(), new Object[] { hash },
+				result -> {
+					try
+					{
+						return new Object[] { result.getString(1), result.getLong(2) };
+					}
+					catch (SQLException e)
+					{
+						log.warn("Failed to read stored body: {}", e.toString());
+						return null;
+					}
+				});
+		if (found == null || found.isEmpty() || found.get(0) == null) return null;
+
+		String filePath = (String) found.get(0)[0];
+		if (filePath == null || ((Long) found.get(0)[1]).longValue() != size)
+		{
+			log.warn("Stored body {} has the hash {} of a body of a different size", filePath, hash);
+			return null;
+		}
+		int count = write(m_contentServiceSql.getBodyStoreAddReferenceSql(), new Object[] { filePath });
+		return count == 1 ? filePath : null;
+	}
+
+	/**
+	 * Record a newly written body with a single reference.
+	 * 
+	 * @return true if recorded, false if another body with the same hash was recorded first.
+	 */
+	public boolean register(String filePath, String hash, long size)
+	{
+		return write(m_contentServiceSql.getBodyStoreInsertSql(), new Object[] { filePath, hash, size, 1 }) == 1;
+	}
+
+	/**
+	 * Add a reference to a body file for a copy of the resource using it.
+	 * 
+	 * @param filePath
+	 *        the file path of the body.
+	 * @param size
+	 *        the size of the body.
+	 * @return true if the copy may use the file, false if it could not be recorded and the copy needs its own file.
+	 */
+	public boolean share(String filePath, long size)
+	{
+		Object[] fields = new Object[] { filePath };
+		if (write(m_contentServiceSql.getBodyStoreAddReferenceSql(), fields) == 1) return true;
+
+		// not in the store yet, the resource being copied has it to itself
+		if (write(m_contentServiceSql.getBodyStoreInsertSql(), new Object[] { filePath, null, size, 2 }) == 1) return true;
+
+		// recorded by someone else in the meantime
+		return write(m_contentServiceSql.getBodyStoreAddReferenceSql(), fields) == 1;
+	}
+
+	/**
+	 * Remove a reference to a body file.
+	 * 
+	 * @param filePath
+	 *        the file path of the body.
+	 * @return true if nothing uses the file any more and it should be deleted.
+	 */
+	public boolean release(String filePath)
+	{
+		Object[] fields = new Object[] { filePath };
+		int count = write(m_contentServiceSql.getBodyStoreReleaseSql(), fields);
+		if (count == 0)
+		{
+			// not in the store so only the one resource used it
+			return true;
+		}
+		if (count < 0)
+		{
+			log.warn("Failed to release stored body {}, keeping the file", filePath);
+			return false;
+		}
+		return write(m_contentServiceSql.getBodyStoreDeleteUnreferencedSql(), fields) == 1;
+	}
+
+	/**
+	 * Run an update of the store. The SqlService returns -1 without logging for a duplicate key, which is expected
+	 * when two servers store the same body at once. Any other failure is logged, and also returns -1 so the caller
+	 * falls back to a file of its own, or keeps the file.
+	 * 
+	 * @return the number of rows changed, or -1 if the update failed.
+	 */
+	private int write(String sql, Object[] fields)
+	{
+		try
+		{
+			return m_sqlService.dbWriteCount(sql, fields, null, null, 0);
+		}
+		catch (RuntimeException e)
+		{
+			log.warn("Failed to update the body store: {}", e.toString());
+			return -1;
+		}
+	}
+
+	/**
+	 * @return unique bodies, stored bytes, references and referenced bytes.
+	 */
+	private long[] readStatistics()
+	{
+		List<long[]> rv = m_sqlService.dbRead(m_contentServiceSql.getBodyStoreStatisticsSql(), null,
+				result -> {
+					try
+					{
+						return new long[] { result.getLong(1), result.getLong(2), result.getLong(3), result.getLong(4) };
+					}
+					catch (SQLException e)
+					{
+						log.warn("Failed to read body store statistics: {}", e.toString());
+						return null;
+					}
+				});
+		return (rv == null || rv.isEmpty() || rv.get(0) == null) ? new long[4] : rv.get(0);
+	}
+
+	@Override
+	public long getUniqueBodies()
+	{
+		return readStatistics()[0];
+	}
+
+	@Override
+	public long getStoredBytes()
+	{
+		return readStatistics()[1];
+	}
+
+	@Override
+	public long getReferences()
+	{
+		return readStatistics()[2];
+	}
+
+	@Override
+	public long getReferencedBytes()
+	{
+		return readStatistics()[3];
+	}
+
+	@Override
+	public long getBytesSaved()
+	{
+		long[] stats = readStatistics();
+		return stats[3] - stats[1];
+	}
+
+	@Override
+	public double getDeduplicationRatio()
+	{
+		return ratio(readStatistics());
+	}
+
+	private static double ratio(long[] stats)
+	{
+		return stats[1] == 0 ? 1.0d : (double) stats[3] / stats[1];
+	}
+
+	/**
+	 * Log what the store holds, and make the statistics available through the platform MBean server.
+	 */
+	public void register()
+	{
+		long[] stats = readStatistics();
+		log.info("Body store: {} bodies of {} bytes used by {} resources, {} bytes saved, ratio {}", stats[0], stats[1], stats[2],
+				stats[3] - stats[1], String.format("%.2f", ratio(stats)));
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name))
+			{
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+			m_registeredName = name;
+		}
+		catch (JMException e)
+		{
+			log.warn("Failed to register content body store statistics: {}", e.toString());
+		}
+	}
+
+	public void unregister()
+	{
+		if (m_registeredName == null) return;
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(m_registeredName);
+		}
+		catch (JMException e)
+		{
+			log.debug("Failed to unregister content body store statistics: {}", e.toString());
+		}
+		m_registeredName = null;
+	}
+
+	/**
+	 * @return a new digest for hashing bodies.
+	 */
+	public static MessageDigest newDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance(DIGEST_ALGORITHM);
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// every JVM has SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return the digest as lower case hex.
+	 */
+	public static String toHex(byte[] digest)
+	{
+		char[] rv = new char[digest.length * 2];
+		for (int i = 0; i < digest.length; i++)
+		{
+			rv[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+			rv[i * 2 + 1] = HEX[digest[i] & 0xf];
+		}
+		return new String(rv);
+	}
+}
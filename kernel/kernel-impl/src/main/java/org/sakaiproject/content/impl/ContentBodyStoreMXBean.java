@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl;
+
+/**
+ * Management view of the deduplicating body store. Only bodies written or copied while deduplication was enabled are
+ * counted, files written before then are not in the store.
+ */
+public interface ContentBodyStoreMXBean
+{
+	/**
+	 * @return the number of body files in the store.
+	 */
+	long getUniqueBodies();
+
+	/**
+	 * @return the number of resources using the body files in the store.
+	 */
+	long getReferences();
+
+	/**
+	 * @return the bytes held in body files in the store.
+	 */
+	long getStoredBytes();
+
+	/**
+	 * @return the bytes the resources using the store would hold if each had its own file.
+	 */
+	long getReferencedBytes();
+
+	/**
+	 * @return the bytes not written because bodies are shared.
+	 */
+	long getBytesSaved();
+
+	/**
+	 * @return referenced bytes divided by stored bytes, 1 when nothing is shared.
+	 */
+	double getDeduplicationRatio();
+}
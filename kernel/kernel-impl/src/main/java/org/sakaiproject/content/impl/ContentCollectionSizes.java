@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.sakaiproject.db.api.SqlService;
+import org.sakaiproject.entity.api.Entity;
+
+/**
+ * <p>
+ * ContentCollectionSizes keeps, in CONTENT_COLLECTION_SIZE, the number of resources and collections and the resource
+ * bytes within a collection at any depth, so quota checks and collection sizes can be read without summing over the
+ * whole of a site.
+ * </p>
+ * <p>
+ * A collection is counted the first time its size is asked for, and from then on its counts are adjusted as resources
+ * and collections within it are added, changed and removed. Collections near the root ("/" and "/group/" for
+ * example) are never counted, as every change in content hosting would update them. Counts that have drifted, from
+ * changes made outside the storage or races with counting a collection, are corrected by discarding them with clear(),
+ * so they are counted again when next needed.
+ * </p>
+ */
+@Slf4j
+public class ContentCollectionSizes
+{
+	/** the fewest levels a collection has to be counted, "/group/site/" has two */
+	static final int MIN_DEPTH = 2;
+
+	/** don't log duplicate keys, they are expected when two requests count the same collection at once */
+	private static final int FAIL_QUIET = 2;
+
+	private final SqlService m_sqlService;
+
+	private final ContentServiceSql m_contentServiceSql;
+
+	public ContentCollectionSizes(SqlService sqlService, ContentServiceSql contentServiceSql)
+	{
+		m_sqlService = sqlService;
+		m_contentServiceSql = contentServiceSql;
+	}
+
+	/**
+	 * @param collectionId
+	 *        the collection id, ending with a separator.
+	 * @return true if the collection is deep enough to be counted.
+	 */
+	static boolean isCounted(String collectionId)
+	{
+		return depth(collectionId) >= MIN_DEPTH;
+	}
+
+	private static int depth(String collectionId)
+	{
+		int depth = 0;
+		for (int i = 1; i < collectionId.length(); i++)
+		{
+			if (collectionId.charAt(i) == Entity.SEPARATOR.charAt(0)) depth++;
+		}
+		return depth;
+	}
+
+	/**
+	 * @param id
+	 *        the id of a resource or collection.
+	 * @return the ids of the counted collections that contain it, innermost first.
+	 */
+	static List<String> countedContainers(String id)
+	{
+		List<String> rv = new ArrayList<>();
+		// a collection id ends with the separator, which is not where its container's id ends
+		int end = id.endsWith(Entity.SEPARATOR) ? id.length() - 2 : id.length() - 1;
+		for (int i = id.lastIndexOf(Entity.SEPARATOR, end); i > 0; i = id.lastIndexOf(Entity.SEPARATOR, i - 1))
+		{
+			String container = id.substring(0, i + 1);
+			if (!isCounted(container)) break;
+			rv.add(container);
+		}
+		return rv;
+	}
+
+	/**
+	 * Read the counts for a collection, counting it from its members if it has not been counted yet.
+	 * 
+	 * @param collectionId
+	 *        the collection id, ending with a separator.
+	 * @return the resources, collections and resource bytes within the collection, or null if the collection is not counted.
+	 */
+	public long[] getSizes(String collectionId)
+	{
+		if (!isCounted(collectionId)) return null;
+
+		List<long[]> rv = m_sqlService.dbRead(m_contentServiceSql.getCollectionSizeSelectSql(), new Object[] { collectionId },
+				result -> {
+					try
+					{
+						return new long[] { result.getLong(1), result.getLong(2), result.getLong(3) };
+					}
+					catch (SQLException e)
+					{
+						log.warn("Failed to read size of collection: {}", e.toString());
+						return null;
+					}
+				});
+		if (rv != null && !rv.isEmpty() && rv.get(0) != null) return rv.get(0);
+
+		long[] sizes = count(collectionId);
+		m_sqlService.dbWriteCount(m_contentServiceSql.getCollectionSizeInsertSql(),
+				new Object[] { collectionId, sizes[0], sizes[1], sizes[2] }, null, null, FAIL_QUIET);
+		return sizes;
+	}
+
+	/**
+	 * Count the members of a collection the way it was done before the counts were kept.
+	 */
+	private long[] count(String collectionId)
+	{
+		Object[] fields = new Object[] { collectionId + "%" };
+		return new long[] { readLong(m_contentServiceSql.getNumContentResources1Sql(), fields),
+				readLong(m_contentServiceSql.getNumContentResources2Sql(), fields),
+				readLong(m_contentServiceSql.getCollectionBodySizeSql(), fields) };
+	}
+
+	private long readLong(String sql, Object[] fields)
+	{
+		List<String> rv = m_sqlService.dbRead(sql, fields, null);
+		if (rv == null || rv.isEmpty() || rv.get(0) == null) return 0L;
+		try
+		{
+			return Float.valueOf(rv.get(0)).longValue();
+		}
+		catch (NumberFormatException e)
+		{
+			log.warn("Unable to parse count \"{}\" from {}", rv.get(0), sql);
+			return 0L;
+		}
+	}
+
+	/**
+	 * Adjust the counts of the collections containing a resource or collection.
+	 * 
+	 * @param id
+	 *        the id of the resource or collection that changed.
+	 * @param resources
+	 *        the change in the number of resources.
+	 * @param collections
+	 *        the change in the number of collections.
+	 * @param bytes
+	 *        the change in resource bytes.
+	 */
+	public void adjust(String id, long resources, long collections, long bytes)
+	{
+		if (resources == 0 && collections == 0 && bytes == 0) return;
+		List<String> containers = countedContainers(id);
+		if (containers.isEmpty()) return;
+
+		Object[] fields = new Object[containers.size() + 3];
+		fields[0] = resources;
+		fields[1] = collections;
+		fields[2] = bytes;
+		for (int i = 0; i < containers.size(); i++)
+		{
+			fields[i + 3] = containers.get(i);
+		}
+		m_sqlService.dbWrite(m_contentServiceSql.getCollectionSizeUpdateSql(containers.size()), fields);
+	}
+
+	/**
+	 * Discard the counts of a collection and every collection within it, they are counted again when next needed.
+	 * 
+	 * @param collectionId
+	 *        the collection id, or null for all collections.
+	 */
+	public void clear(String collectionId)
+	{
+		m_sqlService.dbWrite(m_contentServiceSql.getCollectionSizeDeleteSql(), new Object[] { (collectionId == null ? "" : collectionId) + "%" });
+	}
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Counts the resource bodies delivered by the access handler by MIME type, so the cost of streaming large files
+ * through request threads can be seen, and compared with handing them to the container.
+ */
+@Slf4j
+public class ContentDeliveryStats implements ContentDeliveryStatsMXBean
+{
+	public static final String OBJECT_NAME = "org.sakaiproject:type=ContentDelivery";
+
+	/** MIME types are chosen by whoever uploads, so only this many are counted separately. */
+	private static final int MAX_TYPES = 200;
+
+	private static final String OTHER = "other";
+
+	private static final String UNKNOWN = "unknown";
+
+	private final Map<String, Counters> m_counters = new ConcurrentHashMap<>();
+
+	private ObjectName m_registeredName = null;
+
+	private static class Counters
+	{
+		final LongAdder deliveries = new LongAdder();
+		final LongAdder bytes = new LongAdder();
+		final LongAdder sendfile = new LongAdder();
+		final LongAdder streamed = new LongAdder();
+		final LongAdder streamedBytes = new LongAdder();
+		final LongAdder streamNanos = new LongAdder();
+	}
+
+	/**
+	 * Record a body, or ranges of one, streamed by the request thread.
+	 */
+	public void recordStreamed(String contentType, long bytes, long nanos)
+	{
+		Counters counters = getCounters(contentType);
+		counters.deliveries.increment();
+		counters.bytes.add(bytes);
+		counters.streamed.increment();
+		counters.streamedBytes.add(bytes);
+		counters.streamNanos.add(nanos);
+	}
+
+	/**
+	 * Record a body, or range of one, handed to the container to send.
+	 */
+	public void recordSendfile(String contentType, long bytes)
+	{
+		Counters counters = getCounters(contentType);
+		counters.deliveries.increment();
+		counters.bytes.add(bytes);
+		counters.sendfile.increment();
+	}
+
+	private Counters getCounters(String contentType)
+	{
+		String type = baseType(contentType);
+		Counters counters = m_counters.get(type);
+		if (counters == null)
+		{
+			if (m_counters.size() >= MAX_TYPES) type = OTHER;
+			counters = m_counters.computeIfAbsent(type, t -> new Counters());
+		}
+		return counters;
+	}
+
+	/**
+	 * @return the MIME type without parameters such as the charset.
+	 */
+	static String baseType(String contentType)
+	{
+		if (contentType == null) return UNKNOWN;
+		int semi = contentType.indexOf(';');
+		String type = (semi == -1 ? contentType : contentType.substring(0, semi)).trim().toLowerCase();
+		return type.isEmpty() ? UNKNOWN : type;
+	}
+
+	private Map<String, Long> collect(ToLongFunction<Counters> value)
+	{
+		Map<String, Long> rv = new TreeMap<>();
+		for (Map.Entry<String, Counters> entry : m_counters.entrySet())
+		{
+			rv.put(entry.getKey(), value.applyAsLong(entry.getValue()));
+		}
+		return rv;
+	}
+
+	@Override
+	public Map<String, Long> getDeliveries()
+	{
+		return collect(c -> c.deliveries.sum());
+	}
+
+	@Override
+	public Map<String, Long> getBytes()
+	{
+		return collect(c -> c.bytes.sum());
+	}
+
+	@Override
+	public Map<String, Long> getSendfileDeliveries()
+	{
+		return collect(c -> c.sendfile.sum());
+	}
+
+	@Override
+	public Map<String, Long> getMeanStreamMillis()
+	{
+		return collect(c -> {
+			long streamed = c.streamed.sum();
+			return streamed == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(c.streamNanos.sum() / streamed);
+		});
+	}
+
+	@Override
+	public Map<String, Long> getStreamBytesPerSecond()
+	{
+		return collect(c -> {
+			long nanos = c.streamNanos.sum();
+			return nanos == 0 ? 0 : (long) (c.streamedBytes.sum() * (double) TimeUnit.SECONDS.toNanos(1) / nanos);
+		});
+	}
+
+	@Override
+	public void reset()
+	{
+		m_counters.clear();
+	}
+
+	/**
+	 * Make the statistics available through the platform MBean server.
+	 */
+	public void register()
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name))
+			{
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+			m_registeredName = name;
+		}
+		catch (JMException e)
+		{
+			log.warn("Failed to register content delivery statistics: {}", e.toString());
+		}
+	}
+
+	public void unregister()
+	{
+		if (m_registeredName == null) return;
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(m_registeredName);
+		}
+		catch (JMException e)
+		{
+			log.debug("Failed to unregister content delivery statistics: {}", e.toString());
+		}
+		m_registeredName = null;
+	}
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl;
+
+import java.util.Map;
+
+/**
+ * Management view of how resource bodies are delivered by the access handler, keyed by MIME type.
+ */
+public interface ContentDeliveryStatsMXBean
+{
+	/**
+	 * @return the number of bodies (or ranges of bodies) delivered.
+	 */
+	Map<String, Long> getDeliveries();
+
+	/**
+	 * @return the number of bytes delivered.
+	 */
+	Map<String, Long> getBytes();
+
+	/**
+	 * @return the number of deliveries handed to the container to send from the file.
+	 */
+	Map<String, Long> getSendfileDeliveries();
+
+	/**
+	 * @return the mean time in milliseconds a request thread spent streaming a body, not counting sendfile deliveries.
+	 */
+	Map<String, Long> getMeanStreamMillis();
+
+	/**
+	 * @return the rate request threads streamed bodies at, in bytes per second, not counting sendfile deliveries.
+	 */
+	Map<String, Long> getStreamBytesPerSecond();
+
+	/**
+	 * Start counting again.
+	 */
+	void reset();
+}
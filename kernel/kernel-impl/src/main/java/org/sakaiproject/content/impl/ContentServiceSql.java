@@ -206,4 +206,65 @@ public interface ContentServiceSql
 	 */
 	String getSelectByResourceTypeQuerySql();
 
+	/**
+	 * returns the sql statement which finds the stored body with a hash, giving FILE_PATH and FILE_SIZE.
+	 */
+	String getBodyStoreSelectByHashSql();
+
+	/**
+	 * returns the sql statement which adds a reference to a stored body that is still referenced, by FILE_PATH.
+	 */
+	String getBodyStoreAddReferenceSql();
+
+	/**
+	 * returns the sql statement which records a stored body: FILE_PATH, BODY_HASH, FILE_SIZE and REF_COUNT.
+	 */
+	String getBodyStoreInsertSql();
+
+	/**
+	 * returns the sql statement which removes a reference to a stored body, by FILE_PATH.
+	 */
+	String getBodyStoreReleaseSql();
+
+	/**
+	 * returns the sql statement which forgets a stored body once nothing references it, by FILE_PATH.
+	 */
+	String getBodyStoreDeleteUnreferencedSql();
+
+	/**
+	 * returns the sql statement which counts the stored bodies, their bytes, the references to them and the bytes referenced.
+	 */
+	String getBodyStoreStatisticsSql();
+
+	/**
+	 * returns the sql statement which retrieves the FILE_SIZE of a resource by RESOURCE_ID.
+	 */
+	String getResourceFileSizeSql(String table);
+
+	/**
+	 * returns the sql statement which retrieves the total number of bytes of the resources within a collection (IN_COLLECTION like ?).
+	 */
+	String getCollectionBodySizeSql();
+
+	/**
+	 * returns the sql statement which reads the counted RESOURCE_COUNT, COLLECTION_COUNT and BODY_BYTES of a collection.
+	 */
+	String getCollectionSizeSelectSql();
+
+	/**
+	 * returns the sql statement which records the counts of a collection: COLLECTION_ID, RESOURCE_COUNT, COLLECTION_COUNT and BODY_BYTES.
+	 */
+	String getCollectionSizeInsertSql();
+
+	/**
+	 * returns the sql statement which adds to the counts of a number of collections: the resources, collections and bytes
+	 * to add followed by the COLLECTION_IDs.
+	 */
+	String getCollectionSizeUpdateSql(int collections);
+
+	/**
+	 * returns the sql statement which discards the counts of collections with COLLECTION_ID like ?.
+	 */
+	String getCollectionSizeDeleteSql();
+
 }
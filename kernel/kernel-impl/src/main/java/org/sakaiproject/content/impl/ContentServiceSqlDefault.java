@@ -321,4 +321,71 @@ public class ContentServiceSqlDefault implements ContentServiceSql
 	    return "select SUM(FILE_SIZE) from CONTENT_RESOURCE where IN_COLLECTION LIKE ? and not exists (select 1 from SAKAI_USER_ID_MAP where USER_ID = substr(in_collection,length(?)+1,instr(substr(in_collection,length(?)+1),'/')-1))";
 	}
 
+	public String getBodyStoreSelectByHashSql()
+	{
+		return "select FILE_PATH, FILE_SIZE from CONTENT_BODY_STORE where BODY_HASH = ?";
+	}
+
+	public String getBodyStoreAddReferenceSql()
+	{
+		return "update CONTENT_BODY_STORE set REF_COUNT = REF_COUNT + 1 where FILE_PATH = ? and REF_COUNT > 0";
+	}
+
+	public String getBodyStoreInsertSql()
+	{
+		return "insert into CONTENT_BODY_STORE (FILE_PATH, BODY_HASH, FILE_SIZE, REF_COUNT) values (?, ?, ?, ?)";
+	}
+
+	public String getBodyStoreReleaseSql()
+	{
+		return "update CONTENT_BODY_STORE set REF_COUNT = REF_COUNT - 1 where FILE_PATH = ?";
+	}
+
+	public String getBodyStoreDeleteUnreferencedSql()
+	{
+		return "delete from CONTENT_BODY_STORE where FILE_PATH = ? and REF_COUNT <= 0";
+	}
+
+	public String getBodyStoreStatisticsSql()
+	{
+		return "select count(*), SUM(FILE_SIZE), SUM(REF_COUNT), SUM(FILE_SIZE * REF_COUNT) from CONTENT_BODY_STORE";
+	}
+
+
+	public String getResourceFileSizeSql(String table)
+	{
+		return "select FILE_SIZE from " + table + " where RESOURCE_ID = ?";
+	}
+
+	public String getCollectionBodySizeSql()
+	{
+		return "select SUM(FILE_SIZE) from CONTENT_RESOURCE where IN_COLLECTION like ?";
+	}
+
+	public String getCollectionSizeSelectSql()
+	{
+		return "select RESOURCE_COUNT, COLLECTION_COUNT, BODY_BYTES from CONTENT_COLLECTION_SIZE where COLLECTION_ID = ?";
+	}
+
+	public String getCollectionSizeInsertSql()
+	{
+		return "insert into CONTENT_COLLECTION_SIZE (COLLECTION_ID, RESOURCE_COUNT, COLLECTION_COUNT, BODY_BYTES) values (?, ?, ?, ?)";
+	}
+
+	public String getCollectionSizeUpdateSql(int collections)
+	{
+		StringBuilder sql = new StringBuilder(
+				"update CONTENT_COLLECTION_SIZE set RESOURCE_COUNT = RESOURCE_COUNT + ?, COLLECTION_COUNT = COLLECTION_COUNT + ?, BODY_BYTES = BODY_BYTES + ? where COLLECTION_ID in (");
+		for (int i = 0; i < collections; i++)
+		{
+			sql.append(i == 0 ? "?" : ", ?");
+		}
+		return sql.append(")").toString();
+	}
+
+	public String getCollectionSizeDeleteSql()
+	{
+		return "delete from CONTENT_COLLECTION_SIZE where COLLECTION_ID like ?";
+	}
+
 }
@@ -24,9 +24,12 @@ package org.sakaiproject.content.impl;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.sql.Blob;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -42,6 +45,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -63,6 +67,7 @@ import org.sakaiproject.content.api.Lock;
 import org.sakaiproject.content.api.LockManager;
 import org.sakaiproject.content.impl.serialize.impl.conversion.Type1BlobCollectionConversionHandler;
 import org.sakaiproject.db.api.SqlReader;
+import org.sakaiproject.db.api.SqlRecordHandler;
 import org.sakaiproject.db.api.SqlService;
 import org.sakaiproject.entity.api.Entity;
 import org.sakaiproject.entity.api.ResourceProperties;
@@ -166,6 +171,9 @@ public class DbContentService extends BaseContentService
     /** The chunk size used when streaming (100k). */
     protected static final int STREAM_BUFFER_SIZE = 102400;
 
+    /** The most resources read at once when walking every resource under a collection. */
+    protected static final int FLAT_RESOURCE_PAGE_SIZE = 500;
+
     /** Property name used in sakai.properties to turn on/off Content Hosting Handler support */
     private static final String CHH_ENABLE_FLAG = "content.useCHH";
 
@@ -200,6 +208,16 @@ public class DbContentService extends BaseContentService
         this.fileSystemHandler = fileSystemHandler;
     }
 
+    /**
+     * Reference counts for body files shared between resources, null unless content.dedup is set.
+     */
+    protected ContentBodyStore m_bodyStore = null;
+
+    /**
+     * Counts of what is within collections, null unless content.collectionSizes is set.
+     */
+    protected ContentCollectionSizes m_collectionSizes = null;
+
     /** Dependency: LockManager */
     protected LockManager m_lockManager = null;
 
@@ -399,6 +417,16 @@ public class DbContentService extends BaseContentService
                 m_sqlService.ddl(this.getClass().getClassLoader(), "sakai_content_delete");
             }
 
+            // keep counts of what is within collections rather than summing them for each quota check?
+            if (m_serverConfigurationService.getBoolean("content.collectionSizes", false))
+            {
+                if (m_autoDdl)
+                {
+                    m_sqlService.ddl(this.getClass().getClassLoader(), "sakai_content_collection_size");
+                }
+                m_collectionSizes = new ContentCollectionSizes(m_sqlService, contentServiceSql);
+            }
+
             // Check for the existence of the FILE_SIZE column
             filesizeColumnExists = filesizeColumnExists();
 
@@ -460,6 +488,25 @@ public class DbContentService extends BaseContentService
 
             super.init();
 
+            // share the files of identical bodies?
+            if (m_bodyPath != null && m_serverConfigurationService.getBoolean("content.dedup", false))
+            {
+                // a handler that names files by resource id would delete a shared body along with any resource using it
+                if (fileSystemHandler instanceof DefaultFileSystemHandler && !((DefaultFileSystemHandler) fileSystemHandler).isUseIdForFilePath())
+                {
+                    if (m_autoDdl)
+                    {
+                        m_sqlService.ddl(this.getClass().getClassLoader(), "sakai_content_body_store");
+                    }
+                    m_bodyStore = new ContentBodyStore(m_sqlService, contentServiceSql);
+                    m_bodyStore.register();
+                }
+                else
+                {
+                    log.warn("init(): content.dedup is only supported for files named by file path, bodies will not be shared: " + fileSystemHandler);
+                }
+            }
+
             // convert to filesystem storage?
             if (m_convertToFile)
             {
@@ -485,6 +532,18 @@ public class DbContentService extends BaseContentService
         //testResourceByTypePaging();
     }
 
+    /**
+     * Returns to uninitialized state.
+     */
+    public void destroy()
+    {
+        if (m_bodyStore != null)
+        {
+            m_bodyStore.unregister();
+        }
+        super.destroy();
+    }
+
     /**
      * Runs tests of the getResourcesOfType() method. Steps are:<br/>
      * 1) Add 26 site-level resource collections ("/group/site_A/" through "/group/site_Z/")
@@ -715,6 +774,15 @@ public class DbContentService extends BaseContentService
             wildcard = id + "/%";
         }
 
+        if (m_collectionSizes != null)
+        {
+            long[] sizes = m_collectionSizes.getSizes(wildcard.substring(0, wildcard.length() - 1));
+            if (sizes != null)
+            {
+                return (int) (sizes[0] + sizes[1]);
+            }
+        }
+
         int fileCount = countQuery(contentServiceSql.getNumContentResources1Sql(), wildcard);
         int folderCount = countQuery(contentServiceSql.getNumContentResources2Sql(), wildcard);
         return fileCount + folderCount;
@@ -1387,7 +1455,12 @@ public class DbContentService extends BaseContentService
                 }
                 else
                 {
-                    return (ContentCollectionEdit) m_collectionStore.putResource(id, null);
+                    ContentCollectionEdit edit = (ContentCollectionEdit) m_collectionStore.putResource(id, null);
+                    if (edit != null && m_collectionSizes != null)
+                    {
+                        m_collectionSizes.adjust(id, 0, 1, 0);
+                    }
+                    return edit;
                 }
             }
             finally
@@ -1512,6 +1585,11 @@ public class DbContentService extends BaseContentService
                         insertIndividualDropboxRecord(getIndividualDropboxId(edit.getId()));
                     }
                     m_collectionStore.removeResource(edit);
+                    if (m_collectionSizes != null)
+                    {
+                        m_collectionSizes.adjust(edit.getId(), 0, -1, 0);
+                        m_collectionSizes.clear(edit.getId());
+                    }
                 }
             }
             finally
@@ -1634,6 +1712,43 @@ public class DbContentService extends BaseContentService
             }
         }
 
+        /**
+         * Pass each resource under the collection to the handler a page at a time, rather than reading them all into a
+         * list. Each page is read and its connection given back before the handler sees it, so the handler can run its
+         * own queries (such as permission checks) without a second connection being held for the read.
+         */
+        public void forEachFlatResource(String collectionId, SqlRecordHandler<ContentResource> handler)
+        {
+            if (resolver != null)
+            {
+                // resources may come from content hosting handlers rather than the db
+                for (Object resource : getFlatResources(collectionId))
+                {
+                    if (!handler.handle((ContentResource) resource)) return;
+                }
+                return;
+            }
+            List<ContentResource> page = new ArrayList<>(FLAT_RESOURCE_PAGE_SIZE);
+            String afterId = null;
+            do
+            {
+                page.clear();
+                m_resourceStore.forEachResourceWhereLike("IN_COLLECTION", collectionId + "%", afterId, entity -> {
+                    page.add((ContentResource) entity);
+                    return page.size() < FLAT_RESOURCE_PAGE_SIZE;
+                });
+                for (ContentResource resource : page)
+                {
+                    if (!handler.handle(resource)) return;
+                }
+                if (!page.isEmpty())
+                {
+                    afterId = page.get(page.size() - 1).getId();
+                }
+            }
+            while (page.size() == FLAT_RESOURCE_PAGE_SIZE);
+        }
+
         public ContentResourceEdit putResource(String id)
         {
             if (id == null || id.trim().length() == 0)
@@ -1653,7 +1768,13 @@ public class DbContentService extends BaseContentService
                     {
                         insertIndividualDropboxRecord(getIndividualDropboxId(id));
                     }
-                    return (ContentResourceEdit) m_resourceStore.putResource(id, null);
+                    ContentResourceEdit edit = (ContentResourceEdit) m_resourceStore.putResource(id, null);
+                    if (edit != null && m_collectionSizes != null)
+                    {
+                        // the new resource is stored with no body
+                        m_collectionSizes.adjust(id, 1, 0, 0);
+                    }
+                    return edit;
                 }
             }
             finally
@@ -1796,6 +1917,30 @@ public class DbContentService extends BaseContentService
                     if (referenceResourceId == null) {
                         // normal handling (write the resource content data)
                         if (log.isDebugEnabled()) log.debug("Normal resource ("+redit.getId()+") body/contentStream storage");
+                        if (redit.m_sharedBody)
+                        {
+                            redit.m_sharedBody = false;
+                            if (redit.m_body != null || redit.m_contentStream != null)
+                            {
+                                // new content was set after the copy, the shared file is not ours to replace
+                                redit.m_filePath = null;
+                            }
+                            else if (!m_bodyStore.share(redit.m_filePath, redit.m_contentLength))
+                            {
+                                // the reference could not be recorded so give the copy a file of its own
+                                try
+                                {
+                                    redit.m_contentStream = fileSystemHandler.getInputStream(redit.m_id, m_bodyPath, redit.m_filePath);
+                                    redit.m_filePath = null;
+                                }
+                                catch (IOException e)
+                                {
+                                    log.error("IOException", e);
+                                    message += "from shared file " + redit.m_filePath;
+                                    ok = false;
+                                }
+                            }
+                        }
                         if (redit.m_body == null)
                         {
                             if (redit.m_contentStream == null)
@@ -1861,7 +2006,12 @@ public class DbContentService extends BaseContentService
                     {
                         insertIndividualDropboxRecord(getIndividualDropboxId(edit.getId()));
                     }
+                    long storedSize = (m_collectionSizes != null) ? getStoredFileSize(edit.getId()) : 0L;
                     m_resourceStore.commitResource(edit);
+                    if (m_collectionSizes != null)
+                    {
+                        m_collectionSizes.adjust(edit.getId(), 0, 0, edit.getContentLength() - storedSize);
+                    }
                 }
 
             }
@@ -2147,7 +2297,12 @@ public class DbContentService extends BaseContentService
 				   {
 					   insertIndividualDropboxRecord(getIndividualDropboxId(edit.getId()));
 				   }
+				   long storedSize = (m_collectionSizes != null) ? getStoredFileSize(edit.getId()) : 0L;
 				   m_resourceStore.removeResource(edit);
+				   if (m_collectionSizes != null)
+				   {
+					   m_collectionSizes.adjust(edit.getId(), -1, 0, -storedSize);
+				   }
 
 			   }
 		   }
@@ -2338,6 +2493,70 @@ public class DbContentService extends BaseContentService
         	return null;
         }
 
+        /**
+         * @param id
+         *        the resource id.
+         * @return the FILE_SIZE stored for the resource, which may differ from the size of an edit of it.
+         */
+        protected long getStoredFileSize(String id)
+        {
+            List<String> rv = m_sqlService.dbRead(contentServiceSql.getResourceFileSizeSql(m_resourceTableName), new Object[] { id }, null);
+            if (rv == null || rv.isEmpty() || rv.get(0) == null) return 0L;
+            try
+            {
+                return Long.parseLong(rv.get(0));
+            }
+            catch (NumberFormatException e)
+            {
+                log.warn("getStoredFileSize() unable to parse long from \"" + rv.get(0) + "\" for resource \"" + id + "\"");
+                return 0L;
+            }
+        }
+
+        /**
+         * Return the local file holding the body of the resource.
+         * 
+         * @param resource
+         * @return the file or null if the body is not kept in a local file
+         */
+        public File getLocalFile(ContentResource resource)
+        {
+            // as for getDirectLink, only resources read from this storage have a file path
+            if (m_bodyPath == null || resource instanceof WrappedContentResource || !(resource instanceof BaseResourceEdit)) {
+                return null;
+            }
+            BaseResourceEdit edit = (BaseResourceEdit) resource;
+            if (edit.m_body != null || edit.m_contentStream != null || edit.m_contentLength <= 0 || edit.m_filePath == null) {
+                return null;
+            }
+            File file = fileSystemHandler.getLocalFile(edit.m_id, m_bodyPath, edit.m_filePath);
+            return (file != null && file.isFile()) ? file : null;
+        }
+
+        /**
+         * Let the new resource use the body file of the source, the reference is added when the new resource is committed.
+         * 
+         * @param source
+         * @param edit
+         * @return true if the body will be shared, false if it must be copied
+         */
+        public boolean shareBody(ContentResource source, ContentResourceEdit edit)
+        {
+            if (m_bodyStore == null || source instanceof WrappedContentResource || !(source instanceof BaseResourceEdit)
+                    || edit instanceof WrappedContentResource || !(edit instanceof BaseResourceEdit)) {
+                return false;
+            }
+            BaseResourceEdit from = (BaseResourceEdit) source;
+            if (from.m_body != null || from.m_contentStream != null || from.m_contentLength <= 0 || from.m_filePath == null) {
+                return false;
+            }
+            BaseResourceEdit to = (BaseResourceEdit) edit;
+            to.m_filePath = from.m_filePath;
+            to.setContentLength(from.m_contentLength);
+            to.m_sharedBody = true;
+            return true;
+        }
+
         /**
          * Return an input stream.
          * 
@@ -2498,25 +2717,87 @@ public class DbContentService extends BaseContentService
          */
         private boolean putResourceBodyFilesystem(ContentResourceEdit resource, InputStream stream, String rootFolder)
         {
+            if (m_bodyStore != null && m_bodyPath.equals(rootFolder))
+            {
+                return putResourceBodyDeduplicated((BaseResourceEdit) resource, stream);
+            }
             try
             {
                 long byteCount = fileSystemHandler.saveInputStream(((BaseResourceEdit) resource).m_id, rootFolder, ((BaseResourceEdit) resource).m_filePath, stream);
-                resource.setContentLength(byteCount);
-                ResourcePropertiesEdit props = resource.getPropertiesEdit();
-                props.addProperty(ResourceProperties.PROP_CONTENT_LENGTH, Long.toString(byteCount));
-                if (resource.getContentType() != null)
+                setBodyLength(resource, byteCount);
+                return true;
+            }
+            catch (IOException e)
+            {
+                log.error("IOException", e);
+                return false;
+            }
+        }
+
+        /**
+         * Write the resource body to a new file, hashing it on the way, and use the file of a stored body with the same
+         * hash instead if there is one. The file the resource used before is released rather than written over, as other
+         * resources may be using it.
+         * 
+         * @param resource
+         * @param stream
+         * @return true if the resource body is written successfully, false otherwise.
+         */
+        private boolean putResourceBodyDeduplicated(BaseResourceEdit resource, InputStream stream)
+        {
+            String oldPath = resource.m_filePath;
+            // a new resource has a path allocated but no file there yet, so nothing to release
+            boolean hadBody = !resource.m_filePathUnwritten;
+            resource.setNewFilePath();
+            try
+            {
+                MessageDigest digest = ContentBodyStore.newDigest();
+                long byteCount = fileSystemHandler.saveInputStream(resource.m_id, m_bodyPath, resource.m_filePath,
+                        stream == null ? null : new DigestInputStream(stream, digest));
+                if (byteCount > 0)
+                {
+                    String hash = ContentBodyStore.toHex(digest.digest());
+                    String existing = m_bodyStore.addReference(hash, byteCount);
+                    if (existing == null && !m_bodyStore.register(resource.m_filePath, hash, byteCount))
+                    {
+                        // the same body was stored by another request while this one was written
+                        existing = m_bodyStore.addReference(hash, byteCount);
+                    }
+                    if (existing != null)
+                    {
+                        fileSystemHandler.delete(resource.m_id, m_bodyPath, resource.m_filePath);
+                        resource.m_filePath = existing;
+                    }
+                }
+                if (hadBody && oldPath != null && !oldPath.equals(resource.m_filePath) && m_bodyStore.release(oldPath))
                 {
-                    props.addProperty(ResourceProperties.PROP_CONTENT_TYPE, resource.getContentType());
+                    fileSystemHandler.delete(resource.m_id, m_bodyPath, oldPath);
                 }
+                resource.m_filePathUnwritten = false;
+                setBodyLength(resource, byteCount);
                 return true;
             }
             catch (IOException e)
             {
                 log.error("IOException", e);
+                fileSystemHandler.delete(resource.m_id, m_bodyPath, resource.m_filePath);
+                resource.m_filePath = oldPath;
+                resource.m_filePathUnwritten = !hadBody;
                 return false;
             }
         }
 
+        private void setBodyLength(ContentResourceEdit resource, long byteCount)
+        {
+            resource.setContentLength(byteCount);
+            ResourcePropertiesEdit props = resource.getPropertiesEdit();
+            props.addProperty(ResourceProperties.PROP_CONTENT_LENGTH, Long.toString(byteCount));
+            if (resource.getContentType() != null)
+            {
+                props.addProperty(ResourceProperties.PROP_CONTENT_TYPE, resource.getContentType());
+            }
+        }
+
         /**
          * Write the resource body to the external file system. The file name is the m_bodyPath with the resource id appended.
          * 
@@ -2564,6 +2845,12 @@ public class DbContentService extends BaseContentService
          */
         protected void delResourceBodyFilesystem(String rootFolder, ContentResourceEdit resource)
         {
+            String filePath = ((BaseResourceEdit) resource).m_filePath;
+            if (m_bodyStore != null && filePath != null && m_bodyPath.equals(rootFolder) && !m_bodyStore.release(filePath))
+            {
+                // other resources still use the file
+                return;
+            }
             fileSystemHandler.delete(((BaseResourceEdit) resource).m_id, rootFolder, ((BaseResourceEdit) resource).m_filePath);
         }
 
@@ -2862,7 +3149,8 @@ public class DbContentService extends BaseContentService
 
             // read content_resource records that have null file path
             String sql = contentServiceSql.getResourceIdXmlSql();
-            m_sqlService.dbRead(sql, null, new SqlReader()
+            // walk the whole table a fetch at a time, the reader writes each record out and keeps nothing
+            m_sqlService.dbReadEach(sql, null, 0, new SqlReader()
             {
                 public Object readSqlResultRecord(ResultSet result)
                 {
@@ -3049,7 +3337,7 @@ public class DbContentService extends BaseContentService
                         return null;
                     }
                 }
-            });
+            }, record -> true);
 
             connection.commit();
 
@@ -3123,6 +3411,12 @@ public class DbContentService extends BaseContentService
         return m_storage.getFlatResources(parentId);
     }
 
+    @Override
+    protected void forEachFlatResource(String parentId, Predicate<ContentResource> handler)
+    {
+        ((DbStorage) m_storage).forEachFlatResource(parentId, handler::test);
+    }
+
     public ContentHostingHandlerResolverImpl getContentHostingHandlerResolver()
     {
         return contentHostingHandlerResolver;
@@ -3198,10 +3492,10 @@ public class DbContentService extends BaseContentService
     public void populateNewColumns()
     {
         String sql1 = contentServiceSql.getAccessResourceIdAndXmlSql(m_resourceTableName);
-        m_sqlService.dbRead(sql1, null, new ContextAndFilesizeReader(m_resourceTableName));
+        m_sqlService.dbReadEach(sql1, null, 0, new ContextAndFilesizeReader(m_resourceTableName), record -> true);
 
         String sql2 = contentServiceSql.getAccessResourceIdAndXmlSql(m_resourceDeleteTableName);
-        m_sqlService.dbRead(sql2, null, new ContextAndFilesizeReader(m_resourceDeleteTableName));
+        m_sqlService.dbReadEach(sql2, null, 0, new ContextAndFilesizeReader(m_resourceDeleteTableName), record -> true);
     }
 
 
@@ -3345,6 +3639,16 @@ public class DbContentService extends BaseContentService
     {
         long size = 0L;
 
+        if (m_collectionSizes != null)
+        {
+            String collectionId = getContextCollectionId(context);
+            long[] sizes = (collectionId == null) ? null : m_collectionSizes.getSizes(collectionId);
+            if (sizes != null)
+            {
+                return sizes[2];
+            }
+        }
+
 	String sql = contentServiceSql.getQuotaQuerySql();
 	Object [] fields = new Object[] {context.startsWith(COLLECTION_DROPBOX)?context+"%":context};
 	if (context.startsWith(COLLECTION_DROPBOX)) {
@@ -3375,6 +3679,36 @@ public class DbContentService extends BaseContentService
         return size;
     }
 
+    /**
+     * @return the collection holding the resources of a context, or null if the context's size is not simply the size of
+     *         a collection (the root of a dropbox does not include the users' folders).
+     */
+    private String getContextCollectionId(String context)
+    {
+        if (context.startsWith(COLLECTION_DROPBOX))
+        {
+            return (context.split(Entity.SEPARATOR).length == 4) ? context : null;
+        }
+        if (context.startsWith("~"))
+        {
+            return COLLECTION_USER + context.substring(1) + Entity.SEPARATOR;
+        }
+        return COLLECTION_SITE + context + Entity.SEPARATOR;
+    }
+
+    /**
+     * Discard the counts kept for a collection and the collections within it, so they are counted again from their members.
+     * 
+     * @param collectionId
+     *        the collection id, or null for all collections.
+     */
+    public void recountCollectionSizes(String collectionId)
+    {
+        if (m_collectionSizes == null) return;
+        m_collectionSizes.clear(collectionId);
+        log.info("recountCollectionSizes(): discarded counts for " + (collectionId == null ? "all collections" : collectionId));
+    }
+
     /**
      * @throws Exception 
      * 
@@ -47,6 +47,13 @@ public class DefaultFileSystemHandler implements FileSystemHandler {
         this.useIdForFilePath = useIdForFilePath;
     }
 
+    /**
+     * @return true if files are named by the resource id rather than the file path.
+     */
+    public boolean isUseIdForFilePath() {
+        return useIdForFilePath;
+    }
+
     /**
      * A Helper method to get the File object for the parameters.
      * This method will look at the property useIdForFilePath to see if the
@@ -111,4 +118,9 @@ public class DefaultFileSystemHandler implements FileSystemHandler {
 	public URI getAssetDirectLink(String id, String root, String filePath) throws IOException {
 		return null;
 	}
+
+	@Override
+	public File getLocalFile(String id, String root, String filePath) {
+		return getFile(id, root, filePath);
+	}
 }
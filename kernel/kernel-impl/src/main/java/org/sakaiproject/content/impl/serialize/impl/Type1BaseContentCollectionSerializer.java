@@ -33,6 +33,7 @@ import java.util.Vector;
 import org.sakaiproject.content.api.ResourceType;
 import org.sakaiproject.content.api.GroupAwareEntity.AccessMode;
 import org.sakaiproject.content.impl.serialize.api.SerializableCollectionAccess;
+import org.sakaiproject.entity.api.serialize.DataStreamEntitySerializer;
 import org.sakaiproject.entity.api.serialize.EntityParseException;
 import org.sakaiproject.entity.api.serialize.EntitySerializer;
 import org.sakaiproject.entity.api.serialize.SerializableEntity;
@@ -102,7 +103,7 @@ public class Type1BaseContentCollectionSerializer implements EntitySerializer
 
 	public static final int BLOCK_END = 2;
 	
-	private Type1BaseResourcePropertiesSerializer baseResourcePropertiesSerializer = new Type1BaseResourcePropertiesSerializer();
+	private DataStreamEntitySerializer baseResourcePropertiesSerializer = new Type1BaseResourcePropertiesSerializer();
 
 	private TimeService timeService;
 
@@ -295,6 +296,17 @@ public class Type1BaseContentCollectionSerializer implements EntitySerializer
 		this.timeService = timeService;
 	}
 
+	/**
+	 * The serializer for the properties block. Both the type 1 and type 2 properties serializers read either type, so this
+	 * only decides what is written.
+	 * 
+	 * @param baseResourcePropertiesSerializer the properties serializer to set
+	 */
+	public void setBaseResourcePropertiesSerializer(DataStreamEntitySerializer baseResourcePropertiesSerializer)
+	{
+		this.baseResourcePropertiesSerializer = baseResourcePropertiesSerializer;
+	}
+
 	private void doParse(SerializableCollectionAccess sc, DataInputStream ds)
 			throws EntityParseException, IOException
 	{
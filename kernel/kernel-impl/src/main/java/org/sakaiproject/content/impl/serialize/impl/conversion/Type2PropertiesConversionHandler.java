@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl.serialize.impl.conversion;
+
+import java.sql.Blob;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.sakaiproject.util.conversion.SchemaConversionHandler;
+import org.sakaiproject.util.serialize.Type2BaseResourcePropertiesSerializer;
+
+/**
+ * Rewrites a BINARY_ENTITY so its properties are in the type 2 format, which can be decoded a property at a time. The
+ * rest of the entity is written exactly as it was read. Entities that are already type 2 are written again unchanged,
+ * so the conversion can be rerun safely.
+ */
+@Slf4j
+public abstract class Type2PropertiesConversionHandler implements SchemaConversionHandler
+{
+	protected final Type2BaseResourcePropertiesSerializer propertiesSerializer = new Type2BaseResourcePropertiesSerializer(true);
+
+	/**
+	 * Parse the entity and serialize it again with type 2 properties.
+	 */
+	protected abstract byte[] reserialize(byte[] source) throws Exception;
+
+	/**
+	 * Parse both entities and check they are the same.
+	 */
+	protected abstract void check(byte[] source, byte[] result) throws Exception;
+
+	/**
+	 * @see org.sakaiproject.util.conversion.SchemaConversionHandler#getSource(java.lang.String, java.sql.ResultSet)
+	 */
+	public Object getSource(String id, ResultSet rs) throws SQLException
+	{
+		return getBytes(id, rs);
+	}
+
+	/**
+	 * @see org.sakaiproject.util.conversion.SchemaConversionHandler#convertSource(java.lang.String, java.lang.Object,
+	 *      java.sql.PreparedStatement)
+	 */
+	public boolean convertSource(String id, Object source, PreparedStatement updateRecord) throws SQLException
+	{
+		try
+		{
+			byte[] result = reserialize((byte[]) source);
+			check((byte[]) source, result);
+			updateRecord.setBytes(1, result);
+			updateRecord.setString(2, id);
+			return true;
+		}
+		catch (Exception e)
+		{
+			log.warn("Failed to process record " + id, e);
+		}
+		return false;
+	}
+
+	/**
+	 * @see org.sakaiproject.util.conversion.SchemaConversionHandler#validate(java.lang.String, java.lang.Object, java.lang.Object)
+	 */
+	public void validate(String id, Object source, Object result) throws Exception
+	{
+		check((byte[]) source, (byte[]) result);
+	}
+
+	/**
+	 * @see org.sakaiproject.util.conversion.SchemaConversionHandler#getValidateSource(java.lang.String, java.sql.ResultSet)
+	 */
+	public Object getValidateSource(String id, ResultSet rs) throws SQLException
+	{
+		return getBytes(id, rs);
+	}
+
+	private byte[] getBytes(String id, ResultSet rs) throws SQLException
+	{
+		ResultSetMetaData metadata = rs.getMetaData();
+		byte[] rv = null;
+		switch (metadata.getColumnType(1))
+		{
+			case Types.BLOB:
+				Blob blob = rs.getBlob(1);
+				if (blob != null)
+				{
+					rv = blob.getBytes(1L, (int) blob.length());
+				}
+				break;
+			case Types.BINARY:
+			case Types.VARBINARY:
+			case Types.LONGVARBINARY:
+				rv = rs.getBytes(1);
+				break;
+			default:
+				log.warn("Unexpected column type for BINARY_ENTITY of " + id);
+		}
+		return rv;
+	}
+}
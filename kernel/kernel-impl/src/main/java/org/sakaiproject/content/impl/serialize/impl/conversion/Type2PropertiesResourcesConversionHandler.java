@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl.serialize.impl.conversion;
+
+import org.sakaiproject.content.impl.serialize.impl.Type1BaseContentResourceSerializer;
+
+/**
+ * Converts the properties of CONTENT_RESOURCE binary entities to type 2.
+ */
+public class Type2PropertiesResourcesConversionHandler extends Type2PropertiesConversionHandler
+{
+	private Type1BaseContentResourceSerializer newSerializer(boolean type2)
+	{
+		Type1BaseContentResourceSerializer serializer = new Type1BaseContentResourceSerializer();
+		serializer.setTimeService(new ConversionTimeService());
+		if (type2)
+		{
+			serializer.setBaseResourcePropertiesSerializer(propertiesSerializer);
+		}
+		return serializer;
+	}
+
+	protected byte[] reserialize(byte[] source) throws Exception
+	{
+		SAXSerializableResourceAccess entity = new SAXSerializableResourceAccess();
+		newSerializer(false).parse(entity, source);
+		return newSerializer(true).serialize(entity);
+	}
+
+	protected void check(byte[] source, byte[] result) throws Exception
+	{
+		SAXSerializableResourceAccess sourceEntity = new SAXSerializableResourceAccess();
+		SAXSerializableResourceAccess resultEntity = new SAXSerializableResourceAccess();
+		Type1BaseContentResourceSerializer serializer = newSerializer(false);
+		serializer.parse(sourceEntity, source);
+		serializer.parse(resultEntity, result);
+		sourceEntity.check(resultEntity);
+	}
+}
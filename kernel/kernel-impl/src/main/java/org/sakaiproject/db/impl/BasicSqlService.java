@@ -54,6 +54,7 @@ import lombok.extern.slf4j.Slf4j;
 
 import org.sakaiproject.db.api.SqlReader;
 import org.sakaiproject.db.api.SqlReaderFinishedException;
+import org.sakaiproject.db.api.SqlRecordHandler;
 import org.sakaiproject.db.api.SqlService;
 import org.sakaiproject.db.api.SqlServiceDeadlockException;
 import org.sakaiproject.db.api.SqlServiceUniqueViolationException;
@@ -162,6 +163,45 @@ public abstract class BasicSqlService implements SqlService
 	/** Configuration: number of on-deadlock retries for save. */
 	protected int m_deadlockRetries = 5;
 
+	/** Configuration: the number of records dbReadEach() fetches at a time, unless told otherwise. */
+	protected int m_fetchSize = 500;
+
+	/**
+	 * Configuration: the number of records dbReadEach() fetches at a time, unless told otherwise.
+	 * 
+	 * @param value
+	 *        the fetch size.
+	 */
+	public void setFetchSize(String value)
+	{
+		m_fetchSize = Integer.parseInt(value);
+	}
+
+	/** Counts of records read and statement timings, published as an MXBean. */
+	protected final SqlServiceStats m_stats = new SqlServiceStats();
+
+	/**
+	 * Configuration: to time each statement or not.
+	 * 
+	 * @param value
+	 *        the statementTiming setting.
+	 */
+	public void setStatementTiming(String value)
+	{
+		m_stats.setStatementTiming(Boolean.valueOf(value).booleanValue());
+	}
+
+	/**
+	 * Configuration: the time in milliseconds above which statements are logged as slow.
+	 * 
+	 * @param value
+	 *        the slow query time.
+	 */
+	public void setSlowQueryMillis(String value)
+	{
+		m_stats.setSlowQueryMillis(Long.parseLong(value));
+	}
+
 	/**
 	 * Configuration: number of on-deadlock retries for save.
 	 * 
@@ -231,7 +271,9 @@ public abstract class BasicSqlService implements SqlService
 			ddl(getClass().getClassLoader(), "sakai_locks");
 		}
 
-		log.info("init(): vendor: " + m_vendor + " autoDDL: " + m_autoDdl + " deadlockRetries: " + m_deadlockRetries);
+		m_stats.register();
+
+		log.info("init(): vendor: " + m_vendor + " autoDDL: " + m_autoDdl + " deadlockRetries: " + m_deadlockRetries + " fetchSize: " + m_fetchSize);
 	}
 
 	/**
@@ -239,6 +281,7 @@ public abstract class BasicSqlService implements SqlService
 	 */
 	public void destroy()
 	{
+		m_stats.unregister();
 		log.info("destroy()");
 	}
 
@@ -484,6 +527,54 @@ public abstract class BasicSqlService implements SqlService
 	 * @return The List of things read, one per record.
 	 */
 	public List dbRead(Connection callerConn, String sql, Object[] fields, SqlReader reader)
+	{
+		List rv = new Vector();
+		readRecords(callerConn, sql, fields, 0, reader, rv::add);
+		m_stats.listRead(sql, rv.size());
+		return rv;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public <T> int dbReadEach(String sql, Object[] fields, int fetchSize, SqlReader<T> reader, SqlRecordHandler<? super T> handler)
+	{
+		return dbReadEach(null, sql, fields, fetchSize, reader, handler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public <T> int dbReadEach(Connection callerConn, String sql, Object[] fields, int fetchSize, SqlReader<T> reader,
+			SqlRecordHandler<? super T> handler)
+	{
+		int[] handled = new int[1];
+		boolean finished = readRecords(callerConn, sql, fields, (fetchSize > 0) ? fetchSize : m_fetchSize, reader, record -> {
+			handled[0]++;
+			return handler.handle((T) record);
+		});
+		m_stats.streamRead(handled[0], !finished);
+		return handled[0];
+	}
+
+	/**
+	 * Process a query, filling in with fields, and pass each record read to the handler, as described for dbRead() and dbReadEach().
+	 * 
+	 * @param callerConn
+	 *        The db connection object to use (if not null).
+	 * @param sql
+	 *        The sql statement.
+	 * @param fields
+	 *        The array of fields for parameters.
+	 * @param fetchSize
+	 *        The number of records for the driver to fetch at a time, 0 to leave the driver's default.
+	 * @param reader
+	 *        The reader object to read each record.
+	 * @param handler
+	 *        The handler given each thing read.
+	 * @return false if reading was stopped by the reader or the handler before the last record.
+	 */
+	protected boolean readRecords(Connection callerConn, String sql, Object[] fields, int fetchSize, SqlReader reader, SqlRecordHandler handler)
 	{
 		// check for a transaction conncetion
 		if (callerConn == null)
@@ -524,7 +615,11 @@ public abstract class BasicSqlService implements SqlService
 		PreparedStatement pstmt = null;
 		ResultSet result = null;
 		ResultSetMetaData meta = null;
-		List rv = new Vector();
+		boolean finished = true;
+		long timingStart = System.nanoTime();
+		long connectionNanos = 0;
+		int rows = 0;
+		boolean failed = false;
 
         try {
             if (m_showSql) {
@@ -536,6 +631,7 @@ public abstract class BasicSqlService implements SqlService
                 conn = callerConn;
             } else {
                 conn = borrowConnection();
+                connectionNanos = System.nanoTime() - timingStart;
                 threadLocalManager().set(TRANSACTION_CONNECTION, conn);
             }
             if (m_showSql) {
@@ -545,6 +641,9 @@ public abstract class BasicSqlService implements SqlService
                 start = System.currentTimeMillis();
             }
             pstmt = conn.prepareStatement(sql);
+            if (fetchSize > 0) {
+                pstmt.setFetchSize(fetchSize);
+            }
 
             // put in all the fields
             prepareStatement(pstmt, fields);
@@ -559,6 +658,7 @@ public abstract class BasicSqlService implements SqlService
             }
 
             while (result.next()) {
+                rows++;
                 if (m_showSql) {
                     count++;
                 }
@@ -574,24 +674,29 @@ public abstract class BasicSqlService implements SqlService
                     } else {
                         s = result.getString(1);
                     }
-                    if (s != null) {
-                        rv.add(s);
+                    if (s != null && !handler.handle(s)) {
+                        finished = false;
+                        break;
                     }
                 } else {
                     try {
                         Object obj = reader.readSqlResultRecord(result);
-                        if (obj != null) {
-                            rv.add(obj);
+                        if (obj != null && !handler.handle(obj)) {
+                            finished = false;
+                            break;
                         }
                     } catch (SqlReaderFinishedException e) {
+                        finished = false;
                         break;
                     }
                 }
 
             }
         } catch (SQLException e) {
+            failed = true;
             log.warn("Sql.dbRead: sql: " + sql + debugFields(fields), e);
         } catch (UnsupportedEncodingException e) {
+            failed = true;
             log.warn("Sql.dbRead: sql: " + sql + debugFields(fields), e);
         } finally {
             if (m_showSql) {
@@ -630,9 +735,11 @@ public abstract class BasicSqlService implements SqlService
 
         }
 
+		m_stats.statement(sql, fields, System.nanoTime() - timingStart, connectionNanos, rows, failed);
+
 		if (m_showSql) debug("Sql.dbRead: time: " + connectionTime + " / " + stmtTime + " / " + resultsTime + " #: " + count, sql, fields);
 
-		return rv;
+		return finished;
 	}
 
 	/**
@@ -1167,6 +1274,7 @@ public abstract class BasicSqlService implements SqlService
 	{
 		boolean success = false;
 		PreparedStatement pstmt = null;
+		long timingStart = System.nanoTime();
 
 		try
 		{
@@ -1189,6 +1297,7 @@ public abstract class BasicSqlService implements SqlService
 		}
 		finally
 		{
+			m_stats.statement(sql, null, System.nanoTime() - timingStart, 0, fieldsList.size(), !success);
 			try
 			{
 				pstmt.close();
@@ -1256,6 +1365,8 @@ public abstract class BasicSqlService implements SqlService
 		boolean resetAutoCommit = false;
 
 		boolean success = false;
+		long timingStart = System.nanoTime();
+		long connectionNanos = 0;
 
 		try
 		{
@@ -1267,6 +1378,7 @@ public abstract class BasicSqlService implements SqlService
 			{
 				if (m_showSql) start = System.currentTimeMillis();
 				conn = borrowConnection();
+				connectionNanos = System.nanoTime() - timingStart;
 				if (m_showSql) connectionTime = System.currentTimeMillis() - start;
 
 				// make sure we have do not have auto commit - will change and reset if needed
@@ -1350,6 +1462,7 @@ public abstract class BasicSqlService implements SqlService
 		}
 		finally
 		{
+			m_stats.statement(sql, fields, System.nanoTime() - timingStart, connectionNanos, Math.max(retval, 0), !success);
 			try
 			{
 				if (null != pstmt) pstmt.close();
@@ -1455,6 +1568,8 @@ public abstract class BasicSqlService implements SqlService
 		boolean resetAutoCommit = false;
 
 		boolean success = false;
+		long timingStart = System.nanoTime();
+		long connectionNanos = 0;
 		Long rv = null;
 
 		try
@@ -1467,6 +1582,7 @@ public abstract class BasicSqlService implements SqlService
 			{
 				if (m_showSql) start = System.currentTimeMillis();
 				conn = borrowConnection();
+				connectionNanos = System.nanoTime() - timingStart;
 				if (m_showSql) connectionTime = System.currentTimeMillis() - start;
 
 				// make sure we have do not have auto commit - will change and reset if needed
@@ -1547,6 +1663,7 @@ public abstract class BasicSqlService implements SqlService
 		}
 		finally
 		{
+			m_stats.statement(sql, fields, System.nanoTime() - timingStart, connectionNanos, success ? 1 : 0, !success);
 			try
 			{
 				if (null != pstmt) pstmt.close();
@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.db.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A fixed size histogram of latencies in microseconds, recorded without locking. Values are counted in buckets that
+ * split each power of two into eight, so a percentile is reported to within an eighth of its true value, from 1
+ * microsecond up to several days.
+ * </p>
+ */
+public class LatencyHistogram
+{
+	/** each power of two is split into 2^SUB_BITS buckets */
+	private static final int SUB_BITS = 3;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	/** values of 2^MAX_BITS microseconds (about 9 days) or more are counted in the last bucket */
+	private static final int MAX_BITS = 40;
+
+	private static final int BUCKETS = (MAX_BITS - SUB_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray m_counts = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * Count one value.
+	 */
+	public void record(long micros)
+	{
+		m_counts.incrementAndGet(index(micros));
+	}
+
+	/**
+	 * @return the value at or below which the fraction of the recorded values lie, rounded up to the top of its bucket,
+	 *         or 0 if nothing is recorded.
+	 */
+	public long getPercentile(double fraction)
+	{
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			counts[i] = m_counts.get(i);
+			total += counts[i];
+		}
+		if (total == 0) return 0;
+
+		long rank = (long) Math.ceil(fraction * total);
+		if (rank < 1) rank = 1;
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			seen += counts[i];
+			if (seen >= rank) return highestValue(i);
+		}
+		return highestValue(BUCKETS - 1);
+	}
+
+	static int index(long micros)
+	{
+		if (micros < SUB_BUCKETS) return (int) Math.max(0, micros);
+		int msb = 63 - Long.numberOfLeadingZeros(micros);
+		if (msb >= MAX_BITS) return BUCKETS - 1;
+		int shift = msb - SUB_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) ((micros >>> shift) - SUB_BUCKETS);
+	}
+
+	static long highestValue(int index)
+	{
+		if (index < SUB_BUCKETS) return index;
+		int shift = index / SUB_BUCKETS - 1;
+		long top = (index % SUB_BUCKETS) + SUB_BUCKETS;
+		return ((top + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,424 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.db.impl;
+
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>
+ * Counts the records read through the SqlService, separating those collected into a List by dbRead() from those
+ * streamed by dbReadEach(), so the queries that hold large results on the heap can be found.
+ * </p>
+ * <p>
+ * Also times each statement, keyed by its sql with literals and IN lists reduced to placeholders: the count, errors,
+ * rows, latency percentiles and time spent waiting for a connection. Statements slower than the slow query threshold
+ * are logged with their bind values, at most once a minute for each statement, and the latest are kept for JMX.
+ * </p>
+ */
+@Slf4j
+public class SqlServiceStats implements SqlServiceStatsMXBean
+{
+	public static final String OBJECT_NAME = "org.sakaiproject:type=SqlService";
+
+	private final LongAdder m_listReads = new LongAdder();
+	private final LongAdder m_listRecords = new LongAdder();
+	private final LongAdder m_streamedReads = new LongAdder();
+	private final LongAdder m_streamedRecords = new LongAdder();
+	private final LongAdder m_stoppedEarly = new LongAdder();
+
+	/** the largest List returned, and the sql that returned it, guarded by this */
+	private long m_maxListRecords = 0;
+	private String m_maxListRecordsSql = null;
+
+	private ObjectName m_registeredName = null;
+
+	/** at most this many statements are timed separately, the rest are timed together as OTHER */
+	private static final int MAX_STATEMENTS = 500;
+
+	/** at most this many sql strings are remembered with their statement, the rest are normalized each time */
+	private static final int MAX_SQL = 5000;
+
+	private static final String OTHER = "other";
+
+	private static final int TOP_STATEMENTS = 50;
+
+	private static final int SLOW_QUERIES = 100;
+
+	private static final int MAX_BIND_LENGTH = 100;
+
+	private static final int MAX_BINDS_LENGTH = 1000;
+
+	private static final long SLOW_QUERY_SAMPLE_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+
+	private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+
+	private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+
+	private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	private volatile boolean m_statementTiming = true;
+
+	private volatile long m_slowQueryMillis = 1000;
+
+	/** timings by normalized sql */
+	private final Map<String, Timings> m_timings = new ConcurrentHashMap<>();
+
+	/** timings by the sql as given */
+	private final Map<String, Timings> m_timingsBySql = new ConcurrentHashMap<>();
+
+	/** the latest slow queries, guarded by itself */
+	private final Deque<String> m_slowQueries = new ArrayDeque<>();
+
+	private static class Timings
+	{
+		final String sql;
+		final LongAdder count = new LongAdder();
+		final LongAdder errors = new LongAdder();
+		final LongAdder rows = new LongAdder();
+		final LongAdder nanos = new LongAdder();
+		final LongAdder connectionNanos = new LongAdder();
+		final AtomicLong maxNanos = new AtomicLong();
+		final AtomicLong lastSlowSample = new AtomicLong(System.nanoTime() - SLOW_QUERY_SAMPLE_INTERVAL);
+		final LatencyHistogram histogram = new LatencyHistogram();
+
+		Timings(String sql)
+		{
+			this.sql = sql;
+		}
+
+		SqlStatementSummary summary()
+		{
+			long n = count.sum();
+			long total = TimeUnit.NANOSECONDS.toMicros(nanos.sum());
+			return new SqlStatementSummary(sql, n, errors.sum(), rows.sum(), total, n == 0 ? 0 : total / n,
+					histogram.getPercentile(0.5), histogram.getPercentile(0.95), histogram.getPercentile(0.99),
+					TimeUnit.NANOSECONDS.toMicros(maxNanos.get()), n == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(connectionNanos.sum()) / n);
+		}
+	}
+
+	/**
+	 * Record a dbRead() that returned a List of records.
+	 */
+	public void listRead(String sql, int records)
+	{
+		m_listReads.increment();
+		m_listRecords.add(records);
+		if (records > m_maxListRecords)
+		{
+			synchronized (this)
+			{
+				if (records > m_maxListRecords)
+				{
+					m_maxListRecords = records;
+					m_maxListRecordsSql = sql;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Record a dbReadEach().
+	 */
+	public void streamRead(int records, boolean stoppedEarly)
+	{
+		m_streamedReads.increment();
+		m_streamedRecords.add(records);
+		if (stoppedEarly) m_stoppedEarly.increment();
+	}
+
+	/**
+	 * Record the time taken by a statement.
+	 * 
+	 * @param sql
+	 *        The sql statement.
+	 * @param fields
+	 *        The bind values, logged if the statement is slow.
+	 * @param nanos
+	 *        The time taken, including waiting for a connection.
+	 * @param connectionNanos
+	 *        The time spent waiting for a connection.
+	 * @param rows
+	 *        The records read or written.
+	 * @param failed
+	 *        true if the statement failed.
+	 */
+	public void statement(String sql, Object[] fields, long nanos, long connectionNanos, long rows, boolean failed)
+	{
+		if (!m_statementTiming || sql == null) return;
+
+		Timings timings = getTimings(sql);
+		timings.count.increment();
+		if (failed) timings.errors.increment();
+		timings.rows.add(rows);
+		timings.nanos.add(nanos);
+		timings.connectionNanos.add(connectionNanos);
+		timings.maxNanos.accumulateAndGet(nanos, Math::max);
+		timings.histogram.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+
+		long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+		if (millis >= m_slowQueryMillis)
+		{
+			long now = System.nanoTime();
+			long last = timings.lastSlowSample.get();
+			if (now - last >= SLOW_QUERY_SAMPLE_INTERVAL && timings.lastSlowSample.compareAndSet(last, now))
+			{
+				String binds = binds(fields);
+				log.info("Slow sql ({}ms, {}ms waiting for a connection): {} binds: {}", millis,
+						TimeUnit.NANOSECONDS.toMillis(connectionNanos), sql, binds);
+				synchronized (m_slowQueries)
+				{
+					if (m_slowQueries.size() >= SLOW_QUERIES) m_slowQueries.removeFirst();
+					m_slowQueries.addLast(Instant.now() + " " + millis + "ms " + sql + " binds: " + binds);
+				}
+			}
+		}
+	}
+
+	private Timings getTimings(String sql)
+	{
+		Timings timings = m_timingsBySql.get(sql);
+		if (timings != null) return timings;
+
+		String normalized = normalize(sql);
+		timings = m_timings.get(normalized);
+		if (timings == null)
+		{
+			if (m_timings.size() >= MAX_STATEMENTS) normalized = OTHER;
+			timings = m_timings.computeIfAbsent(normalized, Timings::new);
+		}
+		if (m_timingsBySql.size() < MAX_SQL)
+		{
+			m_timingsBySql.put(sql, timings);
+		}
+		return timings;
+	}
+
+	/**
+	 * @return the sql with its literals replaced by ?, IN lists of placeholders reduced to one, and whitespace collapsed,
+	 *         so statements that differ only in their values are timed together.
+	 */
+	static String normalize(String sql)
+	{
+		String rv = STRING_LITERAL.matcher(sql).replaceAll("?");
+		rv = NUMBER_LITERAL.matcher(rv).replaceAll("?");
+		rv = IN_LIST.matcher(rv).replaceAll("(?)");
+		return WHITESPACE.matcher(rv).replaceAll(" ").trim();
+	}
+
+	private static String binds(Object[] fields)
+	{
+		if (fields == null) return "";
+		StringBuilder buf = new StringBuilder();
+		for (Object field : fields)
+		{
+			String value = String.valueOf(field);
+			if (value.length() > MAX_BIND_LENGTH) value = value.substring(0, MAX_BIND_LENGTH) + "...";
+			if (buf.length() > 0) buf.append(", ");
+			buf.append(value);
+			if (buf.length() > MAX_BINDS_LENGTH)
+			{
+				buf.setLength(MAX_BINDS_LENGTH);
+				buf.append("...");
+				break;
+			}
+		}
+		return buf.toString();
+	}
+
+	@Override
+	public boolean isStatementTiming()
+	{
+		return m_statementTiming;
+	}
+
+	@Override
+	public void setStatementTiming(boolean statementTiming)
+	{
+		m_statementTiming = statementTiming;
+	}
+
+	@Override
+	public long getSlowQueryMillis()
+	{
+		return m_slowQueryMillis;
+	}
+
+	@Override
+	public void setSlowQueryMillis(long slowQueryMillis)
+	{
+		m_slowQueryMillis = slowQueryMillis;
+	}
+
+	@Override
+	public int getTimedStatements()
+	{
+		return m_timings.size();
+	}
+
+	@Override
+	public List<SqlStatementSummary> getTopStatements()
+	{
+		List<SqlStatementSummary> rv = new ArrayList<>(m_timings.size());
+		for (Timings timings : m_timings.values())
+		{
+			rv.add(timings.summary());
+		}
+		rv.sort(Comparator.comparingLong(SqlStatementSummary::getTotalMicros).reversed());
+		return rv.size() > TOP_STATEMENTS ? new ArrayList<>(rv.subList(0, TOP_STATEMENTS)) : rv;
+	}
+
+	@Override
+	public SqlStatementSummary getStatement(String sql)
+	{
+		Timings timings = m_timings.get(normalize(sql));
+		return timings == null ? null : timings.summary();
+	}
+
+	@Override
+	public List<String> getSlowQueries()
+	{
+		synchronized (m_slowQueries)
+		{
+			return new ArrayList<>(m_slowQueries);
+		}
+	}
+
+	@Override
+	public long getListReads()
+	{
+		return m_listReads.sum();
+	}
+
+	@Override
+	public long getListRecords()
+	{
+		return m_listRecords.sum();
+	}
+
+	@Override
+	public long getMeanListRecords()
+	{
+		long reads = m_listReads.sum();
+		return reads == 0 ? 0 : m_listRecords.sum() / reads;
+	}
+
+	@Override
+	public synchronized long getMaxListRecords()
+	{
+		return m_maxListRecords;
+	}
+
+	@Override
+	public synchronized String getMaxListRecordsSql()
+	{
+		return m_maxListRecordsSql;
+	}
+
+	@Override
+	public long getStreamedReads()
+	{
+		return m_streamedReads.sum();
+	}
+
+	@Override
+	public long getStreamedRecords()
+	{
+		return m_streamedRecords.sum();
+	}
+
+	@Override
+	public long getStreamedReadsStoppedEarly()
+	{
+		return m_stoppedEarly.sum();
+	}
+
+	@Override
+	public void reset()
+	{
+		m_listReads.reset();
+		m_listRecords.reset();
+		m_streamedReads.reset();
+		m_streamedRecords.reset();
+		m_stoppedEarly.reset();
+		synchronized (this)
+		{
+			m_maxListRecords = 0;
+			m_maxListRecordsSql = null;
+		}
+		m_timingsBySql.clear();
+		m_timings.clear();
+		synchronized (m_slowQueries)
+		{
+			m_slowQueries.clear();
+		}
+	}
+
+	/**
+	 * Make the statistics available through the platform MBean server.
+	 */
+	public void register()
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name))
+			{
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+			m_registeredName = name;
+		}
+		catch (JMException e)
+		{
+			log.warn("Failed to register sql statistics: {}", e.toString());
+		}
+	}
+
+	public void unregister()
+	{
+		if (m_registeredName == null) return;
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(m_registeredName);
+		}
+		catch (JMException e)
+		{
+			log.debug("Failed to unregister sql statistics: {}", e.toString());
+		}
+		m_registeredName = null;
+	}
+}
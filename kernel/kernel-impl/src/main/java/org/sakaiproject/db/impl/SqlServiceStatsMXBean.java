@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.db.impl;
+
+import java.util.List;
+
+/**
+ * Management view of the records read through the SqlService, and the time taken by each statement.
+ */
+public interface SqlServiceStatsMXBean
+{
+	/**
+	 * @return true if statements are being timed.
+	 */
+	boolean isStatementTiming();
+
+	void setStatementTiming(boolean statementTiming);
+
+	/**
+	 * @return the time in milliseconds above which statements are logged as slow.
+	 */
+	long getSlowQueryMillis();
+
+	void setSlowQueryMillis(long slowQueryMillis);
+
+	/**
+	 * @return the number of distinct statements timed.
+	 */
+	int getTimedStatements();
+
+	/**
+	 * @return the timings of the statements that have taken the most time in total, most first.
+	 */
+	List<SqlStatementSummary> getTopStatements();
+
+	/**
+	 * @return the timings of the statement, or null if it has not been run.
+	 */
+	SqlStatementSummary getStatement(String sql);
+
+	/**
+	 * @return the latest slow statements sampled, with their bind values, oldest first.
+	 */
+	List<String> getSlowQueries();
+
+	/**
+	 * @return the number of dbRead() calls, each of which holds every record read in a List.
+	 */
+	long getListReads();
+
+	/**
+	 * @return the number of records returned in Lists by dbRead().
+	 */
+	long getListRecords();
+
+	/**
+	 * @return the mean number of records held in the List returned by a dbRead().
+	 */
+	long getMeanListRecords();
+
+	/**
+	 * @return the most records returned in one List by dbRead().
+	 */
+	long getMaxListRecords();
+
+	/**
+	 * @return the sql of the dbRead() that returned the most records.
+	 */
+	String getMaxListRecordsSql();
+
+	/**
+	 * @return the number of dbReadEach() calls, which pass each record on as it is read.
+	 */
+	long getStreamedReads();
+
+	/**
+	 * @return the number of records passed on by dbReadEach().
+	 */
+	long getStreamedRecords();
+
+	/**
+	 * @return the number of dbReadEach() calls stopped before the last record.
+	 */
+	long getStreamedReadsStoppedEarly();
+
+	/**
+	 * Start counting and timing again.
+	 */
+	void reset();
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.db.impl;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * The timings of one normalized sql statement, as published by SqlServiceStatsMXBean. Times are in microseconds.
+ */
+public class SqlStatementSummary
+{
+	private final String sql;
+	private final long count;
+	private final long errors;
+	private final long rows;
+	private final long totalMicros;
+	private final long meanMicros;
+	private final long p50Micros;
+	private final long p95Micros;
+	private final long p99Micros;
+	private final long maxMicros;
+	private final long meanConnectionWaitMicros;
+
+	@ConstructorProperties({ "sql", "count", "errors", "rows", "totalMicros", "meanMicros", "p50Micros", "p95Micros", "p99Micros",
+			"maxMicros", "meanConnectionWaitMicros" })
+	public SqlStatementSummary(String sql, long count, long errors, long rows, long totalMicros, long meanMicros, long p50Micros,
+			long p95Micros, long p99Micros, long maxMicros, long meanConnectionWaitMicros)
+	{
+		this.sql = sql;
+		this.count = count;
+		this.errors = errors;
+		this.rows = rows;
+		this.totalMicros = totalMicros;
+		this.meanMicros = meanMicros;
+		this.p50Micros = p50Micros;
+		this.p95Micros = p95Micros;
+		this.p99Micros = p99Micros;
+		this.maxMicros = maxMicros;
+		this.meanConnectionWaitMicros = meanConnectionWaitMicros;
+	}
+
+	public String getSql()
+	{
+		return sql;
+	}
+
+	public long getCount()
+	{
+		return count;
+	}
+
+	public long getErrors()
+	{
+		return errors;
+	}
+
+	public long getRows()
+	{
+		return rows;
+	}
+
+	public long getTotalMicros()
+	{
+		return totalMicros;
+	}
+
+	public long getMeanMicros()
+	{
+		return meanMicros;
+	}
+
+	public long getP50Micros()
+	{
+		return p50Micros;
+	}
+
+	public long getP95Micros()
+	{
+		return p95Micros;
+	}
+
+	public long getP99Micros()
+	{
+		return p99Micros;
+	}
+
+	public long getMaxMicros()
+	{
+		return maxMicros;
+	}
+
+	public long getMeanConnectionWaitMicros()
+	{
+		return meanConnectionWaitMicros;
+	}
+}
@@ -24,6 +24,7 @@ package org.sakaiproject.event.impl;
 import java.util.Date;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.Executor;
 
 import lombok.Getter;
 import lombok.Setter;
@@ -55,14 +56,17 @@ import org.sakaiproject.user.api.User;
 @Slf4j
 public abstract class BaseEventTrackingService implements EventTrackingService
 {
-	/** An observable object helper. */
+	/** Passed to the observers as the source of the events. */
 	protected MyObservable m_observableHelper = new MyObservable();
 
-	/** An observable object helper for see-it-first priority observers. */
-	protected MyObservable m_priorityObservableHelper = new MyObservable();
+	/** Dispatches events to the normal observers. */
+	private final EventDispatcher m_dispatcher = new EventDispatcher(m_observableHelper);
 
-	/** An observable object helper for see-only-local-events observers. */
-	protected MyObservable m_localObservableHelper = new MyObservable();
+	/** Dispatches events to the see-it-first priority observers. */
+	private final EventDispatcher m_priorityDispatcher = new EventDispatcher(m_observableHelper);
+
+	/** Dispatches events to the see-only-local-events observers. */
+	private final EventDispatcher m_localDispatcher = new EventDispatcher(m_observableHelper);
 
 	protected EventDelayHandler delayHandler;
 
@@ -97,18 +101,15 @@ public abstract class BaseEventTrackingService implements EventTrackingService
 		if (log.isDebugEnabled()) log.debug(this + " Notification - Event: " + event);
 
 		// first, notify all priority observers
-		m_priorityObservableHelper.setChanged();
-		m_priorityObservableHelper.notifyObservers(event);
+		m_priorityDispatcher.dispatch(event);
 
 		// notify the normal observers
-		m_observableHelper.setChanged();
-		m_observableHelper.notifyObservers(event);
+		m_dispatcher.dispatch(event);
 
 		// if the event is local, notify local observers
 		if (local)
 		{
-			m_localObservableHelper.setChanged();
-			m_localObservableHelper.notifyObservers(event);
+			m_localDispatcher.dispatch(event);
 		}
 	}
 
@@ -446,12 +447,40 @@ public abstract class BaseEventTrackingService implements EventTrackingService
 	 *        The class observing.
 	 */
 	public void addObserver(Observer observer)
+	{
+		addObserver(observer, (Executor) null);
+	}
+
+	/**
+	 * Add an observer of events starting with one of the prefixes.
+	 *
+	 * @param observer
+	 *        The class observing.
+	 * @param eventPrefixes
+	 *        The prefixes of the events wanted, none for all events.
+	 */
+	public void addObserver(Observer observer, String... eventPrefixes)
+	{
+		addObserver(observer, null, eventPrefixes);
+	}
+
+	/**
+	 * Add an observer of events starting with one of the prefixes, notified on the executor rather than the posting thread.
+	 *
+	 * @param observer
+	 *        The class observing.
+	 * @param executor
+	 *        The executor used to notify the observer, null to notify on the posting thread.
+	 * @param eventPrefixes
+	 *        The prefixes of the events wanted, none for all events.
+	 */
+	public void addObserver(Observer observer, Executor executor, String... eventPrefixes)
 	{
 		// keep this observer in one list only
-		m_priorityObservableHelper.deleteObserver(observer);
-		m_localObservableHelper.deleteObserver(observer);
+		m_priorityDispatcher.remove(observer);
+		m_localDispatcher.remove(observer);
 
-		m_observableHelper.addObserver(observer);
+		m_dispatcher.add(observer, executor, eventPrefixes);
 	}
 
 	/**
@@ -461,12 +490,25 @@ public abstract class BaseEventTrackingService implements EventTrackingService
 	 *        The class observing.
 	 */
 	public void addPriorityObserver(Observer observer)
+	{
+		addPriorityObserver(observer, new String[0]);
+	}
+
+	/**
+	 * Add a priority observer of events starting with one of the prefixes.
+	 *
+	 * @param observer
+	 *        The class observing.
+	 * @param eventPrefixes
+	 *        The prefixes of the events wanted, none for all events.
+	 */
+	public void addPriorityObserver(Observer observer, String... eventPrefixes)
 	{
 		// keep this observer in one list only
-		m_observableHelper.deleteObserver(observer);
-		m_localObservableHelper.deleteObserver(observer);
+		m_dispatcher.remove(observer);
+		m_localDispatcher.remove(observer);
 
-		m_priorityObservableHelper.addObserver(observer);
+		m_priorityDispatcher.add(observer, null, eventPrefixes);
 	}
 
 	/**
@@ -476,12 +518,25 @@ public abstract class BaseEventTrackingService implements EventTrackingService
 	 *        The class observing.
 	 */
 	public void addLocalObserver(Observer observer)
+	{
+		addLocalObserver(observer, new String[0]);
+	}
+
+	/**
+	 * Add a local observer of events starting with one of the prefixes.
+	 *
+	 * @param observer
+	 *        The class observing.
+	 * @param eventPrefixes
+	 *        The prefixes of the events wanted, none for all events.
+	 */
+	public void addLocalObserver(Observer observer, String... eventPrefixes)
 	{
 		// keep this observer in one list only
-		m_observableHelper.deleteObserver(observer);
-		m_priorityObservableHelper.deleteObserver(observer);
+		m_dispatcher.remove(observer);
+		m_priorityDispatcher.remove(observer);
 
-		m_localObservableHelper.addObserver(observer);
+		m_localDispatcher.add(observer, null, eventPrefixes);
 	}
 
 	/**
@@ -492,13 +547,22 @@ public abstract class BaseEventTrackingService implements EventTrackingService
 	 */
 	public void deleteObserver(Observer observer)
 	{
-		m_observableHelper.deleteObserver(observer);
-		m_priorityObservableHelper.deleteObserver(observer);
-		m_localObservableHelper.deleteObserver(observer);
+		m_dispatcher.remove(observer);
+		m_priorityDispatcher.remove(observer);
+		m_localDispatcher.remove(observer);
+	}
+
+	/**
+	 * @return the number of observers registered.
+	 */
+	public int countObservers()
+	{
+		return m_dispatcher.size() + m_priorityDispatcher.size() + m_localDispatcher.size();
 	}
 
 	/**
 	 * Extend Observable to "public"ize setChanges, so we can set it. Why a helper object? Cause the service (which is observable) already 'extends' TurbineBaseService, and cannot also 'extend' Observable.
+	 * Events are now delivered by the EventDispatchers, this is only handed to the observers as the source of the event.
 	 */
 	protected class MyObservable extends Observable
 	{
@@ -21,13 +21,24 @@
 
 package org.sakaiproject.event.impl;
 
+import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.hazelcast.core.HazelcastInstance;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -49,10 +60,15 @@ import org.sakaiproject.memory.api.MemoryService;
  * ClusterEventTracking is the implmentation for the EventTracking service for use in a clustered multi-app server configuration.<br />
  * Events are backed in the cluster database, and this database is polled to read and process locally events posted by the other cluster members.
  * </p>
+ * <p>
+ * If a {@link ClusterEventTransport} is configured (event.cluster.transport) events are instead pushed to the other cluster members as they are posted,
+ * and the database is still polled to pick up any events the push missed. All the cluster members must use the same transport.
+ * </p>
  */
 @Slf4j
-public abstract class ClusterEventTracking extends BaseEventTrackingService implements Runnable
+public abstract class ClusterEventTracking extends BaseEventTrackingService implements Runnable, ClusterEventTrackingMXBean
 {
+	public static final String OBJECT_NAME = "org.sakaiproject:type=ClusterEventTracking";
 
 	/** String used to identify this service in the logs */
 	protected static final String m_logId = "EventTracking: ";
@@ -70,19 +86,52 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 
 	protected long m_totalEventsCount = 0;
 
-	/** Queue of events to write if we are batching. */
-	protected Collection<Event> m_eventQueue = null;
+	/** Writes events in batches from its own thread, if we are batching. */
+	protected ClusterEventWriter m_eventWriter = null;
 	/** Unless false, check the db for events from the other cluster servers. */
 	protected boolean m_checkDb = true;
 	/** If true, batch events for bulk write. */
 	protected boolean m_batchWrite = true;
 	/** Configuration: to run the ddl on init or not. */
 	protected boolean m_autoDdl = false;
+	/** Configuration: how events reach the other cluster servers, "db" to poll the events table or "hazelcast" to push them over a topic. */
+	protected String m_transportType = TRANSPORT_DB;
+
+	public static final String TRANSPORT_DB = "db";
+	public static final String TRANSPORT_HAZELCAST = "hazelcast";
 
 	private String serverInstance;
 	private String serverId;
 	private ScheduledExecutorService scheduler;
 
+	/** The transport used to push events to the other cluster members, null when polling the db. */
+	protected volatile ClusterEventTransport m_transport = null;
+
+	/** Set when publishing to the transport fails, the event checking thread then stops using it. */
+	private volatile boolean m_transportFailed = false;
+
+	/** Events pushed to us that have not yet been read back from the db, by eventKey(), so polling skips them. */
+	private final Map<String, Pushed> m_pushed = new ConcurrentHashMap<>();
+
+	/** How long in ms a pushed event is remembered while waiting for it to be polled from the db. */
+	private long m_pushedWindow = 300000L;
+
+	private ObjectName m_registeredName = null;
+
+	/** Counters for events sent to and received from the other cluster members. */
+	private final AtomicLong m_eventsPublished = new AtomicLong();
+	private final AtomicLong m_eventsReceived = new AtomicLong();
+	private final AtomicLong m_eventsPolled = new AtomicLong();
+	private final AtomicLong m_totalReceiveLag = new AtomicLong();
+	private final AtomicLong m_maxReceiveLag = new AtomicLong();
+
+	/** The number of copies of an event pushed to us, and when the last one arrived. */
+	private static class Pushed
+	{
+		final AtomicInteger count = new AtomicInteger();
+		volatile long received;
+	}
+
 	/*************************************************************************************************************************************************
 	 * Dependencies
 	 ************************************************************************************************************************************************/
@@ -173,6 +222,17 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 		m_period = Integer.parseInt(time);
 	}
 
+	/**
+	 * Configuration: set the cluster event transport, "db" (the default) or "hazelcast".
+	 *
+	 * @param value
+	 *        The transport type.
+	 */
+	public void setTransport(String value)
+	{
+		m_transportType = StringUtils.defaultIfBlank(StringUtils.lowerCase(StringUtils.trim(value)), TRANSPORT_DB);
+	}
+
 	public void setDatabaseBeans(Map databaseBeans)
 	{
 		this.databaseBeans = databaseBeans;
@@ -217,13 +277,15 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 
 			if (m_batchWrite)
 			{
-				m_eventQueue = new Vector<Event>();
+				initEventWriter();
 			}
 
 			// startup the event checking
 			if (m_checkDb)
 			{
 				initLastEvent();
+				initTransport();
+				m_pushedWindow = serverConfigurationService().getInt("event.cluster.transport.pollWindow", 300) * 1000L;
 
 				scheduler = Executors.newSingleThreadScheduledExecutor();
 				// schedule task for every pollDelaySeconds
@@ -252,7 +314,8 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
     			}
 			}
 
-			log.info("period: {}, batch: {}, checkDb: {}", m_period, m_batchWrite, m_checkDb);
+			log.info("period: {}, batch: {}, checkDb: {}, transport: {}", m_period, m_batchWrite, m_checkDb,
+					m_transport != null ? m_transport.getName() : TRANSPORT_DB);
 
             String sakaiVersion = serverConfigurationService().getString("version.sakai", "unknown") + "/" + serverConfigurationService().getString("version.service", "unknown");
             log.info("Server Start: serverId={}, serverInstance={}, serverIdInstance={}, version={}",
@@ -263,6 +326,8 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 
             // initialize the caching server, if enabled
             initCacheServer();
+
+			registerStats();
 		}
 		catch (Exception e)
 		{
@@ -304,10 +369,291 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 	 */
 	public void destroy()
 	{
-		scheduler.shutdown();
+		if (m_registeredName != null)
+		{
+			try
+			{
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(m_registeredName);
+			}
+			catch (JMException e)
+			{
+				log.debug("Failed to unregister cluster event statistics: {}", e.toString());
+			}
+			m_registeredName = null;
+		}
+		if (m_eventWriter != null)
+		{
+			m_eventWriter.stop(serverConfigurationService().getInt("event.writer.stopTimeout", 30) * 1000L);
+			m_eventWriter = null;
+		}
+		if (m_transport != null)
+		{
+			m_transport.stop();
+			m_transport = null;
+		}
+		if (scheduler != null)
+		{
+			scheduler.shutdown();
+		}
 		super.destroy();
 	}
 
+	/**
+	 * Make the transport statistics available through the platform MBean server.
+	 */
+	protected void registerStats()
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name))
+			{
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+			m_registeredName = name;
+		}
+		catch (JMException e)
+		{
+			log.warn("Failed to register cluster event statistics: {}", e.toString());
+		}
+	}
+
+	/**
+	 * Start the writer that stores batched events, spilling them to a file under the sakai home when it falls behind.
+	 */
+	protected void initEventWriter()
+	{
+		String spill = serverConfigurationService().getString("event.writer.spillFile",
+				serverConfigurationService().getSakaiHomePath() + "event-spill.dat");
+		File spillFile = StringUtils.isBlank(spill) ? null : new File(spill);
+
+		m_eventWriter = new ClusterEventWriter(new ClusterEventWriter.Sink()
+		{
+			public boolean writeEvents(List<Event> events)
+			{
+				return writeBatchEvents(events);
+			}
+
+			public boolean writeRows(List<Object[]> rows)
+			{
+				return writeBatchRows(rows);
+			}
+
+			public Object[] bind(Event event)
+			{
+				Object[] fields = new Object[ClusterEventWriter.ROW_LENGTH];
+				bindValues(event, fields);
+				return fields;
+			}
+		},
+				serverConfigurationService().getInt("event.writer.queueSize", 10000),
+				serverConfigurationService().getInt("event.writer.batchSize", 500),
+				serverConfigurationService().getInt("event.writer.batchDelay", 1000),
+				serverConfigurationService().getInt("event.writer.offerTimeout", 100),
+				spillFile);
+		m_eventWriter.start();
+		log.info("event writer queueSize: {}, spillFile: {}", m_eventWriter.getQueueCapacity(), spillFile);
+	}
+
+	/**
+	 * Start the configured push transport, leaving m_transport null (db polling) if there is none or it cannot be started.
+	 */
+	protected void initTransport()
+	{
+		String type = serverConfigurationService().getString("event.cluster.transport", m_transportType);
+		if (StringUtils.isBlank(type) || TRANSPORT_DB.equalsIgnoreCase(type)) return;
+
+		ClusterEventTransport transport = null;
+		if (TRANSPORT_HAZELCAST.equalsIgnoreCase(type))
+		{
+			// only available when the MemoryService is running on hazelcast (memory.cachemanager=hazelcast)
+			Object unwrapped = memoryService().unwrap(Object.class);
+			if (unwrapped instanceof HazelcastInstance)
+			{
+				String topic = serverConfigurationService().getString("event.cluster.transport.topic", HazelcastClusterEventTransport.DEFAULT_TOPIC);
+				transport = new HazelcastClusterEventTransport((HazelcastInstance) unwrapped, topic, serverInstance);
+			}
+			else
+			{
+				log.warn("event.cluster.transport={} requires memory.cachemanager=hazelcast, falling back to polling the db", type);
+			}
+		}
+		else
+		{
+			log.warn("Unknown event.cluster.transport={}, falling back to polling the db", type);
+		}
+
+		if (transport != null)
+		{
+			try
+			{
+				transport.start(this::receiveEvent);
+				m_transport = transport;
+			}
+			catch (Exception e)
+			{
+				log.warn("Could not start cluster event transport {}, falling back to polling the db: {}", transport.getName(), e.toString());
+			}
+		}
+	}
+
+	/**
+	 * Process an event pushed to us by another cluster member.
+	 *
+	 * @param event
+	 *        The event from the other server.
+	 */
+	protected void receiveEvent(Event event)
+	{
+		m_eventsReceived.incrementAndGet();
+		if (event.getEventTime() != null)
+		{
+			long lag = Math.max(0, System.currentTimeMillis() - event.getEventTime().getTime());
+			m_totalReceiveLag.addAndGet(lag);
+			m_maxReceiveLag.accumulateAndGet(lag, Math::max);
+		}
+
+		// the db is still polled in case the push misses an event, remember this one so it is not notified twice
+		Pushed pushed = m_pushed.computeIfAbsent(eventKey(event), k -> new Pushed());
+		pushed.received = System.currentTimeMillis();
+		pushed.count.incrementAndGet();
+
+		try
+		{
+			notifyObservers(event, false);
+		}
+		catch (Exception t)
+		{
+			log.warn("receiveEvent, notifyObservers(), event: {}", event.toString(), t);
+		}
+	}
+
+	/**
+	 * Check if an event read from the db was already pushed to us, and so has been notified.
+	 *
+	 * @param event
+	 *        The event read from the db.
+	 * @return true if the event was pushed to us, false if it has to be notified now.
+	 */
+	protected boolean wasPushed(Event event)
+	{
+		Pushed pushed = m_pushed.get(eventKey(event));
+		if (pushed == null) return false;
+
+		// the same event may be posted more than once, each db copy matches one pushed copy
+		return pushed.count.getAndUpdate(c -> Math.max(0, c - 1)) > 0;
+	}
+
+	/**
+	 * Forget the pushed events not read back from the db within the window, and those all read back.
+	 */
+	protected void expirePushed()
+	{
+		long oldest = System.currentTimeMillis() - m_pushedWindow;
+		m_pushed.values().removeIf(p -> p.count.get() == 0 || p.received < oldest);
+	}
+
+	/**
+	 * Identify an event by the fields written to the db, truncated the same way, so a pushed event matches its copy
+	 * polled from the db.
+	 */
+	protected static String eventKey(Event event)
+	{
+		String who = event.getSessionId();
+		if (who == null || who.startsWith("~"))
+		{
+			who = "~" + event.getUserId();
+		}
+		return StringUtils.left(event.getEvent(), 32) + '|' + StringUtils.left(event.getResource(), 255) + '|'
+				+ StringUtils.left(event.getContext(), 255) + '|' + (event.getModify() ? "m" : "a") + '|' + who;
+	}
+
+	/**
+	 * Send a locally posted event to the other cluster members, if we are pushing events. If the transport fails
+	 * the event checking thread stops using it, and the other members read our events from the db.
+	 *
+	 * @param event
+	 *        The event to send.
+	 */
+	protected void publishEvent(Event event)
+	{
+		ClusterEventTransport transport = m_transport;
+		if (transport == null || m_transportFailed) return;
+
+		try
+		{
+			transport.publish(event);
+			m_eventsPublished.incrementAndGet();
+		}
+		catch (Exception e)
+		{
+			if (!m_transportFailed)
+			{
+				m_transportFailed = true;
+				log.warn("Cluster event transport {} failed, falling back to polling the db: {}", transport.getName(), e.toString());
+			}
+		}
+	}
+
+	/**
+	 * Stop a transport that failed to publish, on the event checking thread rather than the posting request's.
+	 */
+	protected void checkTransport()
+	{
+		ClusterEventTransport transport = m_transport;
+		if (transport == null || !m_transportFailed) return;
+
+		m_transport = null;
+		try
+		{
+			transport.stop();
+		}
+		catch (Exception e)
+		{
+			log.warn("Could not stop cluster event transport {}: {}", transport.getName(), e.toString());
+		}
+	}
+
+	@Override
+	public String getTransportName()
+	{
+		ClusterEventTransport transport = m_transport;
+		return transport != null ? transport.getName() : TRANSPORT_DB;
+	}
+
+	@Override
+	public long getEventsPublished()
+	{
+		return m_eventsPublished.get();
+	}
+
+	@Override
+	public long getEventsReceived()
+	{
+		return m_eventsReceived.get();
+	}
+
+	@Override
+	public long getEventsPolled()
+	{
+		return m_eventsPolled.get();
+	}
+
+	@Override
+	public long getAverageReceiveLag()
+	{
+		long received = m_eventsReceived.get();
+		return received == 0 ? 0 : m_totalReceiveLag.get() / received;
+	}
+
+	@Override
+	public long getMaxReceiveLag()
+	{
+		return m_maxReceiveLag.get();
+	}
+
 	/*************************************************************************************************************************************************
 	 * Event post / flow
 	 ************************************************************************************************************************************************/
@@ -335,13 +681,13 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 		}
 
 		if (!event.isTransient()) {
+			// push the event to the other servers now, the db write can follow at its own pace
+			publishEvent(event);
+
 			// batch the event if we are batching
-			if (m_batchWrite)
+			if (m_eventWriter != null)
 			{
-				synchronized (m_eventQueue)
-				{
-					m_eventQueue.add(event);
-				}
+				m_eventWriter.post(event);
 			}
 
 			// if not batching, write out the individual event
@@ -390,16 +736,18 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 	 * 
 	 * @param events
 	 *        The collection of event to write.
+	 * @return false if the events could not be written.
 	 */
-	protected void writeBatchEvents(Collection<Event> events)
+	protected boolean writeBatchEvents(Collection<Event> events)
 	{
 		// any events to process
-		if (events == null || events.isEmpty()) { return; }
+		if (events == null || events.isEmpty()) { return true; }
 		log.debug("writing {} batched events", events.size());
 
 		// get a connection
 		Connection conn = null;
 		boolean wasCommit = true;
+		boolean ok = true;
 		try
 		{
 			conn = sqlService().borrowConnection();
@@ -430,14 +778,16 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 
 			// Write all of these events in a batch if not using clustering
 			if (!cachingEnabled) {
-				boolean ok = sqlService().dbWriteBatch(conn, statement, eventList);
+				ok = sqlService().dbWriteBatch(conn, statement, eventList);
 				if (!ok) {
 					log.warn("dbWriteBatch failed: event count: {}", eventList.size());
 				}
 			}
 
-			// commit
-			if (!conn.isClosed()) {
+			// commit, or roll back so the writer can spill the whole batch without the rows that got in being written twice
+			if (!ok) {
+			    conn.rollback();
+			} else if (!conn.isClosed()) {
 			    conn.commit();
 			}
 		}
@@ -455,6 +805,7 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 				}
 			}
 			log.warn("{}", e.getMessage(), e);
+			ok = false;
 		}
 		finally
 		{
@@ -474,6 +825,45 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 				sqlService().returnConnection(conn);
 			}
 		}
+		return ok;
+	}
+
+	/**
+	 * Write a batch of bound event values, read back from the spill file, to the db. They are not added to the events
+	 * cache.
+	 * 
+	 * @param rows
+	 *        The bound values of each event.
+	 * @return false if the events could not be written.
+	 */
+	protected boolean writeBatchRows(List<Object[]> rows)
+	{
+		if (rows == null || rows.isEmpty()) return true;
+
+		Connection conn = null;
+		try
+		{
+			conn = sqlService().borrowConnection();
+			if (sqlService().dbWriteBatch(conn, insertStatement(), rows))
+			{
+				conn.commit();
+				return true;
+			}
+			log.warn("dbWriteBatch failed: spilled event count: {}", rows.size());
+			conn.rollback();
+		}
+		catch (Exception e)
+		{
+			log.warn("while writing spilled events: {}", e.getMessage(), e);
+		}
+		finally
+		{
+			if (conn != null)
+			{
+				sqlService().returnConnection(conn);
+			}
+		}
+		return false;
 	}
 
 	/**
@@ -535,17 +925,11 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 			// wait for sakai's ComponentManager to finish starting before processing events
 			ComponentManager.waitTillConfigured();
 
-			// write any events we have
-			if (m_batchWrite)
-			{
-				Collection<Event> batchEvents;
-				synchronized (m_eventQueue)
-				{
-					batchEvents = new ArrayList<>(m_eventQueue);
-					m_eventQueue.clear();
-				}
-				writeBatchEvents(batchEvents);
-			}
+			checkTransport();
+
+			// the db is polled even while events are pushed to us: a server whose transport failed has gone back to
+			// only writing its events there, so the push copies are skipped rather than the poll
+			expirePushed();
 
 			log.debug("checking for events > {}", m_lastEventSeq);
 			// check the db for new events
@@ -651,6 +1035,8 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 			}
 			// for each new event found, notify observers
 			for (Event event : events) {
+				if (!m_pushed.isEmpty() && wasPushed(event)) continue;
+				m_eventsPolled.incrementAndGet();
 				notifyObservers(event, false);
 			}
 		}
@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+/**
+ * Management view of how events reach this server from the other cluster members.
+ */
+public interface ClusterEventTrackingMXBean
+{
+	/**
+	 * @return the name of the transport used to reach the other cluster members, "db" if only polling.
+	 */
+	String getTransportName();
+
+	/**
+	 * @return the number of local events pushed to the other cluster members.
+	 */
+	long getEventsPublished();
+
+	/**
+	 * @return the number of events pushed to us by the other cluster members.
+	 */
+	long getEventsReceived();
+
+	/**
+	 * @return the number of events from the other cluster members read by polling the db. While events are pushed
+	 *         these are the ones the push missed.
+	 */
+	long getEventsPolled();
+
+	/**
+	 * @return the average time in ms between an event being posted on another server and being received here.
+	 */
+	long getAverageReceiveLag();
+
+	/**
+	 * @return the longest time in ms between an event being posted on another server and being received here.
+	 */
+	long getMaxReceiveLag();
+}
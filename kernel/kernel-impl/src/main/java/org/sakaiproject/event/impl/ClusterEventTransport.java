@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import java.util.function.Consumer;
+
+import org.sakaiproject.event.api.Event;
+
+/**
+ * <p>
+ * A ClusterEventTransport pushes events posted on this node to the other cluster members, and hands events
+ * received from the other members to the event tracking service, so they do not have to be polled from SAKAI_EVENT.
+ * </p>
+ * <p>
+ * When no transport is configured (or the configured one cannot be started) ClusterEventTracking falls back
+ * to polling the database.
+ * </p>
+ */
+public interface ClusterEventTransport
+{
+	/**
+	 * @return a short name for this transport, used in the logs.
+	 */
+	String getName();
+
+	/**
+	 * Start receiving events from the other cluster members.
+	 *
+	 * @param receiver
+	 *        Called once for each event that originated on another cluster member.
+	 * @throws Exception
+	 *         if the transport cannot be started, in which case the caller should fall back to polling.
+	 */
+	void start(Consumer<Event> receiver) throws Exception;
+
+	/**
+	 * Send an event that originated on this server to the other cluster members.
+	 *
+	 * @param event
+	 *        The event to send.
+	 */
+	void publish(Event event);
+
+	/**
+	 * Stop receiving events and release any resources held by the transport.
+	 */
+	void stop();
+}
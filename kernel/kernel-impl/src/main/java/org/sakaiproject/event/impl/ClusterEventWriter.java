@@ -0,0 +1,646 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.sakaiproject.event.api.Event;
+
+/**
+ * <p>
+ * Writes posted events to the events table from its own thread, so request threads only have to queue them. Events are
+ * written in batches of up to batchSize, waiting up to batchDelay ms after the first event of a batch for more to arrive.
+ * </p>
+ * <p>
+ * The queue is bounded. When it is full, because the database is slow or unavailable, a posting thread waits up to
+ * offerTimeout ms for space and then appends the event to a local spill file instead, as does the writer with a batch it
+ * fails to write. When the queue is idle the spill file is replayed into the events table. Events spilled when there is
+ * no spill file, or it cannot be written, are dropped and counted.
+ * </p>
+ * <p>
+ * The spill file holds the bound insert values of each event: the time, then the event, resource, session, modify code and
+ * context as optional UTF strings. Spilled events are written late, with ids after the events posted since, so servers
+ * polling the events table see them late and notify their observers then.
+ * </p>
+ */
+@Slf4j
+public class ClusterEventWriter implements ClusterEventWriterMXBean, Runnable
+{
+	public static final String OBJECT_NAME = "org.sakaiproject:type=EventWriter";
+
+	/** the number of values bound for each event */
+	static final int ROW_LENGTH = 6;
+
+	/** warn about dropped events at most this often */
+	private static final long DROP_WARNING_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+	/**
+	 * Where the events go.
+	 */
+	public interface Sink
+	{
+		/**
+		 * @return true if the events were written.
+		 */
+		boolean writeEvents(List<Event> events);
+
+		/**
+		 * @return true if the bound values, read back from the spill file, were written.
+		 */
+		boolean writeRows(List<Object[]> rows);
+
+		/**
+		 * @return the values to insert for the event.
+		 */
+		Object[] bind(Event event);
+	}
+
+	private final Sink m_sink;
+
+	private final BlockingQueue<Event> m_queue;
+
+	private final int m_capacity;
+
+	private final int m_batchSize;
+
+	private final long m_batchDelay;
+
+	private final long m_offerTimeout;
+
+	/** null if events are not spilled */
+	private final File m_spillFile;
+
+	/** the spill file being replayed */
+	private final File m_replayFile;
+
+	private final Object m_spillLock = new Object();
+
+	private volatile boolean m_spillPending = false;
+
+	private volatile boolean m_running = false;
+
+	private Thread m_thread = null;
+
+	private ObjectName m_registeredName = null;
+
+	private final LongAdder m_written = new LongAdder();
+	private final LongAdder m_batches = new LongAdder();
+	private final LongAdder m_writeNanos = new LongAdder();
+	private final LongAdder m_failures = new LongAdder();
+	private final LongAdder m_spilled = new LongAdder();
+	private final LongAdder m_replayed = new LongAdder();
+	private final LongAdder m_dropped = new LongAdder();
+	private final AtomicLong m_maxBatch = new AtomicLong();
+	private final AtomicLong m_lastDropWarning = new AtomicLong();
+
+	/**
+	 * @param sink
+	 *        where the events are written.
+	 * @param capacity
+	 *        the most events that may wait to be written.
+	 * @param batchSize
+	 *        the most events written at once.
+	 * @param batchDelay
+	 *        how long in ms to wait for a batch to fill.
+	 * @param offerTimeout
+	 *        how long in ms a posting thread waits for space in the queue.
+	 * @param spillFile
+	 *        where events are spilled, or null to drop them.
+	 */
+	public ClusterEventWriter(Sink sink, int capacity, int batchSize, long batchDelay, long offerTimeout, File spillFile)
+	{
+		m_sink = sink;
+		m_capacity = Math.max(1, capacity);
+		m_queue = new ArrayBlockingQueue<>(m_capacity);
+		m_batchSize = Math.max(1, batchSize);
+		m_batchDelay = Math.max(0, batchDelay);
+		m_offerTimeout = Math.max(0, offerTimeout);
+		m_spillFile = spillFile;
+		m_replayFile = (spillFile == null) ? null : new File(spillFile.getPath() + ".replay");
+		m_spillPending = (spillFile != null) && (spillFile.exists() || m_replayFile.exists());
+	}
+
+	/**
+	 * Start the writer thread, and make the statistics available through the platform MBean server.
+	 */
+	public void start()
+	{
+		if (m_spillPending)
+		{
+			log.info("Events spilled by an earlier run will be written from {}", m_spillFile);
+		}
+		m_running = true;
+		m_thread = new Thread(this, getClass().getName());
+		m_thread.setDaemon(true);
+		m_thread.start();
+
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name))
+			{
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+			m_registeredName = name;
+		}
+		catch (JMException e)
+		{
+			log.warn("Failed to register event writer statistics: {}", e.toString());
+		}
+	}
+
+	/**
+	 * Stop taking events, and wait up to timeout ms for those queued to be written (or spilled).
+	 */
+	public void stop(long timeout)
+	{
+		m_running = false;
+		if (m_thread != null)
+		{
+			try
+			{
+				m_thread.join(timeout);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			if (m_thread.isAlive())
+			{
+				log.warn("Event writer did not finish in {}ms, {} events are not written", timeout, m_queue.size());
+			}
+			m_thread = null;
+		}
+
+		if (m_registeredName != null)
+		{
+			try
+			{
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(m_registeredName);
+			}
+			catch (JMException e)
+			{
+				log.debug("Failed to unregister event writer statistics: {}", e.toString());
+			}
+			m_registeredName = null;
+		}
+	}
+
+	/**
+	 * Queue an event to be written, spilling it if the queue stays full.
+	 */
+	public void post(Event event)
+	{
+		if (m_running)
+		{
+			try
+			{
+				if (m_queue.offer(event, m_offerTimeout, TimeUnit.MILLISECONDS)) return;
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		spill(Collections.singletonList(m_sink.bind(event)));
+	}
+
+	public void run()
+	{
+		List<Event> batch = new ArrayList<>(m_batchSize);
+		while (m_running || !m_queue.isEmpty())
+		{
+			try
+			{
+				Event first = m_queue.poll(m_batchDelay, TimeUnit.MILLISECONDS);
+				if (first == null)
+				{
+					if (m_spillPending && m_running) replay();
+					continue;
+				}
+
+				batch.add(first);
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(m_batchDelay);
+				while (batch.size() < m_batchSize)
+				{
+					m_queue.drainTo(batch, m_batchSize - batch.size());
+					long wait = deadline - System.nanoTime();
+					if (batch.size() >= m_batchSize || wait <= 0 || !m_running) break;
+					Event next = m_queue.poll(wait, TimeUnit.NANOSECONDS);
+					if (next == null) break;
+					batch.add(next);
+				}
+				write(batch);
+			}
+			catch (InterruptedException e)
+			{
+				log.debug("Event writer interrupted");
+			}
+			catch (Throwable t)
+			{
+				log.error("Event writer failed: {}", t.getMessage(), t);
+			}
+			finally
+			{
+				batch.clear();
+			}
+		}
+	}
+
+	/**
+	 * Write a batch of events, spilling them if they cannot be written.
+	 */
+	private void write(List<Event> batch)
+	{
+		long start = System.nanoTime();
+		boolean ok;
+		try
+		{
+			ok = m_sink.writeEvents(batch);
+		}
+		catch (Exception e)
+		{
+			log.warn("Failed to write {} events: {}", batch.size(), e.toString());
+			ok = false;
+		}
+
+		if (ok)
+		{
+			recordBatch(batch.size(), System.nanoTime() - start);
+		}
+		else
+		{
+			m_failures.increment();
+			List<Object[]> rows = new ArrayList<>(batch.size());
+			for (Event event : batch)
+			{
+				rows.add(m_sink.bind(event));
+			}
+			spill(rows);
+		}
+	}
+
+	private void recordBatch(int size, long nanos)
+	{
+		m_written.add(size);
+		m_batches.increment();
+		m_writeNanos.add(nanos);
+		m_maxBatch.accumulateAndGet(size, Math::max);
+	}
+
+	/**
+	 * Append events to the spill file, or drop them if they cannot be.
+	 */
+	void spill(List<Object[]> rows)
+	{
+		if (rows.isEmpty()) return;
+		if (m_spillFile != null)
+		{
+			synchronized (m_spillLock)
+			{
+				try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(m_spillFile, true))))
+				{
+					for (Object[] row : rows)
+					{
+						writeRow(out, row);
+					}
+					m_spilled.add(rows.size());
+					m_spillPending = true;
+					return;
+				}
+				catch (IOException e)
+				{
+					log.warn("Failed to spill {} events to {}: {}", rows.size(), m_spillFile, e.toString());
+				}
+			}
+		}
+
+		m_dropped.add(rows.size());
+		long now = System.currentTimeMillis();
+		long last = m_lastDropWarning.get();
+		if (now - last > DROP_WARNING_INTERVAL && m_lastDropWarning.compareAndSet(last, now))
+		{
+			log.warn("Dropping events that cannot be written, {} dropped so far", m_dropped.sum());
+		}
+	}
+
+	/**
+	 * Write the spilled events to the events table. The spill file is moved aside first so events can still be spilled
+	 * while it is replayed. If a batch cannot be written, or the queue starts to fill, the events not yet written are
+	 * spilled again for later.
+	 */
+	private void replay()
+	{
+		synchronized (m_spillLock)
+		{
+			// a replay file left by a stopped replay or an earlier run is finished first
+			if (!m_replayFile.exists())
+			{
+				if (!m_spillFile.exists())
+				{
+					m_spillPending = false;
+					return;
+				}
+				if (!m_spillFile.renameTo(m_replayFile))
+				{
+					log.warn("Failed to move {} aside to replay it", m_spillFile);
+					return;
+				}
+			}
+			m_spillPending = m_spillFile.exists();
+		}
+
+		long replayed = 0;
+		boolean stopped = false;
+		// the bytes of the rows already written or spilled again, which must not be replayed a second time
+		long done = 0;
+		try (CountingInputStream counted = new CountingInputStream(new BufferedInputStream(new FileInputStream(m_replayFile)));
+				DataInputStream in = new DataInputStream(counted))
+		{
+			List<Object[]> rows = new ArrayList<>(m_batchSize);
+			Object[] row;
+			do
+			{
+				row = readRow(in);
+				if (row != null) rows.add(row);
+				if (rows.size() >= m_batchSize || (row == null && !rows.isEmpty()))
+				{
+					if (stopped)
+					{
+						spill(rows);
+					}
+					else if (m_running && m_queue.size() < m_capacity / 2 && writeRows(rows))
+					{
+						replayed += rows.size();
+					}
+					else
+					{
+						// leave the rest for later, keeping their order
+						stopped = true;
+						spill(rows);
+					}
+					done = counted.getByteCount();
+					rows = new ArrayList<>(m_batchSize);
+				}
+			}
+			while (row != null);
+		}
+		catch (IOException e)
+		{
+			log.warn("Failed to read spilled events from {}: {}", m_replayFile, e.toString());
+			if (done > 0) dropReplayed(done);
+			return;
+		}
+
+		if (!m_replayFile.delete())
+		{
+			log.warn("Failed to delete {}, its events may be written again", m_replayFile);
+		}
+		if (replayed > 0)
+		{
+			log.info("Wrote {} spilled events{}", replayed, stopped ? ", the rest are spilled again" : "");
+		}
+	}
+
+	/**
+	 * Cut the rows already written or spilled again from the front of the replay file, so a replay that stops part way
+	 * does not write them twice.
+	 */
+	private void dropReplayed(long done)
+	{
+		File rest = new File(m_replayFile.getPath() + ".rest");
+		try
+		{
+			try (InputStream in = new FileInputStream(m_replayFile); OutputStream out = new FileOutputStream(rest))
+			{
+				IOUtils.skipFully(in, done);
+				IOUtils.copy(in, out);
+			}
+			Files.move(rest.toPath(), m_replayFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (IOException e)
+		{
+			log.warn("Failed to drop the written events from {}, they may be written again: {}", m_replayFile, e.toString());
+			rest.delete();
+		}
+	}
+
+	private boolean writeRows(List<Object[]> rows)
+	{
+		long start = System.nanoTime();
+		boolean ok;
+		try
+		{
+			ok = m_sink.writeRows(rows);
+		}
+		catch (Exception e)
+		{
+			log.warn("Failed to write {} spilled events: {}", rows.size(), e.toString());
+			ok = false;
+		}
+		if (ok)
+		{
+			recordBatch(rows.size(), System.nanoTime() - start);
+			m_replayed.add(rows.size());
+		}
+		else
+		{
+			m_failures.increment();
+		}
+		return ok;
+	}
+
+	/**
+	 * Write a row as one length prefixed record, built in memory first so a value that cannot be written does not leave
+	 * part of a row in the file.
+	 */
+	static void writeRow(DataOutputStream out, Object[] row) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		DataOutputStream record = new DataOutputStream(bytes);
+		Date time = (Date) row[0];
+		record.writeLong(time != null ? time.getTime() : System.currentTimeMillis());
+		for (int i = 1; i < ROW_LENGTH; i++)
+		{
+			String value = (String) row[i];
+			if (value == null)
+			{
+				record.writeInt(-1);
+			}
+			else
+			{
+				byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+				record.writeInt(encoded.length);
+				record.write(encoded);
+			}
+		}
+		record.flush();
+		out.writeInt(bytes.size());
+		bytes.writeTo(out);
+	}
+
+	/**
+	 * @return the next row, or null at the end of the file (including a row cut short when the server stopped).
+	 */
+	static Object[] readRow(DataInputStream in) throws IOException
+	{
+		int length;
+		try
+		{
+			length = in.readInt();
+		}
+		catch (EOFException e)
+		{
+			return null;
+		}
+		byte[] bytes = new byte[Math.max(0, length)];
+		try
+		{
+			if (length < 0) throw new EOFException();
+			in.readFully(bytes);
+		}
+		catch (EOFException e)
+		{
+			log.warn("Ignoring an incomplete spilled event");
+			return null;
+		}
+
+		DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes));
+		Object[] row = new Object[ROW_LENGTH];
+		row[0] = new Date(record.readLong());
+		for (int i = 1; i < ROW_LENGTH; i++)
+		{
+			int size = record.readInt();
+			if (size >= 0)
+			{
+				byte[] encoded = new byte[size];
+				record.readFully(encoded);
+				row[i] = new String(encoded, StandardCharsets.UTF_8);
+			}
+		}
+		return row;
+	}
+
+	@Override
+	public int getQueueDepth()
+	{
+		return m_queue.size();
+	}
+
+	@Override
+	public int getQueueCapacity()
+	{
+		return m_capacity;
+	}
+
+	@Override
+	public long getEventsWritten()
+	{
+		return m_written.sum();
+	}
+
+	@Override
+	public long getBatchesWritten()
+	{
+		return m_batches.sum();
+	}
+
+	@Override
+	public long getMeanBatchSize()
+	{
+		long batches = m_batches.sum();
+		return batches == 0 ? 0 : m_written.sum() / batches;
+	}
+
+	@Override
+	public long getMaxBatchSize()
+	{
+		return m_maxBatch.get();
+	}
+
+	@Override
+	public long getMeanWriteMillis()
+	{
+		long batches = m_batches.sum();
+		return batches == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(m_writeNanos.sum() / batches);
+	}
+
+	@Override
+	public long getWriteFailures()
+	{
+		return m_failures.sum();
+	}
+
+	@Override
+	public long getEventsSpilled()
+	{
+		return m_spilled.sum();
+	}
+
+	@Override
+	public long getEventsReplayed()
+	{
+		return m_replayed.sum();
+	}
+
+	@Override
+	public long getEventsDropped()
+	{
+		return m_dropped.sum();
+	}
+
+	@Override
+	public long getSpillFileSize()
+	{
+		if (m_spillFile == null) return 0;
+		return m_spillFile.length() + m_replayFile.length();
+	}
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+/**
+ * Management view of the writer that stores posted events in the events table.
+ */
+public interface ClusterEventWriterMXBean
+{
+	/**
+	 * @return the number of events waiting to be written.
+	 */
+	int getQueueDepth();
+
+	/**
+	 * @return the most events that can wait to be written before they are spilled.
+	 */
+	int getQueueCapacity();
+
+	/**
+	 * @return the number of events written to the events table, including those replayed from the spill file.
+	 */
+	long getEventsWritten();
+
+	/**
+	 * @return the number of batches written.
+	 */
+	long getBatchesWritten();
+
+	/**
+	 * @return the mean number of events in a batch.
+	 */
+	long getMeanBatchSize();
+
+	/**
+	 * @return the largest batch written.
+	 */
+	long getMaxBatchSize();
+
+	/**
+	 * @return the mean time in milliseconds taken to write a batch.
+	 */
+	long getMeanWriteMillis();
+
+	/**
+	 * @return the number of batches that could not be written and were spilled.
+	 */
+	long getWriteFailures();
+
+	/**
+	 * @return the number of events written to the spill file, because the queue was full or a write failed.
+	 */
+	long getEventsSpilled();
+
+	/**
+	 * @return the number of events read back from the spill file and written to the events table.
+	 */
+	long getEventsReplayed();
+
+	/**
+	 * @return the number of events lost because they could be neither queued nor spilled.
+	 */
+	long getEventsDropped();
+
+	/**
+	 * @return the size in bytes of the events waiting in the spill file.
+	 */
+	long getSpillFileSize();
+}
@@ -0,0 +1,312 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import org.sakaiproject.event.api.Event;
+
+/**
+ * <p>
+ * Delivers events to a group of observers, replacing the synchronized java.util.Observable helpers.
+ * </p>
+ * <p>
+ * Observers may subscribe to a set of event prefixes (eg "realm." or "content.new") and are then only handed matching events.
+ * Subscriptions are indexed by the first segment of the prefix (up to the first '.') so an event is only matched against the
+ * observers interested in its segment, plus the observers that want everything. Registration copies the subscriber arrays,
+ * dispatch reads them without locking.
+ * </p>
+ * <p>
+ * An observer registered with an Executor is notified on that executor, so a slow observer does not hold up the thread posting the event.
+ * </p>
+ * <p>
+ * As with java.util.Observable, the most recently added observer is notified first, and adding an observer again makes it the most recent.
+ * Events without a name are only delivered to the observers of every event.
+ * </p>
+ */
+@Slf4j
+class EventDispatcher
+{
+	private static final Subscriber[] NONE = new Subscriber[0];
+
+	/** Passed to Observer.update() as the Observable, for observers that expect one. */
+	private final Observable source;
+
+	/** Observers of every event, and those with prefixes that can't be indexed by segment. */
+	private volatile Subscriber[] unindexed = NONE;
+
+	/** Observers of specific event prefixes, keyed by the first segment of the prefix. */
+	private volatile Map<String, Subscriber[]> indexed = Collections.emptyMap();
+
+	/** Counts the observers added, so dispatch can notify them newest first across the subscriber arrays. */
+	private long added = 0;
+
+	EventDispatcher(Observable source)
+	{
+		this.source = source;
+	}
+
+	/**
+	 * Add an observer, replacing any existing subscription it has here.
+	 *
+	 * @param observer
+	 *        The observer.
+	 * @param executor
+	 *        The executor to notify the observer on, or null to notify it on the posting thread.
+	 * @param prefixes
+	 *        The event prefixes the observer wants, none for all events.
+	 */
+	synchronized void add(Observer observer, Executor executor, String... prefixes)
+	{
+		if (observer == null) throw new NullPointerException("observer");
+		remove(observer);
+
+		Subscriber subscriber = new Subscriber(observer, executor, prefixes, ++added);
+		Set<String> segments = subscriber.segments();
+		if (segments == null)
+		{
+			unindexed = ArrayUtils.add(unindexed, subscriber);
+		}
+		else
+		{
+			Map<String, Subscriber[]> index = new HashMap<>(indexed);
+			for (String segment : segments)
+			{
+				index.put(segment, ArrayUtils.add(index.getOrDefault(segment, NONE), subscriber));
+			}
+			indexed = index;
+		}
+	}
+
+	/**
+	 * Remove an observer.
+	 *
+	 * @param observer
+	 *        The observer.
+	 * @return true if the observer was subscribed here.
+	 */
+	synchronized boolean remove(Observer observer)
+	{
+		boolean found = false;
+
+		Subscriber[] current = unindexed;
+		Subscriber[] kept = without(current, observer);
+		if (kept != current)
+		{
+			unindexed = kept;
+			found = true;
+		}
+
+		Map<String, Subscriber[]> index = null;
+		for (Map.Entry<String, Subscriber[]> entry : indexed.entrySet())
+		{
+			kept = without(entry.getValue(), observer);
+			if (kept != entry.getValue())
+			{
+				if (index == null) index = new HashMap<>(indexed);
+				if (kept.length == 0)
+				{
+					index.remove(entry.getKey());
+				}
+				else
+				{
+					index.put(entry.getKey(), kept);
+				}
+			}
+		}
+		if (index != null)
+		{
+			indexed = index;
+			found = true;
+		}
+
+		return found;
+	}
+
+	/**
+	 * @return the number of observers subscribed here.
+	 */
+	int size()
+	{
+		Set<Observer> observers = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (Subscriber subscriber : unindexed) observers.add(subscriber.observer);
+		for (Subscriber[] subscribers : indexed.values())
+		{
+			for (Subscriber subscriber : subscribers) observers.add(subscriber.observer);
+		}
+		return observers.size();
+	}
+
+	/**
+	 * Notify the observers interested in this event, newest first. An observer throwing an exception does not stop the others being notified.
+	 *
+	 * @param event
+	 *        The event.
+	 */
+	void dispatch(Event event)
+	{
+		String name = event.getEvent();
+
+		Subscriber[] all = unindexed;
+		Subscriber[] some = NONE;
+		Map<String, Subscriber[]> index = indexed;
+		if (name != null && !index.isEmpty())
+		{
+			Subscriber[] subscribers = index.get(segment(name));
+			if (subscribers != null) some = subscribers;
+		}
+
+		// both arrays are in the order added, merge them from the end
+		int i = all.length - 1;
+		int j = some.length - 1;
+		while (i >= 0 || j >= 0)
+		{
+			Subscriber subscriber = (j < 0 || (i >= 0 && all[i].order > some[j].order)) ? all[i--] : some[j--];
+			if (subscriber.matches(name)) subscriber.deliver(source, event);
+		}
+	}
+
+	/**
+	 * @return the part of the event name up to the first '.', or null if it has none.
+	 */
+	private static String segment(String name)
+	{
+		int dot = name.indexOf('.');
+		return dot > 0 ? name.substring(0, dot) : null;
+	}
+
+	private static Subscriber[] without(Subscriber[] subscribers, Observer observer)
+	{
+		for (int i = 0; i < subscribers.length; i++)
+		{
+			if (subscribers[i].observer == observer)
+			{
+				return subscribers.length == 1 ? NONE : ArrayUtils.remove(subscribers, i);
+			}
+		}
+		return subscribers;
+	}
+
+	/**
+	 * An observer, the events it wants and how to notify it.
+	 */
+	private static class Subscriber
+	{
+		private final Observer observer;
+		private final Executor executor;
+		private final String[] prefixes;
+		private final long order;
+
+		Subscriber(Observer observer, Executor executor, String[] prefixes, long order)
+		{
+			this.observer = observer;
+			this.executor = executor;
+			this.order = order;
+
+			List<String> wanted = new ArrayList<>();
+			if (prefixes != null)
+			{
+				for (String prefix : prefixes)
+				{
+					if (StringUtils.isNotEmpty(prefix)) wanted.add(prefix);
+				}
+			}
+			this.prefixes = wanted.isEmpty() ? null : wanted.toArray(new String[0]);
+		}
+
+		/**
+		 * @return the index segments for this subscriber's prefixes, or null if it must see every event.
+		 */
+		Set<String> segments()
+		{
+			if (prefixes == null) return null;
+
+			Set<String> segments = new LinkedHashSet<>();
+			for (String prefix : prefixes)
+			{
+				// a prefix without a complete first segment (eg "sam") can match many segments
+				int dot = prefix.indexOf('.');
+				if (dot <= 0) return null;
+				segments.add(prefix.substring(0, dot));
+			}
+			return segments;
+		}
+
+		boolean matches(String name)
+		{
+			if (prefixes == null) return true;
+			if (name == null) return false;
+			for (String prefix : prefixes)
+			{
+				if (name.startsWith(prefix)) return true;
+			}
+			return false;
+		}
+
+		void deliver(Observable source, Event event)
+		{
+			if (executor == null)
+			{
+				update(source, event);
+				return;
+			}
+
+			try
+			{
+				executor.execute(() -> update(source, event));
+			}
+			catch (RejectedExecutionException e)
+			{
+				log.warn("Event {} dropped for observer {}, its executor rejected it", event, observer);
+			}
+		}
+
+		private void update(Observable source, Event event)
+		{
+			try
+			{
+				observer.update(source, event);
+			}
+			catch (Exception e)
+			{
+				log.warn("Observer {} failed on event {}", observer, event, e);
+			}
+		}
+
+		@Override
+		public String toString()
+		{
+			return observer + (prefixes != null ? Arrays.toString(prefixes) : "");
+		}
+	}
+}
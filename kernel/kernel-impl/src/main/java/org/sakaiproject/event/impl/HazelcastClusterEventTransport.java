@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import java.util.function.Consumer;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.Message;
+import com.hazelcast.core.MessageListener;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.SimpleEvent;
+
+/**
+ * Pushes events to the other cluster members over a Hazelcast topic.
+ * The Hazelcast instance is the one started by the MemoryService when memory.cachemanager=hazelcast.
+ */
+@Slf4j
+public class HazelcastClusterEventTransport implements ClusterEventTransport, MessageListener<SimpleEvent>
+{
+	public static final String DEFAULT_TOPIC = "org.sakaiproject.event.impl.ClusterEventTracking.events";
+
+	private final HazelcastInstance hcInstance;
+	private final String topicName;
+	private final String serverIdInstance;
+
+	private ITopic<SimpleEvent> topic;
+	private String registrationId;
+	private Consumer<Event> receiver;
+
+	/**
+	 * @param hcInstance the hazelcast instance to use
+	 * @param topicName the name of the topic shared by all cluster members
+	 * @param serverIdInstance this server's id instance, used to skip our own events
+	 */
+	public HazelcastClusterEventTransport(HazelcastInstance hcInstance, String topicName, String serverIdInstance)
+	{
+		if (hcInstance == null) {
+			throw new IllegalArgumentException("The hazelcast instance cannot be null.");
+		}
+		this.hcInstance = hcInstance;
+		this.topicName = topicName;
+		this.serverIdInstance = serverIdInstance;
+	}
+
+	@Override
+	public String getName()
+	{
+		return "hazelcast:" + topicName;
+	}
+
+	@Override
+	public void start(Consumer<Event> receiver)
+	{
+		this.receiver = receiver;
+		topic = hcInstance.getTopic(topicName);
+		registrationId = topic.addMessageListener(this);
+	}
+
+	@Override
+	public void publish(Event event)
+	{
+		topic.publish(new SimpleEvent(event, serverIdInstance));
+	}
+
+	@Override
+	public void stop()
+	{
+		if (topic != null && registrationId != null) {
+			try {
+				topic.removeMessageListener(registrationId);
+			} catch (Exception e) {
+				log.warn("Could not remove listener from topic {}: {}", topicName, e.toString());
+			}
+		}
+		topic = null;
+		registrationId = null;
+	}
+
+	@Override
+	public void onMessage(Message<SimpleEvent> message)
+	{
+		SimpleEvent event = message.getMessageObject();
+		// hazelcast delivers our own publications back to us, they were already notified locally
+		if (event == null || serverIdInstance.equals(event.getServerId())) {
+			return;
+		}
+		receiver.accept(event);
+	}
+}
@@ -114,7 +114,7 @@ public class JMXSessionComponent {
             if (s != null) {
                 s.invalidate();
             }
-            sessionComponent.m_sessions.remove(sessionId);
+            sessionComponent.remove(sessionId);
         }
     }
 
@@ -264,7 +264,12 @@ public class MySession implements Session, HttpSession, Serializable
 	 */
 	public void setUserId(String uid)
 	{
+		String old = m_userId;
 		m_userId = uid;
+		if (sessionStore instanceof SessionComponent)
+		{
+			((SessionComponent) sessionStore).userChanged(this, old, uid);
+		}
 	}
 
 	/**
@@ -498,7 +503,15 @@ public class MySession implements Session, HttpSession, Serializable
 
 	protected void resetExpirationTimeSuggestion()
 	{
-		expirationTimeSuggestion.setValue(System.currentTimeMillis() + getMaxInactiveIntervalMillis());
+		long previous = expirationTimeSuggestion.longValue();
+		long suggestion = System.currentTimeMillis() + getMaxInactiveIntervalMillis();
+		expirationTimeSuggestion.setValue(suggestion);
+
+		// the session is only checked when the slot it is filed in comes due, file it again if it may now expire sooner
+		if (suggestion < previous && sessionManager instanceof SessionComponent)
+		{
+			((SessionComponent) sessionManager).scheduleExpiry(m_id, suggestion);
+		}
 	}
 
 	protected long getMaxInactiveIntervalMillis()
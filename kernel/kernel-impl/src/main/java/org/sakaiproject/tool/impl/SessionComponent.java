@@ -28,7 +28,6 @@ import java.security.Principal;
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -71,13 +70,13 @@ public abstract class SessionComponent implements SessionManager, SessionStore
 	protected final static String CURRENT_SERVLET_CONTEXT = "org.sakaiproject.util.RequestFilter.servlet_context";
 	/** The sessions - keyed by session id. */
 	protected Map<String, Session> m_sessions = new ConcurrentHashMap<String, Session>();
+	/** The sessions that have a user - keyed by user id. */
+	protected Map<String, Set<Session>> m_userSessions = new ConcurrentHashMap<String, Set<Session>>();
 	/**
-	 * The expected time sessions may be ready for expiration.  This is only an optimization
-	 * for when Terracotta is in use, to prevent faulting Session objects into the local
-	 * JVM when it is not necessary. Session.isInactive() method remains the ultimate authority
-	 * to determine if a session is invalid or not.
+	 * The session ids filed by the time they may be ready for expiration, so maintenance only checks the sessions that
+	 * are due. Session.isInactive() method remains the ultimate authority to determine if a session is invalid or not.
 	 */
-	protected Map<String,MutableLong> expirationTimeSuggestionMap = new ConcurrentHashMap<String, MutableLong>();
+	protected SessionExpiryWheel m_expiry = new SessionExpiryWheel(60 * 1000L);
 	/** The maintenance. */
 	protected Maintenance m_maintenance = null;
 	/** The set of tool ids that represent tools that can be clustered */
@@ -198,6 +197,7 @@ public abstract class SessionComponent implements SessionManager, SessionStore
 		// start the maintenance thread
 		if (m_checkEvery > 0)
 		{
+			m_expiry = new SessionExpiryWheel(m_checkEvery * 1000L);
 			m_maintenance = new Maintenance();
 			m_maintenance.start();
 		}
@@ -283,8 +283,80 @@ public abstract class SessionComponent implements SessionManager, SessionStore
 	}
 
 	public void remove(String sessionId) {
-		m_sessions.remove(sessionId);
-		expirationTimeSuggestionMap.remove(sessionId);
+		Session s = m_sessions.remove(sessionId);
+		if ((s != null) && (s.getUserId() != null))
+		{
+			removeUserSession(s.getUserId(), s);
+		}
+	}
+
+	/**
+	 * Place a session into storage, file it for expiry and index it by user.
+	 * 
+	 * @param s
+	 *        The session.
+	 * @return The session previously stored with the same id, if any.
+	 */
+	protected Session addSession(MySession s)
+	{
+		Session old = m_sessions.put(s.getId(), s);
+		if ((old != null) && (old.getUserId() != null))
+		{
+			removeUserSession(old.getUserId(), old);
+		}
+		// first checked from when it was created, after that from its expiration time suggestion
+		m_expiry.schedule(s.getId(), s.getCreationTime());
+		if (s.getUserId() != null)
+		{
+			addUserSession(s.getUserId(), s);
+		}
+		return old;
+	}
+
+	/**
+	 * Keep the user index up to date when a session changes user.
+	 * 
+	 * @param s
+	 *        The session.
+	 * @param oldUserId
+	 *        The user id the session had, or null.
+	 * @param newUserId
+	 *        The user id the session has now, or null.
+	 */
+	protected void userChanged(Session s, String oldUserId, String newUserId)
+	{
+		if (oldUserId != null && !oldUserId.equals(newUserId))
+		{
+			removeUserSession(oldUserId, s);
+		}
+		// sessions not (or no longer) in storage, such as an unsaved current session, are not indexed
+		if (newUserId != null && m_sessions.get(s.getId()) == s)
+		{
+			addUserSession(newUserId, s);
+		}
+	}
+
+	protected void addUserSession(String userId, Session s)
+	{
+		m_userSessions.compute(userId, (k, sessions) -> {
+			if (sessions == null) sessions = ConcurrentHashMap.newKeySet();
+			sessions.add(s);
+			return sessions;
+		});
+
+		// if the session was removed while we were adding it, take it out again
+		if (m_sessions.get(s.getId()) != s)
+		{
+			removeUserSession(userId, s);
+		}
+	}
+
+	protected void removeUserSession(String userId, Session s)
+	{
+		m_userSessions.computeIfPresent(userId, (k, sessions) -> {
+			sessions.remove(s);
+			return sessions.isEmpty() ? null : sessions;
+		});
 	}
 
 	/**
@@ -370,11 +442,8 @@ public abstract class SessionComponent implements SessionManager, SessionStore
 		// create a new session
 		Session s = new MySession(this,id,threadLocalManager(),idManager(),this,sessionListener,m_defaultInactiveInterval,nPS,currentTime,rebuildBreakdownService());
 
-		// Place session into the main Session Storage, capture any old id
-		Session old = m_sessions.put(s.getId(), s);
-
-		// Place an entry in the expirationTimeSuggestionMap that corresponds to the entry in m_sessions
-		expirationTimeSuggestionMap.put(id, currentTime);
+		// Place session into the main Session Storage and the expiry wheel, capture any old id
+		Session old = addSession((MySession) s);
 
 		// check for id conflict
 		if (old != null)
@@ -472,26 +541,98 @@ public abstract class SessionComponent implements SessionManager, SessionStore
 	 */
 	public int getActiveUserCount(int secs)
 	{
-		Set<String> activeusers = new HashSet<String>(m_sessions.size());
+		long since = System.currentTimeMillis() - (secs * 1000L);
+		int count = 0;
 
-		long now = System.currentTimeMillis();
-
-		for (Iterator<Session> i = m_sessions.values().iterator(); i.hasNext();)
+		// walk the users rather than the sessions, stopping at the first active session of each
+		for (Map.Entry<String, Set<Session>> user : m_userSessions.entrySet())
 		{
-			MySession s = (MySession) i.next();
+			// Ignore admin and postmaster
+			if ("admin".equals(user.getKey()) || "postmaster".equals(user.getKey())) continue;
 
-			if ((now - s.getLastAccessedTime()) < (secs * 1000))
+			for (Session s : user.getValue())
 			{
-				activeusers.add(s.getUserId());
+				if (s.getLastAccessedTime() > since)
+				{
+					count++;
+					break;
+				}
 			}
 		}
 
-		// Ignore admin and postmaster
-		activeusers.remove("admin");
-		activeusers.remove("postmaster");
-		activeusers.remove(null);
+		return count;
+	}
 
-		return activeusers.size();
+	/**
+	 * File a session to be checked for expiry at a time earlier than it was filed for, such as when its inactive
+	 * interval is shortened. It stays filed in the later slot too, and is dropped from there once it is gone.
+	 * 
+	 * @param id
+	 *        The session id.
+	 * @param time
+	 *        When the session may expire (ms).
+	 */
+	protected void scheduleExpiry(String id, long time)
+	{
+		m_expiry.schedule(id, time);
+	}
+
+	/**
+	 * Invalidate the sessions that have expired. Only sessions filed in a slot of the expiry wheel that has come due are
+	 * checked, those that are still active are filed again for when they may expire next.
+	 * 
+	 * @param now
+	 *        The current time (ms).
+	 * @return The number of sessions invalidated.
+	 */
+	protected int expireSessions(long now)
+	{
+		int expired = 0;
+		for (String id : m_expiry.poll(now))
+		{
+			// the slot is already taken out of the wheel, so a session that fails is filed again or it is never checked
+			try
+			{
+				if (expireSession(id, now)) expired++;
+			}
+			catch (Exception e)
+			{
+				log.warn("Failed to check session " + id + " for expiry, will check again", e);
+				m_expiry.schedule(id, now);
+			}
+		}
+		return expired;
+	}
+
+	/**
+	 * Invalidate a session if it has expired, otherwise file it again for when it may expire next.
+	 * 
+	 * @param id
+	 *        The session id.
+	 * @param now
+	 *        The current time (ms).
+	 * @return true if the session was invalidated.
+	 */
+	private boolean expireSession(String id, long now)
+	{
+		MySession s = (MySession) m_sessions.get(id);
+		if (s == null) return false;
+
+		long suggestion = s.expirationTimeSuggestion.longValue();
+		if (suggestion < now)
+		{
+			if (log.isDebugEnabled()) log.debug("checking session " + s.getId());
+			if (s.isInactive())
+			{
+				if (log.isDebugEnabled()) log.debug("invalidating session " + s.getId());
+				synchronized(s) {
+					s.invalidate();
+				}
+				return true;
+			}
+		}
+		m_expiry.schedule(id, suggestion);
+		return false;
 	}
 
 	public SessionAttributeListener getSessionListener() {
@@ -573,19 +714,8 @@ public abstract class SessionComponent implements SessionManager, SessionStore
 			{
 				try
 				{
-					for (Map.Entry<String, MutableLong> entry: expirationTimeSuggestionMap.entrySet()) {
-						if (entry.getValue().longValue() < System.currentTimeMillis()) {
-							MySession s = (MySession)m_sessions.get(entry.getKey());
-							if (log.isDebugEnabled()) log.debug("checking session " + s.getId());
-							if (s.isInactive())
-							{
-								if (log.isDebugEnabled()) log.debug("invalidating session " + s.getId());
-								synchronized(s) {
-									s.invalidate();
-								}
-							}
-						}
-					}
+					int expired = expireSessions(System.currentTimeMillis());
+					if (log.isDebugEnabled()) log.debug("run(): expired " + expired + " sessions");
 				}
 				catch (Exception e)
 				{
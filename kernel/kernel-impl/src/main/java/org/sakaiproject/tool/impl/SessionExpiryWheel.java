@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * <p>
+ * SessionExpiryWheel files session ids by the time slot in which they may expire, so the maintenance thread only looks at
+ * the sessions whose slot has come due instead of at every session. The time is only a suggestion, the session decides
+ * whether it is really inactive and is filed again if it is not.
+ * </p>
+ * <p>
+ * Ids are not taken out when a session goes away, they are dropped by the caller when their slot comes due and the
+ * session is no longer found.
+ * </p>
+ */
+public class SessionExpiryWheel
+{
+	/** The width of a slot (ms). */
+	private final long tick;
+
+	/** The slots, keyed by time / tick. */
+	private final ConcurrentSkipListMap<Long, Slot> slots = new ConcurrentSkipListMap<Long, Slot>();
+
+	/**
+	 * Construct.
+	 * 
+	 * @param tick
+	 *        The width of a slot (ms), normally how often the wheel is polled.
+	 */
+	public SessionExpiryWheel(long tick)
+	{
+		this.tick = Math.max(1L, tick);
+	}
+
+	/**
+	 * File a session id to be polled once the time has passed.
+	 * 
+	 * @param id
+	 *        The session id.
+	 * @param time
+	 *        When the session may expire (ms).
+	 */
+	public void schedule(String id, long time)
+	{
+		Long key = time / tick;
+		while (true)
+		{
+			Slot slot = slots.get(key);
+			if (slot == null)
+			{
+				Slot created = new Slot();
+				slot = slots.putIfAbsent(key, created);
+				if (slot == null) slot = created;
+			}
+			if (slot.add(id)) return;
+
+			// the slot was polled after we found it, make way for a new one
+			slots.remove(key, slot);
+		}
+	}
+
+	/**
+	 * Take out every id filed in a slot that has come due. Ids filed again while the result is being worked on are not
+	 * returned until the next poll.
+	 * 
+	 * @param now
+	 *        The current time (ms).
+	 * @return The ids that may have expired, possibly with duplicates and ids of sessions that are gone.
+	 */
+	public List<String> poll(long now)
+	{
+		List<String> rv = new ArrayList<String>();
+		for (Iterator<Map.Entry<Long, Slot>> i = slots.headMap(now / tick, true).entrySet().iterator(); i.hasNext();)
+		{
+			Map.Entry<Long, Slot> entry = i.next();
+			slots.remove(entry.getKey(), entry.getValue());
+			rv.addAll(entry.getValue().close());
+		}
+		return rv;
+	}
+
+	/**
+	 * @return The number of ids filed, which includes ids of sessions that are gone but not yet polled.
+	 */
+	public int size()
+	{
+		int rv = 0;
+		for (Slot slot : slots.values())
+		{
+			rv += slot.size();
+		}
+		return rv;
+	}
+
+	/**
+	 * The ids in one slot. Once closed by a poll nothing more can be added, so an id is never added to a slot that has
+	 * already been taken out.
+	 */
+	private static class Slot
+	{
+		private final Set<String> ids = new HashSet<String>();
+
+		private boolean closed = false;
+
+		synchronized boolean add(String id)
+		{
+			if (closed) return false;
+			ids.add(id);
+			return true;
+		}
+
+		synchronized Set<String> close()
+		{
+			closed = true;
+			return ids;
+		}
+
+		synchronized int size()
+		{
+			return ids.size();
+		}
+	}
+}
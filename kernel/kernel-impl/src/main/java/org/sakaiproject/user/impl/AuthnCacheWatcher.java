@@ -86,7 +86,7 @@ public class AuthnCacheWatcher implements Observer {
 		if (userCache == null) { // this is the user id->eid mapping cache
 			userCache = memoryService.getCache("org.sakaiproject.user.api.UserDirectoryService");
 		}
-		eventTrackingService.addObserver(this);
+		eventTrackingService.addObserver(this, "user.");
 	}
 	
 	public void destroy() {
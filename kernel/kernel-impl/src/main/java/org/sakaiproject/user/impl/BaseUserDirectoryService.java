@@ -25,6 +25,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -129,6 +130,9 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 	/** A cache of users' id/eid map */
 	protected Cache<String, String> m_userCache = null;
 
+	/** Timings of the stages of bulk user lookups. */
+	protected final UserLookupStats m_lookupStats = new UserLookupStats();
+
 	/** Optional service to provide site-specific aliases for a user's display ID and display name. */
 	protected ContextualUserDisplayService m_contextualUserDisplayService = null;
 	
@@ -594,6 +598,7 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
                 m_userCacheObserver = new UserCacheObserver();
                 eventTrackingService().addObserver(m_userCacheObserver);
             }
+            m_lookupStats.register();
 
 			// register as an entity producer
 			entityManager().registerEntityProducer(this, REFERENCE_ROOT);
@@ -690,6 +695,7 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 		m_passwordPolicyProvider = null;
 		m_callCache.close();
 		m_userCacheObserver = null;
+		m_lookupStats.unregister();
 
 		log.info("destroy()");
 	}
@@ -914,62 +920,69 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 		// record may be in the Sakai user table or not, and may be in the
 		// EID-mapping table or not.
 		
+		m_lookupStats.lookup(searchIds.size());
+
 		// User objects to return
 		List<UserEdit> rv = new Vector<UserEdit>();
 
+		// the users we've already cached, all at once
+		long start = System.nanoTime();
+		Map<String, UserEdit> cached = getCachedUsers(searchIds);
+		rv.addAll(cached.values());
+		m_lookupStats.stage(UserLookupStats.CACHE, searchIds.size(), cached.size(), System.nanoTime() - start);
+
+		// the users read here, to cache together at the end
+		List<UserEdit> toCache = new ArrayList<UserEdit>();
+
 		// a list of User (edits) setup to check with the provider
 		Collection<UserEdit> fromProvider = new Vector<UserEdit>();
 
-		// for each requested id
+		// for each requested id not cached
+		start = System.nanoTime();
 		for (String id : searchIds)
 		{
-			// see if we've done this already in this thread
-			String ref = userReference(id);
-			UserEdit user = getCachedUser(ref);
-			if (user == null)
+			if (cached.containsKey(id)) continue;
+
+			// find our user record
+			UserEdit user = m_storage.getById(id);
+			if (user != null)
 			{
-				// find our user record
-				user = m_storage.getById(id);
-				if (user != null)
+				toCache.add(user);
+			}
+			else if (m_provider != null)
+			{
+				// get the eid for this user so we can ask the provider
+				String eid = m_storage.checkMapForEid(id);
+				if (eid != null)
 				{
-					putCachedUser(ref, user);
+					// make a new edit to hold the provider's info; the provider will either fill this in, if known, or remove it from the collection
+					fromProvider.add(new BaseUserEdit(id, eid));
 				}
-				else if (m_provider != null)
+				else
 				{
-					// get the eid for this user so we can ask the provider
-					String eid = m_storage.checkMapForEid(id);
-					if (eid != null)
-					{
-						// make a new edit to hold the provider's info; the provider will either fill this in, if known, or remove it from the collection
-						fromProvider.add(new BaseUserEdit(id, eid));
-					}
-					else
-					{
-						// this user is not internally defined, and we can't find an eid for it, so we skip it
-						log.warn("getUsers: cannot find eid for user id: " + id);
-					}
+					// this user is not internally defined, and we can't find an eid for it, so we skip it
+					log.warn("getUsers: cannot find eid for user id: " + id);
 				}
 			}
-			// add to return
-			if (user != null) rv.add(user);
 		}
+		m_lookupStats.stage(UserLookupStats.DATABASE, searchIds.size() - cached.size(), toCache.size(), System.nanoTime() - start);
+		rv.addAll(toCache);
 
 		// check the provider, all at once
 		if (!fromProvider.isEmpty())
 		{
+			start = System.nanoTime();
+			int asked = fromProvider.size();
 			m_provider.getUsers(fromProvider);
+			m_lookupStats.stage(UserLookupStats.PROVIDER, asked, fromProvider.size(), System.nanoTime() - start);
 
-			// for each User in the collection that was filled in (and not removed) by the provider, cache and return it
-			for (Iterator i = fromProvider.iterator(); i.hasNext();)
-			{
-				UserEdit user = (UserEdit) i.next();
-				putCachedUser(user.getReference(), user);
-
-				// add to return
-				rv.add(user);
-			}
+			// each User in the collection that was filled in (and not removed) by the provider is cached and returned
+			toCache.addAll(fromProvider);
+			rv.addAll(fromProvider);
 		}
 
+		putCachedUsers(toCache);
+
 		return rv;
 	}
 	
@@ -1840,6 +1853,51 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 		}
 	}
 
+	/**
+	 * Look up many users in the cache in one call.
+	 * 
+	 * @param ids
+	 *        The user ids.
+	 * @return The cached users, keyed by id. Ids not cached are not in the map.
+	 */
+	protected Map<String, UserEdit> getCachedUsers(Collection<String> ids)
+	{
+		Map<String, UserEdit> rv = new HashMap<String, UserEdit>();
+		if (m_callCache == null || ids.isEmpty()) return rv;
+
+		Map<String, String> refs = new HashMap<String, String>(ids.size() * 2);
+		for (String id : ids)
+		{
+			refs.put(userReference(id), id);
+		}
+		for (Map.Entry<String, UserEdit> entry : m_callCache.getAll(refs.keySet()).entrySet())
+		{
+			if (entry.getValue() != null)
+			{
+				rv.put(refs.get(entry.getKey()), entry.getValue());
+			}
+		}
+		return rv;
+	}
+
+	/**
+	 * Cache many users in one call.
+	 * 
+	 * @param users
+	 *        The users to cache.
+	 */
+	protected void putCachedUsers(Collection<? extends UserEdit> users)
+	{
+		if (m_callCache == null || users.isEmpty()) return;
+
+		Map<String, UserEdit> entries = new HashMap<String, UserEdit>(users.size() * 2);
+		for (UserEdit user : users)
+		{
+			entries.put(userReference(user.getId()), user);
+		}
+		m_callCache.putAll(entries);
+	}
+
 	protected void removeCachedUser(String ref, String eid)
 	{
 		if (m_callCache != null)
@@ -661,69 +661,67 @@ public abstract class DbUserService extends BaseUserDirectoryService
 		public List<User> getUsersByIds(Collection<String> ids)
 		{
 			List<User> foundUsers = new ArrayList<User>();
+			m_lookupStats.lookup(ids.size());
 
 			// Put all the already cached user records to one side.
-			Set<String> idsToSearch = new HashSet<String>();
-			for (String id : ids)
-			{
-				UserEdit cachedUser = getCachedUser(userReference(id));
-				if (cachedUser != null)
-				{
-					foundUsers.add(cachedUser);
-				}
-				else
-				{
-					idsToSearch.add(id);
-				}
-			}
-
+			long start = System.nanoTime();
+			Map<String, UserEdit> cachedUsers = getCachedUsers(ids);
+			foundUsers.addAll(cachedUsers.values());
+			Set<String> idsToSearch = new HashSet<String>(ids);
+			idsToSearch.removeAll(cachedUsers.keySet());
+			m_lookupStats.stage(UserLookupStats.CACHE, ids.size(), cachedUsers.size(), System.nanoTime() - start);
+
+			start = System.nanoTime();
 			UserWithEidReader userWithEidReader = new UserWithEidReader(false);
 			userWithEidReader.findMappedUsers(idsToSearch);
+			m_lookupStats.stage(UserLookupStats.DATABASE, idsToSearch.size(), userWithEidReader.getUsersFromSakaiData().size()
+					+ userWithEidReader.getUsersToQueryProvider().size(), System.nanoTime() - start);
 
 			// Add the Sakai-maintained user records.
-			foundUsers.addAll(userWithEidReader.getUsersFromSakaiData());
+			List<UserEdit> usersToCache = new ArrayList<UserEdit>(userWithEidReader.getUsersFromSakaiData());
+			foundUsers.addAll(usersToCache);
 
 			// Finally, fill in the provided user records.
 			List<UserEdit> usersToQueryProvider = userWithEidReader.getUsersToQueryProvider();
 			if ((m_provider != null) && !usersToQueryProvider.isEmpty())
 			{
+				start = System.nanoTime();
+				int asked = usersToQueryProvider.size();
 				m_provider.getUsers(usersToQueryProvider);
+				m_lookupStats.stage(UserLookupStats.PROVIDER, asked, usersToQueryProvider.size(), System.nanoTime() - start);
 
-				// Make sure that returned users are mapped and cached correctly.
-				for (UserEdit user : usersToQueryProvider)
-				{
-					putUserInCaches(user);
-					foundUsers.add(user);
-				}
+				usersToCache.addAll(usersToQueryProvider);
+				foundUsers.addAll(usersToQueryProvider);
 			}
 
+			// Make sure that returned users are cached correctly, all at once.
+			putUsersInCaches(usersToCache);
+
 			return foundUsers;
 		}
 
 		public List<User> getUsersByEids(Collection<String> eids)
 		{
 			List<User> foundUsers = new ArrayList<User>();
+			m_lookupStats.lookup(eids.size());
 
 			// Put all the already cached user records to one side.
-			Set<String> eidsToSearch = new HashSet<String>();
-			for (String eid : eids)
-			{
-				UserEdit cachedUser = getCachedUserByEid(eid);
-				if (cachedUser != null)
-				{
-					foundUsers.add(cachedUser);
-				}
-				else
-				{
-					eidsToSearch.add(eid);
-				}
-			}
-
+			long start = System.nanoTime();
+			Map<String, UserEdit> cachedUsers = getCachedUsersByEid(eids);
+			foundUsers.addAll(cachedUsers.values());
+			Set<String> eidsToSearch = new HashSet<String>(eids);
+			eidsToSearch.removeAll(cachedUsers.keySet());
+			m_lookupStats.stage(UserLookupStats.CACHE, eids.size(), cachedUsers.size(), System.nanoTime() - start);
+
+			start = System.nanoTime();
 			UserWithEidReader userWithEidReader = new UserWithEidReader(true);
 			userWithEidReader.findMappedUsers(eidsToSearch);
+			m_lookupStats.stage(UserLookupStats.DATABASE, eidsToSearch.size(), userWithEidReader.getUsersFromSakaiData().size()
+					+ userWithEidReader.getUsersToQueryProvider().size(), System.nanoTime() - start);
 
 			// Add the Sakai-maintained user records.
-			foundUsers.addAll(userWithEidReader.getUsersFromSakaiData());
+			List<UserEdit> usersToCache = new ArrayList<UserEdit>(userWithEidReader.getUsersFromSakaiData());
+			foundUsers.addAll(usersToCache);
 
 			// We'll need to query the provider about any EIDs which did not appear
 			// in the ID-EID mapping table, since this might be the first time
@@ -745,30 +743,91 @@ public abstract class DbUserService extends BaseUserDirectoryService
 			// Finally, fill in the provided user records.
 			if ((m_provider != null) && !usersToQueryProvider.isEmpty())
 			{
+				start = System.nanoTime();
+				int asked = usersToQueryProvider.size();
 				m_provider.getUsers(usersToQueryProvider);
+				m_lookupStats.stage(UserLookupStats.PROVIDER, asked, usersToQueryProvider.size(), System.nanoTime() - start);
 
-				// Make sure that returned users are mapped and cached correctly.
+				// Make sure that returned users are mapped correctly.
 				for (UserEdit user : usersToQueryProvider)
 				{
 					ensureMappedIdForProvidedUser(user);
-					putUserInCaches(user);
+					usersToCache.add(user);
 					foundUsers.add(user);
 				}
 			}
 
+			// Make sure that returned users are cached correctly, all at once.
+			putUsersInCaches(usersToCache);
+
 			return foundUsers;
 		}
 
+		/**
+		 * Look up many users in the caches by eid, first their ids and then their records.
+		 * 
+		 * @return The cached users, keyed by eid.
+		 */
+		protected Map<String, UserEdit> getCachedUsersByEid(Collection<String> eids)
+		{
+			Map<String, String> eidsById = new HashMap<String, String>(eids.size() * 2);
+			if (m_separateIdEid)
+			{
+				Set<String> keys = new HashSet<String>(eids.size() * 2);
+				for (String eid : eids)
+				{
+					keys.add(IDCACHE + eid);
+				}
+				for (Object entry : cache.getAll(keys).entrySet())
+				{
+					Map.Entry<?, ?> e = (Map.Entry<?, ?>) entry;
+					if (e.getValue() != null)
+					{
+						eidsById.put((String) e.getValue(), ((String) e.getKey()).substring(IDCACHE.length()));
+					}
+				}
+			}
+			else
+			{
+				for (String eid : eids)
+				{
+					eidsById.put(eid, eid);
+				}
+			}
+
+			Map<String, UserEdit> rv = new HashMap<String, UserEdit>();
+			for (Map.Entry<String, UserEdit> entry : getCachedUsers(eidsById.keySet()).entrySet())
+			{
+				rv.put(eidsById.get(entry.getKey()), entry.getValue());
+			}
+			return rv;
+		}
+
 		protected void putUserInCaches(UserEdit user)
 		{
+			putUsersInCaches(Collections.singletonList(user));
+		}
+
+		/**
+		 * Cache the id-eid mappings and records of many users in one call to each cache.
+		 */
+		protected void putUsersInCaches(Collection<UserEdit> users)
+		{
+			if (users.isEmpty()) return;
+
 			// Update ID-EID mapping cache.
-			String id = user.getId();
-			String eid = user.getEid();
-			cache.put(EIDCACHE+id, eid);
-			cache.put(IDCACHE+eid, id);
+			Map<String, String> mappings = new HashMap<String, String>(users.size() * 4);
+			for (UserEdit user : users)
+			{
+				String id = user.getId();
+				String eid = user.getEid();
+				mappings.put(EIDCACHE+id, eid);
+				mappings.put(IDCACHE+eid, id);
+			}
+			cache.putAll(mappings);
 
 			// Update user record cache.
-			putCachedUser(userReference(id), user);
+			putCachedUsers(users);
 		}
 
 		/**
@@ -855,10 +914,8 @@ public abstract class DbUserService extends BaseUserDirectoryService
 
 					if (idFromSakaiUser != null)
 					{
+						// the caller caches these with the provided users once the reading is done
 						usersFromSakaiData.add(userEdit);
-
-						// Cache management is why this needs to be an inner class.
-						putUserInCaches(userEdit);
 					}
 					else
 					{
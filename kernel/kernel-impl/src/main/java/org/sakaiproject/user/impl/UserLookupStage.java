@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.user.impl;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * The timings of one stage of bulk user lookups, as published by UserLookupStatsMXBean. Times are in microseconds.
+ */
+public class UserLookupStage
+{
+	private final String stage;
+	private final long calls;
+	private final long ids;
+	private final long found;
+	private final long totalMicros;
+	private final long meanMicros;
+	private final long maxMicros;
+
+	@ConstructorProperties({ "stage", "calls", "ids", "found", "totalMicros", "meanMicros", "maxMicros" })
+	public UserLookupStage(String stage, long calls, long ids, long found, long totalMicros, long meanMicros, long maxMicros)
+	{
+		this.stage = stage;
+		this.calls = calls;
+		this.ids = ids;
+		this.found = found;
+		this.totalMicros = totalMicros;
+		this.meanMicros = meanMicros;
+		this.maxMicros = maxMicros;
+	}
+
+	public String getStage()
+	{
+		return stage;
+	}
+
+	public long getCalls()
+	{
+		return calls;
+	}
+
+	public long getIds()
+	{
+		return ids;
+	}
+
+	public long getFound()
+	{
+		return found;
+	}
+
+	public long getTotalMicros()
+	{
+		return totalMicros;
+	}
+
+	public long getMeanMicros()
+	{
+		return meanMicros;
+	}
+
+	public long getMaxMicros()
+	{
+		return maxMicros;
+	}
+}
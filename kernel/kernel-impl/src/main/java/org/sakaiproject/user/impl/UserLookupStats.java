@@ -0,0 +1,187 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.user.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>
+ * Times the stages of the bulk user lookups made by getUsers() and getUsersByEids(): the ids found in the user cache,
+ * those read from the database in IN queries and those passed to the UserDirectoryProvider, so it can be seen where
+ * resolving a large roster spends its time.
+ * </p>
+ */
+@Slf4j
+public class UserLookupStats implements UserLookupStatsMXBean
+{
+	public static final String OBJECT_NAME = "org.sakaiproject:type=UserDirectoryService";
+
+	public static final String CACHE = "cache";
+
+	public static final String DATABASE = "database";
+
+	public static final String PROVIDER = "provider";
+
+	private final LongAdder m_bulkLookups = new LongAdder();
+	private final LongAdder m_requestedIds = new LongAdder();
+
+	private final Stage m_cache = new Stage(CACHE);
+	private final Stage m_database = new Stage(DATABASE);
+	private final Stage m_provider = new Stage(PROVIDER);
+
+	private ObjectName m_registeredName = null;
+
+	private static class Stage
+	{
+		final String name;
+		final LongAdder calls = new LongAdder();
+		final LongAdder ids = new LongAdder();
+		final LongAdder found = new LongAdder();
+		final LongAdder nanos = new LongAdder();
+		final AtomicLong maxNanos = new AtomicLong();
+
+		Stage(String name)
+		{
+			this.name = name;
+		}
+
+		UserLookupStage summary()
+		{
+			long n = calls.sum();
+			long total = TimeUnit.NANOSECONDS.toMicros(nanos.sum());
+			return new UserLookupStage(name, n, ids.sum(), found.sum(), total, n == 0 ? 0 : total / n,
+					TimeUnit.NANOSECONDS.toMicros(maxNanos.get()));
+		}
+
+		void reset()
+		{
+			calls.reset();
+			ids.reset();
+			found.reset();
+			nanos.reset();
+			maxNanos.set(0);
+		}
+	}
+
+	/**
+	 * Record a bulk lookup.
+	 * 
+	 * @param ids
+	 *        The number of ids or eids asked for.
+	 */
+	public void lookup(int ids)
+	{
+		m_bulkLookups.increment();
+		m_requestedIds.add(ids);
+	}
+
+	/**
+	 * Record one stage of a bulk lookup.
+	 * 
+	 * @param stage
+	 *        CACHE, DATABASE or PROVIDER.
+	 * @param ids
+	 *        The number of ids or eids the stage looked for.
+	 * @param found
+	 *        The number of users the stage found.
+	 * @param nanos
+	 *        The time taken.
+	 */
+	public void stage(String stage, int ids, int found, long nanos)
+	{
+		Stage s = PROVIDER.equals(stage) ? m_provider : DATABASE.equals(stage) ? m_database : m_cache;
+		s.calls.increment();
+		s.ids.add(ids);
+		s.found.add(found);
+		s.nanos.add(nanos);
+		s.maxNanos.accumulateAndGet(nanos, Math::max);
+	}
+
+	public long getBulkLookups()
+	{
+		return m_bulkLookups.sum();
+	}
+
+	public long getRequestedIds()
+	{
+		return m_requestedIds.sum();
+	}
+
+	public List<UserLookupStage> getStages()
+	{
+		List<UserLookupStage> rv = new ArrayList<>(3);
+		rv.add(m_cache.summary());
+		rv.add(m_database.summary());
+		rv.add(m_provider.summary());
+		return rv;
+	}
+
+	public void reset()
+	{
+		m_bulkLookups.reset();
+		m_requestedIds.reset();
+		m_cache.reset();
+		m_database.reset();
+		m_provider.reset();
+	}
+
+	/**
+	 * Make the statistics available through the platform MBean server.
+	 */
+	public void register()
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name))
+			{
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+			m_registeredName = name;
+		}
+		catch (JMException e)
+		{
+			log.warn("Failed to register user lookup statistics: {}", e.toString());
+		}
+	}
+
+	public void unregister()
+	{
+		if (m_registeredName == null) return;
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(m_registeredName);
+		}
+		catch (JMException e)
+		{
+			log.debug("Failed to unregister user lookup statistics: {}", e.toString());
+		}
+		m_registeredName = null;
+	}
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.user.impl;
+
+import java.util.List;
+
+/**
+ * Management view of the bulk user lookups made through the UserDirectoryService.
+ */
+public interface UserLookupStatsMXBean
+{
+	/**
+	 * @return the number of bulk lookups, by id or by eid.
+	 */
+	long getBulkLookups();
+
+	/**
+	 * @return the number of ids and eids asked for by bulk lookups.
+	 */
+	long getRequestedIds();
+
+	/**
+	 * @return the timings of each stage: the user cache, the database and the provider.
+	 */
+	List<UserLookupStage> getStages();
+
+	/**
+	 * Clear the statistics.
+	 */
+	void reset();
+}
@@ -0,0 +1,13 @@
+-----------------------------------------------------------------------------
+-- CONTENT_COLLECTION_SIZE
+-- The resources, collections and body bytes within a collection, at any depth
+-----------------------------------------------------------------------------
+
+CREATE TABLE CONTENT_COLLECTION_SIZE
+(
+	COLLECTION_ID VARCHAR (255) NOT NULL,
+	RESOURCE_COUNT BIGINT NOT NULL,
+	COLLECTION_COUNT BIGINT NOT NULL,
+	BODY_BYTES BIGINT NOT NULL,
+	PRIMARY KEY (COLLECTION_ID)
+);
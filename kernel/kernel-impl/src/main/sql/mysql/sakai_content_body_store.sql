@@ -0,0 +1,18 @@
+-----------------------------------------------------------------------------
+-- CONTENT_BODY_STORE
+-- One row for each body file that may be shared by more than one resource
+-----------------------------------------------------------------------------
+
+CREATE TABLE CONTENT_BODY_STORE
+(
+	FILE_PATH VARCHAR (128) NOT NULL,
+	BODY_HASH VARCHAR (64),
+	FILE_SIZE BIGINT,
+	REF_COUNT INT NOT NULL,
+	PRIMARY KEY (FILE_PATH)
+);
+
+CREATE UNIQUE INDEX CONTENT_BODY_STORE_HASH_I ON CONTENT_BODY_STORE
+(
+	BODY_HASH
+);
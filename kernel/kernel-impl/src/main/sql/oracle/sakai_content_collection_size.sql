@@ -0,0 +1,13 @@
+-----------------------------------------------------------------------------
+-- CONTENT_COLLECTION_SIZE
+-- The resources, collections and body bytes within a collection, at any depth
+-----------------------------------------------------------------------------
+
+CREATE TABLE CONTENT_COLLECTION_SIZE
+(
+	COLLECTION_ID VARCHAR2 (255) NOT NULL,
+	RESOURCE_COUNT NUMBER(18) NOT NULL,
+	COLLECTION_COUNT NUMBER(18) NOT NULL,
+	BODY_BYTES NUMBER(18) NOT NULL,
+	PRIMARY KEY (COLLECTION_ID)
+);
@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.authz.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompiledRealmTest {
+
+    private CompiledRealm site() {
+        return new CompiledRealm.Builder()
+                .allow("maintain", 1)
+                .allow("maintain", 2)
+                .allow("access", 1)
+                .allow(".auth", 3)
+                .grant("instructor", "maintain", true)
+                .grant("student", "access", true)
+                .grant("dropped", "access", false)
+                .build();
+    }
+
+    @Test
+    public void testActiveRoles() {
+        CompiledRealm realm = site();
+        Assert.assertEquals("maintain", realm.getActiveRole("instructor"));
+        Assert.assertEquals("access", realm.getActiveRole("student"));
+        Assert.assertNull(realm.getActiveRole("dropped"));
+        Assert.assertNull(realm.getActiveRole("nobody"));
+        Assert.assertNull(realm.getActiveRole(null));
+        Assert.assertEquals(2, realm.getActiveGrantCount());
+    }
+
+    @Test
+    public void testRoleFunctions() {
+        CompiledRealm realm = site();
+        Assert.assertTrue(realm.isAllowed("maintain", 2));
+        Assert.assertFalse(realm.isAllowed("access", 2));
+        Assert.assertFalse(realm.isAllowed("unknown", 1));
+        Assert.assertTrue(realm.isAllowed(Arrays.asList("access", ".auth"), 3));
+        Assert.assertFalse(realm.isAllowed(Arrays.asList("access", ".anon"), 3));
+        Assert.assertFalse(realm.isAllowed(Collections.emptyList(), 1));
+    }
+
+    @Test
+    public void testEmpty() {
+        Assert.assertNull(CompiledRealm.EMPTY.getActiveRole("instructor"));
+        Assert.assertFalse(CompiledRealm.EMPTY.isAllowed("maintain", 1));
+    }
+
+    @Test
+    public void testSerializable() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(site());
+        }
+        CompiledRealm copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (CompiledRealm) in.readObject();
+        }
+        Assert.assertEquals("maintain", copy.getActiveRole("instructor"));
+        Assert.assertTrue(copy.isAllowed("maintain", 2));
+        Assert.assertFalse(copy.isAllowed("access", 2));
+    }
+}
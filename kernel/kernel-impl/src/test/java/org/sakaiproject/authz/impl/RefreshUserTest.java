@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2003-2016 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.authz.impl;
+
+import java.util.Collections;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.sakaiproject.authz.api.AuthzGroupService;
+import org.sakaiproject.site.api.Site;
+import org.sakaiproject.site.api.SiteService;
+import org.sakaiproject.test.SakaiKernelTestBase;
+import org.sakaiproject.tool.api.Session;
+import org.sakaiproject.tool.api.SessionManager;
+import org.sakaiproject.user.api.UserDirectoryService;
+import org.sakaiproject.user.api.UserEdit;
+
+@Slf4j
+public class RefreshUserTest extends SakaiKernelTestBase {
+	@BeforeClass
+	public static void beforeClass() {
+		try {
+			log.debug("starting oneTimeSetup");
+			oneTimeSetup();
+			log.debug("finished oneTimeSetup");
+		} catch (Exception e) {
+			log.warn(e.getMessage(), e);
+		}
+	}
+
+	@Test
+	public void testProvidedGrantsChangePermissions() throws Exception {
+		SiteService siteService = getService(SiteService.class);
+		UserDirectoryService userService = getService(UserDirectoryService.class);
+		SessionManager sessionManager = getService(SessionManager.class);
+		BaseAuthzGroupService authzGroupService = (BaseAuthzGroupService) getService(AuthzGroupService.class);
+
+		Session session = sessionManager.getCurrentSession();
+		session.setUserId("admin");
+
+		UserEdit user = userService.addUser("provided1", "provided1");
+		userService.commitEdit(user);
+
+		Site site = siteService.addSite("providedSite", "project");
+		site.setProviderGroupId("provided-course");
+		siteService.save(site);
+
+		// this check compiles and caches the realm
+		Assert.assertFalse(authzGroupService.isAllowed("provided1", SiteService.SECURE_UPDATE_SITE, site.getReference()));
+
+		// the provider grants the role at login
+		authzGroupService.m_storage.refreshUser("provided1", Collections.singletonMap("provided-course", "maintain"));
+		Assert.assertTrue(authzGroupService.isAllowed("provided1", SiteService.SECURE_UPDATE_SITE, site.getReference()));
+
+		// and takes it away at the next one
+		authzGroupService.m_storage.refreshUser("provided1", Collections.<String, String>emptyMap());
+		Assert.assertFalse(authzGroupService.isAllowed("provided1", SiteService.SECURE_UPDATE_SITE, site.getReference()));
+	}
+}
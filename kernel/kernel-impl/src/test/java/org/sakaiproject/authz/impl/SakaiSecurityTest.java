@@ -29,17 +29,25 @@ import org.sakaiproject.authz.api.FunctionManager;
 import org.sakaiproject.authz.api.GroupNotDefinedException;
 import org.sakaiproject.component.api.ServerConfigurationService;
 import org.sakaiproject.entity.api.EntityManager;
+import org.sakaiproject.entity.api.Reference;
 import org.sakaiproject.event.api.EventTrackingService;
 import org.sakaiproject.memory.api.Cache;
 import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
+import org.sakaiproject.tool.api.SessionManager;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import static java.util.Collections.singleton;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.collection.IsIterableContainingInAnyOrder.containsInAnyOrder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -57,6 +65,8 @@ public class SakaiSecurityTest {
     @Mock private MemoryService memoryService;
     @Mock private ServerConfigurationService serverConfigurationService;
     @Mock private EventTrackingService eventTrackingService;
+    @Mock private ThreadLocalManager threadLocalManager;
+    @Mock private SessionManager sessionManager;
 
 
     private SakaiSecurity sakaiSecurity;
@@ -70,6 +80,8 @@ public class SakaiSecurityTest {
         sakaiSecurity.setMemoryService(memoryService);
         sakaiSecurity.setServerConfigurationService(serverConfigurationService);
         sakaiSecurity.setEventTrackingService(eventTrackingService);
+        sakaiSecurity.setThreadLocalManager(threadLocalManager);
+        sakaiSecurity.setSessionManager(sessionManager);
 
         // Always return default
         when(serverConfigurationService.getString(anyString(), anyString())).thenAnswer(invocation -> invocation.getArgument(1));
@@ -150,4 +162,49 @@ public class SakaiSecurityTest {
         assertThat(flushed, containsInAnyOrder("unlock@1@@function@/site/1", "unlock@2@@function@/site/1"));
     }
 
+    private void mockReference(String reference, String... azgs) {
+        Reference ref = mock(Reference.class);
+        when(ref.getAuthzGroups("user1")).thenReturn(Arrays.asList(azgs));
+        when(entityManager.newReference(reference)).thenReturn(ref);
+    }
+
+    @Test
+    public void testUnlockAllGroupsByRealms() {
+        mockReference("/forum/1", "/site/1", "/site/1/group/a");
+        mockReference("/forum/2", "/site/1", "/site/1/group/a");
+        mockReference("/forum/3", "/site/2");
+        mockReference("/forum/4", "/site/1/group/a", "/site/1");
+        when(authzGroupService.isAllowed(eq("user1"), eq("forum.read"), any(Collection.class))).thenAnswer(
+                invocation -> ((Collection<String>) invocation.getArgument(2)).contains("/site/1"));
+
+        Map<String, Boolean> results = sakaiSecurity.unlockAll("user1", "forum.read", Arrays.asList("/forum/1", "/forum/2", "/forum/3", "/forum/4"));
+
+        assertEquals(Arrays.asList("/forum/1", "/forum/2", "/forum/3", "/forum/4"), Arrays.asList(results.keySet().toArray()));
+        assertTrue(results.get("/forum/1"));
+        assertTrue(results.get("/forum/2"));
+        assertFalse(results.get("/forum/3"));
+        assertTrue(results.get("/forum/4"));
+        // the first two references share their realms in the same order so only need one check, the realm order of the
+        // last one matters to the check so it is done on its own
+        verify(authzGroupService, times(3)).isAllowed(eq("user1"), eq("forum.read"), any(Collection.class));
+    }
+
+    @Test
+    public void testUnlockAllMatrix() {
+        mockReference("/forum/1", "/site/1");
+        mockReference("/forum/2", "/site/1");
+        when(authzGroupService.isAllowed(eq("user1"), eq("forum.read"), any(Collection.class))).thenReturn(true);
+        when(authzGroupService.isAllowed(eq("user1"), eq("forum.delete"), any(Collection.class))).thenReturn(false);
+
+        Map<String, Map<String, Boolean>> results = sakaiSecurity.unlockAll("user1", Arrays.asList("forum.read", "forum.delete"), Arrays.asList("/forum/1", "/forum/2"));
+
+        assertTrue(results.get("forum.read").get("/forum/1"));
+        assertTrue(results.get("forum.read").get("/forum/2"));
+        assertFalse(results.get("forum.delete").get("/forum/1"));
+        assertFalse(results.get("forum.delete").get("/forum/2"));
+        // the references are only resolved once for both functions
+        verify(entityManager, times(1)).newReference("/forum/1");
+        verify(authzGroupService, times(1)).isAllowed(eq("user1"), eq("forum.delete"), any(Collection.class));
+    }
+
 }
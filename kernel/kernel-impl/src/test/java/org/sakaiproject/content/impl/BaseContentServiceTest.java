@@ -15,11 +15,26 @@
  */
 package org.sakaiproject.content.impl;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Simple checks for BaseContentService
@@ -63,4 +78,60 @@ public class BaseContentServiceTest {
         assertTrue(baseContentService.isSiteLevelCollection("/group/siteId"));
         assertTrue(baseContentService.isSiteLevelCollection("/group/siteId/"));
     }
+
+    @Test
+    public void testCopyRangeShortReads() {
+        byte[] body = new byte[BaseContentService.STREAM_BUFFER_SIZE * 3];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) i;
+        }
+        // a network stream may return less than was asked for before the end
+        InputStream in = new FilterInputStream(new ByteArrayInputStream(body)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 1000));
+            }
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertNull(baseContentService.copyRange(in, out, 10, body.length - 11));
+        assertArrayEquals(Arrays.copyOfRange(body, 10, body.length - 10), out.toByteArray());
+    }
+
+    @Test
+    public void testTransferRangeWithoutProgress() throws IOException {
+        byte[] body = new byte[BaseContentService.STREAM_BUFFER_SIZE * 3];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) i;
+        }
+        Path file = Files.createTempFile("body", ".bin");
+        Files.write(file, body);
+        // a target that takes nothing, so transferTo makes no progress
+        WritableByteChannel target = new WritableByteChannel() {
+            public int write(ByteBuffer src) {
+                return 0;
+            }
+
+            public boolean isOpen() {
+                return true;
+            }
+
+            public void close() {
+            }
+        };
+        try (FileChannel channel = FileChannel.open(file)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            baseContentService.transferRange(channel, target, out, 10, body.length - 10);
+            assertArrayEquals(Arrays.copyOfRange(body, 10, body.length - 10), out.toByteArray());
+
+            // a range past the end of the file is an error, not a short response
+            try {
+                baseContentService.transferRange(channel, target, new ByteArrayOutputStream(), 10, body.length + 10);
+                fail("range past the end of the file was copied");
+            } catch (IOException e) {
+                // expected
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
 }
@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.db.api.SqlService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ContentBodyStoreTest {
+
+    private SqlService sqlService;
+    private ContentServiceSql sql;
+    private ContentBodyStore store;
+
+    @Before
+    public void setUp() {
+        sqlService = mock(SqlService.class);
+        sql = new ContentServiceSqlDefault();
+        store = new ContentBodyStore(sqlService, sql);
+    }
+
+    private void writeCount(String statement, int count) {
+        when(sqlService.dbWriteCount(eq(statement), any(), isNull(), isNull(), anyInt())).thenReturn(count);
+    }
+
+    @Test
+    public void testHash() {
+        byte[] digest = ContentBodyStore.newDigest().digest("abc".getBytes(StandardCharsets.UTF_8));
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", ContentBodyStore.toHex(digest));
+    }
+
+    @Test
+    public void testReleaseUnregisteredFile() {
+        writeCount(sql.getBodyStoreReleaseSql(), 0);
+        assertTrue(store.release("/2020/001/00/a"));
+        verify(sqlService, never()).dbWriteCount(eq(sql.getBodyStoreDeleteUnreferencedSql()), any(), isNull(), isNull(), anyInt());
+    }
+
+    @Test
+    public void testReleaseSharedFile() {
+        writeCount(sql.getBodyStoreReleaseSql(), 1);
+        writeCount(sql.getBodyStoreDeleteUnreferencedSql(), 0);
+        assertFalse(store.release("/2020/001/00/a"));
+    }
+
+    @Test
+    public void testReleaseLastReference() {
+        writeCount(sql.getBodyStoreReleaseSql(), 1);
+        writeCount(sql.getBodyStoreDeleteUnreferencedSql(), 1);
+        assertTrue(store.release("/2020/001/00/a"));
+    }
+
+    @Test
+    public void testReleaseFailureKeepsFile() {
+        writeCount(sql.getBodyStoreReleaseSql(), -1);
+        assertFalse(store.release("/2020/001/00/a"));
+    }
+
+    @Test
+    public void testReleaseErrorKeepsFile() {
+        when(sqlService.dbWriteCount(eq(sql.getBodyStoreReleaseSql()), any(), isNull(), isNull(), eq(0)))
+                .thenThrow(new RuntimeException("SqlService.dbWrite failure"));
+        assertFalse(store.release("/2020/001/00/a"));
+    }
+
+    @Test
+    public void testShareUnregisteredFile() {
+        writeCount(sql.getBodyStoreAddReferenceSql(), 0);
+        writeCount(sql.getBodyStoreInsertSql(), 1);
+        assertTrue(store.share("/2020/001/00/a", 10));
+        verify(sqlService).dbWriteCount(eq(sql.getBodyStoreInsertSql()), eq(new Object[] { "/2020/001/00/a", null, 10L, 2 }), isNull(),
+                isNull(), anyInt());
+    }
+
+    @Test
+    public void testShareFailure() {
+        writeCount(sql.getBodyStoreAddReferenceSql(), 0);
+        writeCount(sql.getBodyStoreInsertSql(), -1);
+        assertFalse(store.share("/2020/001/00/a", 10));
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.sakaiproject.db.api.SqlService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class ContentCollectionSizesTest {
+
+    @Test
+    public void testCountedContainers() {
+        assertEquals(Arrays.asList("/group/site/a/", "/group/site/"), ContentCollectionSizes.countedContainers("/group/site/a/b.txt"));
+        assertEquals(Arrays.asList("/group/site/"), ContentCollectionSizes.countedContainers("/group/site/a/"));
+        assertEquals(Arrays.asList("/group/site/"), ContentCollectionSizes.countedContainers("/group/site/b.txt"));
+        assertEquals(Collections.emptyList(), ContentCollectionSizes.countedContainers("/group/site/"));
+        assertEquals(Collections.emptyList(), ContentCollectionSizes.countedContainers("/group/"));
+    }
+
+    @Test
+    public void testIsCounted() {
+        assertTrue(ContentCollectionSizes.isCounted("/group-user/site/user/"));
+        assertTrue(ContentCollectionSizes.isCounted("/user/admin/"));
+        assertFalse(ContentCollectionSizes.isCounted("/attachment/"));
+        assertFalse(ContentCollectionSizes.isCounted("/"));
+    }
+
+    @Test
+    public void testShallowCollectionsNotCounted() {
+        SqlService sqlService = mock(SqlService.class);
+        ContentCollectionSizes sizes = new ContentCollectionSizes(sqlService, new ContentServiceSqlDefault());
+        assertNull(sizes.getSizes("/group/"));
+        sizes.adjust("/group/site/", 0, 1, 0);
+        verify(sqlService, never()).dbWrite(anyString(), any());
+    }
+}
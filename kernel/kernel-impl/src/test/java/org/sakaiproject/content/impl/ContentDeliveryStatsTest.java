@@ -0,0 +1,45 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ContentDeliveryStatsTest {
+
+    @Test
+    public void testByBaseType() {
+        ContentDeliveryStats stats = new ContentDeliveryStats();
+        stats.recordStreamed("text/html; charset=UTF-8", 100, 2000000L);
+        stats.recordStreamed("TEXT/HTML", 300, 2000000L);
+        stats.recordSendfile("video/mp4", 1000000);
+        stats.recordSendfile(null, 5);
+
+        assertEquals(Long.valueOf(2), stats.getDeliveries().get("text/html"));
+        assertEquals(Long.valueOf(400), stats.getBytes().get("text/html"));
+        assertEquals(Long.valueOf(2), stats.getMeanStreamMillis().get("text/html"));
+        assertEquals(Long.valueOf(100000), stats.getStreamBytesPerSecond().get("text/html"));
+
+        assertEquals(Long.valueOf(1), stats.getSendfileDeliveries().get("video/mp4"));
+        assertEquals(Long.valueOf(0), stats.getMeanStreamMillis().get("video/mp4"));
+        assertEquals(Long.valueOf(5), stats.getBytes().get("unknown"));
+
+        stats.reset();
+        assertTrue(stats.getDeliveries().isEmpty());
+    }
+}
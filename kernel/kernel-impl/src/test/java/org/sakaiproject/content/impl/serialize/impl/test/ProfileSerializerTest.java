@@ -21,11 +21,21 @@
 
 package org.sakaiproject.content.impl.serialize.impl.test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
 import lombok.extern.slf4j.Slf4j;
 
+import org.junit.Assert;
 import org.junit.Test;
 
 import org.sakaiproject.content.impl.serialize.impl.Type1BaseContentCollectionSerializer;
+import org.sakaiproject.entity.api.serialize.DataStreamEntitySerializer;
+import org.sakaiproject.util.BaseResourceProperties;
+import org.sakaiproject.util.serialize.Type1BaseResourcePropertiesSerializer;
+import org.sakaiproject.util.serialize.Type2BaseResourcePropertiesSerializer;
 
 @Slf4j
 public class ProfileSerializerTest
@@ -82,4 +92,53 @@ public class ProfileSerializerTest
 		}
 		sc.check();
 	}
+
+	/**
+	 * Compares reading an entity's properties and then using only its display name, which is what most listings do,
+	 * with type 1 and type 2 properties.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public final void testReadDisplayName() throws Exception
+	{
+		BaseResourceProperties source = new BaseResourceProperties();
+		for (int i = 0; i < 30; i++)
+		{
+			source.addProperty("property" + i, "a property value of some typical length " + i);
+		}
+		source.addProperty("displayName", "Display Name");
+
+		profileReadDisplayName("Type 1", new Type1BaseResourcePropertiesSerializer(), source);
+		profileReadDisplayName("Type 2", new Type2BaseResourcePropertiesSerializer(true), source);
+	}
+
+	private void profileReadDisplayName(String name, DataStreamEntitySerializer serializer, BaseResourceProperties source)
+			throws Exception
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream ds = new DataOutputStream(baos);
+		serializer.serialize(source, ds);
+		ds.flush();
+		byte[] serialized = baos.toByteArray();
+
+		Runtime r = Runtime.getRuntime();
+		r.gc();
+		Thread.sleep(2000);
+		long start = System.currentTimeMillis();
+		long ms = r.freeMemory();
+		for (int i = 0; i < 16000; i++)
+		{
+			BaseResourceProperties props = new BaseResourceProperties();
+			serializer.parse(props, new DataInputStream(new ByteArrayInputStream(serialized)));
+			Assert.assertEquals("Display Name", props.getProperty("displayName"));
+		}
+		long me = r.freeMemory();
+		long m = ms - me;
+		long end = System.currentTimeMillis();
+		long t = (end - start);
+		log.info(name + " Read 16000 Display Names took " + t + "ms ");
+		log.info(name + " Read 16000 Display Names took " + (t * 1000) / 16000 + " us/entity ");
+		log.info(name + " Read 16000 Display Names took " + (m / 16000) + " bytes/entity overhead ");
+	}
 }
@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl.serialize.impl.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sakaiproject.content.impl.serialize.impl.Type1BaseContentResourceSerializer;
+import org.sakaiproject.entity.api.serialize.DataStreamEntitySerializer;
+import org.sakaiproject.entity.api.serialize.SerializableEntity;
+import org.sakaiproject.util.BaseResourceProperties;
+import org.sakaiproject.util.serialize.Type1BaseResourcePropertiesSerializer;
+import org.sakaiproject.util.serialize.Type2BaseResourcePropertiesSerializer;
+
+public class Type2BaseResourcePropertiesSerializerTest
+{
+	private byte[] serialize(DataStreamEntitySerializer serializer, SerializableEntity se) throws Exception
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream ds = new DataOutputStream(baos);
+		serializer.serialize(se, ds);
+		ds.flush();
+		return baos.toByteArray();
+	}
+
+	private void parse(DataStreamEntitySerializer serializer, SerializableEntity se, byte[] b) throws Exception
+	{
+		serializer.parse(se, new DataInputStream(new ByteArrayInputStream(b)));
+	}
+
+	@Test
+	public final void testParse() throws Exception
+	{
+		Type2BaseResourcePropertiesSerializer t2 = new Type2BaseResourcePropertiesSerializer(true);
+		MockSerializablePropertiesAccess sp = new MockSerializablePropertiesAccess();
+		parse(t2, sp, serialize(t2, sp));
+		sp.check();
+	}
+
+	@Test
+	public final void testReadEitherType() throws Exception
+	{
+		Type1BaseResourcePropertiesSerializer t1 = new Type1BaseResourcePropertiesSerializer();
+		Type2BaseResourcePropertiesSerializer t2 = new Type2BaseResourcePropertiesSerializer(true);
+
+		MockSerializablePropertiesAccess sp = new MockSerializablePropertiesAccess();
+		parse(t2, sp, serialize(t1, sp));
+		sp.check();
+
+		sp = new MockSerializablePropertiesAccess();
+		parse(t1, sp, serialize(t2, sp));
+		sp.check();
+	}
+
+	@Test
+	public final void testWritesType1ByDefault() throws Exception
+	{
+		Type2BaseResourcePropertiesSerializer t2 = new Type2BaseResourcePropertiesSerializer();
+		MockSerializablePropertiesAccess sp = new MockSerializablePropertiesAccess();
+		byte[] b = serialize(t2, sp);
+
+		// servers from before type 2 only read type 1, so it is written until writeType2 is set
+		Assert.assertEquals(1, new DataInputStream(new ByteArrayInputStream(b)).readInt());
+		parse(t2, sp, b);
+		sp.check();
+
+		t2.setWriteType2(true);
+		Assert.assertEquals(2, new DataInputStream(new ByteArrayInputStream(serialize(t2, sp))).readInt());
+	}
+
+	@Test
+	public final void testLazyProperties() throws Exception
+	{
+		Type2BaseResourcePropertiesSerializer t2 = new Type2BaseResourcePropertiesSerializer(true);
+		BaseResourceProperties source = new BaseResourceProperties();
+		source.addProperty("displayName", "A \u00e9l\u00e8ve's file");
+		source.addPropertyToList("keywords", "one");
+		source.addPropertyToList("keywords", "two");
+		char[] big = new char[70000];
+		Arrays.fill(big, 'x');
+		source.addProperty("description", new String(big));
+
+		BaseResourceProperties props = new BaseResourceProperties();
+		parse(t2, props, serialize(t2, source));
+
+		Assert.assertEquals("A \u00e9l\u00e8ve's file", props.getProperty("displayName"));
+		Assert.assertEquals(Arrays.asList("one", "two"), props.getPropertyList("keywords"));
+		Assert.assertEquals(70000, props.getProperty("description").length());
+		Assert.assertNull(props.getProperty("missing"));
+
+		props.addProperty("displayName", "changed");
+		Assert.assertEquals("changed", props.getProperty("displayName"));
+
+		props.removeProperty("description");
+		Set<String> names = new HashSet<String>();
+		for (Iterator<String> i = props.getPropertyNames(); i.hasNext();)
+		{
+			names.add(i.next());
+		}
+		Assert.assertEquals(new HashSet<String>(Arrays.asList("displayName", "keywords")), names);
+	}
+
+	@Test
+	public final void testResource() throws Exception
+	{
+		Type1BaseContentResourceSerializer t1 = new Type1BaseContentResourceSerializer();
+		t1.setTimeService(new MockTimeService());
+		t1.setBaseResourcePropertiesSerializer(new Type2BaseResourcePropertiesSerializer(true));
+		MockSerializableResourceAcccess sc = new MockSerializableResourceAcccess();
+		byte[] serialized = t1.serialize(sc);
+
+		// a server still writing type 1 properties can read the entity
+		Type1BaseContentResourceSerializer reader = new Type1BaseContentResourceSerializer();
+		reader.setTimeService(new MockTimeService());
+		reader.parse(sc, serialized);
+		sc.check();
+	}
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.db.impl;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SqlServiceStatsTest {
+
+    @Test
+    public void testNormalize() {
+        Assert.assertEquals("SELECT XML FROM SAKAI_SITE WHERE SITE_ID IN (?) AND PUBLISHED = ? AND TITLE = ?",
+                SqlServiceStats.normalize("SELECT XML FROM SAKAI_SITE\n  WHERE SITE_ID IN (?, ?,?) AND PUBLISHED = 1 AND TITLE = 'it''s'"));
+        Assert.assertEquals("select * from T1 where a = ?", SqlServiceStats.normalize("select * from T1 where a = -2.5"));
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.getPercentile(0.5));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000L);
+        }
+        long p50 = histogram.getPercentile(0.5);
+        long p99 = histogram.getPercentile(0.99);
+        Assert.assertTrue("p50 " + p50, p50 >= 50000 && p50 < 50000 * 9 / 8 + 1);
+        Assert.assertTrue("p99 " + p99, p99 >= 99000 && p99 < 99000 * 9 / 8 + 1);
+    }
+
+    @Test
+    public void testHistogramBuckets() {
+        for (long v : new long[] { 0, 1, 7, 8, 9, 15, 16, 17, 1000, 123456789L }) {
+            int index = LatencyHistogram.index(v);
+            Assert.assertTrue(v + " above its bucket", LatencyHistogram.highestValue(index) >= v);
+            Assert.assertTrue(v + " below its bucket", index == 0 || LatencyHistogram.highestValue(index - 1) < v);
+        }
+    }
+
+    @Test
+    public void testStatementTimings() {
+        SqlServiceStats stats = new SqlServiceStats();
+        stats.setSlowQueryMillis(100);
+        stats.statement("select A from B where C = ?", new Object[] { "x" }, TimeUnit.MILLISECONDS.toNanos(2), 0, 3, false);
+        stats.statement("select A from B  where C = 'y'", null, TimeUnit.MILLISECONDS.toNanos(4), TimeUnit.MILLISECONDS.toNanos(1), 1, true);
+        stats.statement("update B set C = ?", new Object[] { "z" }, TimeUnit.MILLISECONDS.toNanos(200), 0, 1, false);
+        stats.statement("update B set C = ?", new Object[] { "z" }, TimeUnit.MILLISECONDS.toNanos(300), 0, 1, false);
+
+        Assert.assertEquals(2, stats.getTimedStatements());
+        SqlStatementSummary select = stats.getStatement("select A from B where C = ?");
+        Assert.assertEquals(2, select.getCount());
+        Assert.assertEquals(1, select.getErrors());
+        Assert.assertEquals(4, select.getRows());
+        Assert.assertEquals(4000, select.getMaxMicros());
+        Assert.assertEquals(500, select.getMeanConnectionWaitMicros());
+
+        List<SqlStatementSummary> top = stats.getTopStatements();
+        Assert.assertEquals("update B set C = ?", top.get(0).getSql());
+
+        // sampled once a minute for each statement
+        List<String> slow = stats.getSlowQueries();
+        Assert.assertEquals(1, slow.size());
+        Assert.assertTrue(slow.get(0).contains("binds: z"));
+
+        stats.setStatementTiming(false);
+        stats.statement("delete from B", null, 1000, 0, 0, false);
+        Assert.assertEquals(2, stats.getTimedStatements());
+
+        stats.reset();
+        Assert.assertEquals(0, stats.getTimedStatements());
+    }
+}
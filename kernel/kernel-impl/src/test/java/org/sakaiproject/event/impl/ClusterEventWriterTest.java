@@ -0,0 +1,205 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sakaiproject.event.api.Event;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ClusterEventWriterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ClusterEventWriter writer;
+
+	/** resources of the events written, in the order written */
+	private final List<String> written = new CopyOnWriteArrayList<>();
+
+	/** how many more writes fail */
+	private final AtomicInteger failures = new AtomicInteger();
+
+	private final ClusterEventWriter.Sink sink = new ClusterEventWriter.Sink() {
+		public boolean writeEvents(List<Event> events) {
+			if (failures.getAndDecrement() > 0) return false;
+			events.forEach(e -> written.add(e.getResource()));
+			return true;
+		}
+
+		public boolean writeRows(List<Object[]> rows) {
+			if (failures.getAndDecrement() > 0) return false;
+			rows.forEach(r -> written.add((String) r[2]));
+			return true;
+		}
+
+		public Object[] bind(Event event) {
+			return new Object[] { new Date(), event.getEvent(), event.getResource(), "session", "a", null };
+		}
+	};
+
+	@After
+	public void tearDown() {
+		if (writer != null) writer.stop(5000);
+	}
+
+	private Event newEvent(String resource) {
+		Event event = mock(Event.class);
+		when(event.getEvent()).thenReturn("content.read");
+		when(event.getResource()).thenReturn(resource);
+		return event;
+	}
+
+	private void waitForWritten(int count) throws InterruptedException {
+		for (int i = 0; i < 100 && written.size() < count; i++) {
+			Thread.sleep(50);
+		}
+	}
+
+	@Test
+	public void testBatches() throws Exception {
+		writer = new ClusterEventWriter(sink, 100, 2, 50, 100, null);
+		writer.start();
+		for (int i = 0; i < 5; i++) {
+			writer.post(newEvent("/r" + i));
+		}
+		waitForWritten(5);
+
+		assertEquals(Arrays.asList("/r0", "/r1", "/r2", "/r3", "/r4"), written);
+		assertEquals(5, writer.getEventsWritten());
+		assertTrue(writer.getBatchesWritten() >= 3);
+		assertTrue(writer.getMaxBatchSize() <= 2);
+		assertEquals(0, writer.getEventsSpilled());
+	}
+
+	@Test
+	public void testFailedBatchIsSpilledAndReplayed() throws Exception {
+		File spill = new File(folder.getRoot(), "event-spill.dat");
+		failures.set(1);
+		writer = new ClusterEventWriter(sink, 100, 10, 50, 100, spill);
+		writer.start();
+		writer.post(newEvent("/a"));
+		writer.post(newEvent("/b"));
+		waitForWritten(2);
+
+		assertEquals(Arrays.asList("/a", "/b"), written);
+		assertEquals(1, writer.getWriteFailures());
+		assertEquals(2, writer.getEventsSpilled());
+		assertEquals(2, writer.getEventsReplayed());
+		for (int i = 0; i < 100 && writer.getSpillFileSize() > 0; i++) {
+			Thread.sleep(50);
+		}
+		assertEquals(0, writer.getSpillFileSize());
+	}
+
+	@Test
+	public void testSpilledBeforeStartIsReplayed() throws Exception {
+		File spill = new File(folder.getRoot(), "event-spill.dat");
+		ClusterEventWriter stopped = new ClusterEventWriter(sink, 100, 10, 50, 100, spill);
+		stopped.post(newEvent("/early"));
+		assertEquals(1, stopped.getEventsSpilled());
+		assertTrue(spill.exists());
+
+		writer = new ClusterEventWriter(sink, 100, 10, 50, 100, spill);
+		writer.start();
+		waitForWritten(1);
+		assertEquals(Arrays.asList("/early"), written);
+	}
+
+	@Test
+	public void testUnreadableReplayKeepsOnlyUnwrittenRows() throws Exception {
+		File spill = new File(folder.getRoot(), "event-spill.dat");
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(spill))) {
+			ClusterEventWriter.writeRow(out, new Object[] { new Date(), "content.read", "/a", "session", "a", null });
+			ClusterEventWriter.writeRow(out, new Object[] { new Date(), "content.read", "/b", "session", "a", null });
+			// a whole record too short to hold a row, so reading it fails
+			out.writeInt(3);
+			out.write(new byte[3]);
+		}
+
+		writer = new ClusterEventWriter(sink, 100, 1, 50, 100, spill);
+		writer.start();
+		waitForWritten(2);
+		File replay = new File(spill.getPath() + ".replay");
+		for (int i = 0; i < 100 && replay.length() != 7; i++) {
+			Thread.sleep(50);
+		}
+
+		assertEquals(Arrays.asList("/a", "/b"), written);
+		assertEquals(7, replay.length());
+	}
+
+	@Test
+	public void testDroppedWithoutSpillFile() {
+		ClusterEventWriter stopped = new ClusterEventWriter(sink, 100, 10, 50, 100, null);
+		stopped.post(newEvent("/lost"));
+		assertEquals(1, stopped.getEventsDropped());
+		assertEquals(0, stopped.getEventsSpilled());
+	}
+
+	@Test
+	public void testRowRoundTrip() throws Exception {
+		Object[] row = new Object[] { new Date(1234L), "content.read", "/content/a", null, "m", "site" };
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		ClusterEventWriter.writeRow(out, row);
+		ClusterEventWriter.writeRow(out, row);
+		out.flush();
+
+		// cut the second row short, as a server stopping mid write would
+		byte[] data = Arrays.copyOf(bytes.toByteArray(), bytes.size() - 3);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		assertArrayEquals(row, ClusterEventWriter.readRow(in));
+		assertNull(ClusterEventWriter.readRow(in));
+		assertFalse(in.available() > 0 && ClusterEventWriter.readRow(in) != null);
+	}
+
+	@Test
+	public void testRowOver64KRoundTrip() throws Exception {
+		char[] chars = new char[70000];
+		Arrays.fill(chars, '\u00e9');
+		Object[] row = new Object[] { new Date(1234L), "content.read", new String(chars), "session", "a", null };
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		ClusterEventWriter.writeRow(out, row);
+		out.flush();
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		assertArrayEquals(row, ClusterEventWriter.readRow(in));
+		assertNull(ClusterEventWriter.readRow(in));
+	}
+}
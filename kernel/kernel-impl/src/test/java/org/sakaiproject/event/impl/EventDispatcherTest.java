@@ -0,0 +1,191 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.Executor;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.event.api.Event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class EventDispatcherTest {
+
+	private Observable source;
+	private EventDispatcher dispatcher;
+
+	@Before
+	public void setUp() {
+		source = new Observable();
+		dispatcher = new EventDispatcher(source);
+	}
+
+	private Event event(String name) {
+		Event event = mock(Event.class);
+		when(event.getEvent()).thenReturn(name);
+		return event;
+	}
+
+	private static class RecordingObserver implements Observer {
+		final List<String> events = new ArrayList<>();
+		Observable source;
+
+		@Override
+		public void update(Observable o, Object arg) {
+			source = o;
+			events.add(((Event) arg).getEvent());
+		}
+	}
+
+	@Test
+	public void testUnfilteredSeesEverything() {
+		RecordingObserver observer = new RecordingObserver();
+		dispatcher.add(observer, null);
+
+		dispatcher.dispatch(event("realm.upd"));
+		dispatcher.dispatch(event("content.read"));
+		dispatcher.dispatch(event("pres.begin"));
+
+		assertEquals(3, observer.events.size());
+		assertSame(source, observer.source);
+	}
+
+	@Test
+	public void testPrefixFiltering() {
+		RecordingObserver realm = new RecordingObserver();
+		RecordingObserver contentNew = new RecordingObserver();
+		RecordingObserver partial = new RecordingObserver();
+		dispatcher.add(realm, null, "realm.");
+		dispatcher.add(contentNew, null, "content.new", "content.revise");
+		dispatcher.add(partial, null, "sam");
+
+		dispatcher.dispatch(event("realm.upd"));
+		dispatcher.dispatch(event("content.new"));
+		dispatcher.dispatch(event("content.read"));
+		dispatcher.dispatch(event("content.revise.inplace"));
+		dispatcher.dispatch(event("sam.assessment.submit"));
+		dispatcher.dispatch(event("samigo.other"));
+		dispatcher.dispatch(event("nodots"));
+
+		assertEquals(1, realm.events.size());
+		assertEquals(2, contentNew.events.size());
+		assertEquals(2, partial.events.size());
+	}
+
+	@Test
+	public void testNullNameOnlyReachesUnfiltered() {
+		RecordingObserver all = new RecordingObserver();
+		RecordingObserver realm = new RecordingObserver();
+		RecordingObserver partial = new RecordingObserver();
+		dispatcher.add(all, null);
+		dispatcher.add(realm, null, "realm.");
+		dispatcher.add(partial, null, "sam");
+
+		dispatcher.dispatch(event(null));
+		assertEquals(1, all.events.size());
+		assertTrue(realm.events.isEmpty());
+		assertTrue(partial.events.isEmpty());
+	}
+
+	@Test
+	public void testNewestObserverNotifiedFirst() {
+		List<String> order = new ArrayList<>();
+		Observer first = (o, arg) -> order.add("first");
+		Observer second = (o, arg) -> order.add("second");
+		Observer third = (o, arg) -> order.add("third");
+		Observer fourth = (o, arg) -> order.add("fourth");
+		dispatcher.add(first, null);
+		dispatcher.add(second, null, "realm.");
+		dispatcher.add(third, null, "re");
+		dispatcher.add(fourth, null, "realm.upd");
+
+		dispatcher.dispatch(event("realm.upd"));
+		assertEquals(Arrays.asList("fourth", "third", "second", "first"), order);
+
+		// adding again makes it the newest, as with java.util.Observable
+		order.clear();
+		dispatcher.add(first, null);
+		dispatcher.dispatch(event("realm.upd"));
+		assertEquals(Arrays.asList("first", "fourth", "third", "second"), order);
+	}
+
+	@Test
+	public void testReAddReplacesSubscription() {
+		RecordingObserver observer = new RecordingObserver();
+		dispatcher.add(observer, null, "realm.");
+		dispatcher.add(observer, null, "content.");
+		assertEquals(1, dispatcher.size());
+
+		dispatcher.dispatch(event("realm.upd"));
+		dispatcher.dispatch(event("content.new"));
+		assertEquals(1, observer.events.size());
+		assertEquals("content.new", observer.events.get(0));
+	}
+
+	@Test
+	public void testRemove() {
+		RecordingObserver observer = new RecordingObserver();
+		RecordingObserver other = new RecordingObserver();
+		dispatcher.add(observer, null, "realm.", "site.");
+		dispatcher.add(other, null);
+		assertEquals(2, dispatcher.size());
+
+		assertTrue(dispatcher.remove(observer));
+		assertFalse(dispatcher.remove(observer));
+		assertEquals(1, dispatcher.size());
+
+		dispatcher.dispatch(event("realm.upd"));
+		assertTrue(observer.events.isEmpty());
+		assertEquals(1, other.events.size());
+	}
+
+	@Test
+	public void testFailingObserverDoesNotStopOthers() {
+		RecordingObserver observer = new RecordingObserver();
+		dispatcher.add((o, arg) -> { throw new IllegalStateException("broken"); }, null);
+		dispatcher.add(observer, null);
+
+		dispatcher.dispatch(event("realm.upd"));
+		assertEquals(1, observer.events.size());
+	}
+
+	@Test
+	public void testExecutor() {
+		List<Runnable> queued = new ArrayList<>();
+		Executor executor = queued::add;
+		RecordingObserver observer = new RecordingObserver();
+		dispatcher.add(observer, executor, "realm.");
+
+		dispatcher.dispatch(event("realm.upd"));
+		dispatcher.dispatch(event("site.upd"));
+		assertTrue(observer.events.isEmpty());
+		assertEquals(1, queued.size());
+
+		queued.get(0).run();
+		assertEquals(1, observer.events.size());
+	}
+}
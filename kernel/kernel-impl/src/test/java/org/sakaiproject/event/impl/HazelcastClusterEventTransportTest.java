@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.Message;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.SimpleEvent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class HazelcastClusterEventTransportTest {
+
+	private ITopic<SimpleEvent> topic;
+	private HazelcastClusterEventTransport transport;
+	private List<Event> received;
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		topic = mock(ITopic.class);
+		when(topic.addMessageListener(any())).thenReturn("registration");
+		HazelcastInstance hcInstance = mock(HazelcastInstance.class);
+		when(hcInstance.<SimpleEvent>getTopic("events")).thenReturn(topic);
+
+		received = new ArrayList<>();
+		transport = new HazelcastClusterEventTransport(hcInstance, "events", "server1-instance");
+		transport.start(received::add);
+	}
+
+	private Event newEvent() {
+		Event event = mock(Event.class);
+		when(event.getEvent()).thenReturn("site.upd");
+		when(event.getResource()).thenReturn("/site/mercury");
+		when(event.getEventTime()).thenReturn(new Date());
+		return event;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Message<SimpleEvent> message(SimpleEvent event) {
+		Message<SimpleEvent> message = mock(Message.class);
+		when(message.getMessageObject()).thenReturn(event);
+		return message;
+	}
+
+	@Test
+	public void testPublishTagsServer() {
+		transport.publish(newEvent());
+
+		ArgumentCaptor<SimpleEvent> captor = ArgumentCaptor.forClass(SimpleEvent.class);
+		verify(topic).publish(captor.capture());
+		assertEquals("server1-instance", captor.getValue().getServerId());
+		assertEquals("site.upd", captor.getValue().getEvent());
+	}
+
+	@Test
+	public void testOwnEventsIgnored() {
+		transport.onMessage(message(new SimpleEvent(newEvent(), "server1-instance")));
+		assertTrue(received.isEmpty());
+	}
+
+	@Test
+	public void testOtherServerEventsReceived() {
+		transport.onMessage(message(new SimpleEvent(newEvent(), "server2-instance")));
+		assertEquals(1, received.size());
+		assertEquals("/site/mercury", received.get(0).getResource());
+	}
+
+	@Test
+	public void testStopRemovesListener() {
+		transport.stop();
+		verify(topic).removeMessageListener("registration");
+	}
+}
@@ -509,6 +509,23 @@ public class SessionComponentRegressionTest extends BaseSessionComponentTest {
 		assertEquals(1, sessionComponent.getActiveUserCount(100000));
 	}
 	
+	public void testSessionExpiresOnTimeAfterInactiveIntervalIsShortened() {
+		MySession session = (MySession)startSessionForUser();
+		expectGetCurrentSessionReturnNull(session);
+		long tick = sessionComponent.m_checkEvery * 1000L;
+
+		// lengthened, as for a timed assessment, and checked once so it is filed for an hour from now
+		session.setMaxInactiveInterval(3600);
+		long now = System.currentTimeMillis();
+		assertEquals(0, sessionComponent.expireSessions(now));
+
+		// restored to a short interval, it must be checked in the next slot rather than the one an hour away
+		session.setMaxInactiveInterval(1);
+		session.m_accessed = now - 5000L;
+		assertEquals(1, sessionComponent.expireSessions(System.currentTimeMillis() + tick));
+		assertFalse(session.isValid());
+	}
+
 	public void testSessionIsInvalidatedDuringMaintenance() throws InterruptedException {
 		// 20 seconds
 		sessionComponent.setInactiveInterval("20");
@@ -699,6 +716,10 @@ public class SessionComponentRegressionTest extends BaseSessionComponentTest {
 		final MySession session = new MySession(sessionComponent,uuid,threadLocalManager,idManager,
 				sessionComponent,sessionListener,sessionComponent.getInactiveInterval(),new MyNonPortableSession(),
 				new MutableLong(System.currentTimeMillis()), null) {
+			{
+				// only sessions with a user are counted
+				setUserId(nextUuid());
+			}
 			private long superGetLastAccessedTime() {
 				return super.getLastAccessedTime();
 			}
@@ -745,13 +766,8 @@ public class SessionComponentRegressionTest extends BaseSessionComponentTest {
 	 * 
 	 * @param session
 	 */
-	@SuppressWarnings(value={"unchecked"})
 	protected void registerSession(Session session) {
-		sessionComponent.m_sessions.put(session.getId(), session);
-		if (session instanceof MySession) {
-			MySession mySession = (MySession)session;
-			sessionComponent.expirationTimeSuggestionMap.put(session.getId(),mySession.expirationTimeSuggestion);
-		}
+		sessionComponent.addSession((MySession)session);
 	}
 	
 	protected Session startSessionForUser() {
@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.impl;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SessionExpiryWheelTest {
+
+	private static final long TICK = 60 * 1000L;
+
+	@Test
+	public void testPollReturnsOnlyDueSlots() {
+		SessionExpiryWheel wheel = new SessionExpiryWheel(TICK);
+		long now = 100 * TICK;
+		wheel.schedule("past", now - 5 * TICK);
+		wheel.schedule("current", now + 1);
+		wheel.schedule("future", now + TICK);
+
+		Set<String> due = new HashSet<>(wheel.poll(now));
+		Assert.assertEquals(2, due.size());
+		Assert.assertTrue(due.contains("past"));
+		Assert.assertTrue(due.contains("current"));
+		Assert.assertEquals(1, wheel.size());
+
+		Assert.assertTrue(wheel.poll(now).isEmpty());
+		Assert.assertEquals("future", wheel.poll(now + TICK).get(0));
+		Assert.assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void testScheduleAfterPollIsKept() {
+		SessionExpiryWheel wheel = new SessionExpiryWheel(TICK);
+		long now = 100 * TICK;
+		wheel.schedule("a", now);
+		for (String id : wheel.poll(now)) {
+			// filing again into the slot just polled must not be lost
+			wheel.schedule(id, now);
+		}
+		Assert.assertEquals(1, wheel.size());
+		Assert.assertEquals("a", wheel.poll(now).get(0));
+	}
+
+	@Test
+	public void testPollCostFollowsDueSessions() {
+		// 100k sessions spread over 30 minutes, a poll only sees the minute that is due
+		SessionExpiryWheel wheel = new SessionExpiryWheel(TICK);
+		long now = 1000 * TICK;
+		int sessions = 100000;
+		for (int i = 0; i < sessions; i++) {
+			wheel.schedule("s" + i, now + (i % 30) * TICK);
+		}
+		Assert.assertEquals(sessions, wheel.size());
+
+		int seen = 0;
+		for (int minute = 0; minute < 30; minute++) {
+			List<String> due = wheel.poll(now + minute * TICK);
+			Assert.assertEquals(sessions / 30 + (minute < sessions % 30 ? 1 : 0), due.size());
+			seen += due.size();
+		}
+		Assert.assertEquals(sessions, seen);
+		Assert.assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void testConcurrentSchedule() throws Exception {
+		final SessionExpiryWheel wheel = new SessionExpiryWheel(1L);
+		final long now = 1000L;
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int base = t * 10000;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 10000; i++) {
+					wheel.schedule("s" + (base + i), now - (i % 3));
+				}
+			});
+			threads[t].start();
+		}
+		Set<String> seen = new HashSet<>();
+		boolean running = true;
+		while (running) {
+			running = false;
+			for (Thread thread : threads) {
+				running |= thread.isAlive();
+			}
+			seen.addAll(wheel.poll(now));
+		}
+		seen.addAll(wheel.poll(now));
+		Assert.assertEquals(40000, seen.size());
+	}
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.util;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.sakaiproject.db.api.SqlService;
+import org.sakaiproject.entity.api.Entity;
+import org.sakaiproject.javax.IndexedFilter;
+import org.sakaiproject.javax.Restriction;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BaseDbDoubleStorageTest {
+
+    private static final String CONTAINER_REF = "/announcement/channel/site1/main";
+
+    @Rule
+    public MockitoRule mockito = MockitoJUnit.rule();
+
+    @Mock private SqlService sqlService;
+    @Mock private DoubleStorageUser user;
+    @Mock private Entity container;
+
+    private BaseDbDoubleStorage storage;
+
+    @Before
+    public void setUp() {
+        when(sqlService.getVendor()).thenReturn("default");
+        when(container.getReference()).thenReturn(CONTAINER_REF);
+
+        storage = new BaseDbDoubleStorage("CHANNEL", "CHANNEL_ID", "MESSAGE", "MESSAGE_ID", "CHANNEL_ID",
+                "MESSAGE_DATE", "OWNER", "DRAFT", "PUBVIEW", new String[] {"MESSAGE_DATE", "OWNER", "DRAFT", "PUBVIEW"},
+                false, "channel", "message", user, sqlService);
+        storage.addIndexField("date", "MESSAGE_DATE");
+        storage.addIndexField("draft", "DRAFT");
+    }
+
+    @Test
+    public void testIndexedFilterIsCountedInDb() {
+        when(sqlService.dbRead(anyString(), any(Object[].class), isNull())).thenReturn(Collections.singletonList("7"));
+        Restriction[] restrictions = {new Restriction("date", "20200101000000000", Restriction.GREATER), new Restriction("draft", "0")};
+
+        assertEquals(7, storage.getCount(container, filter(restrictions)));
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Object[]> fields = ArgumentCaptor.forClass(Object[].class);
+        verify(sqlService).dbRead(sql.capture(), fields.capture(), isNull());
+        assertTrue(sql.getValue(), sql.getValue().contains("MESSAGE_DATE > ? and DRAFT = ?"));
+        assertArrayEquals(new Object[] {CONTAINER_REF, "20200101000000000", "0"}, fields.getValue());
+        verify(sqlService, never()).dbReadEach(anyString(), any(Object[].class), anyInt(), any(), any());
+    }
+
+    @Test
+    public void testUnindexedRestrictionReadsEachResource() {
+        when(sqlService.dbReadEach(anyString(), any(Object[].class), anyInt(), any(), any())).thenReturn(3);
+
+        assertEquals(3, storage.getCount(container, filter(new Restriction[] {new Restriction("subject", "Exams")})));
+
+        verify(sqlService, never()).dbRead(anyString(), any(Object[].class), any());
+    }
+
+    @Test
+    public void testIndexedFilterRestrictsSelect() {
+        storage.getAllResources(container, filter(new Restriction[] {new Restriction("draft", "0")}));
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Object[]> fields = ArgumentCaptor.forClass(Object[].class);
+        verify(sqlService).dbReadEach(sql.capture(), fields.capture(), anyInt(), any(), any());
+        assertTrue(sql.getValue(), sql.getValue().contains("DRAFT = ?"));
+        assertArrayEquals(new Object[] {CONTAINER_REF, "0"}, fields.getValue());
+    }
+
+    private IndexedFilter filter(Restriction[] restrictions) {
+        return new IndexedFilter() {
+            public boolean accept(Object o) {
+                return true;
+            }
+
+            public Restriction[] getIndexRestrictions() {
+                return restrictions;
+            }
+        };
+    }
+}
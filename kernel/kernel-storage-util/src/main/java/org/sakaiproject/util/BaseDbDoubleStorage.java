@@ -24,6 +24,9 @@ package org.sakaiproject.util;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
@@ -46,8 +49,10 @@ import org.sakaiproject.entity.api.Entity;
 import org.sakaiproject.entity.api.ResourceProperties;
 import org.sakaiproject.event.cover.UsageSessionService;
 import org.sakaiproject.javax.Filter;
+import org.sakaiproject.javax.IndexedFilter;
 import org.sakaiproject.javax.Order;
 import org.sakaiproject.javax.PagingPosition;
+import org.sakaiproject.javax.Restriction;
 import org.sakaiproject.javax.Search;
 import org.sakaiproject.javax.SearchFilter;
 import org.sakaiproject.time.api.Time;
@@ -104,6 +109,9 @@ public class BaseDbDoubleStorage
 	/** The field name in the resource table for ordering. */
 	protected String m_resourceTableOrderField = null;
 
+	/** Indexed property name -> resource table field, for the IndexedFilter restrictions and Search orders we can do in the db. */
+	protected Map<String, String> m_resourceTableIndexFields = new HashMap<String, String>();
+
 	/** The xml tag name for the element holding each actual resource entry. */
 	protected String m_resourceEntryTagName = null;
 
@@ -255,6 +263,85 @@ public class BaseDbDoubleStorage
 		setDoubleStorageSql(m_sql.getVendor());
 	}
 
+	/**
+	 * Declare a property that is kept in one of the other fields of the resource table, so IndexedFilter restrictions
+	 * and Search orders on it are done in the database rather than by reading each resource's xml.
+	 * 
+	 * @param property
+	 *        The property name used in Restrictions and Orders.
+	 * @param field
+	 *        The field in the resource table, which must be one of the other fields so it is written from storageFields() on put and commit.
+	 */
+	public void addIndexField(String property, String field)
+	{
+		if (!ArrayUtils.contains(m_resourceTableOtherFields, field))
+		{
+			log.warn("addIndexField(): " + field + " is not one of the fields of " + m_resourceTableName + ", not indexing " + property);
+			return;
+		}
+		m_resourceTableIndexFields.put(property, field);
+	}
+
+	/**
+	 * Form the where clause for a filter that can be expressed as restrictions on the indexed fields.
+	 * 
+	 * @param filter
+	 *        The filter.
+	 * @param values
+	 *        The values to bind for the where clause are added to this.
+	 * @return The where clause, or null if the filter is not an IndexedFilter or restricts something we do not index.
+	 */
+	protected String getIndexWhereClause(Filter filter, List<Object> values)
+	{
+		if (!(filter instanceof IndexedFilter) || m_resourceTableIndexFields.isEmpty()) return null;
+
+		Restriction[] restrictions = ((IndexedFilter) filter).getIndexRestrictions();
+		if (restrictions == null) return null;
+
+		StringBuilder where = new StringBuilder();
+		List<Object> restrictionValues = new ArrayList<Object>();
+		for (Restriction restriction : restrictions)
+		{
+			String field = m_resourceTableIndexFields.get(restriction.property);
+			if (field == null) return null;
+
+			String clause = doubleStorageSql.getIndexRestrictionClause(field, restriction.comparison);
+			if (clause == null) return null;
+
+			if (clause.indexOf('?') >= 0)
+			{
+				// we only bind single values
+				if (restriction.value == null || restriction.value instanceof Collection || restriction.value.getClass().isArray()) return null;
+				restrictionValues.add(restriction.value);
+			}
+
+			if (where.length() > 0) where.append(" and ");
+			where.append(clause);
+		}
+
+		// no restrictions - everything is accepted
+		if (where.length() == 0) where.append("1 = 1");
+
+		values.addAll(restrictionValues);
+		return "( " + where + " )";
+	}
+
+	/**
+	 * Map the properties of Search orders to the indexed fields, leaving the others as they are.
+	 */
+	protected Order[] getIndexOrders(Order[] orders)
+	{
+		if (orders == null || m_resourceTableIndexFields.isEmpty()) return orders;
+
+		Order[] rv = new Order[orders.length];
+		for (int i = 0; i < orders.length; i++)
+		{
+			String field = m_resourceTableIndexFields.get(orders[i].property);
+			rv[i] = (field == null) ? orders[i] : new Order(field, orders[i].ascending);
+		}
+		return rv;
+	}
+
 	/**
 	 * Open and be ready to read / write.
 	 */
@@ -829,6 +916,24 @@ public class BaseDbDoubleStorage
 	{
 		if ( filter == null ) return getCount(container);
 
+		// If the filter can be done on the indexed fields (and there is no search to apply) count in the db
+		String filterSearch = (filter instanceof SearchFilter) ? ((SearchFilter) filter).getSearchString() : null;
+		if ( filterSearch == null || filterSearch.length() == 0 )
+		{
+			List<Object> indexValues = new ArrayList<Object>();
+			String indexWhere = getIndexWhereClause(filter, indexValues);
+			if ( indexWhere != null )
+			{
+				String sql = doubleStorageSql.getCountSqlWhere(m_resourceTableName, m_resourceTableContainerIdField, indexWhere);
+				indexValues.add(0, container.getReference());
+
+				List countList = m_sql.dbRead(sql, indexValues.toArray(), null);
+				if ( countList.isEmpty() ) return 0;
+
+				return Integer.parseInt((String) countList.get(0));
+			}
+		}
+
 		// If we have search fields - do a quick select count with a where clause
 		if  ( m_resourceTableSearchFields != null && filter instanceof SearchFilter ) 
 		{
@@ -862,9 +967,8 @@ public class BaseDbDoubleStorage
 		String sql = doubleStorageSql.getSelectXml5Sql(m_resourceTableName, m_resourceTableContainerIdField, null, false);
 		Object[] fields = new Object[1];
 		fields[0] = container.getReference();
-		List all = m_sql.dbRead(sql, fields, new SearchFilterReader(container, filter,  null, true));
-		int count = all.size();
-		return count;
+		// count as the records are read, rather than holding a marker for each in a list
+		return m_sql.dbReadEach(sql, fields, 0, new SearchFilterReader(container, filter,  null, true), record -> true);
 	}
 
 	/**
@@ -980,7 +1084,7 @@ public class BaseDbDoubleStorage
 		{
 			orders = ((Search) softFilter).getOrders();
 		}
-		String orderString = doubleStorageSql.getOrderClause(orders,  m_resourceTableOrderField, asc);
+		String orderString = doubleStorageSql.getOrderClause(getIndexOrders(orders),  m_resourceTableOrderField, asc);
 
 		// Turn the search string into a WHERE clause if we can
 		int searchFieldCount = 0;
@@ -1006,6 +1110,14 @@ public class BaseDbDoubleStorage
 			}
 		}
 
+		// Add the restrictions on the indexed fields
+		List<Object> indexValues = new ArrayList<Object>();
+		String indexWhere = getIndexWhereClause(softFilter, indexValues);
+		if ( indexWhere != null )
+		{
+			sqlFilter = (sqlFilter == null) ? indexWhere : sqlFilter + " and " + indexWhere;
+		}
+
 		String sql = doubleStorageSql.getSelectXml5filterSql(m_resourceTableName, 
 				m_resourceTableContainerIdField, orderString, sqlFilter);
 	
@@ -1038,9 +1150,14 @@ public class BaseDbDoubleStorage
 			// Add the bind variables to the fields to substitute in the prepared statement
 			fields = ArrayUtils.addAll(fields, bindVariables.toArray(new Object[fields.length]));
 		}
+		if ( !indexValues.isEmpty() )
+		{
+			fields = ArrayUtils.addAll(fields, indexValues.toArray());
+		}
 
 		// If we are paged in SQL - then do not pass in the pager
-		List all = m_sql.dbRead(sql, fields, new SearchFilterReader(container, softFilter,  pagedInSql ? null : pager, false));
+		List all = new ArrayList();
+		m_sql.dbReadEach(sql, fields, 0, new SearchFilterReader(container, softFilter,  pagedInSql ? null : pager, false), all::add);
 		
 		return all;
 	}
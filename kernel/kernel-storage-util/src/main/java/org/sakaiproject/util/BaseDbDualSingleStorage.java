@@ -33,6 +33,7 @@ import java.util.Vector;
 import lombok.extern.slf4j.Slf4j;
 
 import org.sakaiproject.db.api.SqlReader;
+import org.sakaiproject.db.api.SqlRecordHandler;
 import org.sakaiproject.db.api.SqlService;
 import org.sakaiproject.entity.api.Edit;
 import org.sakaiproject.entity.api.Entity;
@@ -508,9 +509,27 @@ public class BaseDbDualSingleStorage  implements DbSingleStorage
 
 	protected List loadResources(String sql, Object[] fields)
 	{
-		List all = m_sql.dbRead(sql, fields, new SqlReader()
+		return m_sql.dbRead(sql, fields, resourceReader());
+	}
+
+	/**
+	 * Pass each Resource selected by the query to the handler as it is read, rather than collecting them in a list.
+	 * 
+	 * @return The number of Resources passed to the handler.
+	 */
+	protected int forEachResource(String sql, Object[] fields, SqlRecordHandler<Entity> handler)
+	{
+		return m_sql.dbReadEach(sql, fields, 0, resourceReader(), handler);
+	}
+
+	/**
+	 * @return A reader that creates the Resource from each record.
+	 */
+	protected SqlReader<Entity> resourceReader()
+	{
+		return new SqlReader<Entity>()
 		{
-			public Object readSqlResultRecord(ResultSet result)
+			public Entity readSqlResultRecord(ResultSet result)
 			{
 				try
 				{
@@ -522,8 +541,7 @@ public class BaseDbDualSingleStorage  implements DbSingleStorage
 					return null;
 				}
 			}
-		});
-		return all;
+		};
 	}
 
 	public List getAllResourcesWhereLike(String field, String value)
@@ -536,6 +554,30 @@ public class BaseDbDualSingleStorage  implements DbSingleStorage
 		return loadResources(sql, fields);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public int forEachResourceWhereLike(String field, String value, String afterId, SqlRecordHandler<Entity> handler)
+	{
+		String sql = singleStorageSql.getXmlLikeSql(field, m_resourceTableName);
+		Object[] fields;
+		if (afterId == null)
+		{
+			fields = new Object[1];
+			fields[0] = value;
+		}
+		else
+		{
+			sql += " and " + m_resourceTableIdField + " > ?";
+			fields = new Object[2];
+			fields[0] = value;
+			fields[1] = afterId;
+		}
+		sql += " order by " + m_resourceTableIdField + " asc";
+
+		return forEachResource(sql, fields, handler);
+	}
+
 	/**
 	 * Get selected Resources, filtered by a test on the id field
 	 * 
@@ -22,6 +22,7 @@
 package org.sakaiproject.util;
 
 import org.sakaiproject.javax.Order;
+import org.sakaiproject.javax.Restriction;
 
 /**
  * methods for accessing double storage data in a database.
@@ -196,4 +197,19 @@ public class DoubleStorageSqlDefault implements DoubleStorageSql
 		  " where (" + idField + " =  ? )" + 
 		  ((whereClause != null ) ? " and ( " + whereClause + " )" : "" );
 	}
+
+	public String getIndexRestrictionClause(String column, int comparison)
+	{
+		switch (comparison)
+		{
+			case Restriction.EQUALS: return column + " = ?";
+			case Restriction.NOT_EQUALS: return column + " <> ?";
+			case Restriction.GREATER: return column + " > ?";
+			case Restriction.LESS: return column + " < ?";
+			case Restriction.LIKE: return column + " like ?";
+			case Restriction.NULL: return column + " is null";
+			case Restriction.NOT_NULL: return column + " is not null";
+			default: return null;
+		}
+	}
 }
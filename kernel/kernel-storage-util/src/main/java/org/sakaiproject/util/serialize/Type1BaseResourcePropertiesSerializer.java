@@ -23,6 +23,7 @@ package org.sakaiproject.util.serialize;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -44,7 +45,7 @@ import org.sakaiproject.entity.api.serialize.SerializablePropertiesAccess;
 public class Type1BaseResourcePropertiesSerializer implements DataStreamEntitySerializer
 {
 
-	private static final int TYPE1 = 1;
+	static final int TYPE1 = 1;
 
 	private static final int BLOCK1 = 100;
 
@@ -66,54 +67,18 @@ public class Type1BaseResourcePropertiesSerializer implements DataStreamEntitySe
 					+ " as it is not a SerializableProperties ");
 		}
 		SerializablePropertiesAccess sp = (SerializablePropertiesAccess) se;
-		Map<String, Object> properties = new HashMap<String, Object>();
 
 		try
 		{
 			int type = ds.readInt();
 			if (type == TYPE1)
 			{
-				int block = ds.readInt();
-				if (block == BLOCK1)
-				{
-					int nprops = ds.readInt();
-					for (int i = 0; i < nprops; i++)
-					{
-						block = ds.readInt();
-						switch (block)
-						{
-							case BLOCK2:
-							{
-								String key = ds.readUTF();
-								String value = ds.readUTF();
-								properties.put(key, value);
-							}
-								break;
-							case BLOCK3:
-							{
-								String key = ds.readUTF();
-								int n = ds.readInt();
-								List<String> l = new Vector<String>();
-								for (int j = 0; j < n; j++)
-								{
-									l.add(ds.readUTF());
-								}
-								properties.put(key, l);
-
-							}
-								break;
-							default:
-								throw new EntityParseException(
-										"Unrecognised block number " + block);
-						}
-					}
-					sp.setSerializableProperties(properties);
-				}
-				else
-				{
-					throw new EntityParseException(
-							"Failed to parse entity, unrecognised block " + block);
-				}
+				parseType1(sp, ds);
+			}
+			else if (type == Type2BaseResourcePropertiesSerializer.TYPE2)
+			{
+				// written by a server configured for type 2, so it must still be readable here
+				Type2BaseResourcePropertiesSerializer.parseType2(sp, ds);
 			}
 			else
 			{
@@ -131,6 +96,56 @@ public class Type1BaseResourcePropertiesSerializer implements DataStreamEntitySe
 		}
 	}
 
+	/**
+	 * Parse the type 1 blocks that follow the type number.
+	 */
+	static void parseType1(SerializablePropertiesAccess sp, DataInputStream ds)
+			throws EntityParseException, IOException
+	{
+		Map<String, Object> properties = new HashMap<String, Object>();
+		int block = ds.readInt();
+		if (block == BLOCK1)
+		{
+			int nprops = ds.readInt();
+			for (int i = 0; i < nprops; i++)
+			{
+				block = ds.readInt();
+				switch (block)
+				{
+					case BLOCK2:
+					{
+						String key = ds.readUTF();
+						String value = ds.readUTF();
+						properties.put(key, value);
+					}
+						break;
+					case BLOCK3:
+					{
+						String key = ds.readUTF();
+						int n = ds.readInt();
+						List<String> l = new Vector<String>();
+						for (int j = 0; j < n; j++)
+						{
+							l.add(ds.readUTF());
+						}
+						properties.put(key, l);
+
+					}
+						break;
+					default:
+						throw new EntityParseException(
+								"Unrecognised block number " + block);
+				}
+			}
+			sp.setSerializableProperties(properties);
+		}
+		else
+		{
+			throw new EntityParseException(
+					"Failed to parse entity, unrecognised block " + block);
+		}
+	}
+
 	/**
 	 * @see org.sakaiproject.entity.api.serialize.DataStreamEntitySerializer#serialize(org.sakaiproject.entity.api.serialize.SerializableEntity,
 	 *      java.io.DataOutputStream)
@@ -0,0 +1,354 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.util.serialize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.sakaiproject.entity.api.serialize.DataStreamEntitySerializer;
+import org.sakaiproject.entity.api.serialize.EntityParseException;
+import org.sakaiproject.entity.api.serialize.LazySerializablePropertiesAccess;
+import org.sakaiproject.entity.api.serialize.SerializableEntity;
+import org.sakaiproject.entity.api.serialize.SerializablePropertiesAccess;
+import org.sakaiproject.entity.api.serialize.SerializablePropertySource;
+
+/**
+ * <p>
+ * Type 2 resource properties are written as a table of contents followed by the encoded values, so a single property
+ * can be decoded without decoding the others. Entities that implement LazySerializablePropertiesAccess are given the
+ * encoded properties and decode them as they are used, others are given every property decoded as with type 1.
+ * </p>
+ *
+ * <pre>
+ * int TYPE2
+ * int number of properties
+ * for each property:
+ *     UTF name
+ *     byte KIND_STRING or KIND_LIST
+ *     int offset of the value in the data
+ *     int length of the value in the data
+ * int length of the data
+ * byte[] data
+ * </pre>
+ * <p>
+ * A string value is its UTF-8 bytes, a list value is the number of items followed by the length and UTF-8 bytes of each
+ * item. Values are length prefixed rather than written with writeUTF, so they are not limited to 64K.
+ * </p>
+ * <p>
+ * Type 1 properties are still parsed, and Type1BaseResourcePropertiesSerializer parses type 2, so either can be read
+ * whichever one is configured to write. Servers from before type 2 cannot read it, so type 1 is written unless
+ * writeType2 is set, which should only be done once every server in the cluster reads type 2.
+ * </p>
+ */
+@Slf4j
+public class Type2BaseResourcePropertiesSerializer implements DataStreamEntitySerializer
+{
+	static final int TYPE2 = 2;
+
+	private static final byte KIND_STRING = 1;
+
+	private static final byte KIND_LIST = 2;
+
+	private final Type1BaseResourcePropertiesSerializer type1 = new Type1BaseResourcePropertiesSerializer();
+
+	private boolean writeType2;
+
+	/**
+	 * A serializer that reads type 1 or 2 and writes type 1.
+	 */
+	public Type2BaseResourcePropertiesSerializer()
+	{
+		this(false);
+	}
+
+	/**
+	 * @param writeType2
+	 *        true to write type 2, false to write type 1
+	 */
+	public Type2BaseResourcePropertiesSerializer(boolean writeType2)
+	{
+		this.writeType2 = writeType2;
+	}
+
+	/**
+	 * @param writeType2
+	 *        true to write type 2, false to write type 1 so servers that only read type 1 can read what is written
+	 */
+	public void setWriteType2(boolean writeType2)
+	{
+		this.writeType2 = writeType2;
+	}
+
+	/**
+	 * @see org.sakaiproject.entity.api.serialize.DataStreamEntitySerializer#parse(org.sakaiproject.entity.api.serialize.SerializableEntity,
+	 *      java.io.DataInputStream)
+	 */
+	public void parse(SerializableEntity se, DataInputStream ds) throws EntityParseException
+	{
+		if (!(se instanceof SerializablePropertiesAccess))
+		{
+			throw new EntityParseException("Cant serialize " + se + " as it is not a SerializableProperties ");
+		}
+		SerializablePropertiesAccess sp = (SerializablePropertiesAccess) se;
+
+		try
+		{
+			int type = ds.readInt();
+			if (type == TYPE2)
+			{
+				parseType2(sp, ds);
+			}
+			else if (type == Type1BaseResourcePropertiesSerializer.TYPE1)
+			{
+				Type1BaseResourcePropertiesSerializer.parseType1(sp, ds);
+			}
+			else
+			{
+				throw new EntityParseException("Cant Parse block, resource properties is not type 1 or 2 " + type);
+			}
+		}
+		catch (EntityParseException ep)
+		{
+			throw ep;
+		}
+		catch (Exception ex)
+		{
+			throw new EntityParseException("Failed to parse entity ", ex);
+		}
+	}
+
+	/**
+	 * Parse the table of contents and data that follow the type number.
+	 */
+	static void parseType2(SerializablePropertiesAccess sp, DataInputStream ds) throws EntityParseException, IOException
+	{
+		int nprops = ds.readInt();
+		Map<String, Entry> entries = new LinkedHashMap<String, Entry>(nprops * 2);
+		for (int i = 0; i < nprops; i++)
+		{
+			String key = ds.readUTF();
+			byte kind = ds.readByte();
+			int offset = ds.readInt();
+			int length = ds.readInt();
+			if (kind != KIND_STRING && kind != KIND_LIST)
+			{
+				throw new EntityParseException("Unrecognised property kind " + kind + " for " + key);
+			}
+			entries.put(key, new Entry(kind, offset, length));
+		}
+		int dataLength = ds.readInt();
+		byte[] data = new byte[dataLength];
+		ds.readFully(data);
+
+		for (Entry entry : entries.values())
+		{
+			if (entry.offset < 0 || entry.length < 0 || entry.offset + entry.length > dataLength)
+			{
+				throw new EntityParseException("Property value lies outside the data block");
+			}
+		}
+		PropertySource source = new PropertySource(entries, data);
+
+		if (sp instanceof LazySerializablePropertiesAccess)
+		{
+			((LazySerializablePropertiesAccess) sp).setSerializablePropertySource(source);
+		}
+		else
+		{
+			Map<String, Object> properties = new HashMap<String, Object>(nprops * 2);
+			for (String key : entries.keySet())
+			{
+				properties.put(key, source.getProperty(key));
+			}
+			sp.setSerializableProperties(properties);
+		}
+	}
+
+	/**
+	 * @see org.sakaiproject.entity.api.serialize.DataStreamEntitySerializer#serialize(org.sakaiproject.entity.api.serialize.SerializableEntity,
+	 *      java.io.DataOutputStream)
+	 */
+	public void serialize(SerializableEntity se, DataOutputStream ds) throws EntityParseException
+	{
+		if (!writeType2)
+		{
+			type1.serialize(se, ds);
+			return;
+		}
+		if (!(se instanceof SerializablePropertiesAccess))
+		{
+			throw new EntityParseException("Cant serialize " + se + " as it is not a SerializableProperties ");
+		}
+		SerializablePropertiesAccess sp = (SerializablePropertiesAccess) se;
+		Map<String, Object> properties = sp.getSerializableProperties();
+		try
+		{
+			List<String> keys = new ArrayList<String>(properties.size());
+			List<Entry> entries = new ArrayList<Entry>(properties.size());
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			DataOutputStream data = new DataOutputStream(baos);
+			for (Map.Entry<String, Object> property : properties.entrySet())
+			{
+				String key = property.getKey();
+				Object value = property.getValue();
+				if (key == null || value == null)
+				{
+					continue;
+				}
+				int offset = data.size();
+				byte kind;
+				if (value instanceof String)
+				{
+					kind = KIND_STRING;
+					data.write(((String) value).getBytes(StandardCharsets.UTF_8));
+				}
+				else if (value instanceof List)
+				{
+					kind = KIND_LIST;
+					List<?> l = (List<?>) value;
+					List<byte[]> items = new ArrayList<byte[]>(l.size());
+					for (Object v : l)
+					{
+						if (v instanceof String)
+						{
+							items.add(((String) v).getBytes(StandardCharsets.UTF_8));
+						}
+						else if (v != null)
+						{
+							log.warn("Non String found in property list " + v);
+						}
+					}
+					data.writeInt(items.size());
+					for (byte[] item : items)
+					{
+						data.writeInt(item.length);
+						data.write(item);
+					}
+				}
+				else
+				{
+					log.warn("Non String found in property " + value);
+					continue;
+				}
+				keys.add(key);
+				entries.add(new Entry(kind, offset, data.size() - offset));
+			}
+			data.flush();
+
+			ds.writeInt(TYPE2);
+			ds.writeInt(keys.size());
+			for (int i = 0; i < keys.size(); i++)
+			{
+				Entry entry = entries.get(i);
+				ds.writeUTF(keys.get(i));
+				ds.writeByte(entry.kind);
+				ds.writeInt(entry.offset);
+				ds.writeInt(entry.length);
+			}
+			ds.writeInt(baos.size());
+			baos.writeTo(ds);
+		}
+		catch (Exception ex)
+		{
+			throw new EntityParseException("Failed to serialize properties ", ex);
+		}
+	}
+
+	/**
+	 * Where a property value is in the data block.
+	 */
+	private static class Entry
+	{
+		final byte kind;
+
+		final int offset;
+
+		final int length;
+
+		Entry(byte kind, int offset, int length)
+		{
+			this.kind = kind;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Decodes single properties from the data block. It is not changed after it is parsed so may be shared between
+	 * threads.
+	 */
+	private static class PropertySource implements SerializablePropertySource
+	{
+		private final Map<String, Entry> entries;
+
+		private final byte[] data;
+
+		PropertySource(Map<String, Entry> entries, byte[] data)
+		{
+			this.entries = entries;
+			this.data = data;
+		}
+
+		public Collection<String> getNames()
+		{
+			return Collections.unmodifiableSet(entries.keySet());
+		}
+
+		public Object getProperty(String name)
+		{
+			Entry entry = entries.get(name);
+			if (entry == null)
+			{
+				return null;
+			}
+			if (entry.kind == KIND_STRING)
+			{
+				return new String(data, entry.offset, entry.length, StandardCharsets.UTF_8);
+			}
+			int pos = entry.offset;
+			int n = readInt(pos);
+			pos += 4;
+			List<String> l = new Vector<String>(n);
+			for (int i = 0; i < n; i++)
+			{
+				int len = readInt(pos);
+				pos += 4;
+				l.add(new String(data, pos, len, StandardCharsets.UTF_8));
+				pos += len;
+			}
+			return l;
+		}
+
+		private int readInt(int pos)
+		{
+			return ((data[pos] & 0xff) << 24) | ((data[pos + 1] & 0xff) << 16) | ((data[pos + 2] & 0xff) << 8)
+					| (data[pos + 3] & 0xff);
+		}
+	}
+}
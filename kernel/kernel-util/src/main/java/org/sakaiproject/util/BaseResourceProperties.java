@@ -21,6 +21,8 @@
 
 package org.sakaiproject.util;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Date;
@@ -39,8 +41,9 @@ import org.sakaiproject.content.api.ContentTypeImageService;
 import org.sakaiproject.entity.api.EntityPropertyNotDefinedException;
 import org.sakaiproject.entity.api.EntityPropertyTypeException;
 import org.sakaiproject.entity.api.ResourceProperties;
+import org.sakaiproject.entity.api.serialize.LazySerializablePropertiesAccess;
 import org.sakaiproject.entity.api.serialize.SerializableEntity;
-import org.sakaiproject.entity.api.serialize.SerializablePropertiesAccess;
+import org.sakaiproject.entity.api.serialize.SerializablePropertySource;
 import org.sakaiproject.time.api.Time;
 import org.sakaiproject.time.api.TimeService;
 import org.sakaiproject.user.api.User;
@@ -62,7 +65,7 @@ import lombok.extern.slf4j.Slf4j;
  * </p>
  */
 @Slf4j
-public class BaseResourceProperties implements ResourceProperties, SerializablePropertiesAccess, SerializableEntity
+public class BaseResourceProperties implements ResourceProperties, LazySerializablePropertiesAccess, SerializableEntity
 {
 	/** A fixed class serian number. */
 	private static final long serialVersionUID = 1L;
@@ -73,6 +76,9 @@ public class BaseResourceProperties implements ResourceProperties, SerializableP
 	/** If the full properties have not yet been read. */
 	protected transient boolean m_lazy = false;
 
+	/** Serialized properties not yet decoded into m_props, decoded one at a time as they are asked for. */
+	protected transient volatile SerializablePropertySource m_source = null;
+
 	/**
 	 * Construct.
 	 */
@@ -172,6 +178,7 @@ public class BaseResourceProperties implements ResourceProperties, SerializableP
 	{
 		Element properties = doc.createElement("properties");
 		((Element) stack.peek()).appendChild(properties);
+		decodeAll();
 		Enumeration props = m_props.keys();
 		while (props.hasMoreElements())
 		{
@@ -221,6 +228,58 @@ public class BaseResourceProperties implements ResourceProperties, SerializableP
 		return m_lazy;
 	}
 
+	/**
+	 * Get a property value, decoding it from the serialized properties if it has not been yet.
+	 * 
+	 * @param name
+	 *        The property name.
+	 * @return The String or List value, or null if not found.
+	 */
+	protected Object getValue(String name)
+	{
+		Object value = m_props.get(name);
+		if (value != null || m_source == null) return value;
+
+		synchronized (m_props)
+		{
+			value = m_props.get(name);
+			if (value == null && m_source != null)
+			{
+				value = m_source.getProperty(name);
+				if (value != null) m_props.put(name, value);
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Decode any properties still in serialized form.
+	 */
+	protected void decodeAll()
+	{
+		if (m_source == null) return;
+
+		synchronized (m_props)
+		{
+			if (m_source == null) return;
+			for (String name : m_source.getNames())
+			{
+				if (!m_props.containsKey(name))
+				{
+					Object value = m_source.getProperty(name);
+					if (value != null) m_props.put(name, value);
+				}
+			}
+			m_source = null;
+		}
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException
+	{
+		decodeAll();
+		out.defaultWriteObject();
+	}
+
 	/**
 	 * Access an iterator on the names of the defined properties (Strings).
 	 * 
@@ -229,6 +288,7 @@ public class BaseResourceProperties implements ResourceProperties, SerializableP
 	@Override
 	public Iterator<String> getPropertyNames()
 	{
+		decodeAll();
 		if (m_props.size() == 0)
 		{
 			return new EmptyIterator();
@@ -247,7 +307,7 @@ public class BaseResourceProperties implements ResourceProperties, SerializableP
 	@Override
 	public String getProperty(String name)
 	{
-		Object value = m_props.get(name);
+		Object value = getValue(name);
 		if (value instanceof String) return (String) value;
 
 		return null;
@@ -259,7 +319,7 @@ public class BaseResourceProperties implements ResourceProperties, SerializableP
 	@Override
 	public Object get(String name)
 	{
-		return m_props.get(name);
+		return getValue(name);
 	}
 
 	/**
@@ -272,7 +332,7 @@ public class BaseResourceProperties implements ResourceProperties, SerializableP
 	@Override
 	public List<String> getPropertyList(String name)
 	{
-		Object value = m_props.get(name);
+		Object value = getValue(name);
 		if (value == null) return null;
 
 		if (value instanceof String)
@@ -322,7 +382,7 @@ public class BaseResourceProperties implements ResourceProperties, SerializableP
 	@Override
 	public String getPropertyFormatted(String name)
 	{
-		Object value = m_props.get(name);
+		Object value = getValue(name);
 
 		// if missing, return blank
 		if (value == null) return "";
@@ -858,7 +918,7 @@ public class BaseResourceProperties implements ResourceProperties, SerializableP
 		if (value == null) value = "";
 
 		// accumulate multiple values in a list
-		Object current = m_props.get(name);
+		Object current = getValue(name);
 
 		// if we don't have a value yet, make a list to hold this one
 		if (current == null)
@@ -949,7 +1009,11 @@ public class BaseResourceProperties implements ResourceProperties, SerializableP
 	@Override
 	public void clear()
 	{
-		m_props.clear();
+		synchronized (m_props)
+		{
+			m_source = null;
+			m_props.clear();
+		}
 	}
 
 	/**
@@ -961,6 +1025,7 @@ public class BaseResourceProperties implements ResourceProperties, SerializableP
 	@Override
 	public void removeProperty(String name)
 	{
+		decodeAll();
 		m_props.remove(name);
 	}
 
@@ -1059,6 +1124,7 @@ public class BaseResourceProperties implements ResourceProperties, SerializableP
 	@Override
 	public Map<String, Object> getSerializableProperties()
 	{
+		decodeAll();
 		Map<String, Object>  m = new HashMap<String, Object>();
 		m.putAll(m_props);
 		return m;
@@ -1070,8 +1136,24 @@ public class BaseResourceProperties implements ResourceProperties, SerializableP
 	@Override
 	public void setSerializableProperties(Map<String, Object> properties)
 	{
-		m_props.clear();
-		m_props.putAll(properties);
-		
+		synchronized (m_props)
+		{
+			m_source = null;
+			m_props.clear();
+			m_props.putAll(properties);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sakaiproject.entity.api.serialize.LazySerializablePropertiesAccess#setSerializablePropertySource(org.sakaiproject.entity.api.serialize.SerializablePropertySource)
+	 */
+	@Override
+	public void setSerializablePropertySource(SerializablePropertySource source)
+	{
+		synchronized (m_props)
+		{
+			m_props.clear();
+			m_source = source;
+		}
 	}
 }
@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.memory.api.SimpleConfiguration;
+
+/**
+ * <p>
+ * Versions for the keys of a cache whose entries are dropped by changing the key they are looked up with rather than by
+ * finding and removing them, such as entries for each user of a site. A change to an id gives it a new version, and a
+ * change to everything gives all ids a new version.
+ * </p>
+ * <p>
+ * The versions are kept in their own cache named after the cache of entries with ".versions" on the end, so they are
+ * shared by every server that shares the entries. A version is a random value rather than a count, so a server that
+ * starts again or loses a version from the cache never makes a key that an old entry is still under.
+ * </p>
+ */
+public class VersionedCacheKeys
+{
+	/** The id of the version that changes for everything */
+	private static final String ALL = "*";
+
+	private final Cache<String, String> versions;
+
+	/**
+	 * @param memoryService
+	 *        The memory service holding the cache of entries.
+	 * @param cacheName
+	 *        The name of the cache of entries.
+	 * @param maxVersions
+	 *        The most ids to keep versions for, an id whose version is dropped gets a new one.
+	 */
+	public VersionedCacheKeys(MemoryService memoryService, String cacheName, long maxVersions)
+	{
+		this.versions = memoryService.createCache(cacheName + ".versions", new SimpleConfiguration<String, String>(maxVersions));
+	}
+
+	/**
+	 * Get the current version of an id, to make part of the key of its entries. Take it before working out an entry, so a
+	 * change while it is being worked out leaves the entry under the old version.
+	 *
+	 * @param id
+	 *        The id.
+	 * @return The version, which changes when the id or everything is changed.
+	 */
+	public String version(String id)
+	{
+		return get(ALL) + "." + get(id);
+	}
+
+	/**
+	 * Give an id a new version, so its entries are no longer found.
+	 *
+	 * @param id
+	 *        The id that has changed.
+	 */
+	public void change(String id)
+	{
+		versions.put(id, newVersion());
+	}
+
+	/**
+	 * Give every id a new version, so no entry is found.
+	 */
+	public void changeAll()
+	{
+		versions.put(ALL, newVersion());
+	}
+
+	private String get(String id)
+	{
+		String version = versions.get(id);
+		if (version == null)
+		{
+			// never seen, or dropped from the cache, either way no entry can be under a new version
+			version = newVersion();
+			versions.put(id, version);
+		}
+		return version;
+	}
+
+	private static String newVersion()
+	{
+		return Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, Character.MAX_RADIX);
+	}
+}
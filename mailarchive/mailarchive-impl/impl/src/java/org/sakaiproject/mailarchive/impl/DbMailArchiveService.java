@@ -206,6 +206,11 @@ public class DbMailArchiveService extends BaseMailArchiveService
 			super(m_cTableName, "CHANNEL_ID", m_rTableName, "MESSAGE_ID", "CHANNEL_ID", "MESSAGE_DATE", "OWNER", "DRAFT",
 					"PUBVIEW", FIELDS, SEARCH_FIELDS, m_locksInDb, "channel", "message", user, sqlService);
 			m_locksAreInTable = false;
+
+			addIndexField(INDEX_DATE, "MESSAGE_DATE");
+			addIndexField(INDEX_OWNER, "OWNER");
+			addIndexField(INDEX_DRAFT, "DRAFT");
+			addIndexField(INDEX_PUBVIEW, "PUBVIEW");
 		} // DbStorage
         
 		/* matchXml - Optionaly do a pre-de-serialize match
@@ -25,6 +25,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -69,7 +70,9 @@ import org.sakaiproject.exception.InUseException;
 import org.sakaiproject.exception.PermissionException;
 import org.sakaiproject.id.api.IdManager;
 import org.sakaiproject.javax.Filter;
+import org.sakaiproject.javax.IndexedFilter;
 import org.sakaiproject.javax.PagingPosition;
+import org.sakaiproject.javax.Restriction;
 import org.sakaiproject.memory.api.Cache;
 import org.sakaiproject.memory.api.MemoryService;
 import org.sakaiproject.message.api.Message;
@@ -132,6 +135,12 @@ public abstract class BaseMessage implements MessageService, DoubleStorageUser
 
 	private Cache<String, List<Message>> messagesCache;
 
+	/** The message properties a db storage can index, for IndexedFilter restrictions. */
+	protected static final String INDEX_DATE = "date";
+	protected static final String INDEX_OWNER = "owner";
+	protected static final String INDEX_DRAFT = "draft";
+	protected static final String INDEX_PUBVIEW = "pubview";
+
 	/**********************************************************************************************************************************************************************************************************************************************************
 	 * Constructors, Dependencies and their setter methods
 	 *********************************************************************************************************************************************************************************************************************************************************/
@@ -4380,7 +4389,7 @@ public abstract class BaseMessage implements MessageService, DoubleStorageUser
 
 	} // MessagePermissionFilter
 
-	protected class MessageSelectionFilter implements Filter
+	protected class MessageSelectionFilter implements IndexedFilter
 	{
 		protected Time m_afterDate = null;
 
@@ -4443,6 +4452,30 @@ public abstract class BaseMessage implements MessageService, DoubleStorageUser
 			// accept this one
 			return true;
 		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public Restriction[] getIndexRestrictions()
+		{
+			// drafts for one user are "not a draft, or owned by the user", which is not a plain restriction
+			if (m_draftsForId != null && !"*".equals(m_draftsForId)) return null;
+
+			List<Restriction> restrictions = new ArrayList<Restriction>();
+			if (m_afterDate != null)
+			{
+				restrictions.add(new Restriction(INDEX_DATE, m_afterDate, Restriction.GREATER));
+			}
+			if (m_pubViewOnly)
+			{
+				restrictions.add(new Restriction(INDEX_PUBVIEW, "1"));
+			}
+			if (m_draftsForId == null)
+			{
+				restrictions.add(new Restriction(INDEX_DRAFT, "0"));
+			}
+			return restrictions.toArray(new Restriction[restrictions.size()]);
+		}
 	}
 
 	protected String getSummaryFromHeader(Message item, MessageHeader header)
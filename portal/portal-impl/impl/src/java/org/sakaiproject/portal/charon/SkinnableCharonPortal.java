@@ -259,6 +259,10 @@ public class SkinnableCharonPortal extends HttpServlet implements Portal
 	{
 		log.info("destroy()");
 		portalService.removePortal(this);
+		if (siteHelper instanceof PortalSiteHelperImpl)
+		{
+			((PortalSiteHelperImpl) siteHelper).destroy();
+		}
 
 		super.destroy();
 	}
@@ -0,0 +1,201 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.portal.charon.handlers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.zip.GZIPOutputStream;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>
+ * The static files served by the portal, held in memory up to a limit on the total bytes, least recently used first
+ * out. Each file is held with a strong ETag computed from its content and, for text types, a gzipped copy so it is
+ * only compressed once.
+ * </p>
+ * <p>
+ * The cache is shared by every thread; entries are not changed once made, a changed file replaces its entry.
+ * </p>
+ */
+@Slf4j
+public class StaticContentCache
+{
+	/** Files smaller than this are not worth gzipping */
+	private static final int MIN_GZIP_SIZE = 256;
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+	private long maxBytes;
+
+	private long bytes = 0;
+
+	/**
+	 * A cached file.
+	 */
+	@Getter
+	public static class Entry
+	{
+		private final String path;
+		private final long lastModified;
+		private final String contentType;
+		private final byte[] content;
+		private final byte[] gzipped;
+		private final String etag;
+
+		Entry(String path, long lastModified, String contentType, byte[] content)
+		{
+			this.path = path;
+			this.lastModified = lastModified;
+			this.contentType = contentType;
+			this.content = content;
+			this.gzipped = isCompressible(contentType) ? gzip(content) : null;
+			this.etag = etag(content);
+		}
+
+		/**
+		 * @return the ETag of the gzipped copy, which is a different representation of the file.
+		 */
+		public String getGzippedEtag()
+		{
+			return etag.substring(0, etag.length() - 1) + "-gz\"";
+		}
+
+		int size()
+		{
+			return content.length + (gzipped == null ? 0 : gzipped.length);
+		}
+	}
+
+	/**
+	 * @param maxBytes the most bytes of content to hold
+	 */
+	public StaticContentCache(long maxBytes)
+	{
+		this.maxBytes = maxBytes;
+	}
+
+	public synchronized void setMaxBytes(long maxBytes)
+	{
+		this.maxBytes = maxBytes;
+		evict();
+	}
+
+	public synchronized long getBytes()
+	{
+		return bytes;
+	}
+
+	public synchronized int size()
+	{
+		return entries.size();
+	}
+
+	/**
+	 * @return the entry for the path if it is no older than lastModified, otherwise null.
+	 */
+	public synchronized Entry get(String path, long lastModified)
+	{
+		Entry entry = entries.get(path);
+		if (entry != null && lastModified > entry.lastModified)
+		{
+			return null;
+		}
+		return entry;
+	}
+
+	/**
+	 * Make an entry for a file and hold it if it fits.
+	 *
+	 * @return the new entry
+	 */
+	public Entry put(String path, long lastModified, String contentType, byte[] content)
+	{
+		// hashed and compressed outside the lock
+		Entry entry = new Entry(path, lastModified, contentType, content);
+		if (entry.size() > maxBytes) return entry;
+		synchronized (this)
+		{
+			Entry old = entries.put(path, entry);
+			if (old != null)
+			{
+				bytes -= old.size();
+			}
+			bytes += entry.size();
+			evict();
+		}
+		return entry;
+	}
+
+	private void evict()
+	{
+		Iterator<Entry> it = entries.values().iterator();
+		while (bytes > maxBytes && it.hasNext())
+		{
+			Entry eldest = it.next();
+			bytes -= eldest.size();
+			it.remove();
+			log.debug("Evicted {} from the static content cache", eldest.path);
+		}
+	}
+
+	/**
+	 * @return true for the text types that gzip well.
+	 */
+	static boolean isCompressible(String contentType)
+	{
+		if (contentType == null) return false;
+		return contentType.startsWith("text/") || contentType.contains("javascript") || contentType.contains("json")
+				|| contentType.contains("xml");
+	}
+
+	private static byte[] gzip(byte[] content)
+	{
+		if (content.length < MIN_GZIP_SIZE) return null;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 3);
+		try (GZIPOutputStream out = new GZIPOutputStream(bytes))
+		{
+			out.write(content);
+		}
+		catch (IOException e)
+		{
+			log.debug("Failed to gzip static content", e);
+			return null;
+		}
+		return bytes.size() < content.length ? bytes.toByteArray() : null;
+	}
+
+	private static String etag(byte[] content)
+	{
+		try
+		{
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+			return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest) + "\"";
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// every JVM has SHA-256, but fall back to something unique to the content
+			return "\"" + Integer.toHexString(Arrays.hashCode(content)) + "-" + content.length + "\"";
+		}
+	}
+}
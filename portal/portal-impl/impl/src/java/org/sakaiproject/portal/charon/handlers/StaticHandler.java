@@ -31,9 +31,13 @@ import java.net.URL;
 import java.util.Properties;
 import java.util.zip.ZipEntry;
 
+import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.sakaiproject.component.cover.ServerConfigurationService;
+import org.sakaiproject.portal.api.Portal;
+import org.sakaiproject.portal.api.PortalService;
 import org.sakaiproject.portal.util.URLUtils;
 import lombok.extern.slf4j.Slf4j;
 
@@ -41,7 +45,7 @@ import lombok.extern.slf4j.Slf4j;
  * Handler to process static content with an internal, in memory cache.
  * Care should be taken not to put large volumes of static content within the 
  * portal space that is handled by this Handler as it will lead to increased
- * memory usage.
+ * memory usage. The cache is limited to portal.static.cache.kb in total.
  * 
  * @author ieb
  * @since Sakai 2.4
@@ -53,9 +57,16 @@ public abstract class StaticHandler extends BasePortalHandler
 {
 
 	public static final int MAX_SIZE_KB = 100;
+
+	/** Default size of the cache of static files, in KB */
+	public static final int DEFAULT_CACHE_KB = 16 * 1024;
+
+	/** A year, how long versioned files may be cached by browsers */
+	private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+
 	private Properties contentTypes = null;
 
-	private static final ThreadLocal<StaticCache[]> staticCacheHolder = new ThreadLocal<>();
+	private static final StaticContentCache staticContentCache = new StaticContentCache(DEFAULT_CACHE_KB * 1024L);
 
 	public StaticHandler()
 	{
@@ -86,6 +97,13 @@ public abstract class StaticHandler extends BasePortalHandler
 
 	}
 
+	@Override
+	public void register(Portal portal, PortalService portalService, ServletContext servletContext)
+	{
+		super.register(portal, portalService, servletContext);
+		staticContentCache.setMaxBytes(ServerConfigurationService.getInt("portal.static.cache.kb", DEFAULT_CACHE_KB) * 1024L);
+	}
+
 	/**
 	 * serve a registered static file
 	 * 
@@ -99,103 +117,78 @@ public abstract class StaticHandler extends BasePortalHandler
 	{
 		try
 		{
-			StaticCache[] staticCache = staticCacheHolder.get();
-			if (staticCache == null)
-			{
-				staticCache = new StaticCache[100];
-				staticCacheHolder.set(staticCache);
-			}
 			String path = URLUtils.getSafePathInfo(req);
 			if (path.indexOf("..") >= 0)
 			{
 				res.sendError(404);
 				return;
 			}
-			InputStream inputStream;
 			String filename = path.substring(path.lastIndexOf("/"));
 			long lastModified = -1;
 			long length = -1;
+			URL url = null;
+			File file = null;
 			String realPath = servletContext.getRealPath(path);
 			if (realPath == null) {
 				// We not uncompressing the webapps.
-				URL url = servletContext.getResource(path);
-				inputStream = url.openStream();
-				if (url != null) {
-					try {
-						ZipEntry zipEntry = ((JarURLConnection)url.openConnection()).getJarEntry();
-						lastModified = zipEntry.getLastModifiedTime().toMillis();
-						length = zipEntry.getSize();
-					} catch (ClassCastException cce) {
-						// Can't get extra data, but should all work.
-						log.debug("We don't seem to be a JAR either.", cce);
-					}
-				} else {
+				url = servletContext.getResource(path);
+				if (url == null) {
 					res.sendError(404);
 					return;
 				}
+				try {
+					ZipEntry zipEntry = ((JarURLConnection)url.openConnection()).getJarEntry();
+					lastModified = zipEntry.getLastModifiedTime().toMillis();
+					length = zipEntry.getSize();
+				} catch (ClassCastException cce) {
+					// Can't get extra data, but should all work.
+					log.debug("We don't seem to be a JAR either.", cce);
+				}
 			} else {
-				File f = new File(realPath);
-				inputStream = new FileInputStream(f);
-				lastModified = f.lastModified();
-				length = f.length();
+				file = new File(realPath);
+				if (!file.isFile()) {
+					res.sendError(404);
+					return;
+				}
+				lastModified = file.lastModified();
+				length = file.length();
 			}
+
+			// the skin and script urls carry the portal version, so a changed file gets a new url
+			if (req.getParameter("version") != null)
+			{
+				res.setHeader("Cache-Control", IMMUTABLE_CACHE_CONTROL);
+			}
+
 			if (length >= 0 && length < MAX_SIZE_KB * 1024)
 			{
-				for (int i = 0; i < staticCache.length; i++)
+				// If we don't have a good last modified time it's cached until evicted
+				StaticContentCache.Entry entry = staticContentCache.get(path, lastModified);
+				if (entry == null)
 				{
-					StaticCache sc = staticCache[i];
-					if (sc != null && path.equals(sc.path))
-					{
-						// If we don't have a good last modified time it's cached forever
-						if (lastModified > sc.lastModified)
-						{
-							sc.buffer = loadFileBuffer(inputStream, (int)length);
-							sc.path = path;
-							sc.lastModified = lastModified;
-							sc.contenttype = getContentType(filename);
-							sc.added = System.currentTimeMillis();
-						}
-						// send the output
-						sendContent(res, sc);
-						return;
-					}
+					InputStream inputStream = (file != null) ? new FileInputStream(file) : url.openStream();
+					entry = staticContentCache.put(path, lastModified, getContentType(filename),
+							loadFileBuffer(inputStream, (int) length));
 				}
-				// not found in cache, find the oldest or null and evict
-				// this is thread Safe, since the cache is per thread.
-				StaticCache sc = null;
-				for (int i = 1; i < staticCache.length; i++)
-				{
-					StaticCache current = staticCache[i];
-					if (sc == null)
-					{
-						sc = current;
-					}
-					if (current == null)
-					{
-						sc = new StaticCache();
-						staticCache[i] = sc;
-						break;
-					}
-					if (sc.added < current.added)
-					{
-						sc = current;
-					}
-				}
-				sc.buffer = loadFileBuffer(inputStream, (int)length);
-				sc.path = path;
-				sc.lastModified = lastModified;
-				sc.contenttype = getContentType(filename);
-				sc.added = System.currentTimeMillis();
-				sendContent(res, sc);
+				sendContent(req, res, entry);
 				return;
-
 			}
 			else
 			{
+				if (length >= 0 && lastModified >= 0)
+				{
+					String etag = "W/\"" + length + "-" + lastModified + "\"";
+					res.setHeader("ETag", etag);
+					if (isNotModified(req, etag, lastModified))
+					{
+						res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+						return;
+					}
+				}
 				res.setContentType(getContentType(filename));
 				res.addDateHeader("Last-Modified", lastModified);
 				res.setContentLength((int) length);
-				sendContent(res, inputStream);
+				sendContent(res, (file != null) ? new FileInputStream(file) : url.openStream());
 				return;
 			}
 
@@ -210,23 +203,40 @@ public abstract class StaticHandler extends BasePortalHandler
 	}
 
 	/**
-	 * a simple static cache holder
+	 * Check the request's validators against the file.
 	 * 
-	 * @author ieb
+	 * @param req The request.
+	 * @param etag The ETag of the representation that would be sent.
+	 * @param lastModified When the file was last modified.
+	 * @return true if the client's copy is current and a 304 can be sent.
 	 */
-	protected class StaticCache
+	static boolean isNotModified(HttpServletRequest req, String etag, long lastModified)
 	{
-
-		public Object path;
-
-		public long added;
-
-		public byte[] buffer;
-
-		public long lastModified;
-
-		public String contenttype;
-
+		String ifNoneMatch = req.getHeader("If-None-Match");
+		if (ifNoneMatch != null)
+		{
+			// If-None-Match takes precedence over If-Modified-Since, and uses the weak comparison
+			if ("*".equals(ifNoneMatch.trim())) return true;
+			String opaque = etag.startsWith("W/") ? etag.substring(2) : etag;
+			for (String tag : ifNoneMatch.split(","))
+			{
+				tag = tag.trim();
+				if (tag.startsWith("W/")) tag = tag.substring(2);
+				if (tag.equals(opaque)) return true;
+			}
+			return false;
+		}
+		if (lastModified <= 0) return false;
+		try
+		{
+			long ifModifiedSince = req.getDateHeader("If-Modified-Since");
+			// http dates only have whole seconds
+			return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+		}
+		catch (IllegalArgumentException e)
+		{
+			return false;
+		}
 	}
 
 	/**
@@ -319,21 +329,38 @@ public abstract class StaticHandler extends BasePortalHandler
 	}
 
 	/**
-	 * send the content from the static cache.
+	 * send the content from the static cache, gzipped if the client accepts it.
 	 * 
+	 * @param req
 	 * @param res
-	 * @param sc
+	 * @param entry
 	 * @throws IOException
 	 */
-	void sendContent(HttpServletResponse res, StaticCache sc) throws IOException
+	void sendContent(HttpServletRequest req, HttpServletResponse res, StaticContentCache.Entry entry) throws IOException
 	{
-		if (sc.contenttype != null) {
-			res.setContentType(sc.contenttype);
+		String acceptEncoding = req.getHeader("Accept-Encoding");
+		boolean gzip = entry.getGzipped() != null && acceptEncoding != null && acceptEncoding.contains("gzip");
+		String etag = gzip ? entry.getGzippedEtag() : entry.getEtag();
+
+		if (entry.getGzipped() != null) {
+			res.addHeader("Vary", "Accept-Encoding");
+		}
+		if (entry.getContentType() != null) {
+			res.setContentType(entry.getContentType());
+		}
+		res.setHeader("ETag", etag);
+		res.addDateHeader("Last-Modified", entry.getLastModified());
+		if (isNotModified(req, etag, entry.getLastModified())) {
+			res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
 		}
-		res.addDateHeader("Last-Modified", sc.lastModified);
-		res.setContentLength(sc.buffer.length);
-		res.getOutputStream().write(sc.buffer);
 
+		byte[] body = gzip ? entry.getGzipped() : entry.getContent();
+		if (gzip) {
+			res.setHeader("Content-Encoding", "gzip");
+		}
+		res.setContentLength(body.length);
+		res.getOutputStream().write(body);
 	}
 
 }
@@ -52,15 +52,18 @@ import org.sakaiproject.entity.api.Reference;
 import org.sakaiproject.entity.api.ResourceProperties;
 import org.sakaiproject.entity.api.Summary;
 import org.sakaiproject.entity.cover.EntityManager;
+import org.sakaiproject.event.api.EventTrackingService;
 import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.exception.PermissionException;
 import org.sakaiproject.lessonbuildertool.model.SimplePageToolDao;
+import org.sakaiproject.memory.api.MemoryService;
 import org.sakaiproject.portal.api.PageFilter;
 import org.sakaiproject.portal.api.Portal;
 import org.sakaiproject.portal.api.PortalSiteHelper;
 import org.sakaiproject.portal.api.SiteView;
 import org.sakaiproject.portal.api.SiteView.View;
 import org.sakaiproject.portal.charon.PortalStringUtil;
+import org.sakaiproject.portal.charon.site.SiteNavCache.SiteNav;
 import org.sakaiproject.portal.util.ToolUtils;
 import org.sakaiproject.site.api.Site;
 import org.sakaiproject.site.api.SitePage;
@@ -111,6 +114,7 @@ public class PortalSiteHelperImpl implements PortalSiteHelper
 	private static final String OVERVIEW_TOOL_TITLE = "overview";
 	private static final String SAK_PROP_FORCE_OVERVIEW_TO_TOP = "portal.forceOverviewToTop";
 	private static final boolean SAK_PROP_FORCE_OVERVIEW_TO_TOP_DEFAULT = false;
+	private static final String SAK_PROP_SITENAV_CACHE = "portal.sitenav.cache";
 
 	private Portal portal;
 
@@ -124,6 +128,7 @@ public class PortalSiteHelperImpl implements PortalSiteHelper
 	private ToolManager toolManager;
 	private FormattedText formattedText;
 	private SimplePageToolDao simplePageToolDao;
+	private SiteNavCache siteNavCache;
 
 	public ToolManager getToolManager() {
 		//To work around injection for test case
@@ -164,6 +169,42 @@ public class PortalSiteHelperImpl implements PortalSiteHelper
 		this.portal = portal;
 		this.lookForPageAliases = lookForPageAliases;
 		aliasService = ComponentManager.get(AliasService.class);
+		if (ServerConfigurationService.getBoolean(SAK_PROP_SITENAV_CACHE, true))
+		{
+			siteNavCache = new SiteNavCache(ComponentManager.get(MemoryService.class), ComponentManager.get(EventTrackingService.class));
+		}
+	}
+
+	/**
+	 * Stop watching for the site changes that clear the navigation cache.
+	 */
+	public void destroy()
+	{
+		if (siteNavCache != null)
+		{
+			siteNavCache.destroy();
+		}
+	}
+
+	/**
+	 * Get the key for the current user's cached navigation of a site.
+	 *
+	 * @return the key, or null if the user's view of the site can't be cached.
+	 */
+	private String getSiteNavKey(String kind, Site site)
+	{
+		if (siteNavCache == null) return null;
+		Session session = SessionManager.getCurrentSession();
+		String userId = session == null ? null : session.getUserId();
+		if (userId == null) return null;
+
+		// role swaps and delegated access change what a user sees of a site and are held in their session
+		if (session.getAttribute("delegatedaccess.deniedToolsMap") != null
+				|| SecurityService.getUserEffectiveRole(site.getReference()) != null)
+		{
+			return null;
+		}
+		return siteNavCache.key(kind, userId, site.getId());
 	}
 
 	/* (non-Javadoc)
@@ -316,8 +357,20 @@ public class PortalSiteHelperImpl implements PortalSiteHelper
                         }
                 }
 
+		// Only the sites missing from the navigation cache need their providers to title them
+		List<Site> uncachedSites = new ArrayList<>();
+		for (Object o : mySites)
+		{
+			Site s = (Site) o;
+			String navKey = getSiteNavKey(SiteNavCache.SITE, s);
+			if (navKey == null || siteNavCache.get(navKey) == null)
+			{
+				uncachedSites.add(s);
+			}
+		}
+
 		// Determine the depths of the child sites if needed
-		Map<String, List<String>> realmProviderMap = getProviderIDsForSites(mySites);
+		Map<String, List<String>> realmProviderMap = getProviderIDsForSites(uncachedSites);
 		for (Iterator i = mySites.iterator(); i.hasNext();)
 		{
 			Site s = (Site) i.next();
@@ -456,8 +509,33 @@ public class PortalSiteHelperImpl implements PortalSiteHelper
 		if (s == null) return null;
 		Map<String, Object> m = new HashMap<>();
 
+		SiteNav nav = null;
+		String navKey = getSiteNavKey(SiteNavCache.SITE, s);
+		if (navKey != null)
+		{
+			nav = (SiteNav) siteNavCache.get(navKey);
+		}
+		if (nav == null)
+		{
+			String siteTitleRaw = getUserSpecificSiteTitle(s, false, false, siteProviders);
+			String shortDescription = null;
+			if ( s.getShortDescription() !=null && s.getShortDescription().trim().length()>0 ){
+				// SAK-23895:  Allow display of site description in the tab instead of site title
+				String shortDesc = s.getShortDescription(); 
+				String shortDesc_trimmed = getFormattedText().makeShortenedText(shortDesc, null, null, null);
+				shortDescription = getFormattedText().escapeHtml(shortDesc_trimmed);
+			}
+			nav = new SiteNav(getSiteEffectiveId(s), getFormattedText().escapeHtml(siteTitleRaw),
+					getFormattedText().escapeHtml(getFormattedText().makeShortenedText(siteTitleRaw, null, null, null)),
+					shortDescription);
+			if (navKey != null)
+			{
+				siteNavCache.put(navKey, nav);
+			}
+		}
+
 		// In case the effective is different than the actual site
-		String effectiveSite = getSiteEffectiveId(s);
+		String effectiveSite = nav.getEffectiveId();
 
 		boolean isCurrentSite = currentSiteId != null
 				&& (s.getId().equals(currentSiteId) || effectiveSite
@@ -468,27 +546,22 @@ public class PortalSiteHelperImpl implements PortalSiteHelper
 				&& (s.getId().equals(myWorkspaceSiteId) || effectiveSite
 						.equals(myWorkspaceSiteId))));
 		
-		String siteTitleRaw = getUserSpecificSiteTitle(s, false, false, siteProviders);
-		String siteTitle = getFormattedText().escapeHtml(siteTitleRaw);
-		String siteTitleTruncated = getFormattedText().escapeHtml(getFormattedText().makeShortenedText(siteTitleRaw, null, null, null));
-		m.put("siteTitle", siteTitle);
-		m.put("siteTitleTrunc", siteTitleTruncated);
-		m.put("fullTitle", siteTitle);
+		m.put("siteTitle", nav.getSiteTitle());
+		m.put("siteTitleTrunc", nav.getSiteTitleTrunc());
+		m.put("fullTitle", nav.getSiteTitle());
 		
 		m.put("siteDescription", s.getHtmlDescription());
 
-		if ( s.getShortDescription() !=null && s.getShortDescription().trim().length()>0 ){
-			// SAK-23895:  Allow display of site description in the tab instead of site title
-			String shortDesc = s.getShortDescription(); 
-			String shortDesc_trimmed = getFormattedText().makeShortenedText(shortDesc, null, null, null);
-			m.put("shortDescription", getFormattedText().escapeHtml(shortDesc_trimmed));
+		if (nav.getShortDescription() != null)
+		{
+			m.put("shortDescription", nav.getShortDescription());
 		}
 
 		String siteUrl = RequestFilter.serverUrl(req)
 				+ ServerConfigurationService.getString("portalPath") + "/";
 		if (prefix != null) siteUrl = siteUrl + prefix + "/";
 		// siteUrl = siteUrl + Web.escapeUrl(siteHelper.getSiteEffectiveId(s));
-		m.put("siteUrl", siteUrl + getFormattedText().escapeUrl(getSiteEffectiveId(s)));
+		m.put("siteUrl", siteUrl + getFormattedText().escapeUrl(effectiveSite));
 		m.put("siteType", s.getType());
 		m.put("siteId", s.getId());
 
@@ -1229,25 +1302,48 @@ public class PortalSiteHelperImpl implements PortalSiteHelper
 	{
 		// Get all of the pages
 		List<SitePage> pages = site.getOrderedPages();
-		boolean siteUpdate = SecurityService.unlock("site.upd", site.getReference());
 
 		List<SitePage> newPages = new ArrayList<>();
 
-		for (SitePage p : pages)
+		// the pages the user was permitted to see when the site last changed
+		String pagesKey = getSiteNavKey(SiteNavCache.PAGES, site);
+		HashSet<String> permitted = pagesKey == null ? null : (HashSet<String>) siteNavCache.get(pagesKey);
+		if (permitted != null)
 		{
-			// check if current user has permission to see page
-			List pTools = p.getTools();
-			Iterator iPt = pTools.iterator();
-			boolean allowPage = false;
-			while (iPt.hasNext())
+			for (SitePage p : pages)
 			{
-				ToolConfiguration placement = (ToolConfiguration) iPt.next();
+				if (permitted.contains(p.getId())) newPages.add(p);
+			}
+		}
+		else
+		{
+			boolean siteUpdate = SecurityService.unlock("site.upd", site.getReference());
+			permitted = new HashSet<>();
+
+			for (SitePage p : pages)
+			{
+				// check if current user has permission to see page
+				List pTools = p.getTools();
+				Iterator iPt = pTools.iterator();
+				boolean allowPage = false;
+				while (iPt.hasNext())
+				{
+					ToolConfiguration placement = (ToolConfiguration) iPt.next();
 
-				boolean thisTool = allowTool(site, placement);
-				boolean unHidden = siteUpdate || ! isHidden(placement);
-				if (thisTool && unHidden) allowPage = true;
+					boolean thisTool = allowTool(site, placement);
+					boolean unHidden = siteUpdate || ! isHidden(placement);
+					if (thisTool && unHidden) allowPage = true;
+				}
+				if (allowPage)
+				{
+					newPages.add(p);
+					permitted.add(p.getId());
+				}
+			}
+			if (pagesKey != null)
+			{
+				siteNavCache.put(pagesKey, permitted);
 			}
-			if (allowPage) newPages.add(p);
 		}
 
 		PageFilter pageFilter = portal.getPageFilter();
@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.portal.charon.site;
+
+import java.io.Serializable;
+import java.util.Observable;
+import java.util.Observer;
+
+import org.sakaiproject.authz.api.AuthzGroupService;
+import org.sakaiproject.entity.api.Entity;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.site.api.SiteService;
+import org.sakaiproject.util.VersionedCacheKeys;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>
+ * Caches the parts of a user's site navigation that only change when a site or its realm is changed: how each site is
+ * titled for the user and which of its pages they may see. Without it every portal request re-evaluates the tool
+ * permissions and titles of every site the user is in.
+ * </p>
+ * <p>
+ * Keys include a version for the site which is changed by any site or realm event for it, so a change is seen on the
+ * next request without searching the cache for each user's entries. Changes to the template realms and to aliases
+ * change every site. The versions are cached alongside the entries, so every server that shares the entries agrees on
+ * them.
+ * </p>
+ */
+@Slf4j
+public class SiteNavCache implements Observer
+{
+	public static final String CACHE_NAME = "org.sakaiproject.portal.charon.site.SiteNavCache";
+
+	/** Entries holding a SiteNav */
+	public static final String SITE = "site";
+
+	/** Entries holding the ids of the pages a user is permitted to see */
+	public static final String PAGES = "pages";
+
+	private static final String SITE_ROOT = SiteService.REFERENCE_ROOT + Entity.SEPARATOR;
+
+	private static final String REALM_ROOT = AuthzGroupService.REFERENCE_ROOT + Entity.SEPARATOR;
+
+	/** The most sites to keep versions for */
+	private static final long MAX_SITE_VERSIONS = 10000;
+
+	private final Cache<String, Serializable> cache;
+
+	private final EventTrackingService eventTrackingService;
+
+	/** site id -> version, changed by events for the site or for every site */
+	private final VersionedCacheKeys siteVersions;
+
+	/**
+	 * A user's view of a site in the navigation, already escaped for display.
+	 */
+	@Value
+	public static class SiteNav implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+
+		String effectiveId;
+		String siteTitle;
+		String siteTitleTrunc;
+		String shortDescription;
+	}
+
+	public SiteNavCache(MemoryService memoryService, EventTrackingService eventTrackingService)
+	{
+		this.cache = memoryService.getCache(CACHE_NAME);
+		this.siteVersions = new VersionedCacheKeys(memoryService, CACHE_NAME, MAX_SITE_VERSIONS);
+		this.eventTrackingService = eventTrackingService;
+		eventTrackingService.addObserver(this, "site.", "realm.", "alias.");
+	}
+
+	/**
+	 * Stop watching for events.
+	 */
+	public void destroy()
+	{
+		eventTrackingService.deleteObserver(this);
+	}
+
+	/**
+	 * Make the key for a user's entry for a site, taking the current version of the site. The key is made before the
+	 * entry is worked out, so an event while it is being worked out leaves it under an old version.
+	 *
+	 * @param kind SITE or PAGES
+	 * @param userId the user
+	 * @param siteId the site
+	 * @return the key
+	 */
+	public String key(String kind, String userId, String siteId)
+	{
+		return kind + ":" + siteVersions.version(siteId) + ":" + siteId + ":" + userId;
+	}
+
+	public Serializable get(String key)
+	{
+		return cache.get(key);
+	}
+
+	public void put(String key, Serializable value)
+	{
+		cache.put(key, value);
+	}
+
+	@Override
+	public void update(Observable observable, Object arg)
+	{
+		if (!(arg instanceof Event)) return;
+		Event event = (Event) arg;
+		String resource = event.getResource();
+		if (!event.getModify() || resource == null) return;
+
+		if (event.getEvent().startsWith("alias."))
+		{
+			siteVersions.changeAll();
+			return;
+		}
+		if (resource.startsWith(REALM_ROOT))
+		{
+			resource = resource.substring(REALM_ROOT.length());
+			if (resource.startsWith("!"))
+			{
+				// a template realm, which any site's permissions may come from
+				siteVersions.changeAll();
+				return;
+			}
+		}
+		if (resource.startsWith(SITE_ROOT))
+		{
+			String siteId = resource.substring(SITE_ROOT.length());
+			int end = siteId.indexOf(Entity.SEPARATOR);
+			if (end != -1) siteId = siteId.substring(0, end);
+			siteVersions.change(siteId);
+			log.debug("Site navigation for {} changed by {}", siteId, event.getEvent());
+		}
+	}
+}
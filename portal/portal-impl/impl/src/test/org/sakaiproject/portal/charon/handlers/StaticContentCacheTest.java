@@ -0,0 +1,101 @@
+/**********************************************************************************
+ * $URL: https://source.sakaiproject.org/svn/portal/trunk/portal-impl/impl/src/java/org/sakaiproject/portal/charon/CharonPortal.java $
+ * $Id: CharonPortal.java 122221 2013-04-04 21:24:12Z ottenhoff@longsight.com $
+ ***********************************************************************************
+ *
+ * Copyright (c) 2005, 2006, 2007, 2008 The Sakai Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.opensource.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **********************************************************************************/
+
+package org.sakaiproject.portal.charon.handlers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import junit.framework.TestCase;
+
+public class StaticContentCacheTest extends TestCase {
+
+	private byte[] text(int length) {
+		byte[] content = new byte[length];
+		Arrays.fill(content, (byte) 'a');
+		return content;
+	}
+
+	public void testEvictsLeastRecentlyUsed() {
+		StaticContentCache cache = new StaticContentCache(250);
+		cache.put("/a.png", 1, "image/png", new byte[100]);
+		cache.put("/b.png", 1, "image/png", new byte[100]);
+		// use a, so b is the least recently used
+		assertNotNull(cache.get("/a.png", 1));
+		cache.put("/c.png", 1, "image/png", new byte[100]);
+		assertNotNull(cache.get("/a.png", 1));
+		assertNull(cache.get("/b.png", 1));
+		assertNotNull(cache.get("/c.png", 1));
+		assertEquals(200, cache.getBytes());
+	}
+
+	public void testTooLargeIsNotHeld() {
+		StaticContentCache cache = new StaticContentCache(50);
+		StaticContentCache.Entry entry = cache.put("/big.png", 1, "image/png", new byte[100]);
+		assertEquals(100, entry.getContent().length);
+		assertEquals(0, cache.size());
+	}
+
+	public void testNewerFileIsReloaded() {
+		StaticContentCache cache = new StaticContentCache(1000);
+		cache.put("/a.png", 10, "image/png", new byte[10]);
+		assertNotNull(cache.get("/a.png", 10));
+		assertNotNull(cache.get("/a.png", -1));
+		assertNull(cache.get("/a.png", 11));
+		cache.put("/a.png", 11, "image/png", new byte[20]);
+		assertEquals(20, cache.get("/a.png", 11).getContent().length);
+		assertEquals(20, cache.getBytes());
+	}
+
+	public void testEtags() {
+		StaticContentCache cache = new StaticContentCache(100000);
+		String a = cache.put("/a.css", 1, "text/css", text(1000)).getEtag();
+		String b = cache.put("/b.css", 1, "text/css", text(1000)).getEtag();
+		String c = cache.put("/c.css", 1, "text/css", text(1001)).getEtag();
+		assertTrue(a.startsWith("\"") && a.endsWith("\""));
+		assertEquals(a, b);
+		assertFalse(a.equals(c));
+		assertFalse(a.equals(cache.get("/a.css", 1).getGzippedEtag()));
+	}
+
+	public void testGzipsText() throws IOException {
+		StaticContentCache cache = new StaticContentCache(100000);
+		StaticContentCache.Entry css = cache.put("/a.css", 1, "text/css", text(1000));
+		assertNotNull(css.getGzipped());
+		assertTrue(css.getGzipped().length < 1000);
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(css.getGzipped()))) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[256];
+			int nr;
+			while ((nr = in.read(buffer)) > 0) {
+				out.write(buffer, 0, nr);
+			}
+			assertTrue(Arrays.equals(text(1000), out.toByteArray()));
+		}
+		assertNotNull(cache.put("/a.js", 1, "text/javascript", text(1000)).getGzipped());
+		assertNull(cache.put("/a.png", 1, "image/png", text(1000)).getGzipped());
+		assertNull(cache.put("/small.css", 1, "text/css", text(10)).getGzipped());
+	}
+}
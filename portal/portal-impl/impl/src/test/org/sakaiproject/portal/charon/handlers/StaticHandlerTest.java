@@ -28,6 +28,8 @@ import javax.servlet.http.HttpServletResponse;
 
 import junit.framework.TestCase;
 
+import org.mockito.Mockito;
+
 import org.sakaiproject.component.cover.ComponentManager;
 import org.sakaiproject.portal.api.PortalHandlerException;
 import org.sakaiproject.tool.api.Session;
@@ -53,6 +55,22 @@ public class StaticHandlerTest extends TestCase {
 		assertEquals("application/octet-stream", handler.getContentType(new File("file.that.ends.with.dot.").getName()));
 	}
 
+	public void testIsNotModified() {
+		HttpServletRequest req = Mockito.mock(HttpServletRequest.class);
+		Mockito.when(req.getHeader("If-None-Match")).thenReturn("\"other\", W/\"abc\"");
+		assertTrue(StaticHandler.isNotModified(req, "\"abc\"", 1000L));
+		assertFalse(StaticHandler.isNotModified(req, "\"abc-gz\"", 1000L));
+
+		req = Mockito.mock(HttpServletRequest.class);
+		Mockito.when(req.getDateHeader("If-Modified-Since")).thenReturn(5000L);
+		assertTrue(StaticHandler.isNotModified(req, "\"abc\"", 5999L));
+		assertFalse(StaticHandler.isNotModified(req, "\"abc\"", 6000L));
+
+		req = Mockito.mock(HttpServletRequest.class);
+		Mockito.when(req.getDateHeader("If-Modified-Since")).thenReturn(-1L);
+		assertFalse(StaticHandler.isNotModified(req, "\"abc\"", 5000L));
+	}
+
 	@Override
 	protected void setUp() throws Exception {
 		super.setUp();
@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2003-2014 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.portal.charon.site;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.memory.api.MemoryService;
+
+/**
+ * Tests for SiteNavCache
+ */
+public class SiteNavCacheTest {
+
+    private SiteNavCache siteNavCache;
+
+    private MemoryService memoryService;
+
+    @Before
+    public void setUp() {
+        memoryService = Mockito.mock(MemoryService.class);
+        Mockito.when(memoryService.getCache(SiteNavCache.CACHE_NAME)).thenReturn(Mockito.mock(Cache.class));
+        Cache<String, String> versions = mapCache(new HashMap<>());
+        Mockito.when(memoryService.createCache(Mockito.eq(SiteNavCache.CACHE_NAME + ".versions"), Mockito.any())).thenReturn(versions);
+        siteNavCache = new SiteNavCache(memoryService, Mockito.mock(EventTrackingService.class));
+    }
+
+    private Cache<String, String> mapCache(Map<String, String> map) {
+        Cache<String, String> cache = Mockito.mock(Cache.class);
+        Mockito.when(cache.get(Mockito.anyString())).thenAnswer(invocation -> map.get(invocation.getArgument(0)));
+        Mockito.doAnswer(invocation -> map.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(cache).put(Mockito.anyString(), Mockito.anyString());
+        return cache;
+    }
+
+    private Event event(String function, String resource, boolean modify) {
+        Event event = Mockito.mock(Event.class);
+        Mockito.when(event.getEvent()).thenReturn(function);
+        Mockito.when(event.getResource()).thenReturn(resource);
+        Mockito.when(event.getModify()).thenReturn(modify);
+        return event;
+    }
+
+    @Test
+    public void testSiteEventChangesSiteKeys() {
+        String before = siteNavCache.key(SiteNavCache.SITE, "user", "site1");
+        String other = siteNavCache.key(SiteNavCache.SITE, "user", "site2");
+        siteNavCache.update(null, event("site.upd", "/site/site1", true));
+        Assert.assertNotEquals(before, siteNavCache.key(SiteNavCache.SITE, "user", "site1"));
+        Assert.assertEquals(other, siteNavCache.key(SiteNavCache.SITE, "user", "site2"));
+    }
+
+    @Test
+    public void testRealmEventChangesSiteKeys() {
+        String before = siteNavCache.key(SiteNavCache.PAGES, "user", "site1");
+        siteNavCache.update(null, event("realm.upd", "/realm//site/site1/group/g1", true));
+        Assert.assertNotEquals(before, siteNavCache.key(SiteNavCache.PAGES, "user", "site1"));
+    }
+
+    @Test
+    public void testTemplateRealmChangesAllKeys() {
+        String before = siteNavCache.key(SiteNavCache.SITE, "user", "site2");
+        siteNavCache.update(null, event("realm.upd", "/realm/!site.template", true));
+        Assert.assertNotEquals(before, siteNavCache.key(SiteNavCache.SITE, "user", "site2"));
+    }
+
+    @Test
+    public void testReadsLeaveKeys() {
+        String before = siteNavCache.key(SiteNavCache.SITE, "user", "site1");
+        siteNavCache.update(null, event("site.visit", "/site/site1", false));
+        Assert.assertEquals(before, siteNavCache.key(SiteNavCache.SITE, "user", "site1"));
+        Assert.assertNotEquals(before, siteNavCache.key(SiteNavCache.SITE, "other", "site1"));
+    }
+
+    @Test
+    public void testChangeSeenByServerSharingTheCache() {
+        // another server sharing the caches, which has not seen the event
+        SiteNavCache otherServer = new SiteNavCache(memoryService, Mockito.mock(EventTrackingService.class));
+        String before = otherServer.key(SiteNavCache.PAGES, "user", "site1");
+        Assert.assertEquals(before, siteNavCache.key(SiteNavCache.PAGES, "user", "site1"));
+
+        siteNavCache.update(null, event("realm.upd", "/realm//site/site1", true));
+        Assert.assertNotEquals(before, otherServer.key(SiteNavCache.PAGES, "user", "site1"));
+    }
+
+    @Test
+    public void testNewVersionsAfterRestart() {
+        String before = siteNavCache.key(SiteNavCache.SITE, "user", "site1");
+        // the shared versions are lost, as when every server restarts
+        Mockito.when(memoryService.createCache(Mockito.eq(SiteNavCache.CACHE_NAME + ".versions"), Mockito.any())).thenReturn(mapCache(new HashMap<>()));
+        SiteNavCache restarted = new SiteNavCache(memoryService, Mockito.mock(EventTrackingService.class));
+        Assert.assertNotEquals(before, restarted.key(SiteNavCache.SITE, "user", "site1"));
+    }
+}
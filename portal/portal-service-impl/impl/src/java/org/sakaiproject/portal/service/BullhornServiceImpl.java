@@ -20,11 +20,16 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.function.Function;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import javax.annotation.Resource;
@@ -50,6 +55,9 @@ import org.sakaiproject.portal.api.BullhornHandler;
 import org.sakaiproject.portal.api.BullhornService;
 import org.sakaiproject.portal.beans.BullhornAlert;
 import org.sakaiproject.site.api.SiteService;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
+import org.sakaiproject.tool.api.Session;
+import org.sakaiproject.tool.api.SessionManager;
 import org.sakaiproject.user.api.User;
 import org.sakaiproject.user.api.UserDirectoryService;
 import org.sakaiproject.user.api.UserNotDefinedException;
@@ -58,7 +66,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import lombok.Setter;
@@ -85,6 +96,10 @@ public class BullhornServiceImpl implements BullhornService, Observer {
     private SimplePageToolDao simplePageToolDao;
     @Inject
     private SiteService siteService;
+    @Inject
+    private SessionManager sessionManager;
+    @Inject
+    private ThreadLocalManager threadLocalManager;
     @Resource(name = "org.sakaiproject.springframework.orm.hibernate.GlobalSessionFactory")
     private SessionFactory sessionFactory;
 
@@ -95,6 +110,13 @@ public class BullhornServiceImpl implements BullhornService, Observer {
 
     private Map<String, BullhornHandler> handlerMap = new HashMap<>();
 
+    /** Alerts are flushed to the database this many at a time */
+    private static final int INSERT_BATCH_SIZE = 100;
+
+    private ThreadPoolExecutor alertExecutor;
+
+    private BullhornStats stats;
+
     public void init() {
 
         if (serverConfigurationService.getBoolean("portal.bullhorns.enabled", true)) {
@@ -108,12 +130,37 @@ public class BullhornServiceImpl implements BullhornService, Observer {
                 });
             });
 
+            // One thread so the alerts for an event are made after those of the events before it. When the queue
+            // is full events are handled on the thread that posted them, as they were before they were queued.
+            int queueSize = serverConfigurationService.getInt("portal.bullhorns.queue.size", 1000);
+            alertExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), r -> {
+                Thread thread = new Thread(r, "Sakai.Bullhorn.alerts");
+                thread.setDaemon(true);
+                return thread;
+            }, (r, executor) -> {
+                if (!executor.isShutdown()) {
+                    stats.runOnCaller();
+                    r.run();
+                }
+            });
+            stats = new BullhornStats(() -> alertExecutor.getQueue().size());
+            stats.register();
+
             eventTrackingService.addLocalObserver(this);
         }
 
         countCache = memoryService.getCache("bullhorn_alert_count_cache");
     }
 
+    public void destroy() {
+
+        if (alertExecutor != null) {
+            eventTrackingService.deleteObserver(this);
+            alertExecutor.shutdown();
+            stats.unregister();
+        }
+    }
+
     public void update(Observable o, final Object arg) {
 
         if (arg instanceof Event) {
@@ -122,122 +169,213 @@ public class BullhornServiceImpl implements BullhornService, Observer {
             // We add this comparation with UNKNOWN_USER because implementation of BaseEventTrackingService
             // UNKNOWN_USER is an user in a server without session. 
             if (HANDLED_EVENTS.contains(event) && !EventTrackingService.UNKNOWN_USER.equals(e.getUserId()) ) {
-                String ref = e.getResource();
-                String context = e.getContext();
-                String[] pathParts = ref.split("/");
-                String from = e.getUserId();
-                long at = e.getEventTime().getTime();
+                // the handlers look up what the event is about, which the posting transaction may not have committed
+                if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                        @Override
+                        public void afterCommit() {
+                            queueEvent(e);
+                        }
+                    });
+                } else {
+                    queueEvent(e);
+                }
+            }
+        }
+    }
+
+    private void queueEvent(Event e) {
+
+        stats.queued();
+        alertExecutor.execute(() -> handleEvent(e));
+    }
+
+    /**
+     * @return a template for a transaction of our own, as when the queue is full the alerts are made from the
+     * synchronization of the transaction that posted the event, after it has committed
+     */
+    private TransactionTemplate newTransactionTemplate() {
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return transactionTemplate;
+    }
+
+    /**
+     * Make the alerts for an event, off the thread that posted it. The handlers check permissions as the user who
+     * caused the event, so it is made the current user while they run.
+     */
+    private void handleEvent(Event e) {
+
+        long start = System.currentTimeMillis();
+        boolean ok = false;
+        int alertCount = 0;
+        boolean ownThread = Thread.currentThread().getName().equals("Sakai.Bullhorn.alerts");
+        try {
+            if (ownThread) {
+                Session session = sessionManager.getCurrentSession();
+                session.setUserId(e.getUserId());
                 try {
-                    BullhornHandler handler = handlerMap.get(event);
+                    session.setUserEid(userDirectoryService.getUserEid(e.getUserId()));
+                } catch (UserNotDefinedException unde) {
+                    session.setUserEid(e.getUserId());
+                }
+            }
+            alertCount = makeAlerts(e);
+            ok = true;
+        } catch (Exception ex) {
+            log.error("Caught exception whilst handling events", ex);
+        } finally {
+            if (ownThread) {
+                threadLocalManager.clear();
+            }
+            stats.handled(alertCount, System.currentTimeMillis() - start, ok);
+        }
+    }
+
+    /**
+     * @return the number of alerts inserted
+     */
+    private int makeAlerts(Event e) {
 
-                    if (handler != null ) {
-                        Optional<List<BullhornData>> result = handler.handleEvent(e, countCache);
-                        if (result.isPresent()) {
-                            result.get().forEach(bd -> {
+        String event = e.getEvent();
+        String ref = e.getResource();
+        String context = e.getContext();
+        String[] pathParts = ref.split("/");
+        String from = e.getUserId();
 
-                                doInsert(from, bd.getTo(), event, ref, bd.getTitle(),
-                                                bd.getSiteId(), e.getEventTime(), bd.getUrl());
-                            });
+        BullhornHandler handler = handlerMap.get(event);
+
+        if (handler != null ) {
+            Optional<List<BullhornData>> result = handler.handleEvent(e, countCache);
+            if (result.isPresent()) {
+                return insertAlerts(from, event, ref, e.getEventTime(), result.get());
+            }
+        } else if (LessonBuilderEvents.COMMENT_CREATE.equals(event)) {
+            try {
+                long commentId = Long.parseLong(pathParts[pathParts.length - 1]);
+                SimplePageComment comment = simplePageToolDao.findCommentById(commentId);
+
+                String url = simplePageToolDao.getPageUrl(comment.getPageId());
+
+                if (url != null) {
+                    Set<String> done = new HashSet<>();
+                    List<BullhornData> alerts = new ArrayList<>();
+                    // Alert tutor types.
+                    List<User> receivers = securityService.unlockUsers(
+                        SimplePage.PERMISSION_LESSONBUILDER_UPDATE, "/site/" + context);
+                    for (User receiver : receivers) {
+                        String to = receiver.getId();
+                        if (!to.equals(from) && done.add(to)) {
+                            alerts.add(new BullhornData(from, to, context, "title", url));
                         }
-                    } else if (LessonBuilderEvents.COMMENT_CREATE.equals(event)) {
-                        try {
-                            long commentId = Long.parseLong(pathParts[pathParts.length - 1]);
-                            SimplePageComment comment = simplePageToolDao.findCommentById(commentId);
-
-                            String url = simplePageToolDao.getPageUrl(comment.getPageId());
-
-                            if (url != null) {
-                                List<String> done = new ArrayList<>();
-                                // Alert tutor types.
-                                List<User> receivers = securityService.unlockUsers(
-                                    SimplePage.PERMISSION_LESSONBUILDER_UPDATE, "/site/" + context);
-                                for (User receiver : receivers) {
-                                    String to = receiver.getId();
-                                    if (!to.equals(from)) {
-                                        doInsert(from, to, event, ref, "title", context, e.getEventTime(), url);
-                                        done.add(to);
-                                        countCache.remove(to);
-                                    }
-                                }
-
-                                // Get all the comments in the same item
-                                List<SimplePageComment> comments
-                                    = simplePageToolDao.findCommentsOnItems(
-                                        Arrays.asList(new Long[] {comment.getItemId()}));
-
-                                if (comments.size() > 1) {
-                                    // Not the first, alert all the other commenters unless they already have been
-                                    for (SimplePageComment c : comments) {
-                                        String to = c.getAuthor();
-                                        if (!to.equals(from) && !done.contains(to)) {
-                                            doInsert(from, to, event, ref, "title", context, e.getEventTime(), url);
-                                            done.add(to);
-                                            countCache.remove(to);
-                                        }
-                                    }
-                                }
-                            } else {
-                                log.error("null url for page {}", comment.getPageId());
+                    }
+
+                    // Get all the comments in the same item
+                    List<SimplePageComment> comments
+                        = simplePageToolDao.findCommentsOnItems(
+                            Arrays.asList(new Long[] {comment.getItemId()}));
+
+                    if (comments.size() > 1) {
+                        // Not the first, alert all the other commenters unless they already have been
+                        for (SimplePageComment c : comments) {
+                            String to = c.getAuthor();
+                            if (!to.equals(from) && done.add(to)) {
+                                alerts.add(new BullhornData(from, to, context, "title", url));
                             }
-                        } catch (NumberFormatException nfe) {
-                            log.error("Caught number format exception whilst handling events", nfe);
                         }
-                    } else if (SiteService.EVENT_SITE_PUBLISH.equals(event)) {
-                        final String siteId = pathParts[2];
+                    }
+                    return insertAlerts(from, event, ref, e.getEventTime(), alerts);
+                } else {
+                    log.error("null url for page {}", comment.getPageId());
+                }
+            } catch (NumberFormatException nfe) {
+                log.error("Caught number format exception whilst handling events", nfe);
+            }
+        } else if (SiteService.EVENT_SITE_PUBLISH.equals(event)) {
+            final String siteId = pathParts[2];
 
-                        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+            TransactionTemplate transactionTemplate = newTransactionTemplate();
 
-                        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+            transactionTemplate.execute(new TransactionCallbackWithoutResult() {
 
-                            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
 
-                                final List<BullhornAlert> deferredAlerts
-                                    = sessionFactory.getCurrentSession().createCriteria(BullhornAlert.class)
-                                        .add(Restrictions.eq("deferred", true))
-                                        .add(Restrictions.eq("siteId", siteId)).list();
+                    final List<BullhornAlert> deferredAlerts
+                        = sessionFactory.getCurrentSession().createCriteria(BullhornAlert.class)
+                            .add(Restrictions.eq("deferred", true))
+                            .add(Restrictions.eq("siteId", siteId)).list();
 
-                                for (BullhornAlert da : deferredAlerts) {
-                                    da.setDeferred(false);
-                                    sessionFactory.getCurrentSession().update(da);
-                                    countCache.remove(da.getToUser());
-                                }
-                            }
-                        });
+                    for (BullhornAlert da : deferredAlerts) {
+                        da.setDeferred(false);
+                        sessionFactory.getCurrentSession().update(da);
+                        countCache.remove(da.getToUser());
                     }
-                } catch (Exception ex) {
-                    log.error("Caught exception whilst handling events", ex);
                 }
-            }
+            });
         }
+        return 0;
     }
 
-    private void doInsert(String from, String to, String event, String ref
-                                            , String title, String siteId, Date eventDate, String url) {
+    /**
+     * Insert the alerts for an event in one transaction, flushing them in batches. Once it has committed the counts
+     * cached for the recipients who can see the alerts are removed, so they are read again.
+     *
+     * @return the number of alerts inserted
+     */
+    private int insertAlerts(String from, String event, String ref, Date eventDate, List<BullhornData> data) {
 
-        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        if (data.isEmpty()) {
+            return 0;
+        }
+
+        // the alerts are deferred until their site is published
+        Map<String, Boolean> deferredBySite = new HashMap<>();
+        Set<String> visibleTo = new HashSet<>();
+
+        TransactionTemplate transactionTemplate = newTransactionTemplate();
 
         transactionTemplate.execute(new TransactionCallbackWithoutResult() {
 
             protected void doInTransactionWithoutResult(TransactionStatus status) {
 
-                BullhornAlert ba = new BullhornAlert();
-                ba.setFromUser(from);
-                ba.setToUser(to);
-                ba.setEvent(event);
-                ba.setRef(ref);
-                ba.setTitle(title);
-                ba.setSiteId(siteId);
-                ba.setEventDate(eventDate.toInstant());
-                ba.setUrl(url);
-                try {
-                    ba.setDeferred(!siteService.getSite(siteId).isPublished());
-                } catch (IdUnusedException iue) {
-                    log.warn("Failed to find site with id {} while setting deferred to published", siteId);
+                org.hibernate.Session session = sessionFactory.getCurrentSession();
+                int count = 0;
+                for (BullhornData bd : data) {
+                    boolean deferred = deferredBySite.computeIfAbsent(bd.getSiteId(), siteId -> {
+                        try {
+                            return !siteService.getSite(siteId).isPublished();
+                        } catch (IdUnusedException iue) {
+                            log.warn("Failed to find site with id {} while setting deferred to published", siteId);
+                            return false;
+                        }
+                    });
+
+                    BullhornAlert ba = new BullhornAlert();
+                    ba.setFromUser(from);
+                    ba.setToUser(bd.getTo());
+                    ba.setEvent(event);
+                    ba.setRef(ref);
+                    ba.setTitle(bd.getTitle());
+                    ba.setSiteId(bd.getSiteId());
+                    ba.setEventDate(eventDate.toInstant());
+                    ba.setUrl(bd.getUrl());
+                    ba.setDeferred(deferred);
+                    session.persist(ba);
+
+                    if (!deferred) {
+                        visibleTo.add(bd.getTo());
+                    }
+                    if (++count % INSERT_BATCH_SIZE == 0) {
+                        session.flush();
+                        session.clear();
+                    }
                 }
-
-                sessionFactory.getCurrentSession().persist(ba);
             }
         });
+
+        visibleTo.forEach(countCache::remove);
+        return data.size();
     }
 
     @Transactional  
@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.portal.service;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Counts the events BullhornServiceImpl queues and the alerts it makes from them.
+ */
+@Slf4j
+public class BullhornStats implements BullhornStatsMXBean {
+
+    public static final String OBJECT_NAME = "org.sakaiproject:type=BullhornService";
+
+    private final IntSupplier queueDepth;
+
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder runOnCaller = new LongAdder();
+    private final LongAdder handled = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder alerts = new LongAdder();
+    private final LongAdder handleMillis = new LongAdder();
+    private final AtomicLong maxHandleMillis = new AtomicLong();
+    private volatile long since = System.currentTimeMillis();
+
+    private ObjectName registeredName = null;
+
+    public BullhornStats(IntSupplier queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    public void queued() {
+        queued.increment();
+    }
+
+    public void runOnCaller() {
+        runOnCaller.increment();
+    }
+
+    /**
+     * Record an event handled.
+     *
+     * @param alertCount the number of alerts inserted for it
+     * @param millis the time taken
+     * @param ok false if it failed
+     */
+    public void handled(int alertCount, long millis, boolean ok) {
+        handled.increment();
+        if (!ok) failed.increment();
+        alerts.add(alertCount);
+        handleMillis.add(millis);
+        maxHandleMillis.accumulateAndGet(millis, Math::max);
+    }
+
+    public int getQueueDepth() {
+        return queueDepth.getAsInt();
+    }
+
+    public long getEventsQueued() {
+        return queued.sum();
+    }
+
+    public long getEventsRunOnCaller() {
+        return runOnCaller.sum();
+    }
+
+    public long getEventsHandled() {
+        return handled.sum();
+    }
+
+    public long getEventsFailed() {
+        return failed.sum();
+    }
+
+    public long getAlertsInserted() {
+        return alerts.sum();
+    }
+
+    public long getMeanHandleMillis() {
+        long n = handled.sum();
+        return n == 0 ? 0 : handleMillis.sum() / n;
+    }
+
+    public long getMaxHandleMillis() {
+        return maxHandleMillis.get();
+    }
+
+    public double getAlertsPerSecond() {
+        long millis = System.currentTimeMillis() - since;
+        return millis <= 0 ? 0 : alerts.sum() * 1000d / millis;
+    }
+
+    public void reset() {
+        queued.reset();
+        runOnCaller.reset();
+        handled.reset();
+        failed.reset();
+        alerts.reset();
+        handleMillis.reset();
+        maxHandleMillis.set(0);
+        since = System.currentTimeMillis();
+    }
+
+    /**
+     * Make the statistics available through the platform MBean server.
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            registeredName = name;
+        } catch (JMException e) {
+            log.warn("Failed to register bullhorn statistics: {}", e.toString());
+        }
+    }
+
+    public void unregister() {
+        if (registeredName == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+        } catch (JMException e) {
+            log.debug("Failed to unregister bullhorn statistics: {}", e.toString());
+        }
+        registeredName = null;
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.portal.service;
+
+/**
+ * Management view of the bullhorn alerts made from events.
+ */
+public interface BullhornStatsMXBean {
+
+    /**
+     * @return the number of events waiting to be turned into alerts.
+     */
+    int getQueueDepth();
+
+    /**
+     * @return the number of events queued.
+     */
+    long getEventsQueued();
+
+    /**
+     * @return the number of events handled on the thread that posted them, because the queue was full.
+     */
+    long getEventsRunOnCaller();
+
+    /**
+     * @return the number of events handled.
+     */
+    long getEventsHandled();
+
+    /**
+     * @return the number of events that failed.
+     */
+    long getEventsFailed();
+
+    /**
+     * @return the number of alerts inserted.
+     */
+    long getAlertsInserted();
+
+    /**
+     * @return the mean time taken to handle an event.
+     */
+    long getMeanHandleMillis();
+
+    /**
+     * @return the longest time taken to handle an event.
+     */
+    long getMaxHandleMillis();
+
+    /**
+     * @return the alerts inserted a second since the statistics were reset.
+     */
+    double getAlertsPerSecond();
+
+    /**
+     * Clear the statistics.
+     */
+    void reset();
+}
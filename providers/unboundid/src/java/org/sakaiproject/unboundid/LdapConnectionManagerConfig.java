@@ -159,6 +159,16 @@ public interface LdapConnectionManagerConfig {
 	 */
 	public void setBatchSize(int batchSize);
 
+	/**
+	 * @return The number of batches to search at once when looking up many users.
+	 */
+	public int getBatchThreads();
+
+	/**
+	 * @param batchThreads The number of batches to search at once when looking up many users.
+	 */
+	public void setBatchThreads(int batchThreads);
+
 	/**
 	 * @return The maximum number of results to ever get back from LDAP.
 	 */
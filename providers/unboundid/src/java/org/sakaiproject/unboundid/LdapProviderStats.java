@@ -0,0 +1,259 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.unboundid;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import lombok.extern.slf4j.Slf4j;
+
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPConnectionPoolStatistics;
+
+/**
+ * Counts the directory searches and user cache lookups of the UnboundidDirectoryProvider, and publishes them with the
+ * health of its connection pool.
+ */
+@Slf4j
+public class LdapProviderStats implements LdapProviderStatsMXBean
+{
+	public static final String OBJECT_NAME = "org.sakaiproject:type=UnboundidDirectoryProvider";
+
+	private final LongAdder searches = new LongAdder();
+	private final LongAdder searchErrors = new LongAdder();
+	private final LongAdder searchNanos = new LongAdder();
+	private final AtomicLong maxSearchNanos = new AtomicLong();
+	private final LongAdder cacheHits = new LongAdder();
+	private final LongAdder negativeCacheHits = new LongAdder();
+	private final LongAdder cacheMisses = new LongAdder();
+	private final LongAdder refreshes = new LongAdder();
+	private final LongAdder refreshFailures = new LongAdder();
+
+	private volatile LDAPConnectionPool connectionPool;
+
+	private volatile LdapUserCache userCache;
+
+	private ObjectName registeredName = null;
+
+	void setConnectionPool(LDAPConnectionPool connectionPool)
+	{
+		this.connectionPool = connectionPool;
+	}
+
+	void setUserCache(LdapUserCache userCache)
+	{
+		this.userCache = userCache;
+	}
+
+	/**
+	 * Record a directory search.
+	 */
+	public void search(long nanos, boolean failed)
+	{
+		searches.increment();
+		if (failed) searchErrors.increment();
+		searchNanos.add(nanos);
+		maxSearchNanos.accumulateAndGet(nanos, Math::max);
+	}
+
+	/**
+	 * Record a user cache lookup.
+	 * 
+	 * @param entry the cached lookup, or null if there was none.
+	 */
+	public void cacheLookup(LdapUserCache.Entry entry)
+	{
+		if (entry == null)
+		{
+			cacheMisses.increment();
+		}
+		else if (entry.getData() == null)
+		{
+			negativeCacheHits.increment();
+		}
+		else
+		{
+			cacheHits.increment();
+		}
+	}
+
+	public void refreshed(boolean failed)
+	{
+		if (failed)
+		{
+			refreshFailures.increment();
+		}
+		else
+		{
+			refreshes.increment();
+		}
+	}
+
+	public long getSearches()
+	{
+		return searches.sum();
+	}
+
+	public long getSearchErrors()
+	{
+		return searchErrors.sum();
+	}
+
+	public long getMeanSearchMicros()
+	{
+		long n = searches.sum();
+		return n == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(searchNanos.sum()) / n;
+	}
+
+	public long getMaxSearchMicros()
+	{
+		return TimeUnit.NANOSECONDS.toMicros(maxSearchNanos.get());
+	}
+
+	public long getCacheHits()
+	{
+		return cacheHits.sum();
+	}
+
+	public long getNegativeCacheHits()
+	{
+		return negativeCacheHits.sum();
+	}
+
+	public long getCacheMisses()
+	{
+		return cacheMisses.sum();
+	}
+
+	public long getRefreshes()
+	{
+		return refreshes.sum();
+	}
+
+	public long getRefreshFailures()
+	{
+		return refreshFailures.sum();
+	}
+
+	public int getCacheSize()
+	{
+		LdapUserCache cache = userCache;
+		return cache == null ? 0 : cache.size();
+	}
+
+	public int getAvailableConnections()
+	{
+		LDAPConnectionPool pool = connectionPool;
+		return pool == null ? -1 : pool.getCurrentAvailableConnections();
+	}
+
+	public int getMaxAvailableConnections()
+	{
+		LDAPConnectionPool pool = connectionPool;
+		return pool == null ? -1 : pool.getMaximumAvailableConnections();
+	}
+
+	public long getSuccessfulCheckouts()
+	{
+		LDAPConnectionPoolStatistics statistics = poolStatistics();
+		return statistics == null ? 0 : statistics.getNumSuccessfulCheckouts();
+	}
+
+	public long getFailedCheckouts()
+	{
+		LDAPConnectionPoolStatistics statistics = poolStatistics();
+		return statistics == null ? 0 : statistics.getNumFailedCheckouts();
+	}
+
+	public long getFailedConnectionAttempts()
+	{
+		LDAPConnectionPoolStatistics statistics = poolStatistics();
+		return statistics == null ? 0 : statistics.getNumFailedConnectionAttempts();
+	}
+
+	public long getDefunctConnections()
+	{
+		LDAPConnectionPoolStatistics statistics = poolStatistics();
+		return statistics == null ? 0 : statistics.getNumConnectionsClosedDefunct();
+	}
+
+	private LDAPConnectionPoolStatistics poolStatistics()
+	{
+		LDAPConnectionPool pool = connectionPool;
+		return pool == null ? null : pool.getConnectionPoolStatistics();
+	}
+
+	public void clearCache()
+	{
+		LdapUserCache cache = userCache;
+		if (cache != null) cache.clear();
+	}
+
+	public void reset()
+	{
+		searches.reset();
+		searchErrors.reset();
+		searchNanos.reset();
+		maxSearchNanos.set(0);
+		cacheHits.reset();
+		negativeCacheHits.reset();
+		cacheMisses.reset();
+		refreshes.reset();
+		refreshFailures.reset();
+	}
+
+	/**
+	 * Make the statistics available through the platform MBean server.
+	 */
+	public void register()
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name))
+			{
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+			registeredName = name;
+		}
+		catch (JMException e)
+		{
+			log.warn("Failed to register LDAP statistics: {}", e.toString());
+		}
+	}
+
+	public void unregister()
+	{
+		if (registeredName == null) return;
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+		}
+		catch (JMException e)
+		{
+			log.debug("Failed to unregister LDAP statistics: {}", e.toString());
+		}
+		registeredName = null;
+	}
+}
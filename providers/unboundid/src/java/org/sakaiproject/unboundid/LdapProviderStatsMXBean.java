@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.unboundid;
+
+/**
+ * Management view of the directory searches, user cache and connection pool of the UnboundidDirectoryProvider.
+ */
+public interface LdapProviderStatsMXBean
+{
+	/**
+	 * @return the number of directory searches.
+	 */
+	long getSearches();
+
+	/**
+	 * @return the number of directory searches that failed.
+	 */
+	long getSearchErrors();
+
+	/**
+	 * @return the mean time taken by a directory search, in microseconds.
+	 */
+	long getMeanSearchMicros();
+
+	/**
+	 * @return the longest time taken by a directory search, in microseconds.
+	 */
+	long getMaxSearchMicros();
+
+	/**
+	 * @return the number of eid lookups answered by the cache with an entry.
+	 */
+	long getCacheHits();
+
+	/**
+	 * @return the number of eid lookups answered by the cache with no entry.
+	 */
+	long getNegativeCacheHits();
+
+	/**
+	 * @return the number of eid lookups the cache could not answer.
+	 */
+	long getCacheMisses();
+
+	/**
+	 * @return the number of entries refreshed in the background.
+	 */
+	long getRefreshes();
+
+	/**
+	 * @return the number of background refreshes that failed or could not be queued.
+	 */
+	long getRefreshFailures();
+
+	/**
+	 * @return the number of lookups cached, or 0 if there is no cache.
+	 */
+	int getCacheSize();
+
+	/**
+	 * @return the number of connections available in the pool, or -1 if there is no pool.
+	 */
+	int getAvailableConnections();
+
+	/**
+	 * @return the most connections the pool keeps, or -1 if there is no pool.
+	 */
+	int getMaxAvailableConnections();
+
+	/**
+	 * @return the number of connections checked out of the pool.
+	 */
+	long getSuccessfulCheckouts();
+
+	/**
+	 * @return the number of times no connection could be checked out of the pool.
+	 */
+	long getFailedCheckouts();
+
+	/**
+	 * @return the number of connections to the directory that could not be made.
+	 */
+	long getFailedConnectionAttempts();
+
+	/**
+	 * @return the number of connections closed because they were found to be defunct.
+	 */
+	long getDefunctConnections();
+
+	/**
+	 * Empty the user cache.
+	 */
+	void clearCache();
+
+	/**
+	 * Clear the statistics.
+	 */
+	void reset();
+}
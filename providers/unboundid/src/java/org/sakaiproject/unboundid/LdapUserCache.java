@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.unboundid;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * <p>
+ * A bounded cache of directory lookups by eid, including the lookups that found nothing, so repeated misses for eids
+ * that are not in the directory (guests, typos, sync jobs) do not each search the directory.
+ * </p>
+ * <p>
+ * Found entries expire after their time to live, less up to a tenth at random so entries loaded together do not all
+ * expire together. Once an entry is older than the refresh time it is still returned, and the first caller to see it is
+ * told to refresh it in the background. The least recently used entries are dropped when the cache is full.
+ * </p>
+ */
+public class LdapUserCache
+{
+	/** A cached lookup. */
+	public static class Entry
+	{
+		private final LdapUserData data;
+
+		private final long loaded;
+
+		private final long expires;
+
+		private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+		Entry(LdapUserData data, long loaded, long expires)
+		{
+			this.data = data;
+			this.loaded = loaded;
+			this.expires = expires;
+		}
+
+		/**
+		 * @return the entry found, or null if the directory had no entry for the eid.
+		 */
+		public LdapUserData getData()
+		{
+			return data;
+		}
+
+		/**
+		 * Allow another refresh, after one failed.
+		 */
+		void refreshFailed()
+		{
+			refreshing.set(false);
+		}
+	}
+
+	private final int maxSize;
+
+	private final long ttl;
+
+	private final long refreshAfter;
+
+	private final long negativeTtl;
+
+	/** guarded by itself */
+	private final Map<String, Entry> entries;
+
+	/**
+	 * @param maxSize the most entries to keep.
+	 * @param ttl how long found entries are kept (ms), 0 to not keep them.
+	 * @param refreshAfter how old a found entry is before it is refreshed in the background (ms), 0 to not refresh.
+	 * @param negativeTtl how long lookups that found nothing are kept (ms), 0 to not keep them.
+	 */
+	public LdapUserCache(final int maxSize, long ttl, long refreshAfter, long negativeTtl)
+	{
+		this.maxSize = maxSize;
+		this.ttl = ttl;
+		this.refreshAfter = refreshAfter;
+		this.negativeTtl = negativeTtl;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+			{
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * @param eid the eid looked up.
+	 * @param now the current time (ms).
+	 * @return the cached lookup, or null if there is none or it has expired.
+	 */
+	public Entry get(String eid, long now)
+	{
+		String key = key(eid);
+		synchronized (entries)
+		{
+			Entry entry = entries.get(key);
+			if (entry != null && now >= entry.expires)
+			{
+				entries.remove(key);
+				entry = null;
+			}
+			return entry;
+		}
+	}
+
+	/**
+	 * Check if a cached entry should be refreshed. Only the first caller to ask after it has become due is told to.
+	 * 
+	 * @return true if the caller should refresh the entry.
+	 */
+	public boolean startRefresh(Entry entry, long now)
+	{
+		return entry.data != null && refreshAfter > 0 && now - entry.loaded >= refreshAfter
+				&& entry.refreshing.compareAndSet(false, true);
+	}
+
+	/**
+	 * Cache a lookup.
+	 * 
+	 * @param eid the eid looked up.
+	 * @param data the entry found, or null if there was none.
+	 * @param now the current time (ms).
+	 */
+	public void put(String eid, LdapUserData data, long now)
+	{
+		long keep = (data == null) ? negativeTtl : ttl;
+		if (keep <= 0 || eid == null) return;
+		if (data != null)
+		{
+			keep -= ThreadLocalRandom.current().nextLong(keep / 10 + 1);
+		}
+		Entry entry = new Entry(data, now, now + keep);
+		synchronized (entries)
+		{
+			entries.put(key(eid), entry);
+		}
+	}
+
+	public void remove(String eid)
+	{
+		synchronized (entries)
+		{
+			entries.remove(key(eid));
+		}
+	}
+
+	public void clear()
+	{
+		synchronized (entries)
+		{
+			entries.clear();
+		}
+	}
+
+	public int size()
+	{
+		synchronized (entries)
+		{
+			return entries.size();
+		}
+	}
+
+	public int getMaxSize()
+	{
+		return maxSize;
+	}
+
+	private String key(String eid)
+	{
+		// directory matching of eids ignores case
+		return StringUtils.lowerCase(eid);
+	}
+}
@@ -28,6 +28,15 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.security.GeneralSecurityException;
 import javax.net.ssl.SSLSocketFactory;
 
@@ -108,6 +117,12 @@ public class UnboundidDirectoryProvider implements UserDirectoryProvider, LdapCo
 
 	/** Default LDAP maximum number of objects to query for */
 	public static final int DEFAULT_BATCH_SIZE = 200;
+
+	/** Default number of batches searched at once when loading multiple users */
+	public static final int DEFAULT_BATCH_THREADS = 1;
+
+	/** Default most eid lookups kept in the user cache */
+	public static final int DEFAULT_USER_CACHE_SIZE = 10000;
 	
 	/** Property of the user object to store the display ID under */
 	public static final String DISPLAY_ID_PROPERTY = UnboundidDirectoryProvider.class+"-displayId";
@@ -159,6 +174,33 @@ public class UnboundidDirectoryProvider implements UserDirectoryProvider, LdapCo
 	/** The size of each batch to load from LDAP when loading multiple users. */
 	private int batchSize = DEFAULT_BATCH_SIZE;
 
+	/** The number of batches searched at once when loading multiple users. */
+	private int batchThreads = DEFAULT_BATCH_THREADS;
+
+	/** Searches the batches of a multiple user load, when more than one is searched at once. */
+	private ExecutorService batchExecutor;
+
+	/** The most eid lookups kept in the user cache. */
+	@Getter @Setter private int userCacheSize = DEFAULT_USER_CACHE_SIZE;
+
+	/** How long found users are cached (seconds), 0 to not cache them. */
+	@Getter @Setter private int userCacheTtl = 0;
+
+	/** How old a cached user is before it is refreshed in the background (seconds), 0 to not refresh. */
+	@Getter @Setter private int userCacheRefresh = 0;
+
+	/** How long eids that are not in the directory are cached (seconds), 0 to not cache them. */
+	@Getter @Setter private int negativeCacheTtl = 0;
+
+	/** Eid lookups, null unless one of the cache times is set. */
+	private LdapUserCache userCache;
+
+	/** Refreshes cached users in the background. */
+	private ThreadPoolExecutor refreshExecutor;
+
+	/** Search, cache and connection pool statistics. */
+	private final LdapProviderStats stats = new LdapProviderStats();
+
 	/** LDAP referral following behavior. Defaults to {@link #DEFAULT_IS_FOLLOW_REFERRALS} */
 	private boolean followReferrals = DEFAULT_IS_FOLLOW_REFERRALS;
 
@@ -269,6 +311,46 @@ public class UnboundidDirectoryProvider implements UserDirectoryProvider, LdapCo
 
 		createConnectionPool();
 		initLdapAttributeMapper();
+		initBatchExecutor();
+		initUserCache();
+		stats.register();
+	}
+
+	/**
+	 * Create the user cache and the thread that refreshes it, if they are configured.
+	 */
+	protected void initUserCache() {
+		if (userCache == null && (userCacheTtl > 0 || negativeCacheTtl > 0)) {
+			log.info("Caching up to {} users for {}s, refreshing after {}s, and eids not found for {}s",
+					userCacheSize, userCacheTtl, userCacheRefresh, negativeCacheTtl);
+			userCache = new LdapUserCache(userCacheSize, TimeUnit.SECONDS.toMillis(userCacheTtl),
+					TimeUnit.SECONDS.toMillis(userCacheRefresh), TimeUnit.SECONDS.toMillis(negativeCacheTtl));
+			stats.setUserCache(userCache);
+		}
+		if (refreshExecutor == null && userCache != null && userCacheTtl > 0 && userCacheRefresh > 0) {
+			// one thread, and a short queue so a slow directory can't build up a backlog of refreshes
+			refreshExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(100), r -> {
+				Thread thread = new Thread(r, "Sakai.Unboundid.refresh");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * Create the pool that searches batches at once, keeping a connection free for other lookups.
+	 */
+	protected void initBatchExecutor() {
+		int threads = Math.min(batchThreads, poolMaxConns - 1);
+		if (threads > 1 && batchExecutor == null) {
+			log.info("Searching up to {} batches of {} users at once", threads, batchSize);
+			final AtomicInteger count = new AtomicInteger();
+			batchExecutor = Executors.newFixedThreadPool(threads, r -> {
+				Thread thread = new Thread(r, "Sakai.Unboundid.getUsers-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
 	}
 
         /**
@@ -309,6 +391,7 @@ public class UnboundidDirectoryProvider implements UserDirectoryProvider, LdapCo
                     log.info("Creating LDAP connection pool of size {}", poolMaxConns);
                     connectionPool = new LDAPConnectionPool(serverSet, bindRequest, poolMaxConns);
                     connectionPool.setRetryFailedOperationsDueToInvalidConnections(retryFailedOperationsDueToInvalidConnections);
+                    stats.setConnectionPool(connectionPool);
                } catch (com.unboundid.ldap.sdk.LDAPException e) {
                    log.error("Could not init LDAP pool", e);
                    return false;
@@ -359,6 +442,15 @@ public class UnboundidDirectoryProvider implements UserDirectoryProvider, LdapCo
 	 */
 	public void destroy() {
 		log.debug("destroy()");
+		if (batchExecutor != null) {
+			batchExecutor.shutdownNow();
+			batchExecutor = null;
+		}
+		if (refreshExecutor != null) {
+			refreshExecutor.shutdownNow();
+			refreshExecutor = null;
+		}
+		stats.unregister();
 	}
 
 	/**
@@ -594,61 +686,76 @@ public class UnboundidDirectoryProvider implements UserDirectoryProvider, LdapCo
 	 * with a directory error. Empties <code>users</code> and 
 	 * returns if a retry exits exceptionally
 	 * <p>
+	 * 
+	 * <p>Users in the user cache are not searched for. The rest are
+	 * searched for in batches of at most {@link #getBatchSize()}. If
+	 * {@link #getBatchThreads()} is more than one the batches are
+	 * searched at once on a bounded pool.</p>
 	 */
 	public void getUsers(Collection<UserEdit> users)
 	{
 		log.debug("getUsers(): [Collection size = {}]", users.size());
 
 		boolean abortiveSearch = false;
-		int maxQuerySize = getMaxObjectsToQueryFor();
-		UserEdit userEdit = null;
-		
-		HashMap<String, UserEdit> usersToSearchInLDAP = new HashMap<String, UserEdit>();
+		final int maxQuerySize = getMaxObjectsToQueryFor();
+
+		// We need to make sure each query isn't larger than maxQuerySize
+		List<Map<String, UserEdit>> batches = new ArrayList<Map<String, UserEdit>>();
+		Map<String, UserEdit> usersToSearchInLDAP = new HashMap<String, UserEdit>();
+		for ( Iterator<UserEdit> userEdits = users.iterator(); userEdits.hasNext(); ) {
+			UserEdit userEdit = userEdits.next();
+			String eid = userEdit.getEid();
+
+			if ( !(isSearchableEid(eid)) ) {
+				userEdits.remove();
+				continue;
+			}
+
+			LdapUserCache.Entry cached = getCachedUser(eid);
+			if (cached == null) {
+				usersToSearchInLDAP.put(eid, userEdit);
+				if (usersToSearchInLDAP.size() == maxQuerySize) {
+					batches.add(usersToSearchInLDAP);
+					usersToSearchInLDAP = new HashMap<String, UserEdit>();
+				}
+			} else if (cached.getData() == null) {
+				userEdits.remove();
+			} else {
+				mapUserDataOntoUserEdit(cached.getData(), userEdit);
+			}
+		}
+		if (!usersToSearchInLDAP.isEmpty()) {
+			batches.add(usersToSearchInLDAP);
+		}
+
 		List<UserEdit> usersToRemove = new ArrayList<UserEdit>();
 		try {
-			int cnt = 0;
-			for ( Iterator<UserEdit> userEdits = users.iterator(); userEdits.hasNext(); ) {
-				userEdit = (UserEdit) userEdits.next();
-				String eid = userEdit.getEid();
-				
-				if ( !(isSearchableEid(eid)) ) {
-					userEdits.remove();
-					//proceed ahead with this (perhaps the final) iteration
-					//usersToSearchInLDAP needs to be processed unless empty
-				} else {
-						usersToSearchInLDAP.put(eid, userEdit);
-						cnt++;
+			ExecutorService executor = batchExecutor;
+			if (executor == null || batches.size() < 2) {
+				for (Map<String, UserEdit> batch : batches) {
+					usersToRemove.addAll(searchBatch(batch, maxQuerySize));
 				}
-				
-				// We need to make sure this query isn't larger than maxQuerySize
-				if ((!userEdits.hasNext() || cnt == maxQuerySize) && !usersToSearchInLDAP.isEmpty()) {
-					String filter = ldapAttributeMapper.getManyUsersInOneSearch(usersToSearchInLDAP.keySet());
-					List<LdapUserData> ldapUsers = searchDirectory(filter, null, null, null, maxQuerySize);
-				
-					for (LdapUserData ldapUserData : ldapUsers) {
-						String ldapEid = ldapUserData.getEid();
-
-						if (StringUtils.isEmpty(ldapEid)) {
-							continue;
-						}
-							ldapEid = ldapEid.toLowerCase();
-
-						UserEdit ue = usersToSearchInLDAP.get(ldapEid);
-						mapUserDataOntoUserEdit(ldapUserData, ue);
-						usersToSearchInLDAP.remove(ldapEid);
+			} else {
+				List<Future<List<UserEdit>>> searches = new ArrayList<Future<List<UserEdit>>>(batches.size());
+				for (final Map<String, UserEdit> batch : batches) {
+					searches.add(executor.submit(() -> searchBatch(batch, maxQuerySize)));
+				}
+				try {
+					for (Future<List<UserEdit>> search : searches) {
+						usersToRemove.addAll(search.get());
 					}
-					
-					// see if there are any users that we could not find in the LDAP query
-					for (Map.Entry<String, UserEdit> entry : usersToSearchInLDAP.entrySet()) {
-						usersToRemove.add(entry.getValue());
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof LDAPException) {
+						throw (LDAPException) e.getCause();
+					}
+					throw new RuntimeException(e.getCause());
+				} finally {
+					for (Future<List<UserEdit>> search : searches) {
+						search.cancel(true);
 					}
-					
-					// clear the HashMap and reset the counter
-					usersToSearchInLDAP.clear();
-					cnt = 0;
 				}
 			}
-			
+
 			// Finally clean up the original collection and remove and users we could not find
 			for (UserEdit userRemove : usersToRemove) {
 				log.debug("Unboundid getUsers could not find user: {}", userRemove.getEid());
@@ -657,14 +764,14 @@ public class UnboundidDirectoryProvider implements UserDirectoryProvider, LdapCo
 			
 		} catch (LDAPException e)	{
 			abortiveSearch = true;
-			throw new RuntimeException("getUsers(): LDAPException during search [eid = " + 
-					(userEdit == null ? null : userEdit.getEid()) + 
+			throw new RuntimeException("getUsers(): LDAPException during search [users = " + 
+					users.size() + 
 					"][result code = " + e.errorCodeToString() + 
 					"][error message = " + e.getLDAPErrorMessage() + "]", e);
 		} catch ( Exception e ) {
 			abortiveSearch = true;
-			throw new RuntimeException("getUsers(): RuntimeException during search eid = " + 
-					(userEdit == null ? null : userEdit.getEid()) + 
+			throw new RuntimeException("getUsers(): RuntimeException during search [users = " + 
+					users.size() + 
 					"]", e);
 		} finally {
 			// no sense in returning a partially complete search result
@@ -676,6 +783,100 @@ public class UnboundidDirectoryProvider implements UserDirectoryProvider, LdapCo
 
 	}
 
+	/**
+	 * Search for one batch of users in a single query, filling in
+	 * those found.
+	 * 
+	 * @param usersToSearchInLDAP the users to search for, keyed by eid
+	 * @param maxQuerySize the most results to read
+	 * @return the users that could not be found
+	 * @throws LDAPException if the search fails
+	 */
+	protected List<UserEdit> searchBatch(Map<String, UserEdit> usersToSearchInLDAP, int maxQuerySize) throws LDAPException {
+		// the directory matches eids ignoring case, so the users are matched, and cached, by the lowercased eid
+		Map<String, List<UserEdit>> notFound = new HashMap<String, List<UserEdit>>();
+		for (Map.Entry<String, UserEdit> entry : usersToSearchInLDAP.entrySet()) {
+			notFound.computeIfAbsent(entry.getKey().toLowerCase(), k -> new ArrayList<UserEdit>()).add(entry.getValue());
+		}
+		String filter = ldapAttributeMapper.getManyUsersInOneSearch(usersToSearchInLDAP.keySet());
+		List<LdapUserData> ldapUsers = searchDirectory(filter, null, null, null, maxQuerySize);
+
+		for (LdapUserData ldapUserData : ldapUsers) {
+			String ldapEid = ldapUserData.getEid();
+
+			if (StringUtils.isEmpty(ldapEid)) {
+				continue;
+			}
+			ldapEid = ldapEid.toLowerCase();
+
+			List<UserEdit> found = notFound.remove(ldapEid);
+			if (found != null) {
+				for (UserEdit ue : found) {
+					mapUserDataOntoUserEdit(ldapUserData, ue);
+				}
+				cacheUser(ldapEid, ldapUserData);
+			}
+		}
+
+		// the users that we could not find in the LDAP query
+		List<UserEdit> rv = new ArrayList<UserEdit>();
+		for (Map.Entry<String, List<UserEdit>> entry : notFound.entrySet()) {
+			cacheUser(entry.getKey(), null);
+			rv.addAll(entry.getValue());
+		}
+		return rv;
+	}
+
+	/**
+	 * Look up an eid in the user cache, starting a background refresh
+	 * of the entry if it is due one.
+	 * 
+	 * @param eid the user EID
+	 * @return the cached lookup, or <code>null</code> if there is
+	 *   none or no cache
+	 */
+	protected LdapUserCache.Entry getCachedUser(final String eid) {
+		final LdapUserCache cache = userCache;
+		if (cache == null || eid == null) {
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		final LdapUserCache.Entry entry = cache.get(eid, now);
+		stats.cacheLookup(entry);
+		if (entry != null && refreshExecutor != null && cache.startRefresh(entry, now)) {
+			try {
+				refreshExecutor.execute(() -> {
+					try {
+						cacheUser(eid, searchUserByEid(eid));
+						stats.refreshed(false);
+					} catch (Exception e) {
+						log.debug("Failed to refresh cached user [eid = {}]: {}", eid, e.toString());
+						entry.refreshFailed();
+						stats.refreshed(true);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				entry.refreshFailed();
+				stats.refreshed(true);
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Keep the result of looking up an eid in the user cache, if there is one.
+	 * 
+	 * @param eid the user EID
+	 * @param userData the entry found, or <code>null</code> if the
+	 *   directory has no entry for the EID
+	 */
+	protected void cacheUser(String eid, LdapUserData userData) {
+		LdapUserCache cache = userCache;
+		if (cache != null) {
+			cache.put(eid, userData, System.currentTimeMillis());
+		}
+	}
+
 	/**
 	 * By default returns the global boolean setting configured
 	 * via {@link #setAuthenticateWithProviderFirst(boolean)}.
@@ -755,12 +956,38 @@ public class UnboundidDirectoryProvider implements UserDirectoryProvider, LdapCo
 		}
 
 		log.debug("getUserByEid(): [eid = {}]", eid);
-		String filter = ldapAttributeMapper.getFindUserByEidFilter(eid);
 
-		// takes care of caching and everything
+		LdapUserCache.Entry cached = getCachedUser(eid);
+		if (cached != null) {
+			return cached.getData();
+		}
+
+		LdapUserData userData = searchUserByEid(eid);
+		cacheUser(eid, userData);
+		return userData;
+
+	}
+
+	/**
+	 * Searches the directory for a user by <code>eid</code>,
+	 * without consulting the user cache.
+	 * 
+	 * @param eid the Sakai EID to search on
+	 * @return object representing the found LDAP entry, or null if no results
+	 * @throws LDAPException if the search returns with a directory access error
+	 */
+	protected LdapUserData searchUserByEid(String eid) 
+	throws LDAPException {
+		String filter = ldapAttributeMapper.getFindUserByEidFilter(eid);
 		return (LdapUserData)searchDirectoryForSingleEntry(filter, 
 				null, null, null);
+	}
 
+	/**
+	 * @return the search, cache and connection pool statistics
+	 */
+	public LdapProviderStats getStats() {
+		return stats;
 	}
 
 	/**
@@ -899,6 +1126,7 @@ public class UnboundidDirectoryProvider implements UserDirectoryProvider, LdapCo
 			log.debug("searchDirectory(): [baseDN = {}][filter = {}][return attribs = {}][max results = {}][search scope = {}]",
 				searchBaseDn, filter, Arrays.toString(scrubbedPhysicalAttributeNames), maxResults, searchScope);
 			long start = System.currentTimeMillis();
+			long searchStart = System.nanoTime();
 			
 			SearchResult searchResult = null;
 
@@ -922,6 +1150,8 @@ public class UnboundidDirectoryProvider implements UserDirectoryProvider, LdapCo
                             } else {
                                 throw e;
                             }
+                        } finally {
+                            stats.search(System.nanoTime() - searchStart, searchResult == null);
                         }
 
 			List<SearchResultEntry> searchResults = searchResult.getSearchEntries();
@@ -1248,6 +1478,20 @@ public class UnboundidDirectoryProvider implements UserDirectoryProvider, LdapCo
 		this.batchSize = batchSize;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getBatchThreads() {
+		return batchThreads;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void setBatchThreads(int batchThreads) {
+		this.batchThreads = batchThreads;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
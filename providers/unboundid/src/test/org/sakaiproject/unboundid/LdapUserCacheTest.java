@@ -0,0 +1,68 @@
+package org.sakaiproject.unboundid;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LdapUserCacheTest {
+
+    private LdapUserData user(String eid) {
+        LdapUserData data = new LdapUserData();
+        data.setEid(eid);
+        return data;
+    }
+
+    @Test
+    public void testFoundEntriesExpire() {
+        LdapUserCache cache = new LdapUserCache(10, 1000, 0, 0);
+        cache.put("Jdoe", user("jdoe"), 0);
+        assertEquals("jdoe", cache.get("jdoe", 100).getData().getEid());
+        // expiry is spread over the last tenth of the time to live
+        assertNotNull(cache.get("jdoe", 899));
+        assertNull(cache.get("jdoe", 1000));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testNegativeEntries() {
+        LdapUserCache cache = new LdapUserCache(10, 0, 0, 500);
+        cache.put("nobody", null, 0);
+        LdapUserCache.Entry entry = cache.get("nobody", 100);
+        assertNotNull(entry);
+        assertNull(entry.getData());
+        assertNull(cache.get("nobody", 500));
+
+        // found entries are not kept without a time to live
+        cache.put("jdoe", user("jdoe"), 0);
+        assertNull(cache.get("jdoe", 1));
+    }
+
+    @Test
+    public void testRefreshIsStartedOnce() {
+        LdapUserCache cache = new LdapUserCache(10, 10000, 1000, 0);
+        cache.put("jdoe", user("jdoe"), 0);
+        LdapUserCache.Entry entry = cache.get("jdoe", 500);
+        assertFalse(cache.startRefresh(entry, 500));
+        assertTrue(cache.startRefresh(entry, 1000));
+        assertFalse(cache.startRefresh(entry, 1001));
+        entry.refreshFailed();
+        assertTrue(cache.startRefresh(entry, 1002));
+
+        // a refreshed entry starts again
+        cache.put("jdoe", user("jdoe"), 1003);
+        assertFalse(cache.startRefresh(cache.get("jdoe", 1004), 1004));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedAreDropped() {
+        LdapUserCache cache = new LdapUserCache(2, 10000, 0, 10000);
+        cache.put("a", user("a"), 0);
+        cache.put("b", null, 0);
+        cache.get("a", 1);
+        cache.put("c", user("c"), 2);
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("a", 3));
+        assertNull(cache.get("b", 3));
+        assertNotNull(cache.get("c", 3));
+    }
+}
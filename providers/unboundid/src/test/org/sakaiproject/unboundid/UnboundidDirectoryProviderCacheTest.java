@@ -0,0 +1,124 @@
+package org.sakaiproject.unboundid;
+
+import com.unboundid.ldap.sdk.AddRequest;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.zapodot.junit.ldap.EmbeddedLdapRule;
+import org.sakaiproject.user.api.UserEdit;
+import org.zapodot.junit.ldap.EmbeddedLdapRuleBuilder;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class UnboundidDirectoryProviderCacheTest {
+
+    public static final String DOMAIN_DSN = "dc=sakaiproject,dc=org";
+    @Rule
+    public EmbeddedLdapRule embeddedLdapRule = EmbeddedLdapRuleBuilder
+            .newInstance()
+            .usingDomainDsn(DOMAIN_DSN)
+            .importingLdifs("example.ldif")
+            .build();
+
+    private UnboundidDirectoryProvider provider;
+
+    @Before
+    public void setUp() throws Exception {
+        addPerson("cachetest");
+
+        provider = new UnboundidDirectoryProvider();
+        provider.setLdapHost(new String[] { "localhost" });
+        provider.setLdapPort(new int[] { embeddedLdapRule.embeddedServerPort() });
+        provider.setLdapUser("");
+        provider.setLdapPassword("");
+        provider.setBasePath(DOMAIN_DSN);
+        provider.setUserCacheTtl(600);
+        provider.setNegativeCacheTtl(60);
+        provider.init();
+    }
+
+    @After
+    public void tearDown() {
+        provider.destroy();
+    }
+
+    private void addPerson(String cn) throws Exception {
+        LDAPConnection ldapConnection = embeddedLdapRule.unsharedLdapConnection();
+        try {
+            ldapConnection.add(new AddRequest("cn=" + cn + ",ou=people," + DOMAIN_DSN, Arrays.asList(
+                    new Attribute("objectclass", "top", "person", "organizationalPerson", "inetOrgPerson"),
+                    new Attribute("cn", cn), new Attribute("sn", "Person"), new Attribute("uid", cn))));
+        } finally {
+            ldapConnection.close();
+        }
+    }
+
+    @Test
+    public void testFoundUserIsCached() throws Exception {
+        LdapUserData user = provider.getUserByEid("cachetest");
+        assertNotNull(user);
+        assertEquals(1, provider.getStats().getSearches());
+
+        assertSame(user, provider.getUserByEid("CacheTest"));
+        assertEquals(1, provider.getStats().getSearches());
+        assertEquals(1, provider.getStats().getCacheHits());
+    }
+
+    @Test
+    public void testMissingUserIsCached() throws Exception {
+        assertNull(provider.getUserByEid("nosuchuser"));
+        assertNull(provider.getUserByEid("nosuchuser"));
+        assertEquals(1, provider.getStats().getSearches());
+        assertEquals(1, provider.getStats().getNegativeCacheHits());
+
+        // until the cache is cleared, a user added to the directory is not seen
+        addPerson("nosuchuser");
+        assertNull(provider.getUserByEid("nosuchuser"));
+        provider.getStats().clearCache();
+        assertNotNull(provider.getUserByEid("nosuchuser"));
+    }
+
+    @Test
+    public void testMixedCaseBatchUserIsNotNegativelyCached() throws Exception {
+        Mockery context = new Mockery();
+        final UserEdit found = context.mock(UserEdit.class, "found");
+        final UserEdit missing = context.mock(UserEdit.class, "missing");
+        context.checking(new Expectations() {{
+            allowing(found).getEid(); will(returnValue("CacheTest"));
+            ignoring(found);
+            allowing(missing).getEid(); will(returnValue("NoSuchUser"));
+        }});
+
+        Map<String, UserEdit> batch = new HashMap<>();
+        batch.put("CacheTest", found);
+        batch.put("NoSuchUser", missing);
+        List<UserEdit> notFound = provider.searchBatch(batch, 10);
+        assertEquals(Collections.singletonList(missing), notFound);
+        assertEquals(1, provider.getStats().getSearches());
+
+        // both are cached under the lowercased eid, the one found as found
+        assertNotNull(provider.getUserByEid("cachetest"));
+        assertNull(provider.getUserByEid("nosuchuser"));
+        assertEquals(1, provider.getStats().getSearches());
+        assertEquals(1, provider.getStats().getNegativeCacheHits());
+    }
+
+    @Test
+    public void testConnectionPoolStatistics() throws Exception {
+        provider.getUserByEid("cachetest");
+        assertTrue(provider.getStats().getSuccessfulCheckouts() > 0);
+        assertTrue(provider.getStats().getMaxAvailableConnections() > 0);
+        assertEquals(0, provider.getStats().getSearchErrors());
+    }
+}
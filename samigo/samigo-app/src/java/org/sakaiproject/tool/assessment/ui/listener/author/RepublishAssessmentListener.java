@@ -154,15 +154,9 @@ public class RepublishAssessmentListener implements ActionListener {
 					}
 					currentAgent = adata.getAgentId();
 				}
-				service.storeGrades(adata, true, publishedAssessment, publishedItemHash, publishedItemTextHash, publishedAnswerHash, true);
-			}
-		}
-		else {
-			while (iter.hasNext()) {
-				AssessmentGradingData adata = (AssessmentGradingData) iter.next();
-				service.storeGrades(adata, true, publishedAssessment, publishedItemHash, publishedItemTextHash, publishedAnswerHash, true);
 			}
 		}
+		service.regradeAssessmentGradings(list, publishedAssessment, publishedItemHash, publishedItemTextHash, publishedAnswerHash);
 	}
 
 	private void updateGB(PublishedAssessmentFacade assessment) {
@@ -251,7 +251,19 @@ public class AssessmentGradingFacadeQueries extends HibernateDaoSupport implemen
         };
         List<AssessmentGradingData> list = getHibernateTemplate().execute(hcb);
 
-        list.forEach(agd -> agd.setItemGradingSet(getItemGradingSet(agd.getAssessmentGradingId())));
+        // load the item gradings of every submission in one query rather than one query per submission
+        final HibernateCallback<List<ItemGradingData>> itemHcb = session -> {
+            Query q = session.createQuery(
+                    "select i from ItemGradingData i, AssessmentGradingData a where i.assessmentGradingId = a.assessmentGradingId and a.publishedAssessmentId = :id and a.status <> :status");
+            q.setLong("id", publishedId);
+            q.setInteger("status", AssessmentGradingData.NO_SUBMISSION);
+            return q.list();
+        };
+        Map<Long, Set<ItemGradingData>> itemGradings = new HashMap<>();
+        getHibernateTemplate().execute(itemHcb)
+                .forEach(i -> itemGradings.computeIfAbsent(i.getAssessmentGradingId(), k -> new HashSet<>()).add(i));
+
+        list.forEach(agd -> agd.setItemGradingSet(itemGradings.computeIfAbsent(agd.getAssessmentGradingId(), k -> new HashSet<>())));
 
         return list;
     }
@@ -1482,6 +1494,45 @@ public class AssessmentGradingFacadeQueries extends HibernateDaoSupport implemen
         }
     }
 
+    public void saveOrUpdateAllAssessmentGradings(Collection<AssessmentGradingData> c) {
+        int retryCount = persistenceHelper.getRetryCount();
+
+        // as in GradingService.storeGrades() the item gradings are merged on their own and the submission is
+        // merged with an empty set, the set is cleared once up front so a retry still has the item gradings
+        List<ItemGradingData> itemGradings = new ArrayList<>();
+        c.removeAll(Collections.singleton(null));
+        for (AssessmentGradingData data : c) {
+            if (data.getItemGradingSet() != null) {
+                itemGradings.addAll(data.getItemGradingSet());
+            }
+            data.setItemGradingSet(new HashSet<>());
+        }
+        itemGradings.removeAll(Collections.singleton(null));
+
+        while (retryCount > 0) {
+            try {
+                getHibernateTemplate().execute(session -> {
+                    for (ItemGradingData itemGradingData : itemGradings) {
+                        session.merge(itemGradingData);
+                    }
+                    for (AssessmentGradingData data : c) {
+                        if (data.getAssessmentGradingId() != null) {
+                            session.merge(data);
+                        } else {
+                            session.save(data);
+                        }
+                    }
+                    session.flush();
+                    return null;
+                });
+                retryCount = 0;
+            } catch (Exception e) {
+                log.warn("problem inserting/updating assessmentGradings: {}", e.getMessage());
+                retryCount = persistenceHelper.retryDeadlock(e, retryCount);
+            }
+        }
+    }
+
     public PublishedAssessmentIfc getPublishedAssessmentByAssessmentGradingId(final Long assessmentGradingId) {
 
         final HibernateCallback<List<PublishedAssessmentData>> hcb = session -> {
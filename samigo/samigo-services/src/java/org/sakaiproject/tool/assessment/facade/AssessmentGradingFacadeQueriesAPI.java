@@ -205,6 +205,12 @@ public interface AssessmentGradingFacadeQueriesAPI
 
   public void saveOrUpdateAll(Collection<ItemGradingData> c);
 
+  /**
+   * Saves the submissions together with their item gradings in one session, so a batch of regraded
+   * submissions is written in one flush rather than one submission at a time.
+   */
+  public void saveOrUpdateAllAssessmentGradings(Collection<AssessmentGradingData> c);
+
   public PublishedAssessmentIfc getPublishedAssessmentByAssessmentGradingId(Long assessmentGradingId);
 
   public PublishedAssessmentIfc getPublishedAssessmentByPublishedItemId(Long publishedItemId);
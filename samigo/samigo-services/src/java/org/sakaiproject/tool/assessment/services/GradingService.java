@@ -45,6 +45,11 @@ import java.util.Random;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -55,6 +60,7 @@ import org.apache.commons.math3.complex.ComplexFormat;
 import org.apache.commons.math3.exception.MathParseException;
 import org.apache.commons.math3.util.Precision;
 
+import org.sakaiproject.component.cover.ServerConfigurationService;
 import org.sakaiproject.event.cover.EventTrackingService;
 import org.sakaiproject.samigo.util.SamigoConstants;
 import org.sakaiproject.service.gradebook.shared.GradebookExternalAssessmentService;
@@ -88,6 +94,7 @@ import org.sakaiproject.tool.assessment.integration.helper.ifc.GradebookServiceH
 import org.sakaiproject.tool.assessment.services.assessment.EventLogService;
 import org.sakaiproject.tool.assessment.services.assessment.PublishedAssessmentService;
 import org.sakaiproject.tool.assessment.util.ExtendedTimeDeliveryService;
+import org.sakaiproject.tool.assessment.util.SamigoCompiledExpression;
 import org.sakaiproject.tool.assessment.util.SamigoExpressionError;
 import org.sakaiproject.tool.assessment.util.SamigoExpressionParser;
 
@@ -1218,8 +1225,8 @@ public class GradingService
       
 
       // save#2: now, we need to get the full set so we can calculate the total score accumulate for the
-      // whole assessment.
-      Set fullItemGradingSet = getItemGradingSet(data.getAssessmentGradingId().toString());
+      // whole assessment. A regrade that is not persisted already holds the full set, see regradeAssessmentGradings().
+      Set fullItemGradingSet = (regrade && !persistToDB) ? itemGradingSet : getItemGradingSet(data.getAssessmentGradingId().toString());
       double totalAutoScore = getTotalAutoScore(fullItemGradingSet);
       data.setTotalAutoScore(totalAutoScore);
      
@@ -1262,6 +1269,71 @@ public class GradingService
     }
   }
 
+  /**
+   * Regrades every submission to a republished assessment. The published item, item text and answer maps are
+   * prepared once by the caller and shared by all the submissions, which are scored in parallel on at most
+   * samigo.regrade.threads threads and then saved samigo.regrade.batchSize at a time. Each submission must hold
+   * its full itemGradingSet, as returned by getAllAssessmentGradingData().
+   */
+  public void regradeAssessmentGradings(List<AssessmentGradingData> gradings, PublishedAssessmentIfc pub,
+                                        Map publishedItemHash, Map publishedItemTextHash, Map publishedAnswerHash) {
+    int threads = Math.max(1, ServerConfigurationService.getInt("samigo.regrade.threads",
+            Math.min(4, Runtime.getRuntime().availableProcessors())));
+    int batchSize = Math.max(1, ServerConfigurationService.getInt("samigo.regrade.batchSize", 100));
+    log.info("Regrading {} submissions to published assessment {}", gradings.size(), pub.getPublishedAssessmentId());
+    regradeAssessmentGradings(gradings, threads, batchSize,
+            data -> storeGrades(data, true, pub, publishedItemHash, publishedItemTextHash, publishedAnswerHash, false, null, null),
+            batch -> PersistenceService.getInstance().getAssessmentGradingFacadeQueries().saveOrUpdateAllAssessmentGradings(batch));
+  }
+
+  /**
+   * Scores the submissions with regrade on at most the given number of threads, handing each batch of them to save
+   * once it is scored.
+   */
+  void regradeAssessmentGradings(List<AssessmentGradingData> gradings, int threads, int batchSize,
+                                 Consumer<AssessmentGradingData> regrade, Consumer<List<AssessmentGradingData>> save) {
+    int total = gradings.size();
+
+    ExecutorService executor = threads > 1 && total > 1 ? Executors.newFixedThreadPool(Math.min(threads, total)) : null;
+    try {
+      for (int start = 0; start < total; start += batchSize) {
+        List<AssessmentGradingData> batch = new ArrayList<>(gradings.subList(start, Math.min(start + batchSize, total)));
+        if (executor == null) {
+          for (AssessmentGradingData data : batch) {
+            regrade.accept(data);
+          }
+        } else {
+          List<Future<Object>> results = new ArrayList<>(batch.size());
+          for (AssessmentGradingData data : batch) {
+            results.add(executor.submit(() -> {
+              regrade.accept(data);
+              return null;
+            }));
+          }
+          for (Future<Object> result : results) {
+            try {
+              result.get();
+            } catch (ExecutionException e) {
+              if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+              }
+              throw new RuntimeException(e.getCause());
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              throw new RuntimeException(e);
+            }
+          }
+        }
+        save.accept(batch);
+        log.info("Regraded {} of {} submissions", start + batch.size(), total);
+      }
+    } finally {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+    }
+  }
+
   private double getTotalAutoScore(Set itemGradingSet){
     BigDecimal totalAutoScore = BigDecimal.ZERO;
     for(ItemGradingData itemGradingData : (Set<ItemGradingData>) itemGradingSet){
@@ -2954,8 +3026,7 @@ Here are the definition and 12 cases I came up with (lydia, 01/2006):
           String answerData = getAnswerData(longFormula); // returns just tolerance and precision
           int decimalPlaces = getAnswerDecimalPlaces(answerData);
           
-          String substitutedFormula = replaceMappedVariablesWithNumbers(formula,variables);
-          String formulaValue = processFormulaIntoValue(substitutedFormula, decimalPlaces);
+          String formulaValue = processFormulaIntoValue(formula, variables, decimalPlaces);
           values.put(i + 1, formulaValue + answerData); // later answerData will be used for scoring
       }
       return values;
@@ -2990,11 +3061,10 @@ Here are the definition and 12 cases I came up with (lydia, 01/2006):
               Map<Integer, String> evaluatedFormulas = calculateFormulaValues(variablesWithValues, item);
               answerList.putAll(evaluatedFormulas);
               // replace the variables in the text with values
-              String instructions = item.getInstruction();
-              instructions = replaceMappedVariablesWithNumbers(instructions, variablesWithValues);
+              String instructions = replaceMappedVariablesWithNumbers(item.getInstruction(), variablesWithValues);
               // then replace the calculations with values (must happen AFTER the variable replacement)
               try {
-                  instructions = replaceCalculationsWithValues(instructions, 5); // what decimal precision should we use here?
+                  instructions = replaceCalculationsWithValues(item.getInstruction(), instructions, variablesWithValues, 5); // what decimal precision should we use here?
                   // if could not process the calculation into a result then throws IllegalStateException which will be caught below and cause the numbers to regenerate
               } catch (SamigoExpressionError e1) {
                   log.warn("Samigo calculated item ("+item.getItemId()+") calculation invalid: "+e1.get());
@@ -3085,7 +3155,7 @@ Here are the definition and 12 cases I came up with (lydia, 01/2006):
    * SAK-39922 - Support (or at least watch for support) for binary/unary calculated question (-1--1)
    * SAK-40942 - Error in calculated questions: the decimal representation .n or n. (where n is a number) does not work
    */
-   private static String checkExpression(String expression) {
+   public static String checkExpression(String expression) {
 	   expression = CALCQ_ANSWER_AVOID_DOUBLE_MINUS.matcher(expression).replaceAll("+");
 	   expression = CALCQ_ANSWER_AVOID_PLUS_MINUS.matcher(expression).replaceAll("-");
 	   expression = CALCQ_FORMULA_ALLOW_POINT_NUMBER.matcher(expression).replaceAll("$10$2$3");
@@ -3185,6 +3255,82 @@ Here are the definition and 12 cases I came up with (lydia, 01/2006):
       return expression;
   }
 
+  /**
+   * CALCULATED_QUESTION
+   * As replaceCalculationsWithValues(String, int), but each calculation is evaluated from its text in the
+   * instructions before the variables were replaced, against the values they were replaced with, so the
+   * compiled form of the calculation is used.
+   * @param instructions the instructions with their variables
+   * @param substitutedInstructions the instructions with the values replacing their variables
+   * @param variables the variable values
+   * @return the substituted instructions with calculations replaced with number values
+   * @throws IllegalStateException if the formula value cannot be calculated
+   * @throws SamigoExpressionError if the formula cannot be parsed
+   */
+  private String replaceCalculationsWithValues(String instructions, String substitutedInstructions, Map<String, String> variables, int decimalPlaces) throws SamigoExpressionError {
+      if (StringUtils.isEmpty(substitutedInstructions)) {
+          return "";
+      }
+      List<String> calculations = new ArrayList<>();
+      Matcher keyMatcher = CALCQ_CALCULATION_PATTERN.matcher(instructions);
+      while (keyMatcher.find()) {
+          calculations.add(keyMatcher.group(1));
+      }
+      List<String> toReplace = new ArrayList<>();
+      keyMatcher = CALCQ_CALCULATION_PATTERN.matcher(substitutedInstructions);
+      while (keyMatcher.find()) {
+          toReplace.add(keyMatcher.group(1));
+      }
+      if (calculations.size() != toReplace.size()) {
+          return replaceCalculationsWithValues(substitutedInstructions, decimalPlaces);
+      }
+      String expression = substitutedInstructions;
+      for (int i = 0; i < toReplace.size(); i++) {
+          String formula = toReplace.get(i);
+          String calculation = calculations.get(i);
+          String formulaValue;
+          if (formula.equals(replaceMappedVariablesWithNumbers(calculation, variables))) {
+              formulaValue = processFormulaIntoValue(calculation, variables, decimalPlaces);
+          } else {
+              formulaValue = processFormulaIntoValue(formula, decimalPlaces);
+          }
+          expression = StringUtils.replace(expression, CALCULATION_OPEN+formula+CALCULATION_CLOSE, formulaValue);
+      }
+      return expression;
+  }
+
+  /**
+   * CALCULATED_QUESTION
+   * Process a single formula with variables into a final string representing its calculated value for the given
+   * variable values. The formula is compiled once, see SamigoCompiledExpression, and the values are bound to it;
+   * when they cannot be, they are replaced into the formula and it is processed by processFormulaIntoValue().
+   *
+   * @param formula the formula to process (e.g. {a} * 2 + {b})
+   * @param variables the variable values
+   * @param decimalPlaces number of decimals to include in the final output
+   * @return the value of the formula OR empty string if there is nothing to process
+   * @throws IllegalStateException if the formula value cannot be calculated (typically caused by 0 divisors and the like)
+   * @throws SamigoExpressionError if the formula cannot be parsed
+   */
+  public String processFormulaIntoValue(String formula, Map<String, String> variables, int decimalPlaces) throws SamigoExpressionError {
+      if (StringUtils.isEmpty(formula)) {
+          return "";
+      }
+      if (decimalPlaces < 0) {
+          decimalPlaces = 0;
+      }
+      Double value = SamigoCompiledExpression.compile(formula).evaluate(variables);
+      if (value == null) {
+          return processFormulaIntoValue(replaceMappedVariablesWithNumbers(formula, variables), decimalPlaces);
+      }
+      // as SamigoExpressionParser.parse() and processFormulaIntoValue() format the value of the substituted formula
+      String numericString = toScientificNotation(new BigDecimal(value, MathContext.DECIMAL64).toPlainString(), decimalPlaces+1);
+      if (!this.isAnswerValid(numericString)) {
+          throw new IllegalStateException("Invalid calculation formula ("+formula+") result ("+numericString+"), result could not be calculated");
+      }
+      return toScientificNotation(numericString, decimalPlaces);
+  }
+
   /**
    * CALCULATED_QUESTION
    * Process a single formula into a final string representing the calculated value of the formula
@@ -0,0 +1,294 @@
+/**
+ * Copyright (c) 2003-2020 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.assessment.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.regex.Pattern;
+
+import org.mariuszgromada.math.mxparser.Argument;
+import org.mariuszgromada.math.mxparser.Expression;
+import org.sakaiproject.tool.assessment.services.GradingService;
+
+/**
+ * A calculated question formula with its variables, like ({a}+{b})/2, compiled once into an mxParser expression
+ * in which the variables are arguments. Evaluating it for a student's values binds them to the arguments, rather
+ * than substituting them into the formula text and parsing it again as GradingService.processFormulaIntoValue() does.
+ * <p>
+ * Binding a value is not always the same as substituting it: substitution adds a multiplication next to a digit or
+ * parenthesis, and a negative value can merge with the operator in front of it. A formula with a variable next to
+ * anything other than an operator, parenthesis or comma is not compiled, and evaluate() returns null for a negative
+ * value where the substituted text could parse differently, so the caller substitutes and gets the same answer.
+ * </p>
+ */
+public class SamigoCompiledExpression
+{
+  private static final int MAX_CACHED = 2000;
+
+  private static final int MAX_POOLED = 4;
+
+  private static final String ARGUMENT_PREFIX = "calcqv";
+
+  private static final char START = '\0';
+
+  private static final String LEFT_OPERATORS = "(,+-*/^";
+
+  private static final String RIGHT_OPERATORS = "),+-*/^";
+
+  private static final Pattern NUMBER_PATTERN = Pattern.compile("-?\\d+(\\.\\d+)?([eE][-+]?\\d+)?");
+
+  // 2e-{x} is 2e-3 substituted but 2e minus x bound
+  private static final Pattern EXPONENT_PATTERN = Pattern.compile("[\\d.][eE]");
+
+  private static final Map<String, SamigoCompiledExpression> cache = Collections.synchronizedMap(
+      new LinkedHashMap<String, SamigoCompiledExpression>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SamigoCompiledExpression> eldest) {
+          return size() > MAX_CACHED;
+        }
+      });
+
+  private final List<String> variables = new ArrayList<>();
+
+  private final List<Boolean> negativeAllowed = new ArrayList<>();
+
+  private String compiled;
+
+  // an mxParser expression holds its argument values, so each evaluation takes a copy of the formula that no other
+  // thread is using, and a few are kept to be reused
+  private final BlockingQueue<Bound> pool = new ArrayBlockingQueue<>(MAX_POOLED);
+
+  /**
+   * Returns the compiled form of the formula, compiling it the first time it is seen.
+   */
+  public static SamigoCompiledExpression compile(String formula) {
+    return cache.computeIfAbsent(formula, SamigoCompiledExpression::new);
+  }
+
+  private SamigoCompiledExpression(String formula) {
+    if (EXPONENT_PATTERN.matcher(formula).find()) {
+      return;
+    }
+    StringBuilder template = new StringBuilder();
+    int pos = 0;
+    int open;
+    while ((open = formula.indexOf('{', pos)) >= 0) {
+      int close = formula.indexOf('}', open + 1);
+      if (close < 0) {
+        return;
+      }
+      String name = formula.substring(open + 1, close);
+      if (name.isEmpty() || name.indexOf('{') >= 0) {
+        return;
+      }
+      String between = formula.substring(pos, open);
+      if (between.indexOf('}') >= 0) {
+        return;
+      }
+
+      char left = leftOperator(formula, open);
+      char right = rightOperator(formula, close);
+      if (LEFT_OPERATORS.indexOf(left) < 0 && left != START) {
+        return;
+      }
+      if (RIGHT_OPERATORS.indexOf(right) < 0 && right != START) {
+        return;
+      }
+
+      int index = variables.indexOf(name);
+      if (index < 0) {
+        index = variables.size();
+        variables.add(name);
+        negativeAllowed.add(Boolean.TRUE);
+      }
+      if (!isNegativeAllowed(formula, open, left, right)) {
+        negativeAllowed.set(index, Boolean.FALSE);
+      }
+
+      template.append(between);
+      if (open > 0 && isImpliedMultiplicationBefore(formula.charAt(open - 1))) {
+        template.append('*');
+      }
+      template.append(ARGUMENT_PREFIX).append(index);
+      if (close + 1 < formula.length() && isImpliedMultiplicationAfter(formula.charAt(close + 1))) {
+        template.append('*');
+      }
+      pos = close + 1;
+    }
+    String rest = formula.substring(pos);
+    if (variables.isEmpty() || rest.indexOf('}') >= 0 || formula.toLowerCase().contains(ARGUMENT_PREFIX)) {
+      return;
+    }
+    template.append(rest);
+
+    // the same clean up GradingService and SamigoExpressionParser do to the formula once it has its values
+    String normalized = SamigoExpressionParser.normalizeExpression(
+        GradingService.checkExpression(GradingService.cleanFormula(template.toString())));
+    if (normalized.isEmpty() || !isValidFirstCharacter(normalized.charAt(0))) {
+      return;
+    }
+
+    Bound b = new Bound(normalized, variables.size());
+    if (b.expression.checkSyntax()) {
+      compiled = normalized;
+      pool.offer(b);
+    }
+  }
+
+  /**
+   * Evaluates the formula with the given values of its variables.
+   *
+   * @param values the value of each variable by name, as text
+   * @return the value of the formula, or null if the formula has to be evaluated by substituting the values into it
+   * @throws SamigoExpressionError if the formula cannot be calculated with these values
+   */
+  public Double evaluate(Map<String, String> values) throws SamigoExpressionError {
+    if (compiled == null || values == null) {
+      return null;
+    }
+    Bound b = pool.poll();
+    if (b == null) {
+      b = new Bound(compiled, variables.size());
+    }
+    try {
+      return evaluate(b, values);
+    } finally {
+      pool.offer(b);
+    }
+  }
+
+  private Double evaluate(Bound b, Map<String, String> values) throws SamigoExpressionError {
+    Argument[] arguments = b.arguments;
+    for (int i = 0; i < arguments.length; i++) {
+      String value = values.get(variables.get(i));
+      if (value == null || !NUMBER_PATTERN.matcher(value).matches()) {
+        return null;
+      }
+      if (value.charAt(0) == '-' && !negativeAllowed.get(i)) {
+        return null;
+      }
+      arguments[i].setArgumentValue(Double.parseDouble(value));
+    }
+    double d = b.expression.calculate();
+    if (Double.isNaN(d) || Double.isInfinite(d)) {
+      throw new SamigoExpressionError(401, b.expression.getErrorMessage());
+    }
+    return d;
+  }
+
+  /**
+   * @return true if the formula was compiled, false if it is always evaluated by substitution
+   */
+  public boolean isCompiled() {
+    return compiled != null;
+  }
+
+  /**
+   * A copy of the compiled formula and the arguments its values are bound to.
+   */
+  private static class Bound
+  {
+    private final Argument[] arguments;
+
+    private final Expression expression;
+
+    Bound(String formula, int count) {
+      arguments = new Argument[count];
+      for (int i = 0; i < count; i++) {
+        arguments[i] = new Argument(ARGUMENT_PREFIX + i, 0);
+      }
+      expression = new Expression(formula, arguments);
+    }
+  }
+
+  /**
+   * The operator in front of the variable starting at open once it is substituted, or START if there is none.
+   */
+  private static char leftOperator(String formula, int open) {
+    if (open == 0) {
+      return START;
+    }
+    if (isImpliedMultiplicationBefore(formula.charAt(open - 1))) {
+      return '*';
+    }
+    int i = open - 1;
+    while (i >= 0 && Character.isWhitespace(formula.charAt(i))) {
+      i--;
+    }
+    return i < 0 ? START : formula.charAt(i);
+  }
+
+  /**
+   * The operator after the variable ending at close once it is substituted, or START if there is none.
+   */
+  private static char rightOperator(String formula, int close) {
+    if (close + 1 == formula.length()) {
+      return START;
+    }
+    if (isImpliedMultiplicationAfter(formula.charAt(close + 1))) {
+      return '*';
+    }
+    int i = close + 1;
+    while (i < formula.length() && Character.isWhitespace(formula.charAt(i))) {
+      i++;
+    }
+    return i == formula.length() ? START : formula.charAt(i);
+  }
+
+  /**
+   * A negative value gives the same answer bound or substituted when it starts the formula, a bracket or an
+   * argument, or when it directly follows a + or - that follows an operand, as checkExpression() turns 5--3
+   * into 5+3 and 5+-3 into 5-3. It must not be raised to a power, as -3^2 is -(3^2).
+   */
+  private static boolean isNegativeAllowed(String formula, int open, char left, char right) {
+    if (right == '^') {
+      return false;
+    }
+    if (left == START || left == '(' || left == ',') {
+      return true;
+    }
+    char sign = formula.charAt(open - 1);
+    if (sign != '+' && sign != '-') {
+      return false;
+    }
+    if (open < 2) {
+      return false;
+    }
+    char operand = formula.charAt(open - 2);
+    return Character.isLetterOrDigit(operand) || operand == ')' || operand == '}';
+  }
+
+  private static boolean isImpliedMultiplicationBefore(char c) {
+    return Character.isDigit(c) || c == ')';
+  }
+
+  private static boolean isImpliedMultiplicationAfter(char c) {
+    return Character.isDigit(c) || c == '(';
+  }
+
+  /**
+   * SamigoExpressionParser rejects an expression starting with a character it does not know.
+   */
+  private static boolean isValidFirstCharacter(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_' || c == '.' || c == '(' || c == '-';
+  }
+}
@@ -32,6 +32,7 @@ public class SamigoExpressionParser
   public static String INFINITY = "Infinity";
   public static String NaN = "NaN";
   public static Pattern oldLogPattern;
+  private static final Pattern LOG_PATTERN = Pattern.compile("log\\([^,]*\\)");
 
   /**
    * finalructor.
@@ -65,15 +66,7 @@ public class SamigoExpressionParser
   {
     try
     {
-      // mxParser wants "pi" not "PI"
-      expr = new_expr.toLowerCase();
-      // mxParser doesn't understand log(e) they do understand ln(e)
-      Matcher matcher = oldLogPattern.matcher(expr);
-      if (matcher.matches()) {
-          expr = expr.replaceAll("log", "ln");
-      }
-      // mxParser doesn't understand SIGN they do understand SGN
-      expr = expr.replaceAll("sign", "sgn");
+      expr = normalizeExpression(new_expr);
 
       ans = BigDecimal.valueOf(0.0);
 
@@ -115,6 +108,22 @@ public class SamigoExpressionParser
   }
 
 
+  /**
+   * rewrites the given expression into the form mxParser understands
+   */
+  public static String normalizeExpression(final String expression)
+  {
+    // mxParser wants "pi" not "PI"
+    String normalized = expression.toLowerCase();
+    // mxParser doesn't understand log(e) they do understand ln(e)
+    Matcher matcher = LOG_PATTERN.matcher(normalized);
+    if (matcher.matches()) {
+        normalized = normalized.replaceAll("log", "ln");
+    }
+    // mxParser doesn't understand SIGN they do understand SGN
+    return normalized.replaceAll("sign", "sgn");
+  }
+
   /**
    * checks if the given char c is a minus
    */
@@ -129,6 +129,44 @@ public class AssessmentGradingFacadeQueriesTest extends AbstractJUnit4SpringCont
 		Assert.assertEquals(2, subs.size());
 	}
 
+	@Test
+	public void testSaveOrUpdateAllAssessmentGradings() {
+		//a published assessment of its own so the other tests still count theirs
+		for (String agent : new String[] {"regrade1", "regrade2"}) {
+			AssessmentGradingData data = new AssessmentGradingData();
+			data.setPublishedAssessmentId(Long.valueOf(2));
+			data.setAgentId(agent);
+			data.setIsLate(false);
+			data.setForGrade(true);
+			data.setStatus(Integer.valueOf(1));
+			queries.saveOrUpdateAssessmentGrading(data);
+
+			ItemGradingData item = new ItemGradingData();
+			item.setAgentId(agent);
+			item.setAssessmentGradingId(data.getAssessmentGradingId());
+			item.setPublishedItemId(1L);
+			item.setPublishedItemTextId(1L);
+			queries.saveItemGrading(item);
+		}
+
+		List<AssessmentGradingData> gradings = queries.getAllAssessmentGradingData(2L);
+		Assert.assertEquals(2, gradings.size());
+		for (AssessmentGradingData data : gradings) {
+			Assert.assertEquals(1, data.getItemGradingSet().size());
+			data.getItemGradingSet().forEach(item -> item.setAutoScore(2d));
+			data.setTotalAutoScore(2d);
+			data.setFinalScore(2d);
+		}
+
+		queries.saveOrUpdateAllAssessmentGradings(gradings);
+
+		for (AssessmentGradingData data : queries.getAllAssessmentGradingData(2L)) {
+			Assert.assertEquals(2d, data.getFinalScore(), 0.001d);
+			Assert.assertEquals(1, data.getItemGradingSet().size());
+			data.getItemGradingSet().forEach(item -> Assert.assertEquals(2d, item.getAutoScore(), 0.001d));
+		}
+	}
+
 	/**
 	 * Load some test data
 	 */
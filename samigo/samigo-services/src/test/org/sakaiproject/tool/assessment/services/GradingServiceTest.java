@@ -21,15 +21,22 @@
 
 package org.sakaiproject.tool.assessment.services;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.mariuszgromada.math.mxparser.Expression;
+import org.sakaiproject.tool.assessment.data.dao.grading.AssessmentGradingData;
+import org.sakaiproject.tool.assessment.data.dao.grading.ItemGradingData;
 import org.sakaiproject.tool.assessment.services.GradingService;
+import org.sakaiproject.tool.assessment.util.SamigoCompiledExpression;
 import org.sakaiproject.tool.assessment.util.SamigoExpressionError;
 import org.sakaiproject.tool.assessment.util.SamigoExpressionParser;
 
@@ -441,6 +448,99 @@ public class GradingServiceTest {
         Assert.assertEquals("866.2", result);
     }
 
+    @Test
+    public void testCompiledFormulas() throws Exception {
+        Assert.assertTrue(SamigoCompiledExpression.compile("({B} / ({A} + {B} + {C}))*100").isCompiled());
+        Assert.assertTrue(SamigoCompiledExpression.compile("2{a}(3)").isCompiled());
+        Assert.assertFalse(SamigoCompiledExpression.compile("{a}{b}").isCompiled());
+        Assert.assertFalse(SamigoCompiledExpression.compile("{a} {b}").isCompiled());
+        Assert.assertFalse(SamigoCompiledExpression.compile("2e-{a}").isCompiled());
+        Assert.assertFalse(SamigoCompiledExpression.compile("{a}.5").isCompiled());
+        Assert.assertFalse(SamigoCompiledExpression.compile("2+2").isCompiled());
+
+        // the compiled formula gives the same answer as substituting the values, or falls back to substituting
+        String[] formulas = {sampleSolutionFormula, "({A} - {B}) / 2", "2{A}+{B}(3)", "{A}-{B}", "-{A}*{B}", "{A}^2+{B}",
+                "sqrt({A}*{A})+{B}", "max({A}, {B})", "{A}/{B}*100", "5--{B}", "{A}/({B}-{B})", "log({A}*{A})"};
+        String[][] values = {{"3", "4"}, {"-3", "4"}, {"2.5", "-1.25"}, {"-7", "-2"}, {"0", "10"}, {"1E-7", "12.50"}};
+        for (String formula : formulas) {
+            for (String[] value : values) {
+                Map<String, String> map = new HashMap<>();
+                map.put("A", value[0]);
+                map.put("B", value[1]);
+                map.put("C", "1");
+                String substituted = gradingService.replaceMappedVariablesWithNumbers(formula, map);
+                Assert.assertEquals(formula + " " + map, evaluate(() -> gradingService.processFormulaIntoValue(substituted, 3)),
+                        evaluate(() -> gradingService.processFormulaIntoValue(formula, map, 3)));
+            }
+        }
+    }
+
+    private interface Formula {
+        String value() throws Exception;
+    }
+
+    private String evaluate(Formula formula) {
+        try {
+            return formula.value();
+        } catch (Exception e) {
+            return e.getClass().getName();
+        }
+    }
+
+    @Test
+    public void testParallelRegradeMatchesSerial() {
+        List<AssessmentGradingData> serial = regradeGradings(200);
+        List<AssessmentGradingData> parallel = regradeGradings(200);
+        AtomicInteger serialSaved = new AtomicInteger();
+        AtomicInteger parallelSaved = new AtomicInteger();
+
+        gradingService.regradeAssessmentGradings(serial, 1, 30, this::regrade, batch -> serialSaved.addAndGet(batch.size()));
+        gradingService.regradeAssessmentGradings(parallel, 4, 30, this::regrade, batch -> parallelSaved.addAndGet(batch.size()));
+
+        Assert.assertEquals(200, serialSaved.get());
+        Assert.assertEquals(200, parallelSaved.get());
+        for (int i = 0; i < serial.size(); i++) {
+            Assert.assertNotNull(serial.get(i).getTotalAutoScore());
+            Assert.assertEquals(serial.get(i).getTotalAutoScore(), parallel.get(i).getTotalAutoScore());
+        }
+    }
+
+    private List<AssessmentGradingData> regradeGradings(int count) {
+        List<AssessmentGradingData> gradings = new ArrayList<>();
+        for (long i = 0; i < count; i++) {
+            AssessmentGradingData data = new AssessmentGradingData();
+            data.setAssessmentGradingId(i);
+            Set<ItemGradingData> itemGradings = new HashSet<>();
+            for (long j = 0; j < 5; j++) {
+                ItemGradingData itemGrading = new ItemGradingData();
+                itemGrading.setItemGradingId(i * 5 + j);
+                itemGradings.add(itemGrading);
+            }
+            data.setItemGradingSet(itemGradings);
+            gradings.add(data);
+        }
+        return gradings;
+    }
+
+    // scores every answer with the same compiled formula, as a calculated question does for each student
+    private void regrade(AssessmentGradingData data) {
+        double total = 0;
+        for (ItemGradingData itemGrading : data.getItemGradingSet()) {
+            long id = itemGrading.getItemGradingId();
+            Map<String, String> values = new HashMap<>();
+            values.put("A", String.valueOf(id % 7 + 1));
+            values.put("B", String.valueOf(id % 11 + 1));
+            values.put("C", String.valueOf(id % 13 + 1));
+            try {
+                itemGrading.setAutoScore(Double.valueOf(gradingService.processFormulaIntoValue(sampleSolutionFormula, values, 3)));
+            } catch (SamigoExpressionError e) {
+                throw new RuntimeException(e);
+            }
+            total += itemGrading.getAutoScore();
+        }
+        data.setTotalAutoScore(total);
+    }
+
     @Test
     public void testReplaceMappedVariablesWithNumbers() throws Exception {
         String input = null;
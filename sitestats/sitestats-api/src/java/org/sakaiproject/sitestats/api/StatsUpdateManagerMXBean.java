@@ -33,4 +33,39 @@ public interface StatsUpdateManagerMXBean {
     double getNumberOfEventsGeneratedPerSec();
 
     long getAverageTimeInEventProcessingPerEvent();
+
+    /**
+     * @return the number of events waiting to be consolidated by the update thread
+     */
+    int getQueueSize();
+
+    /**
+     * @return the number of consolidated rows waiting to be written to the db
+     */
+    int getPendingAggregates();
+
+    /**
+     * @return the number of db updates since the metrics were reset
+     */
+    long getTotalFlushes();
+
+    /**
+     * @return the time taken by the last db update, in ms
+     */
+    long getLastFlushTime();
+
+    /**
+     * @return the number of rows written by the last db update
+     */
+    long getLastFlushSize();
+
+    /**
+     * @return the mean time taken by a db update since the metrics were reset, in ms
+     */
+    long getAverageFlushTime();
+
+    /**
+     * @return the longest time taken by a db update since the metrics were reset, in ms
+     */
+    long getMaxFlushTime();
 }
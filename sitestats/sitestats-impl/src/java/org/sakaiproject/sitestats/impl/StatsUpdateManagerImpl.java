@@ -26,6 +26,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
 import lombok.Getter;
 import lombok.Setter;
@@ -35,6 +41,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 
 import org.hibernate.Criteria;
+import org.hibernate.FlushMode;
 import org.hibernate.HibernateException;
 import org.hibernate.Query;
 import org.hibernate.Session;
@@ -89,6 +96,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	@Getter @Setter private boolean		collectAdminEvents					= false;
 	@Getter @Setter private boolean		collectEventsForSiteWithToolOnly	= true;
 	@Getter @Setter private boolean		collectDetailedEvents				= false;
+	@Getter @Setter private int			flushBatchSize						= 100;
 	@Setter private TransactionTemplate	transactionTemplate;
 
 	/** Sakai services */
@@ -101,33 +109,44 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	@Setter private EventTrackingService	eventTrackingService;
 
 	/** Collect Thread and Semaphore */
-	private Thread		collectThread;
-	private List<Event>	collectThreadQueue		= new ArrayList<>();
-	private Object		collectThreadSemaphore	= new Object();
-	private boolean		collectThreadRunning	= false;
-
-	/** Collect thread queue maps */
-	private Map<String, EventStat>					eventStatMap			= Collections.synchronizedMap(new HashMap<>());
-	private Map<String, ResourceStat>				resourceStatMap			= Collections.synchronizedMap(new HashMap<>());
-	private Map<String, LessonBuilderStat>			lessonBuilderStatMap	= Collections.synchronizedMap(new HashMap<>());
-	private Map<String, SiteActivity>				activityMap				= Collections.synchronizedMap(new HashMap<>());
-	private Map<String, SiteVisits>					visitsMap				= Collections.synchronizedMap(new HashMap<>());
-	private Map<String, SitePresenceConsolidation>	presencesMap			= Collections.synchronizedMap(new HashMap<>());
-	private Map<UniqueVisitsKey, Integer>			uniqueVisitsMap			= Collections.synchronizedMap(new HashMap<>());
-	private Map<String, ServerStat>					serverStatMap			= Collections.synchronizedMap(new HashMap<>());
-	private Map<String, UserStat>					userStatMap				= Collections.synchronizedMap(new HashMap<>());
-
-	private Map<String, String>	lessonPageCreateEventMap	= new HashMap<>();
-	private List<DetailedEvent>	detailedEvents				= Collections.synchronizedList(new ArrayList<>());
+	private Thread					collectThread;
+	private final Queue<Event>		collectThreadQueue		= new ConcurrentLinkedQueue<>();
+	private final AtomicInteger		collectThreadQueueSize	= new AtomicInteger();
+	private Object					collectThreadSemaphore	= new Object();
+	private volatile boolean		collectThreadRunning	= false;
+
+	/**
+	 * Collect thread queue maps. The counting ones are updated with compute() and emptied a key at a time by
+	 * drain(), so events can be consolidated while they are written to the db without either waiting for the other.
+	 */
+	private final ConcurrentMap<String, EventStat>			eventStatMap			= new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, ResourceStat>		resourceStatMap			= new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, LessonBuilderStat>	lessonBuilderStatMap	= new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, SiteActivity>		activityMap				= new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, ServerStat>			serverStatMap			= new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, UserStat>			userStatMap				= new ConcurrentHashMap<>();
+
+	/** Site visits and presences are updated together, so these are guarded by lock and swapped under it */
+	private Map<String, SiteVisits>					visitsMap				= new HashMap<>();
+	private Map<String, SitePresenceConsolidation>	presencesMap			= new HashMap<>();
+	private Map<UniqueVisitsKey, Integer>			uniqueVisitsMap			= new HashMap<>();
+
+	private Map<String, String>			lessonPageCreateEventMap	= new ConcurrentHashMap<>();
+	private final Queue<DetailedEvent>	detailedEvents				= new ConcurrentLinkedQueue<>();
 
 	private boolean				initialized	= false;
 	private final ReentrantLock	lock		= new ReentrantLock();
 
 	/** Metrics */
-	private boolean			isIdle						= true;
-	@Getter private long	totalEventsProcessed		= 0;
-	@Getter private long	totalTimeInEventProcessing	= 0;
-	@Getter private long	resetTime					= System.currentTimeMillis();
+	private volatile boolean	isIdle						= true;
+	private final LongAdder		totalEventsProcessed		= new LongAdder();
+	private final LongAdder		totalTimeInEventProcessing	= new LongAdder();
+	@Getter private long		resetTime					= System.currentTimeMillis();
+	private final LongAdder		totalFlushes				= new LongAdder();
+	private final LongAdder		totalFlushTime				= new LongAdder();
+	@Getter private volatile long	lastFlushTime			= 0;
+	@Getter private volatile long	maxFlushTime			= 0;
+	@Getter private volatile long	lastFlushSize			= 0;
 
 	// ################################################################
 	// Spring related methods
@@ -203,7 +222,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			//log.debug("Time spent pre-processing 1 event: " + (endTime-startTime) + " ms");
 			boolean success = doUpdateConsolidatedEvents();
 			isIdle = true;
-			totalTimeInEventProcessing += (System.currentTimeMillis() - startTime);
+			totalTimeInEventProcessing.add(System.currentTimeMillis() - startTime);
 			return success;
 		}
 		return true;
@@ -240,7 +259,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 				//log.debug("Time spent pre-processing " + eventCount + " event(s): " + (endTime-startTime) + " ms");
 				boolean success = doUpdateConsolidatedEvents();
 				isIdle = true;
-				totalTimeInEventProcessing += (System.currentTimeMillis() - startTime);
+				totalTimeInEventProcessing.add(System.currentTimeMillis() - startTime);
 				return success;
 			}
 		}
@@ -317,7 +336,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	// Metrics related methods
 	// ################################################################	
 	public int getQueueSize() {
-		return collectThreadQueue.size();
+		return collectThreadQueueSize.get();
 	}
 	
 	public boolean isIdle() {
@@ -325,11 +344,46 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	}
 	
 	public void resetMetrics() {
-		totalEventsProcessed = 0;
-		totalTimeInEventProcessing = 0;
+		totalEventsProcessed.reset();
+		totalTimeInEventProcessing.reset();
+		totalFlushes.reset();
+		totalFlushTime.reset();
+		maxFlushTime = 0;
 		resetTime = System.currentTimeMillis();
 	}
 
+	@Override
+	public long getTotalEventsProcessed() {
+		return totalEventsProcessed.sum();
+	}
+
+	@Override
+	public long getTotalTimeInEventProcessing() {
+		return totalTimeInEventProcessing.sum();
+	}
+
+	@Override
+	public int getPendingAggregates() {
+		lock.lock();
+		try {
+			return eventStatMap.size() + resourceStatMap.size() + lessonBuilderStatMap.size() + activityMap.size()
+					+ serverStatMap.size() + userStatMap.size() + visitsMap.size() + presencesMap.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public long getTotalFlushes() {
+		return totalFlushes.sum();
+	}
+
+	@Override
+	public long getAverageFlushTime() {
+		long flushes = totalFlushes.sum();
+		return flushes > 0 ? totalFlushTime.sum() / flushes : 0;
+	}
+
 	@Override
 	public long getTotalTimeElapsedSinceReset() {
 		return System.currentTimeMillis() - resetTime;
@@ -337,10 +391,11 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	
 	@Override
 	public double getNumberOfEventsProcessedPerSec() {
-		if(totalTimeInEventProcessing > 0) {
-			return Util.round((double)totalEventsProcessed / ((double)totalTimeInEventProcessing/1000), 3);
+		long totalTime = getTotalTimeInEventProcessing();
+		if(totalTime > 0) {
+			return Util.round((double)getTotalEventsProcessed() / ((double)totalTime/1000), 3);
 		}else{
-			return Util.round((double)totalEventsProcessed / 0.001, 3); // => will assume 1ms instead of 0ms
+			return Util.round((double)getTotalEventsProcessed() / 0.001, 3); // => will assume 1ms instead of 0ms
 		}
 	}
 	
@@ -348,16 +403,17 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	public double getNumberOfEventsGeneratedPerSec() {
 		double ellapsed = (double) getTotalTimeElapsedSinceReset();
 		if(ellapsed > 0) {
-			return Util.round((double)totalEventsProcessed / (ellapsed/1000), 3);
+			return Util.round((double)getTotalEventsProcessed() / (ellapsed/1000), 3);
 		}else{
-			return Util.round((double)totalEventsProcessed / 0.001, 3); // => will assume 1ms instead of 0ms
+			return Util.round((double)getTotalEventsProcessed() / 0.001, 3); // => will assume 1ms instead of 0ms
 		}
 	}
 	
 	@Override
 	public long getAverageTimeInEventProcessingPerEvent() {
-		if(totalEventsProcessed > 0) {
-			return totalTimeInEventProcessing / totalEventsProcessed;
+		long events = getTotalEventsProcessed();
+		if(events > 0) {
+			return getTotalTimeInEventProcessing() / events;
 		}else{
 			return 0;
 		}
@@ -375,6 +431,9 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			sb.append("\t\tNumber of events genereated in Sakai per sec: ").append(getNumberOfEventsGeneratedPerSec()).append("\n");
 			sb.append("\t\tAverage time spent in event processing per event: ").append(getAverageTimeInEventProcessingPerEvent()).append(" ms\n");
 			sb.append("\t\tEvent queue size: ").append(getQueueSize()).append("\n");
+			sb.append("\t\tAggregates waiting for db update: ").append(getPendingAggregates()).append("\n");
+			sb.append("\t\tLast db update: ").append(getLastFlushTime()).append(" ms (").append(getLastFlushSize()).append(" rows), ");
+			sb.append("average: ").append(getAverageFlushTime()).append(" ms, max: ").append(getMaxFlushTime()).append(" ms\n");
 			sb.append("\t\tIdle: ").append(isIdle());
 		}else{
 			sb.append("#Events processed: ").append(getTotalEventsProcessed()).append(", ");
@@ -383,6 +442,8 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			sb.append("#Events processed/sec: ").append(getNumberOfEventsProcessedPerSec()).append(", ");
 			sb.append("Avg. Time/event: ").append(getAverageTimeInEventProcessingPerEvent()).append(" ms, ");
 			sb.append("Event queue size: ").append(getQueueSize()).append(", ");
+			sb.append("Pending aggregates: ").append(getPendingAggregates()).append(", ");
+			sb.append("Last db update: ").append(getLastFlushTime()).append(" ms, ");
 			sb.append("Idle: ").append(isIdle());
 		}
 		return sb.toString();
@@ -394,12 +455,12 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	// ################################################################	
 	/** Method called whenever an new event is generated from EventTrackingService: do not call this method! */
 	public void update(Observable obs, Object o) {
-		// At the moment this isn't threadsafe, but as sakai event handling is single threaded this shoudn't be a problem,
-		// but it's not a formal contract.
+		// The queue is safe for any number of posting threads, with the update thread as its only consumer
 		if(o instanceof Event){
 			Event e = (Event) o;
 			Event eventWithPreciseDate = buildEvent(getToday(), e.getEvent(), e.getResource(), e.getContext(), e.getUserId(), e.getSessionId());
-			collectThreadQueue.add(eventWithPreciseDate);
+			collectThreadQueue.offer(eventWithPreciseDate);
+			collectThreadQueueSize.incrementAndGet();
 		}
 	}
 	
@@ -411,14 +472,10 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 				// do update job
 				isIdle = false;
 				long startTime = System.currentTimeMillis();
-				int eventCount = collectThreadQueue.size();
-				if(eventCount > 0) {
-					//long startTime2 = System.currentTimeMillis();
-					while(collectThreadQueue.size() > 0){
-						preProcessEvent(collectThreadQueue.remove(0));
-					}
-					//long endTime2 = System.currentTimeMillis();
-					//log.debug("Time spent pre-processing " + eventCount + " event(s): " + (endTime2-startTime2) + " ms");
+				Event queued;
+				while((queued = collectThreadQueue.poll()) != null){
+					collectThreadQueueSize.decrementAndGet();
+					preProcessEvent(queued);
 				}
 				transactionTemplate.execute(new TransactionCallbackWithoutResult() {
 					@Override
@@ -427,7 +484,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 					}
 				});
 				isIdle = true;
-				totalTimeInEventProcessing += (System.currentTimeMillis() - startTime);
+				totalTimeInEventProcessing.add(System.currentTimeMillis() - startTime);
 
 				// sleep if no work to do
 				if(!collectThreadRunning) break;
@@ -477,7 +534,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			return;
 		}
 
-		totalEventsProcessed++;
+		totalEventsProcessed.increment();
 		String userId = event.getUserId();
 		Event e = fixMalFormedEvents(event);
 		if (e == null) {
@@ -586,8 +643,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 
 			// add to eventStatMap
 			String key = userId+siteId+eventId+date;
-			synchronized(eventStatMap){
-				EventStat e1 = eventStatMap.get(key);
+			eventStatMap.compute(key, (k, e1) -> {
 				if(e1 == null){
 					e1 = new EventStatImpl();
 					e1.setUserId(userId);
@@ -596,8 +652,8 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 					e1.setDate(date);
 				}
 				e1.setCount(e1.getCount() + 1);
-				eventStatMap.put(key, e1);
-			}
+				return e1;
+			});
 
 			if (collectDetailedEvents) {
 				DetailedEvent de = new DetailedEventImpl();
@@ -612,8 +668,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			if(!StatsManager.SITEVISIT_EVENTID.equals(eventId)){
 				// add to activityMap
 				String key2 = siteId+date+eventId;
-				synchronized(activityMap){
-					SiteActivity e2 = activityMap.get(key2);
+				activityMap.compute(key2, (k, e2) -> {
 					if(e2 == null){
 						e2 = new SiteActivityImpl();
 						e2.setSiteId(siteId);
@@ -621,8 +676,8 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 						e2.setEventId(eventId);
 					}
 					e2.setCount(e2.getCount() + 1);
-					activityMap.put(key2, e2);
-				}
+					return e2;
+				});
 			}
 		}	
 
@@ -634,20 +689,20 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			}catch(ArrayIndexOutOfBoundsException ex){
 				resourceAction = eventId;
 			}
-			String key = userId+siteId+resourceRef+resourceAction+date;
-			synchronized(resourceStatMap){
-				ResourceStat e1 = resourceStatMap.get(key);
+			String action = resourceAction;
+			String key = userId+siteId+resourceRef+action+date;
+			resourceStatMap.compute(key, (k, e1) -> {
 				if(e1 == null){
 					e1 = new ResourceStatImpl();
 					e1.setUserId(userId);
 					e1.setSiteId(siteId);
 					e1.setResourceRef(resourceRef);
-					e1.setResourceAction(resourceAction);
+					e1.setResourceAction(action);
 					e1.setDate(date);
 				}
 				e1.setCount(e1.getCount() + 1);
-				resourceStatMap.put(key, e1);
-			}
+				return e1;
+			});
 		} else if (eventId.startsWith(StatsManager.LESSONS_EVENTID_PREFIX)) {
 			String[] resourceParts = resourceRef.split("/");
 			if (resourceParts.length > 3) {
@@ -792,8 +847,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 
 	private void addToLessonBuilderStatMap(String key, String userId, String siteId, String pageRef, long pageId, String action, Date date) {
 
-		synchronized (lessonBuilderStatMap) {
-			LessonBuilderStat e1 = lessonBuilderStatMap.get(key);
+		lessonBuilderStatMap.compute(key, (k, e1) -> {
 			if (e1 == null) {
 				e1 = new LessonBuilderStatImpl();
 				e1.setUserId(userId);
@@ -804,8 +858,8 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 				e1.setDate(date);
 			}
 			e1.setCount(e1.getCount() + 1);
-			lessonBuilderStatMap.put(key, e1);
-		}
+			return e1;
+		});
 	}
 
 	protected boolean isRegisteredEvent(String eventId) {
@@ -819,16 +873,15 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 				
 		// add to serverStatMap
 		String key = eventId+date;
-		synchronized(serverStatMap){
-			ServerStat s = serverStatMap.get(key);
+		serverStatMap.compute(key, (k, s) -> {
 			if(s == null){
 				s = new ServerStatImpl();
 				s.setEventId(eventId);
 				s.setDate(date);
 			}
 			s.setCount(s.getCount() + 1);
-			serverStatMap.put(key, s);
-		}
+			return s;
+		});
 		
 	}
 	
@@ -839,16 +892,15 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 				
 		// add to userStatMap
 		String key = userId+date;
-		synchronized(userStatMap){
-			UserStat s = userStatMap.get(key);
+		userStatMap.compute(key, (k, s) -> {
 			if(s == null){
 				s = new UserStatImpl();
 				s.setUserId(userId);
 				s.setDate(date);
 			}
 			s.setCount(s.getCount() + 1);
-			userStatMap.put(key, s);
-		}
+			return s;
+		});
 		
 	}
 	
@@ -856,132 +908,124 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	// ################################################################
 	// Db update methods
 	// ################################################################	
-	@SuppressWarnings("unchecked")
 	private synchronized boolean doUpdateConsolidatedEvents() {
 		long startTime = System.currentTimeMillis();
-		if(eventStatMap.size() > 0 || resourceStatMap.size() > 0
-				|| activityMap.size() > 0 || uniqueVisitsMap.size() > 0 
-				|| visitsMap.size() > 0 || presencesMap.size() > 0
-				|| serverStatMap.size() > 0 || userStatMap.size() > 0 || detailedEvents.size() > 0) {
+
+		// take everything consolidated so far, events consolidated from now on go into the next update
+		List<EventStat> eventStats = drain(eventStatMap);
+		List<ResourceStat> resourceStats = drain(resourceStatMap);
+		List<LessonBuilderStat> lessonBuilderStats = drain(lessonBuilderStatMap);
+		List<SiteActivity> activities = drain(activityMap);
+		List<ServerStat> serverStats = drain(serverStatMap);
+		List<UserStat> userStats = drain(userStatMap);
+		List<DetailedEvent> detailedEventsCopy = new ArrayList<>();
+		DetailedEvent detailedEvent;
+		while((detailedEvent = detailedEvents.poll()) != null) {
+			detailedEventsCopy.add(detailedEvent);
+		}
+		Map<UniqueVisitsKey, Integer> uniqueVisits;
+		Map<String, SiteVisits> visits;
+		Map<String, SitePresenceConsolidation> presences;
+		lock.lock();
+		try {
+			uniqueVisits = uniqueVisitsMap;
+			visits = visitsMap;
+			presences = presencesMap;
+			uniqueVisitsMap = new HashMap<>();
+			visitsMap = new HashMap<>();
+			presencesMap = new HashMap<>();
+		} finally {
+			lock.unlock();
+		}
+
+		int size = eventStats.size() + resourceStats.size() + lessonBuilderStats.size() + activities.size()
+				+ serverStats.size() + userStats.size() + detailedEventsCopy.size() + visits.size() + presences.size();
+		if(size > 0 || uniqueVisits.size() > 0) {
 
 		    try {
 				getHibernateTemplate().execute(session -> {
                     // do: EventStat
-                    if(eventStatMap.size() > 0) {
-                        Collection<EventStat> tmp1 = null;
-                        synchronized(eventStatMap){
-                            tmp1 = eventStatMap.values();
-                            eventStatMap = Collections.synchronizedMap(new HashMap<String, EventStat>());
-                        }
-                        doUpdateEventStatObjects(session, tmp1);
-                    }
+                    doUpdateEventStatObjects(session, eventStats);
 
                     // do: DetailedEvents
-                    if (detailedEvents.size() > 0) {
-                        List<DetailedEvent> detailedEventsCopy;
-                        synchronized(detailedEvents) {
-                            detailedEventsCopy = detailedEvents;
-                            detailedEvents = Collections.synchronizedList(new ArrayList<>());
-                        }
-                        doSaveDetailedEvents(session, detailedEventsCopy);
-                    }
+                    doSaveDetailedEvents(session, detailedEventsCopy);
 
                     // do: ResourceStat
-                    if(resourceStatMap.size() > 0) {
-                        Collection<ResourceStat> tmp2 = null;
-                        synchronized(resourceStatMap){
-                            tmp2 = resourceStatMap.values();
-                            resourceStatMap = Collections.synchronizedMap(new HashMap<String, ResourceStat>());
-                        }
-                        doUpdateResourceStatObjects(session, tmp2);
-                    }
+                    doUpdateResourceStatObjects(session, resourceStats);
 
                     // do: Lessons ResourceStat
-                    if (lessonBuilderStatMap.size() > 0) {
-                        Collection<LessonBuilderStat> tmp3 = null;
-                        synchronized (lessonBuilderStatMap) {
-                            tmp3 = lessonBuilderStatMap.values();
-                            lessonBuilderStatMap = Collections.synchronizedMap(new HashMap<String, LessonBuilderStat>());
-                        }
-                        doUpdateLessonBuilderStatObjects(session, tmp3);
-                    }
+                    doUpdateLessonBuilderStatObjects(session, lessonBuilderStats);
 
                     // do: SiteActivity
-                    if(activityMap.size() > 0) {
-                        Collection<SiteActivity> tmp3 = null;
-                        synchronized(activityMap){
-                            tmp3 = activityMap.values();
-                            activityMap = Collections.synchronizedMap(new HashMap<String, SiteActivity>());
-                        }
-                        doUpdateSiteActivityObjects(session, tmp3);
-                    }
+                    doUpdateSiteActivityObjects(session, activities);
 
                     // do: SiteVisits
-                    if(uniqueVisitsMap.size() > 0 || visitsMap.size() > 0) {
+                    if(uniqueVisits.size() > 0 || visits.size() > 0) {
                         // determine unique visits for event related sites
-                        Map<UniqueVisitsKey, Integer> tmp4;
-                        synchronized(uniqueVisitsMap){
-                            tmp4 = uniqueVisitsMap;
-                            uniqueVisitsMap = Collections.synchronizedMap(new HashMap<UniqueVisitsKey, Integer>());
-                        }
-                        tmp4 = doGetSiteUniqueVisits(session, tmp4);
-
-                        // do: SiteVisits
-                        if(visitsMap.size() > 0) {
-                            Collection<SiteVisits> tmp5 = null;
-                            synchronized(visitsMap){
-                                tmp5 = visitsMap.values();
-                                visitsMap = Collections.synchronizedMap(new HashMap<String, SiteVisits>());
-                            }
-                            doUpdateSiteVisitsObjects(session, tmp5, tmp4);
-                        }
+                        Map<UniqueVisitsKey, Integer> tmp4 = doGetSiteUniqueVisits(session, uniqueVisits);
+                        doUpdateSiteVisitsObjects(session, visits.values(), tmp4);
                     }
 
                     // do: SitePresences
-                    if(presencesMap.size() > 0) {
-                        Collection<SitePresenceConsolidation> tmp6 = null;
-                        synchronized(presencesMap){
-                            tmp6 = presencesMap.values();
-                            presencesMap = Collections.synchronizedMap(new HashMap<String, SitePresenceConsolidation>());
-                        }
-                        doUpdateSitePresencesObjects(session, tmp6);
+                    if(presences.size() > 0) {
+                        doUpdateSitePresencesObjects(session, presences.values());
                     }
 
                     // do: ServerStats
-                    if(serverStatMap.size() > 0) {
-                        Collection<ServerStat> tmp7 = null;
-                        synchronized(serverStatMap){
-                            tmp7 = serverStatMap.values();
-                            serverStatMap = Collections.synchronizedMap(new HashMap<String, ServerStat>());
-                        }
-                        doUpdateServerStatObjects(session, tmp7);
-                    }
+                    doUpdateServerStatObjects(session, serverStats);
 
                     // do: UserStats
-                    if(userStatMap.size() > 0) {
-                        Collection<UserStat> tmp8 = null;
-                        synchronized(userStatMap){
-                            tmp8 = userStatMap.values();
-                            userStatMap = Collections.synchronizedMap(new HashMap<String, UserStat>());
-                        }
-                        doUpdateUserStatObjects(session, tmp8);
-                    }
+                    doUpdateUserStatObjects(session, userStats);
                     return null;
             	});
 			} catch(DataAccessException dae) {
 				return false;
 			}
-			long endTime = System.currentTimeMillis();
-			log.debug("Time spent in doUpdateConsolidatedEvents(): " + (endTime-startTime) + " ms");
+			long elapsed = System.currentTimeMillis() - startTime;
+			totalFlushes.increment();
+			totalFlushTime.add(elapsed);
+			lastFlushTime = elapsed;
+			lastFlushSize = size;
+			if(elapsed > maxFlushTime) {
+				maxFlushTime = elapsed;
+			}
+			log.debug("Time spent in doUpdateConsolidatedEvents(): {} ms for {} rows", elapsed, size);
 		}
 		return true;
 	}
-	
+
+	/**
+	 * Removes the aggregates from the map one key at a time. An event consolidated while this runs either lands in an
+	 * aggregate before it is removed or starts a new one for the next update, so no counts are lost.
+	 */
+	private static <T> List<T> drain(ConcurrentMap<String, T> map) {
+		List<T> drained = new ArrayList<>(map.size());
+		for(String key : map.keySet()) {
+			T value = map.remove(key);
+			if(value != null) {
+				drained.add(value);
+			}
+		}
+		return drained;
+	}
+
+	/**
+	 * Lookups run with FlushMode.MANUAL so Hibernate doesn't flush the pending writes before each one, the writes are
+	 * instead flushed every flushBatchSize rows where they can go to the db as JDBC batches.
+	 */
+	private void flushBatch(Session session, int written) {
+		if(flushBatchSize > 0 && written % flushBatchSize == 0) {
+			session.flush();
+			session.clear();
+		}
+	}
+
 	private void doUpdateEventStatObjects(Session session, Collection<EventStat> o) {
 		if(o == null) return;
 		List<EventStat> objects = new ArrayList<>(o);
 		Collections.sort(objects);
 		Iterator<EventStat> i = objects.iterator();
+		int written = 0;
 		
 		while(i.hasNext()){
 			EventStat eUpdate = i.next();
@@ -989,6 +1033,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			EventStat eExisting = null;
 			try{
 				Criteria c = session.createCriteria(EventStatImpl.class);
+				c.setFlushMode(FlushMode.MANUAL);
 				c.add(Expression.eq("siteId", eUpdate.getSiteId()));
 				c.add(Expression.eq("eventId", eUpdate.getEventId()));
 				c.add(Expression.eq("userId", eUpdate.getUserId()));
@@ -1021,8 +1066,10 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 				//If something happens, skip the event processing
 				log.warn("Failed to event:"+ eUpdate.getEventId(), ex);
 			}
-			if ((eExistingSiteId!=null) && (eExistingSiteId.trim().length()>0))
-					session.saveOrUpdate(eExisting);
+			if ((eExistingSiteId!=null) && (eExistingSiteId.trim().length()>0)) {
+				session.saveOrUpdate(eExisting);
+				flushBatch(session, ++written);
+			}
 		}
 	}
 
@@ -1039,12 +1086,14 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		List<ResourceStat> objects = new ArrayList<ResourceStat>(o);
 		Collections.sort(objects);
 		Iterator<ResourceStat> i = objects.iterator();
+		int written = 0;
 		while(i.hasNext()){
 			ResourceStat eUpdate = i.next();
 			ResourceStat eExisting = null;
 			String eExistingSiteId = null;
 			try{
 				Criteria c = session.createCriteria(ResourceStatImpl.class);
+				c.setFlushMode(FlushMode.MANUAL);
 				c.add(Expression.eq("siteId", eUpdate.getSiteId()));
 				c.add(Expression.eq("resourceRef", eUpdate.getResourceRef()));
 				c.add(Expression.eq("resourceAction", eUpdate.getResourceAction()));
@@ -1077,8 +1126,10 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			}catch(Exception ex){
 				log.warn("Failed to event:"+ eUpdate.getId(), ex);
 			}
-			if ((eExistingSiteId!=null) && (eExistingSiteId.trim().length()>0))
-					session.saveOrUpdate(eExisting);
+			if ((eExistingSiteId!=null) && (eExistingSiteId.trim().length()>0)) {
+				session.saveOrUpdate(eExisting);
+				flushBatch(session, ++written);
+			}
 		}
 	}
 
@@ -1088,12 +1139,14 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		List<LessonBuilderStat> objects = new ArrayList<LessonBuilderStat>(o);
 		Collections.sort(objects);
 		Iterator<LessonBuilderStat> i = objects.iterator();
+		int written = 0;
 		while (i.hasNext()) {
 			LessonBuilderStat eUpdate = i.next();
 			LessonBuilderStat eExisting = null;
 			String eExistingSiteId = null;
 			try {
 				Criteria c = session.createCriteria(LessonBuilderStatImpl.class);
+				c.setFlushMode(FlushMode.MANUAL);
 				c.add(Expression.eq("siteId", eUpdate.getSiteId()));
 				c.add(Expression.eq("pageRef", eUpdate.getPageRef()));
 				c.add(Expression.eq("pageAction", eUpdate.getPageAction()));
@@ -1127,8 +1180,10 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			} catch (Exception ex) {
 				log.warn("Failed to event:"+ eUpdate.getId(), ex);
 			}
-			if ((eExistingSiteId!=null) && (eExistingSiteId.trim().length()>0))
+			if ((eExistingSiteId!=null) && (eExistingSiteId.trim().length()>0)) {
 				session.saveOrUpdate(eExisting);
+				flushBatch(session, ++written);
+			}
 		}
 	}
 	
@@ -1137,12 +1192,14 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		List<SiteActivity> objects = new ArrayList<SiteActivity>(o);
 		Collections.sort(objects);
 		Iterator<SiteActivity> i = objects.iterator();
+		int written = 0;
 		while(i.hasNext()){
 			SiteActivity eUpdate = i.next();
 			SiteActivity eExisting = null;
 			String eExistingSiteId = null;
 			try{
 				Criteria c = session.createCriteria(SiteActivityImpl.class);
+				c.setFlushMode(FlushMode.MANUAL);
 				c.add(Expression.eq("siteId", eUpdate.getSiteId()));
 				c.add(Expression.eq("eventId", eUpdate.getEventId()));
 				c.add(Expression.eq("date", eUpdate.getDate()));
@@ -1174,8 +1231,10 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 				log.warn("Failed to event:"+ eUpdate.getEventId(), ex);
 			}
 			
-			if ((eExistingSiteId!=null) && (eExistingSiteId.trim().length()>0))
-					session.saveOrUpdate(eExisting);
+			if ((eExistingSiteId!=null) && (eExistingSiteId.trim().length()>0)) {
+				session.saveOrUpdate(eExisting);
+				flushBatch(session, ++written);
+			}
 		}
 	}
 	
@@ -1184,12 +1243,14 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		List<SiteVisits> objects = new ArrayList<SiteVisits>(o);
 		Collections.sort(objects);
 		Iterator<SiteVisits> i = objects.iterator();
+		int written = 0;
 		while(i.hasNext()){
 			SiteVisits eUpdate = i.next();
 			SiteVisits eExisting = null;
 			String eExistingSiteId = null;
 			try{
 				Criteria c = session.createCriteria(SiteVisitsImpl.class);
+				c.setFlushMode(FlushMode.MANUAL);
 				c.add(Expression.eq("siteId", eUpdate.getSiteId()));
 				c.add(Expression.eq("date", eUpdate.getDate()));
 				try{
@@ -1222,8 +1283,10 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			}catch(Exception ex){
 				log.warn("Failed to event:"+ eUpdate.getId(), ex);
 			}
-			if ((eExistingSiteId!=null) && (eExistingSiteId.trim().length()>0))
-					session.saveOrUpdate(eExisting);
+			if ((eExistingSiteId!=null) && (eExistingSiteId.trim().length()>0)) {
+				session.saveOrUpdate(eExisting);
+				flushBatch(session, ++written);
+			}
 		}
 	}
 
@@ -1232,11 +1295,13 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		List<ServerStat> objects = new ArrayList<ServerStat>(o);
 		Collections.sort(objects);
 		Iterator<ServerStat> i = objects.iterator();
+		int written = 0;
 		while(i.hasNext()){
 			ServerStat eUpdate = i.next();
 			ServerStat eExisting = null;
 			try{
 				Criteria c = session.createCriteria(ServerStatImpl.class);
+				c.setFlushMode(FlushMode.MANUAL);
 				c.add(Expression.eq("eventId", eUpdate.getEventId()));
 				c.add(Expression.eq("date", eUpdate.getDate()));
 				try{
@@ -1267,6 +1332,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 				log.warn("Failed to event:"+ eUpdate.getEventId(), ex);
 			}
 			session.saveOrUpdate(eExisting);
+			flushBatch(session, ++written);
 		}
 	}
 	
@@ -1275,12 +1341,14 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		List<UserStat> objects = new ArrayList<UserStat>(o);
 		Collections.sort(objects);
 		Iterator<UserStat> i = objects.iterator();
+		int written = 0;
 		while(i.hasNext()){
 			UserStat eUpdate = i.next();
 			UserStat eExisting = null;
 			String eExistingUserId = null;
 			try{
 				Criteria c = session.createCriteria(UserStatImpl.class);
+				c.setFlushMode(FlushMode.MANUAL);
 				c.add(Expression.eq("userId", eUpdate.getUserId()));
 				c.add(Expression.eq("date", eUpdate.getDate()));
 				try{
@@ -1315,6 +1383,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			
 			if(StringUtils.isNotBlank(eExistingUserId)) {
 				session.saveOrUpdate(eExisting);
+				flushBatch(session, ++written);
 			}
 			
 		}
@@ -153,6 +153,44 @@ public class StatsUpdateManagerTest extends AbstractJUnit4SpringContextTests {
 		Assert.assertEquals(1, es2.getCount());
 	}		
 	
+	// Rows are flushed in batches and counts for the same key are merged before they are written
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testCollectEventsInBatches() throws Exception {
+		StatsUpdateManagerImpl sumi = (StatsUpdateManagerImpl) ((Advised) M_sum).getTargetSource().getTarget();
+		int flushBatchSize = sumi.getFlushBatchSize();
+		sumi.setFlushBatchSize(2);
+		try {
+			long flushes = sumi.getTotalFlushes();
+			List<Event> events = new ArrayList<>();
+			for (int i = 0; i < 5; i++) {
+				String userId = FakeData.USER_ID_PREFIX + i;
+				events.add(M_sum.buildEvent(new Date(), FakeData.EVENT_CHATNEW, "/chat/msg/"+FakeData.SITE_A_ID, FakeData.SITE_A_ID, userId, "session-id-a"));
+				events.add(M_sum.buildEvent(new Date(), FakeData.EVENT_CHATNEW, "/chat/msg/"+FakeData.SITE_A_ID, FakeData.SITE_A_ID, userId, "session-id-a"));
+			}
+			Assert.assertTrue(M_sum.collectEvents(events));
+
+			List<EventStat> results = (List<EventStat>) db.getResultsForClass(EventStatImpl.class);
+			Assert.assertEquals(5, results.size());
+			for (EventStat es : results) {
+				Assert.assertEquals(2, es.getCount());
+			}
+			Assert.assertEquals(0, sumi.getPendingAggregates());
+			Assert.assertEquals(flushes + 1, sumi.getTotalFlushes());
+			Assert.assertTrue(sumi.getLastFlushSize() >= 5);
+
+			// a second collection adds to the rows already written
+			Assert.assertTrue(M_sum.collectEvents(events));
+			results = (List<EventStat>) db.getResultsForClass(EventStatImpl.class);
+			Assert.assertEquals(5, results.size());
+			for (EventStat es : results) {
+				Assert.assertEquals(4, es.getCount());
+			}
+		} finally {
+			sumi.setFlushBatchSize(flushBatchSize);
+		}
+	}
+
 	// Test invalid events
 	@SuppressWarnings("unchecked")
 	@Test